@@ -25,7 +25,11 @@
 package battyp.lancaster.sqlitevisualiser.controller;
 
 import battyp.lancaster.sqlitevisualiser.model.Model;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.Estimate;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.Freelist;
 import battyp.lancaster.sqlitevisualiser.model.datastructures.Metadata;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.PageMap;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SampleEstimate;
 import battyp.lancaster.sqlitevisualiser.view.HeaderInformationPane;
 import javafx.beans.binding.StringBinding;
 import javafx.fxml.FXML;
@@ -81,7 +85,12 @@ public class HeaderController extends Controller {
                                                 createVersionPanel(metadata),
                                                 createPagePanel(metadata),
                                                 createTablePanel(metadata),
+                                                createFreelistPanel(metadata),
+                                                createPageMapPanel(metadata),
                                                 createMiscPanel(metadata));
+            if (metadata.sampleEstimate != null) {
+                headerFlowPane.getChildren().add(createSamplePanel(metadata.sampleEstimate));
+            }
         }
     }
 
@@ -145,12 +154,80 @@ public class HeaderController extends Controller {
     private HeaderInformationPane createTablePanel(Metadata metadata) {
         HeaderInformationPane panel = new HeaderInformationPane("Table Information");
         panel.addItem("Table Count", String.valueOf(metadata.numberOfTables));
-        panel.addItem("Entry Count", String.valueOf(metadata.numberOfEntries));
+        if (metadata.numberOfEntries == Metadata.ENTRIES_NOT_COUNTED) {
+            panel.addItem("Entry Count", "Not counted");
+        } else {
+            panel.addItem("Entry Count", String.valueOf(metadata.numberOfEntries));
+        }
         panel.addItem("Primary Key Count", String.valueOf(metadata.numberOfPrimaryKeys));
         panel.addItem("Foreign Key Count", String.valueOf(metadata.numberOfForeignKeys));
         return panel;
     }
 
+    private HeaderInformationPane createFreelistPanel(Metadata metadata) {
+        HeaderInformationPane panel = new HeaderInformationPane("Freelist");
+        Freelist freelist = metadata.freelist;
+        if (freelist == null) {
+            panel.addItem("Free Pages", String.valueOf(metadata.totalFreeListPages));
+            return panel;
+        }
+        panel.addItem("Free Pages", String.valueOf(freelist.getPageCount()));
+        panel.addItem("Trunk Pages", String.valueOf(freelist.getTrunkCount()));
+        panel.addItem("Leaf Pages", String.valueOf(freelist.getLeafCount()));
+        panel.addItem("First Trunk Page", String.valueOf(metadata.pageNumberOfFirstFreelistPage));
+        panel.addItem("Reclaimable Space", String.valueOf(freelist.getReclaimableBytes(metadata.pageSize)) + " Bytes");
+        if (metadata.sizeOfDatabaseInPages > 0) {
+            panel.addItem("Free Fraction", String.format("%.1f%%", 100.0 * freelist.getPageCount() / metadata.sizeOfDatabaseInPages));
+        }
+        if (freelist.problem != null) {
+            panel.addItem("Problem", freelist.problem);
+        }
+        return panel;
+    }
+
+    private HeaderInformationPane createPageMapPanel(Metadata metadata) {
+        HeaderInformationPane panel = new HeaderInformationPane("Page Usage");
+        PageMap pageMap = metadata.pageMap;
+        if (pageMap == null) {
+            panel.addItem("Pages", "Not classified");
+            return panel;
+        }
+        for (byte tag = 0; tag < PageMap.getTagCount(); tag++) {
+            int count = pageMap.getCount(tag);
+            if (count > 0) {
+                panel.addItem(PageMap.getName(tag), String.valueOf(count));
+            }
+        }
+        return panel;
+    }
+
+    private HeaderInformationPane createSamplePanel(SampleEstimate estimate) {
+        HeaderInformationPane panel = new HeaderInformationPane("Sampled Estimates");
+        panel.addItem("Sample Rate", String.format("%.1f%%", 100 * estimate.sampleRate));
+        panel.addItem("Table Leaf Pages", String.valueOf(estimate.leafPages + estimate.getExactPages()));
+        panel.addItem("Parsed Leaf Pages", String.valueOf(estimate.getSampledPages() + estimate.getExactPages()));
+        panel.addItem("Index Leaf Pages", String.valueOf(estimate.indexLeafPages + estimate.getExactIndexPages()));
+        panel.addItem("Parsed Index Leaf Pages", String.valueOf(estimate.getSampledIndexPages() + estimate.getExactIndexPages()));
+        panel.addItem("Rows (estimate)", formatEstimate(estimate.getRows(), "%.0f", 1));
+        panel.addItem("Fill Factor (estimate)", formatEstimate(estimate.getFillFactor(), "%.1f%%", 100));
+        panel.addItem("Payload per Row (estimate)", formatEstimate(estimate.getPayloadSize(), "%.1f", 1) + " Bytes");
+        panel.addItem("Payload (estimate)", formatEstimate(estimate.getPayloadBytes(), "%.0f", 1) + " Bytes");
+        for (int bucket = 0; bucket < SampleEstimate.PAYLOAD_BUCKETS; bucket++) {
+            Estimate rows = estimate.getPayloadBucket(bucket);
+            if (rows.value > 0) {
+                panel.addItem("Payload " + SampleEstimate.getBucketStart(bucket) + "+ Bytes (estimate)", formatEstimate(rows, "%.0f", 1) + " Rows");
+            }
+        }
+        return panel;
+    }
+
+    private String formatEstimate(Estimate estimate, String format, double scale) {
+        if (Double.isInfinite(estimate.margin)) {
+            return String.format(format, estimate.value * scale) + " (no sample)";
+        }
+        return new Estimate(estimate.value * scale, estimate.margin * scale).format(format);
+    }
+
     private HeaderInformationPane createMiscPanel(Metadata metadata) {
         HeaderInformationPane panel = new HeaderInformationPane("Misc");
         panel.addItem("Cache Size", String.valueOf(metadata.defaultPageCacheSize));
@@ -27,15 +27,19 @@ package battyp.lancaster.sqlitevisualiser.controller;
 import battyp.lancaster.sqlitevisualiser.util.UiUtil;
 import battyp.lancaster.sqlitevisualiser.model.Model;
 import battyp.lancaster.sqlitevisualiser.model.database.Database;
+import battyp.lancaster.sqlitevisualiser.model.databaseparser.ParseMonitor;
 import battyp.lancaster.sqlitevisualiser.model.datastructures.BTree;
 import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeNode;
 import battyp.lancaster.sqlitevisualiser.model.datastructures.Metadata;
 import battyp.lancaster.sqlitevisualiser.model.exceptions.InvalidFileException;
 import javafx.application.Platform;
+import javafx.concurrent.Task;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.control.Button;
 import javafx.scene.control.MenuItem;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.SplitPane;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.Pane;
@@ -44,6 +48,8 @@ import javafx.stage.FileChooser;
 import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * <h1> Menubar Controller </h1>
@@ -89,9 +95,13 @@ public class MenubarController extends Controller {
 
     private static final String LOG_FXML_PATH = "view/fxml/log.fxml";
 
+    private static final int SAMPLED_LEAF_PAGES = 20000;
+    private static final int ASSUMED_PAGE_SIZE = 4096;
+
     private BorderPane root;
     private SplitPane splitPane;
     private Controller currentController;
+    private OpenDatabaseTask openTask;
 
     @FXML
     private Button pauseButton;
@@ -99,6 +109,12 @@ public class MenubarController extends Controller {
     @FXML
     private MenuItem playOrPauseMenuItem;
 
+    @FXML
+    private ProgressBar parseProgressBar;
+
+    @FXML
+    private Button cancelButton;
+
     /**
      * Constructor.
      *
@@ -125,23 +141,113 @@ public class MenubarController extends Controller {
 
     @FXML
     private void openDatabase() {
-        try {
-            FileChooser fileChooser = new FileChooser();
-            fileChooser.setTitle("Open Database");
-            File file = fileChooser.showOpenDialog(null);
+        startOpenDatabase(false);
+    }
 
-            if (file != null) {
-                this.model.openDatabase(file.getCanonicalPath(), new Database(new BTree<BTreeCell>(), new Metadata()));
-                notifyObserver();
-            }
+    @FXML
+    private void openSampledDatabase() {
+        startOpenDatabase(true);
+    }
+
+    /**
+     * Opens a database in the background. A sampled open parses about
+     * the same number of leaf pages whatever the size of the file, so
+     * large files can be looked over quickly.
+     *
+     * @param sampled True to parse only a sample of the leaves.
+     */
+    private void startOpenDatabase(boolean sampled) {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setTitle("Open Database");
+        File file = fileChooser.showOpenDialog(null);
+        if (file == null) {
+            return;
+        }
+
+        String path;
+        try {
+            path = file.getCanonicalPath();
         } catch (IOException e) {
-            UiUtil.showExceptionError("Error Dialog", "Oooops, Could not read that file!", e);
-        } catch (InvalidFileException e) {
-            UiUtil.showExceptionError("Error Dialog", "Oooops, That's not a valid database file!", e);
-        } catch (ClassNotFoundException e) {
-            UiUtil.showExceptionError("Error Dialog", "Oooops, Error in Classpath!", e);
-        } catch (SQLException e) {
-            UiUtil.showExceptionError("Error Dialog", "Oooops, Could not connect to the database!", e);
+            showOpenError(e);
+            return;
+        }
+
+        double sampleRate = 1;
+        if (sampled) {
+            sampleRate = Math.min(1.0, (double) SAMPLED_LEAF_PAGES * ASSUMED_PAGE_SIZE / Math.max(1, file.length()));
+        }
+
+        cancelOpenDatabase();
+        OpenDatabaseTask task = new OpenDatabaseTask(path, sampleRate);
+        task.setOnSucceeded(event -> {
+            hideProgress();
+            notifyObserver();
+        });
+        task.setOnFailed(event -> {
+            hideProgress();
+            showOpenError(task.getException());
+            clearPartialTree();
+        });
+        task.setOnCancelled(event -> {
+            // the task resumes the live updates once its parse has stopped
+            hideProgress();
+            clearPartialTree();
+        });
+        this.openTask = task;
+        showProgress(task);
+
+        Thread thread = new Thread(task, "DatabaseParser");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @FXML
+    private void cancelOpenDatabase() {
+        if (this.openTask != null && this.openTask.isRunning()) {
+            this.openTask.cancel();
+        }
+    }
+
+    private void showProgress(OpenDatabaseTask task) {
+        this.parseProgressBar.progressProperty().bind(task.progressProperty());
+        setProgressShown(true);
+    }
+
+    private void hideProgress() {
+        this.parseProgressBar.progressProperty().unbind();
+        setProgressShown(false);
+    }
+
+    private void setProgressShown(boolean shown) {
+        this.parseProgressBar.setVisible(shown);
+        this.parseProgressBar.setManaged(shown);
+        this.cancelButton.setVisible(shown);
+        this.cancelButton.setManaged(shown);
+    }
+
+    private void showPartialTree(OpenDatabaseTask task, Database database) {
+        if (task == this.openTask && task.isRunning() && this.currentController instanceof VisualisationController) {
+            ((VisualisationController) this.currentController).showDatabase(database);
+        }
+    }
+
+    private void clearPartialTree() {
+        if (this.currentController instanceof VisualisationController) {
+            switchToVisualisation();
+        }
+    }
+
+    private void showOpenError(Throwable e) {
+        if (e instanceof InvalidFileException) {
+            UiUtil.showExceptionError("Error Dialog", "Oooops, That's not a valid database file!", (Exception) e);
+        } else if (e instanceof ClassNotFoundException) {
+            UiUtil.showExceptionError("Error Dialog", "Oooops, Error in Classpath!", (Exception) e);
+        } else if (e instanceof SQLException) {
+            UiUtil.showExceptionError("Error Dialog", "Oooops, Could not connect to the database!", (Exception) e);
+        } else if (e instanceof Exception) {
+            UiUtil.showExceptionError("Error Dialog", "Oooops, Could not read that file!", (Exception) e);
+        } else {
+            UiUtil.showExceptionError("Error Dialog", "Oooops, Could not read that file!", new Exception(e));
         }
     }
 
@@ -240,4 +346,75 @@ public class MenubarController extends Controller {
         this.splitPane.getItems().set(LEFT_PANE_NUMBER, pane);
         this.splitPane.getDividers().get(LEFT_PANE_NUMBER).setPosition(LEFT_DIVIDER_HIDDEN_VALUE);
     }
+
+    /**
+     * Parses a database in the background, reporting the pages parsed to
+     * the progress bar and drawing each level of the tree as it is parsed.
+     * The levels are added to a partial tree of the task's own on the FX
+     * thread, so it is only touched by the thread drawing it. The parsed database is opened in the background too, as filling in
+     * the table counts goes back to the file. If it is not opened the live
+     * updates are resumed by the task as it finishes, so they never run
+     * while a cancelled parse is still reading.
+     */
+    private class OpenDatabaseTask extends Task<Database> implements ParseMonitor {
+
+        private final String path;
+        private final double sampleRate;
+        private final Database database;
+        private final BTree<BTreeCell> partialTree;
+        private final Database partial;
+        private List<BTreeNode<BTreeCell>> lastLevel;
+
+        private OpenDatabaseTask(String path, double sampleRate) {
+            this.path = path;
+            this.sampleRate = sampleRate;
+            this.database = new Database(new BTree<BTreeCell>(), new Metadata());
+            this.partialTree = new BTree<>();
+            this.partial = new Database(this.partialTree, this.database.getMetadata());
+            this.lastLevel = new ArrayList<>();
+        }
+
+        @Override
+        protected Database call() throws Exception {
+            Database parsed = model.parseDatabase(this.path, this.database, this.sampleRate, this);
+            if (isCancelled()) {
+                model.resumeLiveUpdates();
+                return null;
+            }
+            try {
+                model.openParsedDatabase(this.path, parsed);
+            } catch (IOException | RuntimeException e) {
+                model.resumeLiveUpdates();
+                throw e;
+            }
+            return parsed;
+        }
+
+        @Override
+        public void progress(long pagesParsed, long pageCount) {
+            updateProgress(pagesParsed, pageCount);
+        }
+
+        @Override
+        public void levelParsed(List<BTreeCell> level, int[] parents, int depth) {
+            Platform.runLater(() -> {
+                addLevel(level, parents);
+                showPartialTree(this, this.partial);
+            });
+        }
+
+        private void addLevel(List<BTreeCell> level, int[] parents) {
+            List<BTreeNode<BTreeCell>> nodes = new ArrayList<>(level.size());
+            for (int i = 0; i < level.size(); i++) {
+                BTreeNode<BTreeCell> node = new BTreeNode<>(level.get(i));
+                if (parents[i] < 0) {
+                    this.partialTree.setRoot(node);
+                } else {
+                    this.lastLevel.get(parents[i]).addChild(node);
+                }
+                nodes.add(node);
+            }
+            this.lastLevel = nodes;
+        }
+    }
 }
@@ -28,10 +28,15 @@ import battyp.lancaster.sqlitevisualiser.model.Model;
 import battyp.lancaster.sqlitevisualiser.model.database.Database;
 import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell;
 import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeNode;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.Freelist;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SampleEstimate;
+import battyp.lancaster.sqlitevisualiser.model.exceptions.InvalidFileException;
 import battyp.lancaster.sqlitevisualiser.model.log.Log;
+import battyp.lancaster.sqlitevisualiser.util.UiUtil;
 import battyp.lancaster.sqlitevisualiser.view.*;
 import battyp.lancaster.sqlitevisualiser.view.Cell;
 import javafx.collections.FXCollections;
+import javafx.concurrent.Task;
 import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
@@ -98,6 +103,8 @@ public class VisualisationController extends Controller {
 
     private Cell selectedCell;
 
+    private SampleEstimate sampleEstimate;
+
     private boolean setUp;
 
     /**
@@ -130,77 +137,89 @@ public class VisualisationController extends Controller {
      */
     public void notifyObserver() {
         if (model.isFileOpen()) {
-            if (!setUp) {
-                setUp = true;
-
-                cellData.getColumns().add(cellColumn);
-                cellData.getColumns().add(leftChildColumn);
-                cellData.getColumns().add(rowIdColumn);
-                cellData.getColumns().add(payloadSizeColumn);
-                cellData.getColumns().add(payloadColumn);
-            }
+            showDatabase(model.getDatabase());
+        }
+    }
 
-            Database database = model.getDatabase();
+    /**
+     * Draws a database, which may be the partial tree of a parse that is
+     * still running rather than the current database of the model.
+     *
+     * @param database The database to draw.
+     */
+    public void showDatabase(Database database) {
+        if (!setUp) {
+            setUp = true;
+
+            cellData.getColumns().add(cellColumn);
+            cellData.getColumns().add(leftChildColumn);
+            cellData.getColumns().add(rowIdColumn);
+            cellData.getColumns().add(payloadSizeColumn);
+            cellData.getColumns().add(payloadColumn);
+        }
 
-            VisualisationGraph graph = new VisualisationGraph();
-            VisualisationModel model = graph.getModel();
+        VisualisationGraph graph = new VisualisationGraph();
+        VisualisationModel model = graph.getModel();
+
+        ZoomableScrollPane zoomPane = (ZoomableScrollPane) visPane.getCenter();
+        double hvalue = 0;
+        double vvalue = 0;
+        double zoom = 0.2;
+        if (zoomPane != null) {
+            hvalue = zoomPane.getHvalue();
+            vvalue = zoomPane.getVvalue();
+            zoom = zoomPane.getScaleValue();
+        }
 
-            ZoomableScrollPane zoomPane = (ZoomableScrollPane) visPane.getCenter();
-            double hvalue = 0;
-            double vvalue = 0;
-            double zoom = 0.2;
-            if (zoomPane != null) {
-                hvalue = zoomPane.getHvalue();
-                vvalue = zoomPane.getVvalue();
-                zoom = zoomPane.getScaleValue();
-            }
+        visPane.setCenter(graph.getScrollPane());
+        graph.getScrollPane().setHvalue(hvalue);
+        graph.getScrollPane().setVvalue(vvalue);
 
-            visPane.setCenter(graph.getScrollPane());
-            graph.getScrollPane().setHvalue(hvalue);
-            graph.getScrollPane().setVvalue(vvalue);
+        this.sampleEstimate = database.getMetadata().sampleEstimate;
+        visPane.setTop(createSampleNotice(this.sampleEstimate));
 
-            graph.beginUpdate();
+        graph.beginUpdate();
 
-            BTreeNode<BTreeCell> tree = database.getBTree().getRoot();
-            addCell(tree, null, 1000, model);
+        BTreeNode<BTreeCell> tree = database.getBTree().getRoot();
+        addCell(tree, null, 1000, model);
+        addFreelistCell(database.getMetadata().freelist, 1000, model);
 
 
-            graph.endUpdate();
+        graph.endUpdate();
 
-            List<Cell> cells = graph.getModel().getAllCells();
-            Collections.reverse(cells);
-            double x;
-            double lowestY = 0;
-            double leafX = 1000;
-            for (Cell cell : cells) {
-                List<Cell> children = cell.getCellChildren();
-                double y = cell.getLayoutY();
-                if (y > lowestY) {
-                    lowestY = y;
-                }
+        List<Cell> cells = graph.getModel().getAllCells();
+        Collections.reverse(cells);
+        double x;
+        double lowestY = 0;
+        double leafX = 1000;
+        for (Cell cell : cells) {
+            List<Cell> children = cell.getCellChildren();
+            double y = cell.getLayoutY();
+            if (y > lowestY) {
+                lowestY = y;
+            }
 
-                if (children.size() > 0) {
-                    if (children.size() == 1) {
-                        x = children.get(0).getLayoutX();
-                    } else {
-                        x =  ((children.get(0).getLayoutX() + children.get(children.size() - 1).getLayoutX()) / 2);
-                    }
-                    cell.relocate(x, y);
+            if (children.size() > 0) {
+                if (children.size() == 1) {
+                    x = children.get(0).getLayoutX();
                 } else {
-                    cell.relocate(leafX, y);
-                    leafX += 150;
+                    x =  ((children.get(0).getLayoutX() + children.get(children.size() - 1).getLayoutX()) / 2);
                 }
+                cell.relocate(x, y);
+            } else {
+                cell.relocate(leafX, y);
+                leafX += 150;
             }
-            graph.getScrollPane().zoomTo(zoom);
+        }
+        graph.getScrollPane().zoomTo(zoom);
 
-            Pane topLeftPane = new Pane();
-            topLeftPane.relocate(0, 0);
+        Pane topLeftPane = new Pane();
+        topLeftPane.relocate(0, 0);
 
-            Pane bottomRightPane = new Pane();
-            bottomRightPane.relocate(leafX + 1000, lowestY + 1000);
-            graph.getCellLayer().getChildren().add(topLeftPane);
-            graph.getCellLayer().getChildren().add(bottomRightPane);
-        }
+        Pane bottomRightPane = new Pane();
+        bottomRightPane.relocate(leafX + 1000, lowestY + 1000);
+        graph.getCellLayer().getChildren().add(topLeftPane);
+        graph.getCellLayer().getChildren().add(bottomRightPane);
     }
 
     /**
@@ -211,6 +230,11 @@ public class VisualisationController extends Controller {
      * the first call should always be with the root node. All children nodes
      * will then be added.
      *
+     * <p>
+     * The children of a lazy node that have not been loaded are not drawn,
+     * double clicking the node loads them in the background and redraws
+     * the tree.
+     *
      * @param node Node to represent
      * @param parent Parent to the node or null for self.
      * @param y Y pos to draw the node.
@@ -223,12 +247,22 @@ public class VisualisationController extends Controller {
         cell.setOnMouseClicked(event -> {
             Cell cell1 = (Cell)event.getSource();
             showData(cell1);
+            if (event.getClickCount() == 2 && !node.isMaterialised()) {
+                materialise(node);
+            }
         });
 
         model.addCell(cell);
         if (parent != null) {
             model.addEdge(parent.getCellId(), cell.getCellId());
         }
+        if (isSampled(cell.cell)) {
+            cell.markSampled();
+        }
+
+        if (!node.isMaterialised()) {
+            return;
+        }
 
         List<BTreeNode<BTreeCell>> children = node.getChildren();
 
@@ -240,6 +274,86 @@ public class VisualisationController extends Controller {
         }
     }
 
+    /**
+     * Loads the children of a lazy node in the background, as they are
+     * read from the file, then redraws the tree.
+     *
+     * @param node The lazy node.
+     */
+    private void materialise(BTreeNode<BTreeCell> node) {
+        Task<Void> task = new Task<Void>() {
+            @Override
+            protected Void call() {
+                node.materialise();
+                return null;
+            }
+        };
+        task.setOnSucceeded(event -> notifyObserver());
+        task.setOnFailed(event -> showLoadError(task.getException()));
+
+        Thread thread = new Thread(task, "LazyLoader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Shows why the children of a lazy node could not be loaded. The
+     * loader wraps the checked exceptions, so it is the cause that is shown.
+     *
+     * @param e The exception thrown by the load.
+     */
+    private void showLoadError(Throwable e) {
+        Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+        if (cause instanceof InvalidFileException) {
+            UiUtil.showExceptionError("Error Dialog", "Oooops, That page has changed since the file was opened!", (Exception) cause);
+        } else if (cause instanceof Exception) {
+            UiUtil.showExceptionError("Error Dialog", "Oooops, Could not read that page!", (Exception) cause);
+        } else {
+            UiUtil.showExceptionError("Error Dialog", "Oooops, Could not read that page!", new Exception(cause));
+        }
+    }
+
+    /**
+     * Adds the freelist as a node on its own, beside the tree. Each
+     * trunk page is a cell of the node.
+     *
+     * @param freelist The freelist, may be null.
+     * @param y Y pos to draw the node.
+     * @param model Pane to attach the node to.
+     */
+    private void addFreelistCell(Freelist freelist, int y, VisualisationModel model) {
+        if (freelist == null || freelist.cell == null) {
+            return;
+        }
+        Cell cell = cellFactory.createCell(freelist.cell.type, freelist.cell);
+        cell.setLayoutY(y);
+        cell.setOnMouseClicked(event -> showData((Cell) event.getSource()));
+        model.addCell(cell);
+    }
+
+    /**
+     * Creates the notice shown above a sampled tree, so the missing
+     * leaves are not mistaken for the whole table.
+     *
+     * @param estimate The estimates of the parse, may be null.
+     *
+     * @return The notice, or null if the tree is not sampled.
+     */
+    private Label createSampleNotice(SampleEstimate estimate) {
+        if (estimate == null) {
+            return null;
+        }
+        Label notice = new Label(String.format("Sampled: %d of %d table and %d of %d index leaf pages drawn, outlined pages have leaves missing, counts are estimates",
+                estimate.getSampledPages() + estimate.getExactPages(), estimate.leafPages + estimate.getExactPages(),
+                estimate.getSampledIndexPages() + estimate.getExactIndexPages(), estimate.indexLeafPages + estimate.getExactIndexPages()));
+        notice.getStyleClass().add("sampleNotice");
+        return notice;
+    }
+
+    private boolean isSampled(BTreeCell cell) {
+        return this.sampleEstimate != null && this.sampleEstimate.isSampledParent(cell.pageNumber + 1);
+    }
+
     /**
      * Shows the Clicked cell data to the user.
      *
@@ -247,7 +361,11 @@ public class VisualisationController extends Controller {
      */
     private void showData(Cell cell) {
         cellDataPage.setText("Page Number: " + (cell.cell.pageNumber + 1));
-        cellDataCount.setText("Cell Count: " + cell.cell.cellCount);
+        if (isSampled(cell.cell)) {
+            cellDataCount.setText("Cell Count: " + cell.cell.cellCount + " (children sampled)");
+        } else {
+            cellDataCount.setText("Cell Count: " + cell.cell.cellCount);
+        }
         cellDataType.setText("Cell Type: " + cell.cell.cellType);
         cellRightPointer.setText("Right Pointer: " + cell.cell.rightChildPointer);
         //TODO: clear the table
@@ -265,7 +383,7 @@ public class VisualisationController extends Controller {
         ObservableList<VisualisationTableCell> cellDataObjects = FXCollections.observableArrayList();
         cellData.setItems(cellDataObjects);
         for (int i = 0; i < cellCount; i++) {
-            cellDataObjects.add(new VisualisationTableCell(i, cell.leftChildPointers[i], cell.rowId[i], cell.payLoadSize[i], cell.data[i]));
+            cellDataObjects.add(new VisualisationTableCell(i, cell.getLeftChildPointer(i), cell.getRowId(i), cell.getPayloadSize(i), cell.getPreview(i)));
         }
     }
 }
\ No newline at end of file
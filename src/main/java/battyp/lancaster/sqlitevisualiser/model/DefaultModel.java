@@ -37,7 +37,9 @@ import battyp.lancaster.sqlitevisualiser.model.databaseinterface.DatabaseInterfa
 import battyp.lancaster.sqlitevisualiser.model.databaseinterface.DefaultDatabaseInterface;
 import battyp.lancaster.sqlitevisualiser.model.databaseparser.DatabaseParser;
 import battyp.lancaster.sqlitevisualiser.model.databaseparser.DefaultDatabaseParser;
+import battyp.lancaster.sqlitevisualiser.model.databaseparser.ParseMonitor;
 import battyp.lancaster.sqlitevisualiser.model.exceptions.InvalidFileException;
+import battyp.lancaster.sqlitevisualiser.util.FileUtil;
 
 import java.io.IOException;
 import java.sql.SQLException;
@@ -48,13 +50,27 @@ import java.sql.SQLException;
  * <p>
  * Default implementation of the model interface.
  *
+ * <p>
+ * Files larger than the lazy file size are parsed lazily, so only the
+ * pages that are looked at are parsed. The live updates of the file are
+ * parsed the same way, from when the file is opened. The open itself
+ * passes its settings to the parser with the parse, so a parse that is
+ * still running on the shared parser is not changed under it.
+ *
  * @author Paul Batty
  * @see Model
  * @since 0.4
  */
 public class DefaultModel implements Model {
 
-    private boolean isFileOpen;
+    /**
+     * Default size in bytes above which a file is parsed lazily.
+     */
+    public static final long LAZY_FILE_SIZE = 64L * 1024 * 1024;
+
+    private volatile long lazyFileSize = LAZY_FILE_SIZE;
+    private volatile boolean isFileOpen;
+    private volatile String path;
     private DatabaseInterface databaseInterface;
     private DatabaseParser databaseParser;
     private SqlExecutor sqlExecutor;
@@ -67,22 +83,96 @@ public class DefaultModel implements Model {
      */
     @Override
     public void openDatabase(final String path, Database database) throws IOException, InvalidFileException, SQLException, ClassNotFoundException {
-        database = this.databaseParser.parseDatabase(path, database);
+        openDatabase(path, database, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void openDatabase(final String path, Database database, ParseMonitor monitor) throws IOException, InvalidFileException, SQLException, ClassNotFoundException {
+        openParsedDatabase(path, parseDatabase(path, database, 1, monitor));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Database parseDatabase(final String path, Database database, double sampleRate, ParseMonitor monitor) throws IOException, InvalidFileException {
+        // waits for a live update already under way, then holds the rest off
+        this.liveUpdater.setDatabase(null);
+        try {
+            return this.databaseParser.parseDatabase(path, database, null, monitor, isLarge(path), sampleRate);
+        } catch (IOException | InvalidFileException | RuntimeException e) {
+            resumeLiveUpdates();
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void openParsedDatabase(final String path, Database database) throws IOException {
+        // an earlier cancelled open may have resumed the updates as it exited
+        this.liveUpdater.setDatabase(null);
+        this.databaseParser.setLazy(isLarge(path));
+        this.fileWatcher.setFile(path);
         this.databaseInterface.clear();
         this.databaseInterface.addDatabase(database);
         this.sqlExecutor.setDatabaseFile(path);
-        this.liveUpdater.setDatabase(path);
-        this.fileWatcher.setFile(path);
         this.liveUpdater.updateMetaData(database);
+        this.path = path;
+        this.liveUpdater.setDatabase(path);
         isFileOpen = true;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void resumeLiveUpdates() {
+        this.liveUpdater.setDatabase(this.path);
+    }
+
+    /**
+     * Checks whether a file is larger than the lazy file size.
+     *
+     * @param path path to the file.
+     *
+     * @return True if the file should be parsed lazily else false.
+     */
+    private boolean isLarge(final String path) throws IOException {
+        return FileUtil.openFile(path).length() > this.lazyFileSize;
+    }
+
+    /**
+     * Sets the size above which a file is parsed lazily, from the
+     * next file opened.
+     *
+     * @param lazyFileSize Size in bytes, a negative size parses every file lazily.
+     */
+    public void setLazyFileSize(long lazyFileSize) {
+        this.lazyFileSize = lazyFileSize;
+    }
+
+    /**
+     * Gets the size above which a file is parsed lazily.
+     *
+     * @return Size in bytes.
+     */
+    public long getLazyFileSize() {
+        return this.lazyFileSize;
+    }
+
     /**
      * Creates a new instance of the default model with default mode.
      */
     public DefaultModel() {
         databaseInterface = new DefaultDatabaseInterface();
         databaseParser = new DefaultDatabaseParser();
+        databaseParser.setParallelism(Runtime.getRuntime().availableProcessors());
+        databaseParser.setClassifyPages(true);
         sqlExecutor = new DefaultSqlExecutor();
         liveUpdater = new DefaultLiveUpdater(this);
         fileWatcher = new DefaultFileWatcher();
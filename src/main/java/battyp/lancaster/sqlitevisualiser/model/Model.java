@@ -31,6 +31,7 @@ import battyp.lancaster.sqlitevisualiser.model.log.Log;
 import battyp.lancaster.sqlitevisualiser.model.sqlexecutor.SqlExecutor;
 import battyp.lancaster.sqlitevisualiser.model.database.Database;
 import battyp.lancaster.sqlitevisualiser.model.databaseparser.DatabaseParser;
+import battyp.lancaster.sqlitevisualiser.model.databaseparser.ParseMonitor;
 import battyp.lancaster.sqlitevisualiser.model.exceptions.InvalidFileException;
 
 import java.io.FileNotFoundException;
@@ -60,6 +61,54 @@ public interface Model {
      */
     public void openDatabase(final String path, Database database) throws IOException, InvalidFileException, SQLException, ClassNotFoundException;
 
+    /**
+     * Opens a database, reporting the progress of the parse to a monitor.
+     * The open database is left as it was if the parse is cancelled.
+     *
+     * @param path path to the database including file name and extension
+     *             can be any type of path.
+     * @param database The database to use.
+     * @param monitor The monitor to report to.
+     *
+     * @throws java.util.concurrent.CancellationException If the monitor is cancelled.
+     */
+    public void openDatabase(final String path, Database database, ParseMonitor monitor) throws IOException, InvalidFileException, SQLException, ClassNotFoundException;
+
+    /**
+     * Parses a database to open, without opening it, so the parse can run
+     * away from the thread that draws the view. The live updates of the
+     * open database are paused from the start of the parse until the
+     * parsed database is opened, or resumed if the parse fails.
+     *
+     * @param path path to the database including file name and extension
+     *             can be any type of path.
+     * @param database The database to use.
+     * @param sampleRate The chance of each leaf page being parsed, one to parse every page.
+     * @param monitor The monitor to report to, may be null.
+     *
+     * @return The parsed database.
+     *
+     * @throws java.util.concurrent.CancellationException If the monitor is cancelled.
+     */
+    public Database parseDatabase(final String path, Database database, double sampleRate, ParseMonitor monitor) throws IOException, InvalidFileException;
+
+    /**
+     * Opens a database returned by parseDatabase, replacing the open
+     * database and resuming the live updates on the new one. The table
+     * counts are read from the file, so it should be called away from
+     * the thread that draws the view.
+     *
+     * @param path path to the database the parse was of.
+     * @param database The parsed database.
+     */
+    public void openParsedDatabase(final String path, Database database) throws IOException;
+
+    /**
+     * Resumes the live updates of the open database, when a database
+     * returned by parseDatabase is not going to be opened.
+     */
+    public void resumeLiveUpdates();
+
     /**
      * Gets the current Database.
      *
@@ -68,6 +68,13 @@ public interface DatabaseInterface {
      */
     public Database getNext();
 
+    /**
+     * Gets the most recently added database, regardless of the one being shown.
+     *
+     * @return Latest database or null if there are none.
+     */
+    public Database getLatest();
+
     /**
      * Steps into the next database.
      */
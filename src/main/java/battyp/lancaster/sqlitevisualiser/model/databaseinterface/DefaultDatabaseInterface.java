@@ -85,6 +85,17 @@ public class DefaultDatabaseInterface implements DatabaseInterface {
         return null;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Database getLatest() {
+        if (this.history.isEmpty()) {
+            return null;
+        }
+        return this.history.get(this.history.size() - 1);
+    }
+
     /**
      * {@inheritDoc}
      */
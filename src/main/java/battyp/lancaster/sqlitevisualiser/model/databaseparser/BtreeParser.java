@@ -0,0 +1,72 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTree;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeNode;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.Metadata;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.PageReaderFactory;
+import battyp.lancaster.sqlitevisualiser.model.exceptions.InvalidFileException;
+
+import java.io.IOException;
+
+/**
+ * <h1> Btree Parser </h1>
+ *
+ * <p>
+ * One way of parsing the btree, from a root page down. The database
+ * parser picks one for each parse from its settings, the pages are
+ * decoded the same way by each of them.
+ *
+ * @author Paul Batty
+ * @see DefaultDatabaseParser
+ * @see PageDecoder
+ * @since 1.0
+ */
+interface BtreeParser {
+
+    /**
+     * Empty tree used when there is no previous parse to reuse pages from.
+     */
+    BTree<BTreeCell> NO_PREVIOUS = new BTree<>();
+
+    /**
+     * Parses the btree below a page.
+     *
+     * @param in The page source.
+     * @param pageNumber The page number of the root.
+     * @param pageSize The page size.
+     * @param metadata The database metadata.
+     * @param previous The tree of a previous parse, indexed by page number.
+     * @param readers Opens the database to read large overflow payloads, null to load every payload.
+     *
+     * @return BtreeNode with the cell data.
+     *
+     * @throws IOException If there is a problem reading the file.
+     * @throws InvalidFileException If there is an unusual format.
+     */
+    public BTreeNode<BTreeCell> parse(PageSource in, long pageNumber, long pageSize, Metadata metadata, BTree<BTreeCell> previous, PageReaderFactory readers) throws IOException, InvalidFileException;
+}
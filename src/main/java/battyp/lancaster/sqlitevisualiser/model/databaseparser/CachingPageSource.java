@@ -0,0 +1,124 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <h1> Caching Page Source </h1>
+ *
+ * <p>
+ * Wraps another page source and checks the page cache before going to the
+ * file. Pages read from the file are added to the cache. Pages are only
+ * read and added under the generation the cache gave when the header of
+ * the file was checked, so a source left over from an earlier parse does
+ * not mix its pages with a newer one.
+ *
+ * <p>
+ * Closing this source closes the wrapped source, the cache is left
+ * untouched so it can be reused by the next parse.
+ *
+ * @author Paul Batty
+ * @see PageCache
+ * @see PageSource
+ * @since 1.0
+ */
+public class CachingPageSource implements PageSource {
+
+    private final PageSource source;
+    private final PageCache cache;
+    private final int generation;
+
+    /**
+     * Constructor.
+     *
+     * @param source The page source to read from on a miss.
+     * @param cache The cache to use.
+     * @param generation The generation given by the cache when the header was checked.
+     */
+    public CachingPageSource(PageSource source, PageCache cache, int generation) {
+        this.source = source;
+        this.cache = cache;
+        this.generation = generation;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuffer read(long offset, int length) throws IOException {
+        return this.source.read(offset, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuffer getPage(long pageNumber, long pageSize) throws IOException {
+        ByteBuffer page = this.cache.get(pageNumber, this.generation);
+        if (page == null) {
+            page = this.cache.put(pageNumber, this.source.getPage(pageNumber, pageSize), this.generation);
+        }
+        return page;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Pages already in the cache are not passed on.
+     */
+    @Override
+    public void prefetch(int[] pageNumbers, long pageSize) {
+        int[] missing = new int[pageNumbers.length];
+        int count = 0;
+        for (int pageNumber : pageNumbers) {
+            if (!this.cache.contains(pageNumber, this.generation)) {
+                missing[count++] = pageNumber;
+            }
+        }
+        if (count > 0) {
+            this.source.prefetch(Arrays.copyOf(missing, count), pageSize);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long size() {
+        return this.source.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        this.source.close();
+    }
+}
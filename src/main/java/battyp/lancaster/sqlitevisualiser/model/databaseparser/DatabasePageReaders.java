@@ -0,0 +1,129 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.Metadata;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.PageReader;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.PageReaderFactory;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SqliteConstants;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * <h1> Database Page Readers </h1>
+ *
+ * <p>
+ * Opens page readers for the overflow payloads of a parse, and page
+ * sources for the lazy nodes. The file is reopened each time so no file
+ * handle is held open by the tree, and nothing is read if the file has
+ * changed since it was parsed.
+ *
+ * @author Paul Batty
+ * @see PageReaderFactory
+ * @see LazyBtreeParser
+ * @since 1.0
+ */
+class DatabasePageReaders implements PageReaderFactory {
+
+    private final File file;
+    private final WalPageSource wal;
+    private final Metadata metadata;
+    private final SourceOpener opener;
+
+    /**
+     * Constructor.
+     *
+     * @param file The database file.
+     * @param wal The WAL frames laid over the file, or null if there are none.
+     * @param metadata The metadata of the parse.
+     * @param opener Opens the page source of the file.
+     */
+    DatabasePageReaders(File file, WalPageSource wal, Metadata metadata, SourceOpener opener) {
+        this.file = file;
+        this.wal = wal;
+        this.metadata = metadata;
+        this.opener = opener;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PageReader open() throws IOException {
+        PageSource in = reopen();
+        if (in == null) {
+            throw new IOException("Database " + this.file.getPath() + " has changed since it was parsed");
+        }
+        return new SourcePageReader(in, this.metadata.pageSize, true);
+    }
+
+    /**
+     * Opens the database again after a parse, with the same WAL frames
+     * laid over it.
+     *
+     * @return The page source, or null if the file has changed since the parse.
+     *
+     * @throws IOException If there is a problem opening the files.
+     */
+    PageSource reopen() throws IOException {
+        PageSource in = this.opener.open(this.file);
+        try {
+            if (this.wal != null) {
+                WalPageSource source = this.wal.reopen(in);
+                in = source;
+                if (!source.isCurrent()) {
+                    in.close();
+                    return null;
+                }
+            }
+            if (in.read(0, SqliteConstants.HEADER_SIZE).getInt(SqliteConstants.FILE_CHANGE_COUNTER_OFFSET) != this.metadata.fileChangeCounter) {
+                in.close();
+                return null;
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    /**
+     * Opens the page source of a database file.
+     */
+    interface SourceOpener {
+
+        /**
+         * Opens the file.
+         *
+         * @param file The database file.
+         *
+         * @return The page source.
+         *
+         * @throws IOException If there is a problem opening the file.
+         */
+        PageSource open(File file) throws IOException;
+    }
+}
@@ -60,4 +60,228 @@ public interface DatabaseParser {
      * @return Database class filled with the format data.
      */
     public Database parseDatabase(final String pathToDatabase, Database database) throws IOException, InvalidFileException;
+
+    /**
+     * Parses the database file the same as parseDatabase, but reuses the
+     * nodes and cells of a previous parse of the file for every page that
+     * has not changed since. Only the changed pages are decoded again.
+     *
+     * @param pathToDatabase The string path to the database including file name and extension.
+     * @param database The database class to fill with data.
+     * @param previous A previous parse of the same file, or null to parse it all.
+     *
+     * @return Database class filled with the format data.
+     */
+    public Database parseDatabase(final String pathToDatabase, Database database, Database previous) throws IOException, InvalidFileException;
+
+    /**
+     * Parses the database file the same as parseDatabase, while reporting
+     * to a monitor. The tree is parsed a level at a time from the root on
+     * the calling thread, so the monitor is given the upper levels of the
+     * tree before the leaves are done. In lazy mode only the root is
+     * parsed, the same as without a monitor.
+     *
+     * @param pathToDatabase The string path to the database including file name and extension.
+     * @param database The database class to fill with data.
+     * @param previous A previous parse of the same file, or null to parse it all.
+     * @param monitor The monitor to report to.
+     *
+     * @return Database class filled with the format data.
+     *
+     * @throws java.util.concurrent.CancellationException If the monitor is cancelled.
+     */
+    public Database parseDatabase(final String pathToDatabase, Database database, Database previous, ParseMonitor monitor) throws IOException, InvalidFileException;
+
+    /**
+     * Parses the database file the same as parseDatabase with a monitor,
+     * but lazily and at the sample rate given rather than as set on the
+     * parser. The settings of the parser are left as they are, so one
+     * parse does not change how another parses.
+     *
+     * @param pathToDatabase The string path to the database including file name and extension.
+     * @param database The database class to fill with data.
+     * @param previous A previous parse of the same file, or null to parse it all.
+     * @param monitor The monitor to report to, or null if there is none.
+     * @param lazy True to parse lazily else false.
+     * @param sampleRate Chance of a leaf being parsed, above zero and at most one.
+     *
+     * @return Database class filled with the format data.
+     *
+     * @throws java.util.concurrent.CancellationException If the monitor is cancelled.
+     */
+    public Database parseDatabase(final String pathToDatabase, Database database, Database previous, ParseMonitor monitor, boolean lazy, double sampleRate) throws IOException, InvalidFileException;
+
+    /**
+     * Parses the database as it was before the transaction in progress,
+     * by laying the original pages in the rollback journal over the file.
+     * Pages that are not in the journal are reused from the current parse.
+     *
+     * @param pathToDatabase The string path to the database including file name and extension.
+     * @param database The database class to fill with data.
+     * @param current A parse of the file as it is now, or null to parse it all.
+     *
+     * @return Database class filled with the format data, or null if there is no transaction in the journal.
+     */
+    public Database parseJournal(final String pathToDatabase, Database database, Database current) throws IOException, InvalidFileException;
+
+    /**
+     * Sets whether the database file is memory mapped when parsing, or
+     * read through a RandomAccessFile. Memory mapping is on by default.
+     *
+     * @param memoryMapped True to memory map the file else false.
+     */
+    public void setMemoryMapped(boolean memoryMapped);
+
+    /**
+     * Gets whether the database file is memory mapped when parsing.
+     *
+     * @return True if memory mapped else false.
+     */
+    public boolean isMemoryMapped();
+
+    /**
+     * Sets the number of threads used to parse the btrees. With one
+     * thread, the default, the file is parsed sequentially, else the
+     * subtrees are parsed in parallel on a fork join pool. A parse with
+     * a monitor parses the pages of each level in parallel instead. The
+     * pool is kept by the parser between parses.
+     *
+     * @param parallelism The number of threads, must be at least one.
+     */
+    public void setParallelism(int parallelism);
+
+    /**
+     * Gets the number of threads used to parse the btrees.
+     *
+     * @return The number of threads.
+     */
+    public int getParallelism();
+
+    /**
+     * Sets whether the btrees are parsed lazily. In lazy mode only the root
+     * page is parsed, the children of each node are parsed the first time
+     * they are asked for. Off by default.
+     *
+     * @param lazy True to parse lazily else false.
+     */
+    public void setLazy(boolean lazy);
+
+    /**
+     * Gets whether the btrees are parsed lazily.
+     *
+     * @return True if lazy else false.
+     */
+    public boolean isLazy();
+
+    /**
+     * Sets whether the file is scanned in page order rather than walked in
+     * tree order. A scan reads the pages front to back in large reads, then
+     * links the pages into the tree in memory, which avoids seeking on slow
+     * disks. Lazy parsing takes priority over a scan. Off by default, and
+     * the application leaves it off, as a file being opened is parsed a
+     * level at a time and the live updates use the parallel parse.
+     *
+     * @param sequentialScan True to scan the file in page order else false.
+     */
+    public void setSequentialScan(boolean sequentialScan);
+
+    /**
+     * Gets whether the file is scanned in page order.
+     *
+     * @return True if scanned in page order else false.
+     */
+    public boolean isSequentialScan();
+
+    /**
+     * Sets whether the children of each interior page are read ahead of
+     * time while the parse carries on, so waiting on the disk overlaps with
+     * decoding. Off by default, and the application leaves it off, as
+     * the file is memory mapped where it can be and the pages of each
+     * level are already read in parallel.
+     *
+     * @param prefetch True to read child pages ahead else false.
+     */
+    public void setPrefetch(boolean prefetch);
+
+    /**
+     * Gets whether the children of each interior page are read ahead of time.
+     *
+     * @return True if child pages are read ahead else false.
+     */
+    public boolean isPrefetch();
+
+    /**
+     * Sets whether every page in the file is classified after the parse,
+     * including the pages that cannot be reached from the btrees. The
+     * result is stored in the page map of the metadata. Pages are not
+     * classified in lazy mode, as most of the tree is not yet known. Off
+     * by default.
+     *
+     * @param classifyPages True to classify every page else false.
+     */
+    public void setClassifyPages(boolean classifyPages);
+
+    /**
+     * Gets whether every page in the file is classified after the parse.
+     *
+     * @return True if every page is classified else false.
+     */
+    public boolean isClassifyPages();
+
+    /**
+     * Sets how many times a parse is retried when the file changes while
+     * it is read. The change counter is read before and after each parse,
+     * and if they differ, or the WAL was restarted, the tree may mix pages
+     * from before and after a commit. Each retry waits twice as long as
+     * the last. Five by default.
+     *
+     * @param maxRetries Number of retries, zero to fail on the first change.
+     */
+    public void setMaxRetries(int maxRetries);
+
+    /**
+     * Gets how many times a parse is retried when the file changes while it is read.
+     *
+     * @return Number of retries.
+     */
+    public int getMaxRetries();
+
+    /**
+     * Sets whether a shared lock is held on the database while it is
+     * read, the same lock Sqlite readers take, so no commit can be written
+     * part way through a parse. Off by default, as the locks are held by
+     * the whole process and closing any handle on the file drops them.
+     * The application leaves it off, since its sql executor holds its own
+     * connection to the same file.
+     *
+     * @param sharedLock True to hold the lock else false.
+     */
+    public void setSharedLock(boolean sharedLock);
+
+    /**
+     * Gets whether a shared lock is held on the database while it is read.
+     *
+     * @return True if the lock is held else false.
+     */
+    public boolean isSharedLock();
+
+    /**
+     * Sets the chance of each leaf page being parsed. Below one every
+     * interior page is still parsed, but only a random sample of the
+     * leaves of the tables and indexes, and the row counts, fill factor
+     * and payload sizes are estimated from the table leaves into the
+     * sample estimate of the metadata. The
+     * schema is always parsed in full, pages are not classified and the
+     * previous parse is not reused. One by default.
+     *
+     * @param sampleRate Chance of a leaf being parsed, above zero and at most one.
+     */
+    public void setSampleRate(double sampleRate);
+
+    /**
+     * Gets the chance of each leaf page being parsed.
+     *
+     * @return The sample rate, one if every page is parsed.
+     */
+    public double getSampleRate();
 }
\ No newline at end of file
@@ -32,6 +32,11 @@ import battyp.lancaster.sqlitevisualiser.view.CellType;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * <h1>< Default Database Parser </h1>
@@ -40,526 +45,943 @@ import java.nio.ByteBuffer;
  * Default implementation of the Database Parser designed for
  * Sqlite databases.
  *
+ * <p>
+ * The parser reads the header, freelist and pointer map itself. The
+ * btree is parsed by one of the btree parsers, picked from the settings
+ * for each parse, which all decode their pages with the same decoder.
+ *
  * @author Paul Batty
  * @see DatabaseParser
+ * @see StreamingDatabaseParser
+ * @see BtreeParser
  * @see <a href="https://www.sqlite.org/fileformat2.html">Sqlite file format</a>
  * @since 0.3
  */
-public class DefaultDatabaseParser implements DatabaseParser {
-
-    private static final int VALUE_NULL = 0;
-    private static final int VALUE_ONE_BYTE_INT = 1;
-    private static final int VALUE_TWO_BYTE_INT = 2;
-    private static final int VALUE_THREE_BYTE_INT = 3;
-    private static final int VALUE_FOUR_BYTE_INT = 4;
-    private static final int VALUE_SIX_BYTE_INT = 5;
-    private static final int VALUE_EIGHT_BYTE_INT = 6;
-    private static final int VALUE_EIGHT_BYTE_FLOAT = 7;
-    private static final int VALUE_ZERO = 8;
-    private static final int VALUE_ONE = 9;
-    private static final int VALUE_BLOB = 12;
-    private static final int VALUE_STRING = 13;
+public class DefaultDatabaseParser implements DatabaseParser, StreamingDatabaseParser {
+
+    private boolean memoryMapped;
+    private int parallelism;
+    private volatile boolean lazy;
+    private boolean sequentialScan;
+    private boolean prefetch;
+    private boolean classifyPages;
+    private volatile double sampleRate;
+    private final PageDecoder decoder;
+    private final PageCache pageCache;
+    private final TornReadRetry retry;
+    private WalIndex walIndex;
+    private ForkJoinPool pool;
+    private final Object parseLock;
+
+    /**
+     * Constructor.
+     */
+    public DefaultDatabaseParser() {
+        this.memoryMapped = true;
+        this.parallelism = 1;
+        this.sampleRate = 1;
+        this.decoder = new PageDecoder();
+        this.pageCache = new PageCache();
+        this.retry = new TornReadRetry(this.pageCache);
+        this.parseLock = new Object();
+    }
 
     /**
      * {@inheritDoc}
      */
     @Override
     public Database parseDatabase(String pathToDatabase, Database database) throws IOException, InvalidFileException {
+        return parseDatabase(pathToDatabase, database, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Database parseDatabase(String pathToDatabase, Database database, Database previous) throws IOException, InvalidFileException {
+        return parseDatabase(pathToDatabase, database, previous, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Lazy, scan and parallel modes are not used when there is a monitor,
+     * the freelist and the rest are read after the tree as normal. A
+     * sampled parse reports its progress and can be cancelled, but does
+     * not report the levels as it goes depth first.
+     *
+     * <p>
+     * The whole parse is retried if a commit is written while it runs,
+     * the change counter is read straight from the file before and after,
+     * so the tree is never a mix of two versions. A commit that has
+     * written its pages but not yet page one is only kept out by the
+     * shared lock.
+     *
+     * <p>
+     * Parses on the same parser run one at a time, as the WAL index and
+     * the page cache are carried from one parse to the next. The lazy and
+     * sample rate settings are read once the parse holds the lock, so
+     * changing them does not affect a parse already under way.
+     */
+    @Override
+    public Database parseDatabase(String pathToDatabase, Database database, Database previous, ParseMonitor monitor) throws IOException, InvalidFileException {
 
         File file = FileUtil.openFile(pathToDatabase);
-        RandomAccessFile in = new RandomAccessFile(file, "r");
 
-        checkMagicNumber(in);
-        readSqliteHeader(in, database.getMetadata());
-        readBTrees(in, database);
+        synchronized (this.parseLock) {
+            boolean lazy = this.lazy;
+            double sampleRate = this.sampleRate;
+            this.retry.parse(file, channel -> parseSnapshot(file, channel, database, previous, monitor, lazy, sampleRate));
+        }
+        return database;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Database parseDatabase(String pathToDatabase, Database database, Database previous, ParseMonitor monitor, boolean lazy, double sampleRate) throws IOException, InvalidFileException {
+        checkSampleRate(sampleRate);
+
+        File file = FileUtil.openFile(pathToDatabase);
 
-        in.close();
+        synchronized (this.parseLock) {
+            this.retry.parse(file, channel -> parseSnapshot(file, channel, database, previous, monitor, lazy, sampleRate));
+        }
         return database;
     }
 
     /**
-     * Checks the input stream against the magic number.
+     * Parses the database once, checking the file did not change while
+     * it was read.
      *
-     * <p>
-     * <b>NOTE:<b/> Assumes input stream is already in position.
+     * @param file The database file.
+     * @param channel Channel on the file, used to read the change counter.
+     * @param database The database to store in.
+     * @param previous The previous parse, or null if there is none.
+     * @param monitor The monitor to report to, or null if there is none.
+     * @param lazy True to parse lazily else false.
+     * @param sampleRate Chance of a leaf being parsed.
      *
-     * @param in The InputStream.
+     * @return True if the parse is a snapshot, false if a commit was written during it.
      *
-     * @throws InvalidFileException Invalid File if the magic number is incorrect.
+     * @throws IOException If there is a problem reading the file, that was not caused by a commit.
+     * @throws InvalidFileException If there is an unusual format, that was not caused by a commit.
      */
-    private void checkMagicNumber(RandomAccessFile in) throws InvalidFileException {
-        try {
-            for (int i = 0; i < SqliteConstants.MAGIC_NUMBER_LENGTH; i++) {
-                if (in.read() != SqliteConstants.MAGIC_NUMBER[i]) {
-                    throw new InvalidFileException();
+    private boolean parseSnapshot(File file, FileChannel channel, Database database, Database previous, ParseMonitor monitor, boolean lazy, double sampleRate) throws IOException, InvalidFileException {
+        int changeCounter = TornReadRetry.readChangeCounter(channel);
+
+        PageSource source = openDatabase(file);
+        WalPageSource wal = (source instanceof WalPageSource) ? (WalPageSource) source : null;
+        try (PageSource opened = source) {
+            try {
+                Metadata metadata = database.getMetadata();
+                PageSource in = new CachingPageSource(opened, this.pageCache, readMetadata(opened, file, metadata, wal != null));
+                DatabasePageReaders readers = new DatabasePageReaders(file, wal, metadata, this::openPageSource);
+                readBTrees(in, readers, database, indexPages(previous, metadata), monitor, lazy, sampleRate);
+                metadata.freelist = readFreelist(in, metadata);
+                metadata.pointerMap = readPointerMap(in, metadata);
+                // classifying reads every page, which a lazy parse is there to avoid
+                if (this.classifyPages && metadata.sampleEstimate == null && !lazy) {
+                    metadata.pageMap = new PageClassifier(this.decoder, getPool()).classify(in, metadata, getBTree(database).getRoot(), readers);
+                }
+            } catch (IOException | InvalidFileException e) {
+                // a page written part way through the parse can look corrupt
+                if (TornReadRetry.isUnchanged(channel, wal, changeCounter)) {
+                    throw e;
                 }
+                return false;
             }
-        } catch (IOException e) {
-            throw new InvalidFileException();
+            return TornReadRetry.isUnchanged(channel, wal, changeCounter);
         }
     }
 
     /**
-     * Reads the first 100 byte header in the database.
+     * {@inheritDoc}
      *
      * <p>
-     * <b>NOTE:<b/> Assumes input stream is already in position
-     *
-     * @param in The InputStream.
-     * @param metadata The metadata object to store to.
-     */
-    private void readSqliteHeader(RandomAccessFile in, Metadata metadata) throws IOException, InvalidFileException {
-        metadata.pageSize = in.readShort();
-        metadata.writeVersion = in.readByte();
-        metadata.readVersion = in.readByte();
-        metadata.unusedSpaceAtEndOfEachPage = in.readByte();
-        metadata.maxEmbeddedPayload = in.readByte();
-        metadata.minEmbeddedPayload = in.readByte();
-        metadata.leafPayloadFraction = in.readByte();
-        metadata.fileChangeCounter = in.readInt();
-        metadata.sizeOfDatabaseInPages = in.readInt();
-        metadata.pageNumberOfFirstFreelistPage = in.readInt();
-        metadata.totalFreeListPages = in.readInt();
-        metadata.schemaCookie = in.readInt();
-        metadata.schemaFormat = in.readInt();
-        metadata.defaultPageCacheSize = in.readInt();
-        metadata.pageNumberToLargestBTreePage = in.readInt();
-        metadata.textEncoding = in.readInt();
-        metadata.userVersion = in.readInt();
-        metadata.vacuumMode = in.readInt();
-        metadata.appID = in.readInt();
-
-        in.skipBytes(SqliteConstants.HEADER_RESERVED_SPACE_SIZE);
-
-        metadata.versionValidNumber = in.readInt();
-        metadata.sqliteVersion = in.readInt();
-    }
-
-    /**
-     * Reads the Btree sections of the file.
-     *
-     * @param in The inputStream.
-     * @param database The tree to store in.
+     * Only the pages in the journal are decoded, the rest are the same as
+     * in the current parse and are reused by their checksums. The original
+     * pages skip the page cache, so they do not push out the pages of the
+     * file as it is now. The journal may be gone before the payloads would
+     * be loaded, so they are loaded during the parse.
      *
-     * @throws IOException If there is a problem reading the file.
-     * @throws InvalidFileException If there is an unusual format.
+     * <p>
+     * It runs one at a time with the other parses on the same parser, as
+     * it shares their decoder and page cache.
      */
-    private void readBTrees(RandomAccessFile in, Database database) throws  IOException, InvalidFileException {
+    @Override
+    public Database parseJournal(String pathToDatabase, Database database, Database current) throws IOException, InvalidFileException {
 
-        final int starting_page_number = 1;
+        File file = FileUtil.openFile(pathToDatabase);
+        File journalFile = new File(file.getPath() + SqliteConstants.JOURNAL_FILE_SUFFIX);
+        if (!journalFile.isFile()) {
+            return null;
+        }
+        JournalIndex index = new JournalIndex(journalFile);
+        index.read();
+        if (index.isEmpty()) {
+            return null;
+        }
 
-        int pageSize = database.getMetadata().pageSize;
-        database.getBTree().setRoot(parseBtree(in, starting_page_number, pageSize, database.getMetadata()));
+        synchronized (this.parseLock) {
+            PageSource source = openPageSource(file);
+            try {
+                source = new JournalPageSource(source, index);
+            } catch (IOException e) {
+                source.close();
+                throw e;
+            }
+            try (PageSource in = source) {
+                ByteBuffer header = readHeader(in);
+                checkMagicNumber(header);
+                Metadata metadata = database.getMetadata();
+                readSqliteHeader(header, metadata);
+                if (metadata.pageSize != index.getPageSize()) {
+                    return null;
+                }
+                getBTree(database).setRoot(new StreamingBtreeParser(this.decoder).parse(in, 1, metadata.pageSize, metadata, indexPages(current, metadata), null));
+                metadata.freelist = readFreelist(in, metadata);
+                metadata.pointerMap = readPointerMap(in, metadata);
+            }
+        }
+        return database;
     }
 
     /**
-     * Parses the btree page.
+     * {@inheritDoc}
      *
      * <p>
-     * Uses recursion to load up each node, with it's children.
-     *
-     * @param in The input stream.
-     * @param pageNumber The page number we are on.
-     * @param pageSize The page size.
-     *
-     * @param metadata
-     * @return  BtreeNode with the cell data.
-     *
-     * @throws IOException If there is a problem reading the file.
-     * @throws InvalidFileException If there is an unusual format.
+     * The pages go through the page cache the same as a full parse, and
+     * the btree is walked one page at a time on the calling thread. In
+     * sequential scan mode every page is read first, so the memory is no
+     * longer bounded by the depth of the tree.
      */
-    public BTreeNode<BTreeCell> parseBtree(RandomAccessFile in, long pageNumber, long pageSize, Metadata metadata) throws IOException, InvalidFileException {
-        BTreeNode<BTreeCell> node = new BTreeNode<>();
-        PageHeader pageHeader = new PageHeader(in, pageNumber, pageSize);
+    @Override
+    public Metadata streamDatabase(String pathToDatabase, Metadata metadata, PageVisitor visitor) throws IOException, InvalidFileException {
 
-        final int cellType = pageHeader.getPageType();
-        BTreeCell cell;
-        switch (cellType) {
-            case SqliteConstants.TABLE_BTREE_LEAF_CELL: {
-                cell = parseTableBtreeLeafCell(in, pageHeader, node, metadata);
-            }
-            break;
-            case SqliteConstants.TABLE_BTREE_INTERIOR_CELL: {
-                cell = parseTableBtreeInteriorCell(in, pageHeader, node, metadata);
-            }
-            break;
-            case SqliteConstants.INDEX_BTREE_LEAF_CELL: {
-                cell = parseIndexBtreeLeafCell(in, pageHeader, node, metadata);
-            }
-            break;
-            case SqliteConstants.INDEX_BTREE_INTERIOR_CELL: {
-                cell = parseIndexBtreeInteriorCell(in, pageHeader, node, metadata);
-            }
-            break;
-            default: {
-                cell = new BTreeCell(cellType, pageHeader.getNumberOfCells(), pageHeader.getPageNumber());
-            }
-            break;
-        }
+        File file = FileUtil.openFile(pathToDatabase);
 
-        if (cellType == SqliteConstants.INDEX_BTREE_INTERIOR_CELL || cellType == SqliteConstants.TABLE_BTREE_INTERIOR_CELL) {
-            if (pageHeader.getRightMostPointer() != 0) {
-                node.addChild(parseBtree(in, pageHeader.getRightMostPointer(), pageSize, metadata));
+        synchronized (this.parseLock) {
+            PageSource source = openDatabase(file);
+            WalPageSource wal = (source instanceof WalPageSource) ? (WalPageSource) source : null;
+            try (PageSource opened = source) {
+                PageSource in = new CachingPageSource(opened, this.pageCache, readMetadata(opened, file, metadata, wal != null));
+                PageReaderFactory readers = new DatabasePageReaders(file, wal, metadata, this::openPageSource);
+                BTreeCell[] pages = this.sequentialScan ? new ScanBtreeParser(this.decoder).scanPages(in, metadata.pageSize, metadata, BtreeParser.NO_PREVIOUS, readers) : null;
+                new StreamingBtreeParser(this.decoder).walk(in, 1, metadata.pageSize, metadata, BtreeParser.NO_PREVIOUS, readers, pages, visitor, 0);
+                metadata.freelist = readFreelist(in, metadata);
+                metadata.pointerMap = readPointerMap(in, metadata);
             }
         }
-        cell.rightChildPointer = pageHeader.getRightMostPointer();
-        node.setData(cell);
-        return node;
+        return metadata;
     }
 
     /**
-     * Parses a Table Btree Leaf Cell: Hex value of: 0x0D
-     *
-     * @param in RandomAccessFile input stream
-     * @param pageHeader PageHeader of the page with the cells.
-     * @param node Btree node to attach children cell to if found.
-     *
-     * @param metadata
-     * @return BTreeCell containing the cell data.
+     * Gets the index of the WAL file from the last parse.
      *
-     * @throws IOException If there is a problem reading the file.
-     * @throws InvalidFileException If there is an unusual format.
+     * @return The WAL index, or null if the last database parsed was not in WAL mode.
      */
-    private BTreeCell parseTableBtreeLeafCell(RandomAccessFile in, PageHeader pageHeader, BTreeNode<BTreeCell> node, Metadata metadata) throws IOException, InvalidFileException {
-        final int numberOfCells = pageHeader.getNumberOfCells();
-        final int cellType = pageHeader.getPageType();
-        final long[] cellPointers = pageHeader.getCellPointers();
+    public WalIndex getWalIndex() {
+        return this.walIndex;
+    }
 
-        BTreeCell cell = new BTreeCell(cellType, numberOfCells, pageHeader.getPageNumber());
-        cell.type = CellType.TABLE_LEAF;
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
 
-        for (int i = 0; i < numberOfCells; i++) {
-            in.seek(cellPointers[i]);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isMemoryMapped() {
+        return this.memoryMapped;
+    }
 
-            cell.payLoadSize[i] = decodeVarint(in)[0];
-            cell.rowId[i] = decodeVarint(in)[0];
-            parseRecordPayload(in, cell, i, metadata);
-            if (cell.isTable[i]) {
-                node.addChild(parseBtree(in, cell.childrenPageNumbers[i], pageHeader.getPageSize(), metadata));
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least one");
+        }
+        synchronized (this) {
+            if (this.pool != null && this.pool.getParallelism() != parallelism) {
+                this.pool.shutdown();
+                this.pool = null;
             }
-            // read overflow
-            // cell.overflowPageNumbers[i] = in.readInt();
+            this.parallelism = parallelism;
         }
-        return cell;
     }
 
     /**
-     * Parses a Table Btree Interior Cell: Hex value of: 0x05
-     *
-     * @param in RandomAccessFile input stream
-     * @param pageHeader PageHeader of the page with the cells.
-     * @param node Btree node to attach children cell to if found.
+     * {@inheritDoc}
+     */
+    @Override
+    public int getParallelism() {
+        return this.parallelism;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setLazy(boolean lazy) {
+        this.lazy = lazy;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isLazy() {
+        return this.lazy;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setSequentialScan(boolean sequentialScan) {
+        this.sequentialScan = sequentialScan;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isSequentialScan() {
+        return this.sequentialScan;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setPrefetch(boolean prefetch) {
+        this.prefetch = prefetch;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isPrefetch() {
+        return this.prefetch;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setClassifyPages(boolean classifyPages) {
+        this.classifyPages = classifyPages;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isClassifyPages() {
+        return this.classifyPages;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setMaxRetries(int maxRetries) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("Max retries cannot be negative");
+        }
+        this.retry.setMaxRetries(maxRetries);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getMaxRetries() {
+        return this.retry.getMaxRetries();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setSharedLock(boolean sharedLock) {
+        this.retry.setSharedLock(sharedLock);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isSharedLock() {
+        return this.retry.isSharedLock();
+    }
+
+    /**
+     * Gets the number of parses retried, because the file changed or a
+     * writer held the lock.
      *
-     * @param metadata
-     * @return BTreeCell containing the cell data.
+     * @return Number of retries.
+     */
+    public long getRetries() {
+        return this.retry.getRetries();
+    }
+
+    /**
+     * Gets the number of parses where the file changed while it was read.
      *
-     * @throws IOException If there is a problem reading the file.
-     * @throws InvalidFileException If there is an unusual format.
+     * @return Number of torn reads.
      */
-    private BTreeCell parseTableBtreeInteriorCell(RandomAccessFile in, PageHeader pageHeader, BTreeNode<BTreeCell> node, Metadata metadata) throws IOException, InvalidFileException {
-        final int numberOfCells = pageHeader.getNumberOfCells();
-        final int cellType = pageHeader.getPageType();
-        final long[] cellPointers = pageHeader.getCellPointers();
+    public long getTornReads() {
+        return this.retry.getTornReads();
+    }
 
-        BTreeCell cell = new BTreeCell(cellType, numberOfCells, pageHeader.getPageNumber());
-        cell.type = CellType.Table_Pointer_Internal;
+    /**
+     * Resets the retry and torn read counts.
+     */
+    public void resetRetryStatistics() {
+        this.retry.resetStatistics();
+    }
 
-        for (int i = 0; i < numberOfCells; i++) {
-            in.seek(cellPointers[i]);
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setSampleRate(double sampleRate) {
+        checkSampleRate(sampleRate);
+        this.sampleRate = sampleRate;
+    }
 
-            cell.leftChildPointers[i] = in.readInt();
-            cell.rowId[i] = decodeVarint(in)[0];
-            node.addChild(parseBtree(in, cell.leftChildPointers[i], pageHeader.getPageSize(), metadata));
-        }
-        return cell;
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double getSampleRate() {
+        return this.sampleRate;
     }
 
     /**
-     * Parses a Index Btree Leaf Cell: Hex value of: 0x0A
+     * Sets the largest overflowing payload that is loaded into memory when
+     * parsed. Larger payloads are read from the database when asked for.
      *
-     * @param in RandomAccessFile input stream
-     * @param pageHeader PageHeader of the page with the cells.
+     * @param overflowLoadSize Size in bytes.
+     */
+    public void setOverflowLoadSize(int overflowLoadSize) {
+        if (overflowLoadSize < 0) {
+            throw new IllegalArgumentException("Overflow load size cannot be negative");
+        }
+        this.decoder.setOverflowLoadSize(overflowLoadSize);
+    }
+
+    /**
+     * Gets the largest overflowing payload that is loaded into memory when parsed.
      *
-     * @param metadata
-     * @return BTreeCell containing the cell data.
+     * @return Size in bytes.
+     */
+    public int getOverflowLoadSize() {
+        return this.decoder.getOverflowLoadSize();
+    }
+
+    /**
+     * Gets the page cache shared between parses.
      *
-     * @throws IOException If there is a problem reading the file.
-     * @throws InvalidFileException If there is an unusual format.
+     * @return The page cache.
      */
-    private BTreeCell parseIndexBtreeLeafCell(RandomAccessFile in, PageHeader pageHeader, BTreeNode<BTreeCell> node, Metadata metadata) throws IOException, InvalidFileException {
-        final int numberOfCells = pageHeader.getNumberOfCells();
-        final int cellType = pageHeader.getPageType();
-        final long[] cellPointers = pageHeader.getCellPointers();
+    public PageCache getPageCache() {
+        return this.pageCache;
+    }
 
-        BTreeCell cell = new BTreeCell(cellType, numberOfCells, pageHeader.getPageNumber());
-        cell.type = CellType.Index_Leaf;
+    /**
+     * Gets the fork join pool of this parser, it is created the first time
+     * it is needed and kept for every parse after, until the parallelism
+     * is changed.
+     *
+     * @return The pool.
+     */
+    private synchronized ForkJoinPool getPool() {
+        if (this.pool == null) {
+            this.pool = new ForkJoinPool(this.parallelism);
+        }
+        return this.pool;
+    }
 
-        for (int i = 0; i < numberOfCells; i++) {
-            in.seek(cellPointers[i]);
+    /**
+     * Opens the page source for the file, if the file cannot be memory
+     * mapped it falls back to reading it through a RandomAccessFile.
+     * With prefetching on, the source is wrapped to read pages ahead.
+     *
+     * @param file The database file.
+     *
+     * @return The page source for the file.
+     *
+     * @throws IOException If there is a problem opening the file.
+     */
+    private PageSource openPageSource(File file) throws IOException {
+        PageSource source = null;
+        if (this.memoryMapped) {
+            try {
+                source = new MappedPageSource(file);
+            } catch (IOException ignored) {
+            }
+        }
+        if (source == null) {
+            source = new RandomAccessPageSource(file);
+        }
 
-            cell.payLoadSize[i] = decodeVarint(in)[0];
-            parseRecordPayload(in, cell, i, metadata);
-            if (cell.isTable[i]) {
-                node.addChild(parseBtree(in, cell.childrenPageNumbers[i], pageHeader.getPageSize(), metadata));
+        if (this.prefetch) {
+            try {
+                source = new PrefetchingPageSource(source, file);
+            } catch (IOException e) {
+                source.close();
+                throw e;
             }
-            //  cell.overflowPageNumbers[i] = in.readInt();
         }
-        return cell;
+        return source;
     }
 
     /**
-     * Parses a Index Btree Interior Cell: Hex value of: 0x02
+     * Opens the page source for the database, with the WAL file laid
+     * over it if there is one.
      *
-     * @param in RandomAccessFile input stream
-     * @param pageHeader PageHeader of the page with the cells.
+     * @param file The database file.
      *
-     * @param metadata
-     * @return BTreeCell containing the cell data.
+     * @return The page source for the database.
      *
-     * @throws IOException If there is a problem reading the file.
-     * @throws InvalidFileException If there is an unusual format.
+     * @throws IOException If there is a problem opening the files.
      */
-    private BTreeCell parseIndexBtreeInteriorCell(RandomAccessFile in, PageHeader pageHeader, BTreeNode<BTreeCell> node, Metadata metadata) throws IOException, InvalidFileException {
-        final int numberOfCells = pageHeader.getNumberOfCells();
-        final int cellType = pageHeader.getPageType();
-        final long[] cellPointers = pageHeader.getCellPointers();
+    private PageSource openDatabase(File file) throws IOException {
+        PageSource source = openPageSource(file);
+        try {
+            WalPageSource wal = openWal(file, source);
+            return (wal == null) ? source : wal;
+        } catch (IOException e) {
+            source.close();
+            throw e;
+        }
+    }
 
-        BTreeCell cell = new BTreeCell(cellType, numberOfCells, pageHeader.getPageNumber());
-        cell.type = CellType.Index_Pointer_Internal;
+    /**
+     * Reads and checks the file header, then checks the page cache against it.
+     *
+     * @param in The page source.
+     * @param file The database file.
+     * @param metadata The metadata object to store to.
+     * @param wal True if the WAL file is laid over the file.
+     *
+     * @return The generation of the page cache to read the pages under.
+     *
+     * @throws InvalidFileException If the header is not a Sqlite header.
+     */
+    private int readMetadata(PageSource in, File file, Metadata metadata, boolean wal) throws InvalidFileException {
+        ByteBuffer header = readHeader(in);
+        checkMagicNumber(header);
+        readSqliteHeader(header, metadata);
+        return validateCache(file, metadata, wal);
+    }
 
-        for (int i = 0; i < numberOfCells; i++) {
-            in.seek(cellPointers[i]);
+    /**
+     * Lays the WAL file over the main file if the database is in WAL mode.
+     * The index of the WAL file is kept between parses, so only the frames
+     * appended since the last parse are read.
+     *
+     * @param file The database file.
+     * @param source The page source of the database file.
+     *
+     * @return The page source with the WAL laid over it, or null if there are no committed frames.
+     *
+     * @throws IOException If there is a problem reading the WAL file.
+     */
+    private WalPageSource openWal(File file, PageSource source) throws IOException {
+        File walFile = new File(file.getPath() + SqliteConstants.WAL_FILE_SUFFIX);
+        if (source.size() < SqliteConstants.HEADER_SIZE || !walFile.isFile()
+                || source.read(SqliteConstants.WRITE_VERSION_OFFSET, 1).get() != SqliteConstants.WAL_WRITE_VERSION) {
+            this.walIndex = null;
+            return null;
+        }
 
-            cell.leftChildPointers[i] = in.readInt();
-            cell.payLoadSize[i] = decodeVarint(in)[0];
-            parseRecordPayload(in, cell, i, metadata);
-            if (cell.isTable[i]) {
-                node.addChild(parseBtree(in, cell.childrenPageNumbers[i], pageHeader.getPageSize(), metadata));
-            }
-            //cell.overflowPageNumbers[i] = in.readInt();
+        if (this.walIndex == null || !this.walIndex.getFile().equals(walFile)) {
+            this.walIndex = new WalIndex(walFile);
         }
-        return cell;
+        this.walIndex.update();
+        if (this.walIndex.isEmpty()) {
+            return null;
+        }
+        return new WalPageSource(source, this.walIndex);
     }
 
     /**
-     * Parsers a record
+     * Checks the page cache against the file about to be parsed. If the WAL
+     * index was moved on by only reading new frames, then only the pages in
+     * those frames have changed, else the cache works it out from the header.
      *
-     * @param in input stream.
-     * @param cell cell to read from.
-     * @param cellNumber cell number to read.
+     * @param file The database file.
+     * @param metadata The database metadata.
+     * @param wal True if the WAL file is laid over the file.
      *
-     * @throws IOException
+     * @return The generation of the page cache to read the pages under.
      */
-    private void parseRecordPayload(RandomAccessFile in, BTreeCell cell, int cellNumber,  Metadata metadata) throws IOException {
-
-        // check for overflow page
-        int usableSize = metadata.pageSize + metadata.unusedSpaceAtEndOfEachPage;
-        int maxLocal;
-        int minLocal;
-        long localSize;
-        boolean hasOverflowPage = false;
-        if (cell.type == CellType.TABLE_LEAF) {
-            maxLocal = usableSize - 35;
-        } else {
-            maxLocal = (usableSize - 12) * metadata.maxEmbeddedPayload / 255 - 23;
+    private int validateCache(File file, Metadata metadata, boolean wal) {
+        Set<Long> updatedPages = wal ? this.walIndex.getUpdatedPages() : null;
+        if (updatedPages == null) {
+            return this.pageCache.validate(file.getPath(), metadata.pageSize, metadata.fileChangeCounter, metadata.sizeOfDatabaseInPages, metadata.writeVersion == SqliteConstants.WAL_WRITE_VERSION);
         }
-        if (cell.payLoadSize[cellNumber] > maxLocal) {
-            hasOverflowPage = true;
+        return this.pageCache.validate(file.getPath(), metadata.pageSize, metadata.fileChangeCounter, metadata.sizeOfDatabaseInPages, updatedPages);
+    }
 
-            minLocal = (usableSize - 12) * metadata.minEmbeddedPayload / 255 - 23;
-            localSize = minLocal + (cell.payLoadSize[cellNumber] - minLocal) % (usableSize - 4);
+    /**
+     * Reads the 100 byte header from the start of the file.
+     *
+     * @param in The page source.
+     *
+     * @return Buffer containing the header.
+     *
+     * @throws InvalidFileException If the file is to small to be a database.
+     */
+    private ByteBuffer readHeader(PageSource in) throws InvalidFileException {
+        try {
+            return in.read(0, SqliteConstants.HEADER_SIZE);
+        } catch (IOException e) {
+            throw new InvalidFileException();
+        }
+    }
 
-            if (localSize > maxLocal) {
-                localSize = maxLocal;
+    /**
+     * Checks the header against the magic number.
+     *
+     * <p>
+     * <b>NOTE:<b/> Assumes the buffer is already in position.
+     *
+     * @param in The header buffer.
+     *
+     * @throws InvalidFileException Invalid File if the magic number is incorrect.
+     */
+    private void checkMagicNumber(ByteBuffer in) throws InvalidFileException {
+        for (int i = 0; i < SqliteConstants.MAGIC_NUMBER_LENGTH; i++) {
+            if ((in.get() & 0xFF) != SqliteConstants.MAGIC_NUMBER[i]) {
+                throw new InvalidFileException();
             }
         }
+    }
+
+    /**
+     * Reads the first 100 byte header in the database.
+     *
+     * <p>
+     * <b>NOTE:<b/> Assumes the buffer is already in position
+     *
+     * @param in The header buffer.
+     * @param metadata The metadata object to store to.
+     */
+    private void readSqliteHeader(ByteBuffer in, Metadata metadata) {
+        metadata.pageSize = in.getShort();
+        metadata.writeVersion = in.get();
+        metadata.readVersion = in.get();
+        metadata.unusedSpaceAtEndOfEachPage = in.get();
+        metadata.maxEmbeddedPayload = in.get();
+        metadata.minEmbeddedPayload = in.get();
+        metadata.leafPayloadFraction = in.get();
+        metadata.fileChangeCounter = in.getInt();
+        metadata.sizeOfDatabaseInPages = in.getInt();
+        metadata.pageNumberOfFirstFreelistPage = in.getInt();
+        metadata.totalFreeListPages = in.getInt();
+        metadata.schemaCookie = in.getInt();
+        metadata.schemaFormat = in.getInt();
+        metadata.defaultPageCacheSize = in.getInt();
+        metadata.pageNumberToLargestBTreePage = in.getInt();
+        metadata.textEncoding = in.getInt();
+        metadata.textDecoder = TextDecoder.forEncoding(metadata.textEncoding);
+        metadata.userVersion = in.getInt();
+        metadata.vacuumMode = in.getInt();
+        metadata.appID = in.getInt();
+
+        in.position(in.position() + SqliteConstants.HEADER_RESERVED_SPACE_SIZE);
+
+        metadata.versionValidNumber = in.getInt();
+        metadata.sqliteVersion = in.getInt();
+    }
 
-        long bytesInHeader = decodeVarint(in)[0] - 1;
-        int[] types = new int[(int) bytesInHeader];
-        int bytesCounted = 0;
-        int numberOfItems = 0;
-        while (bytesCounted < bytesInHeader) {
-            long[] varint = decodeVarint(in);
-            types[numberOfItems] = (int) varint[0];
-            bytesCounted += varint[1];
-            numberOfItems++;
+    /**
+     * Reads the Btree sections of the file, with the btree parser picked
+     * from the settings. A sampled parse comes first as it is asked for
+     * by the sample rate alone, then a lazy parse as it reads the least.
+     *
+     * @param in The page source.
+     * @param readers Opens the database to read large overflow payloads and lazy nodes.
+     * @param database The tree to store in.
+     * @param previous The tree of a previous parse, indexed by page number.
+     * @param monitor The monitor to report to, or null if there is none.
+     * @param lazy True to parse lazily else false.
+     * @param sampleRate Chance of a leaf being parsed.
+     *
+     * @throws IOException If there is a problem reading the file.
+     * @throws InvalidFileException If there is an unusual format.
+     */
+    private void readBTrees(PageSource in, DatabasePageReaders readers, Database database, BTree<BTreeCell> previous, ParseMonitor monitor, boolean lazy, double sampleRate) throws  IOException, InvalidFileException {
+
+        final int starting_page_number = 1;
+
+        BtreeParser parser;
+        if (sampleRate < 1) {
+            parser = new SampledBtreeParser(this.decoder, sampleRate, monitor);
+        } else if (lazy) {
+            parser = new LazyBtreeParser(this.decoder, readers);
+        } else if (monitor != null) {
+            parser = new LevelBtreeParser(this.decoder, (this.parallelism > 1) ? getPool() : null, monitor);
+        } else if (this.sequentialScan) {
+            parser = new ScanBtreeParser(this.decoder);
+        } else if (this.parallelism > 1) {
+            parser = new ParallelBtreeParser(this.decoder, getPool());
+        } else {
+            parser = new StreamingBtreeParser(this.decoder);
         }
 
-        boolean isTable = false;
-        int tablePageNumber = 0;
-        int bytesRead = 0;
-        int nextOverflowPage = 0;
-        boolean inOverflow = false;
-        for (int j = 0; j < numberOfItems; j++) {
-
-            // overflow page
-            if (hasOverflowPage) {
-                if (bytesRead > maxLocal - 4) {
-                    int overflowPageNumber = in.readInt();
-                    in.seek(((overflowPageNumber -1) * metadata.pageSize));
-                    inOverflow = true;
-                    bytesRead = 0;
-                    nextOverflowPage = 0;
-                } else if (bytesRead > metadata.pageSize) {
-                    in.seek(((nextOverflowPage -1) * metadata.pageSize));
-                    inOverflow = true;
-                    bytesRead = 0;
-                    nextOverflowPage = 0;
-                }
+        Metadata metadata = database.getMetadata();
+        metadata.sampleEstimate = null;
+        getBTree(database).setRoot(parser.parse(in, starting_page_number, metadata.pageSize, metadata, previous, readers));
+    }
 
-                if (inOverflow && nextOverflowPage == 0) {
-                    nextOverflowPage = in.readInt();
-                }
+    /**
+     * Walks the freelist, from the first trunk page in the header. Each
+     * trunk page starts with the number of the next trunk page and the
+     * number of leaf pages, followed by the leaf page numbers. Only the
+     * trunk pages are read.
+     *
+     * <p>
+     * A corrupt freelist does not fail the parse, the problem is recorded
+     * on the freelist and the walk stops at the first bad trunk page, bad
+     * leaf page numbers are skipped.
+     *
+     * @param in The page source.
+     * @param metadata The database metadata.
+     *
+     * @return The freelist, with a cell for each trunk page.
+     *
+     * @throws IOException If there is a problem reading the file.
+     */
+    private Freelist readFreelist(PageSource in, Metadata metadata) throws IOException {
+        Freelist freelist = new Freelist();
+        long maxPages = in.size() / metadata.pageSize;
+        int maxLeaves = (metadata.pageSize - metadata.unusedSpaceAtEndOfEachPage) / 4 - 2;
+
+        List<Integer> trunks = new ArrayList<>();
+        List<Integer> leafCounts = new ArrayList<>();
+        int trunkPageNumber = metadata.pageNumberOfFirstFreelistPage;
+        while (trunkPageNumber != 0) {
+            if (trunkPageNumber < 1 || trunkPageNumber > maxPages) {
+                freelist.problem = "Trunk page " + trunkPageNumber + " is outside the file";
+                break;
             }
-
-            switch (types[j]) {
-                case VALUE_NULL: {
-                    cell.data[cellNumber] += "";
-                    break;
-                }
-                case VALUE_ONE_BYTE_INT: {
-                    short bytes = in.readByte();
-                    if (isTable && tablePageNumber == 0) {
-                        tablePageNumber = bytes;
-                    }
-                    cell.data[cellNumber] += " " + bytes + " ";
-                    bytesRead += 1;
-                    break;
-                }
-                case VALUE_TWO_BYTE_INT: {
-                    cell.data[cellNumber] += " " + in.readShort() + " ";
-                    bytesRead += 2;
-                    break;
-                }
-                case VALUE_THREE_BYTE_INT: {
-                    cell.data[cellNumber] += " " + readBytesAsLong(in, 3) + " ";
-                    bytesRead += 3;
-                    break;
-                }
-                case VALUE_FOUR_BYTE_INT: {
-                    cell.data[cellNumber] += " " + in.readInt() + " ";
-                    bytesRead += 4;
-                    break;
-                }
-                case VALUE_SIX_BYTE_INT: {
-                    cell.data[cellNumber] += " " + readBytesAsLong(in, 6) + " ";
-                    bytesRead += 6;
-                    break;
-                }
-                case VALUE_EIGHT_BYTE_INT: {
-                    cell.data[cellNumber] += " " + in.readLong() + " ";
-                    bytesRead += 8;
-                    break;
-                }
-                case VALUE_EIGHT_BYTE_FLOAT: {
-                    cell.data[cellNumber] += " " + in.readDouble() + " ";
-                    bytesRead += 8;
-                    break;
-                }
-                case VALUE_ZERO: {
-                    cell.data[cellNumber] += " 0 ";
-                    break;
-                }
-                case VALUE_ONE: {
-                    cell.data[cellNumber] += " 1 ";
-                    break;
-                }
-                default: {
-                    if (types[j] >= VALUE_BLOB && types[j] % 2 == 0) {
-                        cell.data[cellNumber] += " " + readBytesAsString(in, (types[j] - 12) / 2) + " ";
-                        bytesRead += (types[j] - 12) / 2;
-                    } else if (types[j] >= VALUE_STRING && types[j] % 2 != 0) {
-                        String str = readBytesAsString(in, (types[j] - 13) / 2);
-                        cell.data[cellNumber] += " " + str + " ";
-                        bytesRead += (types[j] - 13) / 2;
-                        if (str.equals("table") || str.equals("index")) {
-                            isTable = true;
-                        }
+            if (freelist.pages.get(trunkPageNumber)) {
+                freelist.problem = "Page " + trunkPageNumber + " is on the freelist twice";
+                break;
+            }
+            freelist.pages.set(trunkPageNumber);
+            trunks.add(trunkPageNumber);
+
+            ByteBuffer page = in.getPage(trunkPageNumber, metadata.pageSize);
+            int start = page.position();
+            int leafCount = page.getInt(start + 4);
+            if (leafCount < 0 || leafCount > maxLeaves) {
+                freelist.problem = "Trunk page " + trunkPageNumber + " lists " + leafCount + " leaf pages";
+                leafCounts.add(0);
+                break;
+            }
+            for (int i = 0; i < leafCount; i++) {
+                int leafPageNumber = page.getInt(start + 8 + i * 4);
+                if (leafPageNumber < 1 || leafPageNumber > maxPages || freelist.pages.get(leafPageNumber)) {
+                    if (freelist.problem == null) {
+                        freelist.problem = "Trunk page " + trunkPageNumber + " lists bad leaf page " + leafPageNumber;
                     }
-                    break;
+                    continue;
                 }
+                freelist.pages.set(leafPageNumber);
+                freelist.leafPages.set(leafPageNumber);
             }
+            leafCounts.add(leafCount);
+            trunkPageNumber = page.getInt(start);
         }
-        if (isTable) {
-            cell.type = CellType.Table;
-            cell.isTable[cellNumber] = true;
-            cell.childrenPageNumbers[cellNumber] = tablePageNumber;
-        } else {
-            cell.isTable[cellNumber] = false;
-            cell.childrenPageNumbers[cellNumber] = 0;
+
+        freelist.trunkPages = new int[trunks.size()];
+        for (int i = 0; i < freelist.trunkPages.length; i++) {
+            freelist.trunkPages[i] = trunks.get(i);
         }
+        if (!trunks.isEmpty()) {
+            BTreeCell cell = new BTreeCell(0, trunks.size(), trunks.get(0) - 1);
+            cell.type = CellType.Freelist;
+            for (int i = 0; i < cell.cellCount; i++) {
+                cell.setLeftChildPointer(i, trunks.get(i));
+                cell.payLoadSize[i] = leafCounts.get(i);
+                cell.data[i] = leafCounts.get(i) + " leaf pages";
+            }
+            freelist.cell = cell;
+        }
+        return freelist;
     }
 
     /**
-     * Decodes the varint variable type.
+     * Reads the pointer map pages of an auto-vacuum database. Each entry
+     * is a type byte followed by the parent page number, for each of the
+     * pages after the pointer map page up to the next one.
      *
      * <p>
-     * <b>NOTE:</b> Assumes input stream is already at the correct position.
+     * An entry with an unknown type does not fail the parse, it is left
+     * empty and the problem is recorded on the pointer map.
+     *
+     * @param in The page source.
+     * @param metadata The database metadata.
      *
-     * @param in The input stream to read the varint from.
+     * @return The pointer map, or null if the database is not auto-vacuum.
      *
-     * @return long array with the first element the value, the second the number of bytes else null if invalid.
+     * @throws IOException If there is a problem reading the file.
      */
-    private long[] decodeVarint(RandomAccessFile in) throws IOException {
-        long[] value = new long[2];
-        byte[] varint = new byte[9];
-        int i;
-        for (i = 0; i < 9; i++) {
-            varint[i] = in.readByte();
-            if (((varint[i] >> 7) & 1) == 0) {
+    private PointerMap readPointerMap(PageSource in, Metadata metadata) throws IOException {
+        if (metadata.pageNumberToLargestBTreePage == 0) {
+            return null;
+        }
+
+        long pageCount = PageDecoder.getPageCount(in, metadata);
+        int usableSize = metadata.pageSize - metadata.unusedSpaceAtEndOfEachPage;
+        PointerMap pointerMap = new PointerMap((int) pageCount, usableSize);
+        for (long first = 2; first <= pageCount; first += pointerMap.entriesPerPage + 1) {
+            long mapPageNumber = PointerMap.getPointerMapPage(first, metadata.pageSize, usableSize);
+            if (mapPageNumber > pageCount) {
                 break;
             }
+            ByteBuffer page = in.getPage(mapPageNumber, metadata.pageSize);
+            int start = page.position();
+            for (int i = 0; i < pointerMap.entriesPerPage && mapPageNumber + 1 + i <= pageCount; i++) {
+                int type = page.get(start + i * 5);
+                int pageNumber = (int) (mapPageNumber + 1 + i);
+                if (type < 0 || type > PointerMap.BTREE_PAGE) {
+                    if (pointerMap.problem == null) {
+                        pointerMap.problem = "Page " + pageNumber + " has unknown pointer map type " + type;
+                    }
+                    continue;
+                }
+                pointerMap.types[pageNumber] = (byte) type;
+                pointerMap.parents[pageNumber] = page.getInt(start + i * 5 + 1);
+            }
         }
+        return pointerMap;
+    }
 
-        if (i == 0) {
-            value[0] = varint[0];
-            value[1]= 1;
-        } else {
-            for (int j = 0; j < i; j++) {
-                varint[j] = (byte)(varint[j] << 1);
-            }
-            value[0] = ByteBuffer.wrap(varint).getLong();
-            value[1] = i + 1;
+    /**
+     * Gets the tree of a previous parse, its loaded nodes are indexed by
+     * page number so the pages that have not changed can be reused.
+     * Nothing is reused if the layout of the pages has changed.
+     *
+     * @param previous The previous parse, may be null.
+     * @param metadata The metadata of the new parse.
+     *
+     * @return The previous tree, or an empty tree.
+     */
+    private BTree<BTreeCell> indexPages(Database previous, Metadata metadata) {
+        if (previous == null || getBTree(previous).getRoot() == null) {
+            return BtreeParser.NO_PREVIOUS;
+        }
+        Metadata previousMetadata = previous.getMetadata();
+        if (previousMetadata.pageSize != metadata.pageSize
+                || previousMetadata.unusedSpaceAtEndOfEachPage != metadata.unusedSpaceAtEndOfEachPage
+                || previousMetadata.maxEmbeddedPayload != metadata.maxEmbeddedPayload
+                || previousMetadata.minEmbeddedPayload != metadata.minEmbeddedPayload
+                || previousMetadata.textEncoding != metadata.textEncoding) {
+            return BtreeParser.NO_PREVIOUS;
+        }
+        return getBTree(previous);
+    }
+
+    /**
+     * Gets the btree of a database, the parser only ever stores cells in it.
+     *
+     * @param database The database to get the btree of.
+     *
+     * @return The btree of the database.
+     */
+    @SuppressWarnings("unchecked")
+    private static BTree<BTreeCell> getBTree(Database database) {
+        return database.getBTree();
+    }
+
+    /**
+     * Checks a sample rate is above zero and at most one.
+     *
+     * @param sampleRate The sample rate to check.
+     */
+    private static void checkSampleRate(double sampleRate) {
+        if (!(sampleRate > 0 && sampleRate <= 1)) {
+            throw new IllegalArgumentException("Sample rate must be above zero and at most one");
         }
-        return value;
     }
 
     /**
-     * Reads a long from the input stream.
+     * Parses only the root page of the btree, the children are left as
+     * placeholders and parsed when they are first asked for.
      *
-     * @param in The input stream to read the from.
-     * @param len Size of the long
+     * @param in The page source.
+     * @param file The database file, reopened to load the children.
+     * @param pageNumber The page number of the root.
+     * @param pageSize The page size.
+     * @param metadata The database metadata.
      *
-     * @return long read from the input stream
+     * @return BtreeNode with the cell data and placeholder children.
      *
      * @throws IOException If there is a problem reading the file.
+     * @throws InvalidFileException If there is an unusual format.
      */
-    private long readBytesAsLong (RandomAccessFile in, int len) throws IOException {
-        byte[] byteArray = new byte[len];
-        in.read(byteArray);
+    public BTreeNode<BTreeCell> parseBtreeLazy(PageSource in, File file, long pageNumber, long pageSize, Metadata metadata) throws IOException, InvalidFileException {
+        DatabasePageReaders readers = new DatabasePageReaders(file, null, metadata, this::openPageSource);
+        return new LazyBtreeParser(this.decoder, readers).parse(in, pageNumber, pageSize, metadata, BtreeParser.NO_PREVIOUS, readers);
+    }
 
-        long val = 0;
-        len = Math.min(len, 8);
-        for (int i = (len - 1); i >= 0; i--) {
-            val <<= 8;
-            val |= (byteArray [i] & 0x00FF);
-        }
-        return val;
+    /**
+     * Parses the btree on a fork join pool, forking a task for each child
+     * page so independent subtrees are parsed at the same time.
+     *
+     * <p>
+     * The children are joined in the same order they are found, so the
+     * tree is identical to the one built by parseBtree.
+     *
+     * @param in The page source, must support concurrent reads.
+     * @param pageNumber The page number of the root.
+     * @param pageSize The page size.
+     * @param metadata The database metadata.
+     *
+     * @return BtreeNode with the cell data.
+     *
+     * @throws IOException If there is a problem reading the file.
+     * @throws InvalidFileException If there is an unusual format.
+     */
+    public BTreeNode<BTreeCell> parseBtreeParallel(PageSource in, long pageNumber, long pageSize, Metadata metadata) throws IOException, InvalidFileException {
+        return new ParallelBtreeParser(this.decoder, getPool()).parse(in, pageNumber, pageSize, metadata, BtreeParser.NO_PREVIOUS, null);
     }
 
     /**
-     * Reads a string from the input stream.
+     * Parses the btree page.
      *
-     * @param in The input stream to read the from.
-     * @param numberOfBytes Size of the string
+     * <p>
+     * Uses recursion to load up each node, with it's children.
      *
-     * @return String read from the input stream
+     * @param in The page source.
+     * @param pageNumber The page number we are on.
+     * @param pageSize The page size.
+     *
+     * @param metadata
+     * @return  BtreeNode with the cell data.
      *
      * @throws IOException If there is a problem reading the file.
+     * @throws InvalidFileException If there is an unusual format.
      */
-    private String readBytesAsString(RandomAccessFile in, int numberOfBytes) throws IOException {
-        byte[] bytes = new byte[numberOfBytes];
-        in.read(bytes);
-        return new String(bytes);
+    public BTreeNode<BTreeCell> parseBtree(PageSource in, long pageNumber, long pageSize, Metadata metadata) throws IOException, InvalidFileException {
+        return new StreamingBtreeParser(this.decoder).parse(in, pageNumber, pageSize, metadata, BtreeParser.NO_PREVIOUS, null);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,218 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SqliteConstants;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <h1> Journal Index </h1>
+ *
+ * <p>
+ * Index of the rollback journal next to a database with a transaction
+ * in progress, mapping each page number to the original image of that
+ * page in the journal. Laying these over the database gives the state
+ * before the transaction started.
+ *
+ * <p>
+ * The journal is made of segments, each a header padded to the sector
+ * size followed by page records. A record is the page number, the
+ * original page and a checksum. Reading stops at the first record with
+ * a bad checksum, as the rest has not been written yet. If a page is in
+ * the journal more than once, the first record is the original.
+ *
+ * @author Paul Batty
+ * @see JournalPageSource
+ * @see <a href="https://www.sqlite.org/fileformat2.html#the_rollback_journal">Rollback journal</a>
+ * @since 1.0
+ */
+public class JournalIndex {
+
+    private final File file;
+
+    private Map<Long, Long> pages;
+    private int pageSize;
+    private long databaseSize;
+    private int recordCount;
+
+    /**
+     * Constructor, the index is empty until it is read.
+     *
+     * @param file The journal file.
+     */
+    public JournalIndex(File file) {
+        this.file = file;
+        this.pages = Collections.emptyMap();
+    }
+
+    /**
+     * Reads the journal from the start. The index is left empty if the
+     * journal has no valid header, such as after a commit that zeroes it.
+     *
+     * @throws IOException If there is a problem reading the file.
+     */
+    public void read() throws IOException {
+        Map<Long, Long> pages = new HashMap<>();
+        this.pages = Collections.emptyMap();
+        this.pageSize = 0;
+        this.databaseSize = 0;
+        this.recordCount = 0;
+
+        try (RandomAccessFile in = new RandomAccessFile(this.file, "r")) {
+            FileChannel channel = in.getChannel();
+            long length = channel.size();
+            long headerOffset = 0;
+            while (headerOffset + SqliteConstants.JOURNAL_HEADER_SIZE <= length) {
+                ByteBuffer header = read(channel, headerOffset, SqliteConstants.JOURNAL_HEADER_SIZE);
+                if (header.getLong(0) != SqliteConstants.JOURNAL_MAGIC_NUMBER) {
+                    break;
+                }
+                long records = header.getInt(8) & 0xFFFFFFFFL;
+                int nonce = header.getInt(12);
+                int sectorSize = header.getInt(20);
+                int pageSize = header.getInt(24);
+                if (sectorSize < SqliteConstants.JOURNAL_HEADER_SIZE || pageSize < 512 || (this.pageSize != 0 && pageSize != this.pageSize)) {
+                    break;
+                }
+                if (this.pageSize == 0) {
+                    this.pageSize = pageSize;
+                    this.databaseSize = header.getInt(16) & 0xFFFFFFFFL;
+                }
+
+                long recordSize = pageSize + 8L;
+                long offset = headerOffset + sectorSize;
+                if (records == 0xFFFFFFFFL) {
+                    records = Math.max(0, (length - offset) / recordSize);
+                }
+                boolean complete = true;
+                for (long i = 0; i < records; i++, offset += recordSize) {
+                    if (offset + recordSize > length) {
+                        complete = false;
+                        break;
+                    }
+                    ByteBuffer record = read(channel, offset, (int) recordSize);
+                    long pageNumber = record.getInt(0) & 0xFFFFFFFFL;
+                    if (pageNumber == 0 || record.getInt(pageSize + 4) != checksum(record, nonce, pageSize)) {
+                        complete = false;
+                        break;
+                    }
+                    pages.putIfAbsent(pageNumber, offset + 4);
+                    this.recordCount++;
+                }
+                if (!complete || records == 0) {
+                    break;
+                }
+                headerOffset = (offset + sectorSize - 1) / sectorSize * sectorSize;
+            }
+        }
+        this.pages = Collections.unmodifiableMap(pages);
+    }
+
+    /**
+     * Gets the original pages in the journal.
+     *
+     * @return Map of page number to the offset of the page in the journal.
+     */
+    public Map<Long, Long> getPages() {
+        return this.pages;
+    }
+
+    /**
+     * Gets whether the journal has any pages.
+     *
+     * @return True if there are no pages else false.
+     */
+    public boolean isEmpty() {
+        return this.pages.isEmpty();
+    }
+
+    /**
+     * Gets the journal file.
+     *
+     * @return The journal file.
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Gets the page size from the journal header.
+     *
+     * @return The page size.
+     */
+    public int getPageSize() {
+        return this.pageSize;
+    }
+
+    /**
+     * Gets the size of the database in pages before the transaction.
+     *
+     * @return The number of pages.
+     */
+    public long getDatabaseSize() {
+        return this.databaseSize;
+    }
+
+    /**
+     * Gets the number of valid records read, counting pages journaled more than once.
+     *
+     * @return The number of records.
+     */
+    public int getRecordCount() {
+        return this.recordCount;
+    }
+
+    /**
+     * Works out the checksum of a page record, the nonce plus every
+     * 200th byte of the page counting back from the end.
+     */
+    private int checksum(ByteBuffer record, int nonce, int pageSize) {
+        int checksum = nonce;
+        for (int i = pageSize - 200; i > 0; i -= 200) {
+            checksum += record.get(4 + i) & 0xFF;
+        }
+        return checksum;
+    }
+
+    private ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
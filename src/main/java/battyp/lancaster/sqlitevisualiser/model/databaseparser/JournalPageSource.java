@@ -0,0 +1,200 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * <h1> Journal Page Source </h1>
+ *
+ * <p>
+ * Wraps the page source of a database with a rollback journal and lays
+ * the original pages from the journal over the pages in the main file.
+ * This shows the database as it was before the transaction in progress,
+ * while the main file shows it with the changes written so far.
+ *
+ * <p>
+ * Only the pages in the journal are read from the journal, every other
+ * page has not been touched by the transaction and is read from the main
+ * file. Reads are positional, so many threads can read pages at the same time.
+ *
+ * @author Paul Batty
+ * @see JournalIndex
+ * @see PageSource
+ * @since 1.0
+ */
+public class JournalPageSource implements PageSource {
+
+    private final PageSource source;
+    private final RandomAccessFile in;
+    private final FileChannel channel;
+
+    private final Map<Long, Long> pages;
+    private final long pageSize;
+    private final long databaseSize;
+
+    /**
+     * Constructor.
+     *
+     * @param source The page source of the main database file.
+     * @param index The index of the journal file.
+     *
+     * @throws IOException If the journal file cannot be opened.
+     */
+    public JournalPageSource(PageSource source, JournalIndex index) throws IOException {
+        this.source = source;
+        this.in = new RandomAccessFile(index.getFile(), "r");
+        this.channel = this.in.getChannel();
+        this.pages = index.getPages();
+        this.pageSize = index.getPageSize();
+        this.databaseSize = index.getDatabaseSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The parts of the section that fall on pages in the journal are read
+     * from the journal, so the file header comes from the original page one.
+     * Runs of pages that are not in the journal are read from the main file
+     * in one go.
+     */
+    @Override
+    public ByteBuffer read(long offset, int length) throws IOException {
+        long firstPage = offset / this.pageSize + 1;
+        long lastPage = (offset + length - 1) / this.pageSize + 1;
+        if (!hasPage(firstPage, lastPage)) {
+            return this.source.read(offset, length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            long pageNumber = position / this.pageSize + 1;
+            long start = position % this.pageSize;
+            Long page = this.pages.get(pageNumber);
+            if (page != null) {
+                int part = (int) Math.min(this.pageSize - start, buffer.remaining());
+                buffer.put(readJournal(page + start, part));
+                position += part;
+            } else {
+                long end = pageNumber;
+                while (end < lastPage && !this.pages.containsKey(end + 1)) {
+                    end++;
+                }
+                int part = (int) Math.min(end * this.pageSize - position, buffer.remaining());
+                buffer.put(this.source.read(position, part));
+                position += part;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuffer getPage(long pageNumber, long pageSize) throws IOException {
+        Long page = this.pages.get(pageNumber);
+        if (page != null && pageSize == this.pageSize) {
+            return readJournal(page, (int) pageSize);
+        }
+        return this.source.getPage(pageNumber, pageSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Pages in the journal are not passed on, as they are not read from the main file.
+     */
+    @Override
+    public void prefetch(int[] pageNumbers, long pageSize) {
+        int[] missing = new int[pageNumbers.length];
+        int count = 0;
+        for (int pageNumber : pageNumbers) {
+            if (!this.pages.containsKey((long) pageNumber)) {
+                missing[count++] = pageNumber;
+            }
+        }
+        if (count > 0) {
+            this.source.prefetch(Arrays.copyOf(missing, count), pageSize);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Pages added to the end of the file by the transaction are left out.
+     */
+    @Override
+    public long size() {
+        long size = this.source.size();
+        if (this.databaseSize > 0) {
+            size = this.databaseSize * this.pageSize;
+        }
+        return size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.in.close();
+        } finally {
+            this.source.close();
+        }
+    }
+
+    private boolean hasPage(long firstPage, long lastPage) {
+        for (long pageNumber = firstPage; pageNumber <= lastPage; pageNumber++) {
+            if (this.pages.containsKey(pageNumber)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ByteBuffer readJournal(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (this.channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTree;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeNode;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeNodeLoader;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.Metadata;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.PageReaderFactory;
+import battyp.lancaster.sqlitevisualiser.model.exceptions.InvalidFileException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h1> Lazy Btree Parser </h1>
+ *
+ * <p>
+ * Parses only the root page of the btree, the children are left as
+ * placeholders and parsed when they are first asked for. Nothing is
+ * reused from a previous parse, as the pages are loaded after it.
+ *
+ * @author Paul Batty
+ * @see BTreeNodeLoader
+ * @see DatabasePageReaders
+ * @since 1.0
+ */
+class LazyBtreeParser implements BtreeParser {
+
+    private final PageDecoder decoder;
+    private final DatabasePageReaders database;
+
+    /**
+     * Constructor.
+     *
+     * @param decoder The decoder to read the pages with.
+     * @param database Reopens the database to load the children.
+     */
+    LazyBtreeParser(PageDecoder decoder, DatabasePageReaders database) {
+        this.decoder = decoder;
+        this.database = database;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The previous parse is not used.
+     */
+    @Override
+    public BTreeNode<BTreeCell> parse(PageSource in, long pageNumber, long pageSize, Metadata metadata, BTree<BTreeCell> previous, PageReaderFactory readers) throws IOException, InvalidFileException {
+        BTreeNode<BTreeCell> node = this.decoder.parsePage(in, pageNumber, pageSize, metadata, NO_PREVIOUS, readers);
+        node.setPlaceholders(PageDecoder.getChildPageNumbers(node.getData()), new LazyPageLoader(metadata, readers));
+        return node;
+    }
+
+    /**
+     * Loads the children of lazy nodes. The file is reopened for each load
+     * so no file handle is held open by the tree.
+     *
+     * <p>
+     * If the file has been changed since the tree was parsed, the pages no
+     * longer belong to this tree, so nothing is loaded and the node is left
+     * lazy, its children are not known. In WAL mode the same frames are laid over the file,
+     * unless the log has been restarted since.
+     */
+    private class LazyPageLoader implements BTreeNodeLoader<BTreeCell> {
+
+        private final Metadata metadata;
+        private final PageReaderFactory readers;
+
+        private LazyPageLoader(Metadata metadata, PageReaderFactory readers) {
+            this.metadata = metadata;
+            this.readers = readers;
+        }
+
+        @Override
+        public List<BTreeNode<BTreeCell>> load(int[] pageNumbers) {
+            List<BTreeNode<BTreeCell>> children = new ArrayList<>(pageNumbers.length);
+            try (PageSource in = database.reopen()) {
+                if (in == null) {
+                    return null;
+                }
+                in.prefetch(pageNumbers, this.metadata.pageSize);
+                for (int pageNumber : pageNumbers) {
+                    BTreeNode<BTreeCell> child = decoder.parsePage(in, pageNumber, this.metadata.pageSize, this.metadata, NO_PREVIOUS, this.readers);
+                    child.setPlaceholders(PageDecoder.getChildPageNumbers(child.getData()), this);
+                    children.add(child);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InvalidFileException e) {
+                throw new IllegalStateException(e);
+            }
+            return children;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTree;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeNode;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.Metadata;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.PageReaderFactory;
+import battyp.lancaster.sqlitevisualiser.model.exceptions.InvalidFileException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1> Level Btree Parser </h1>
+ *
+ * <p>
+ * Parses the btree a level at a time, starting from the root. After
+ * each level the monitor is given the pages of that level, so the upper
+ * levels can be shown while the rest is parsed.
+ *
+ * <p>
+ * The pages of a level do not depend on each other, so given a pool
+ * each level is parsed in parallel on it.
+ *
+ * @author Paul Batty
+ * @see ParseMonitor
+ * @since 1.0
+ */
+class LevelBtreeParser implements BtreeParser {
+
+    /**
+     * Fewest pages of a level parsed by one task, when a level is parsed in parallel.
+     */
+    private static final int LEVEL_BATCH_SIZE = 4;
+
+    private final PageDecoder decoder;
+    private final ForkJoinPool pool;
+    private final ParseMonitor monitor;
+
+    /**
+     * Constructor.
+     *
+     * @param decoder The decoder to read the pages with.
+     * @param pool The pool to parse the levels on, or null to parse on the calling thread.
+     * @param monitor The monitor to report to.
+     */
+    LevelBtreeParser(PageDecoder decoder, ForkJoinPool pool, ParseMonitor monitor) {
+        this.decoder = decoder;
+        this.pool = pool;
+        this.monitor = monitor;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @throws InvalidFileException If a page is in the tree twice, or there is an unusual format.
+     * @throws CancellationException If the monitor is cancelled.
+     */
+    @Override
+    public BTreeNode<BTreeCell> parse(PageSource in, long pageNumber, long pageSize, Metadata metadata, BTree<BTreeCell> previous, PageReaderFactory readers) throws IOException, InvalidFileException {
+        long pageCount = PageDecoder.getPageCount(in, metadata);
+        BitSet parsed = new BitSet();
+        AtomicLong pagesParsed = new AtomicLong();
+
+        if (this.monitor.isCancelled()) {
+            throw new CancellationException();
+        }
+        BTreeNode<BTreeCell> root = this.decoder.parsePage(in, pageNumber, pageSize, metadata, previous, readers);
+        parsed.set((int) pageNumber);
+        this.monitor.progress(pagesParsed.incrementAndGet(), pageCount);
+
+        List<BTreeNode<BTreeCell>> level = Collections.singletonList(root);
+        int depth = 0;
+        this.monitor.levelParsed(Collections.singletonList(root.getData()), new int[] {-1}, depth);
+        while (!level.isEmpty()) {
+            List<BTreeNode<BTreeCell>> parents = new ArrayList<>();
+            int[] pageNumbers = new int[0];
+            int[] parentIndexes = new int[0];
+            int count = 0;
+            for (int parent = 0; parent < level.size(); parent++) {
+                BTreeNode<BTreeCell> node = level.get(parent);
+                for (int childPageNumber : PageDecoder.getChildPageNumbers(node.getData())) {
+                    if (childPageNumber < 1 || parsed.get(childPageNumber)) {
+                        throw new InvalidFileException();
+                    }
+                    parsed.set(childPageNumber);
+                    if (count == pageNumbers.length) {
+                        pageNumbers = Arrays.copyOf(pageNumbers, Math.max(16, count * 2));
+                        parentIndexes = Arrays.copyOf(parentIndexes, pageNumbers.length);
+                    }
+                    pageNumbers[count] = childPageNumber;
+                    parentIndexes[count++] = parent;
+                    parents.add(node);
+                }
+            }
+
+            BTreeCell[] cells = new BTreeCell[count];
+            ParseLevelTask task = new ParseLevelTask(in, pageNumbers, cells, 0, count, pageSize, metadata, previous, readers, this.monitor, pagesParsed, pageCount);
+            if (this.pool != null && count > LEVEL_BATCH_SIZE) {
+                try {
+                    this.pool.invoke(task);
+                } catch (ParseTaskException e) {
+                    if (e.getCause() instanceof InvalidFileException) {
+                        throw (InvalidFileException) e.getCause();
+                    }
+                    throw (IOException) e.getCause();
+                }
+            } else {
+                task.parseRange();
+            }
+
+            List<BTreeNode<BTreeCell>> nextLevel = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                BTreeNode<BTreeCell> child = new BTreeNode<>(cells[i]);
+                parents.get(i).addChild(child);
+                nextLevel.add(child);
+            }
+            level = nextLevel;
+            depth++;
+            if (count > 0) {
+                // the cells are not written again, so the level is handed over as it is
+                this.monitor.levelParsed(Collections.unmodifiableList(Arrays.asList(cells)), Arrays.copyOf(parentIndexes, count), depth);
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Fork join task that parses a range of the pages on one level of the
+     * tree, the range is split in half until it is a single batch.
+     */
+    private class ParseLevelTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final PageSource in;
+        private final int[] pageNumbers;
+        private final BTreeCell[] cells;
+        private final int from;
+        private final int to;
+        private final long pageSize;
+        private final Metadata metadata;
+        private final BTree<BTreeCell> previous;
+        private final PageReaderFactory readers;
+        private final ParseMonitor monitor;
+        private final AtomicLong pagesParsed;
+        private final long pageCount;
+
+        private ParseLevelTask(PageSource in, int[] pageNumbers, BTreeCell[] cells, int from, int to, long pageSize, Metadata metadata,
+                               BTree<BTreeCell> previous, PageReaderFactory readers, ParseMonitor monitor, AtomicLong pagesParsed, long pageCount) {
+            this.in = in;
+            this.pageNumbers = pageNumbers;
+            this.cells = cells;
+            this.from = from;
+            this.to = to;
+            this.pageSize = pageSize;
+            this.metadata = metadata;
+            this.previous = previous;
+            this.readers = readers;
+            this.monitor = monitor;
+            this.pagesParsed = pagesParsed;
+            this.pageCount = pageCount;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from > LEVEL_BATCH_SIZE) {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(split(this.from, middle), split(middle, this.to));
+                return;
+            }
+            try {
+                parseRange();
+            } catch (IOException | InvalidFileException e) {
+                throw new ParseTaskException(e);
+            }
+        }
+
+        private ParseLevelTask split(int from, int to) {
+            return new ParseLevelTask(this.in, this.pageNumbers, this.cells, from, to, this.pageSize, this.metadata,
+                    this.previous, this.readers, this.monitor, this.pagesParsed, this.pageCount);
+        }
+
+        private void parseRange() throws IOException, InvalidFileException {
+            for (int i = this.from; i < this.to; i++) {
+                if (this.monitor.isCancelled()) {
+                    throw new CancellationException();
+                }
+                this.cells[i] = decoder.readPage(this.in, this.pageNumbers[i], this.pageSize, this.metadata, this.previous, this.readers);
+                this.monitor.progress(this.pagesParsed.incrementAndGet(), this.pageCount);
+            }
+        }
+    }
+}
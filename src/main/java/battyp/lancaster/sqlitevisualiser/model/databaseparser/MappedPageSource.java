@@ -0,0 +1,212 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * <h1> Mapped Page Source </h1>
+ *
+ * <p>
+ * Page source backed by a read only memory map of the database file.
+ * Pages are copied out of the map rather than read with a system call
+ * each.
+ *
+ * <p>
+ * The file is being written while it is mapped, and a commit can cut it
+ * shorter than the map. Reading a page of the map past the end of the
+ * file faults, so the size of the file is checked before each read and a
+ * fault during the copy is thrown as an IOException, which the parse
+ * retries like any other torn read. No slice of the map is handed out,
+ * so nothing can touch the map after the read, and the map is released
+ * on close rather than when it is collected, as a file that is still
+ * mapped can not be truncated on Windows.
+ *
+ * <p>
+ * A single map is limited to 2GB, so larger files are split into regions.
+ * The region size is a power of two larger then any page so a page never
+ * spans two regions.
+ *
+ * @author Paul Batty
+ * @see PageSource
+ * @since 1.0
+ */
+public class MappedPageSource implements PageSource {
+
+    private static final int REGION_SIZE = 1 << 30;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] regions;
+    private final long size;
+    private final ReadWriteLock lock;
+    private boolean closed;
+
+    /**
+     * Constructor.
+     *
+     * @param file The database file to map.
+     *
+     * @throws IOException If the file cannot be mapped.
+     */
+    public MappedPageSource(File file) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.lock = new ReentrantReadWriteLock();
+        try {
+            this.size = this.channel.size();
+            this.regions = new MappedByteBuffer[(int) ((this.size + REGION_SIZE - 1) / REGION_SIZE)];
+            for (int i = 0; i < this.regions.length; i++) {
+                long start = (long) i * REGION_SIZE;
+                this.regions[i] = this.channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, this.size - start));
+            }
+        } catch (IOException e) {
+            this.channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuffer read(long offset, int length) throws IOException {
+        if (offset < 0 || offset + length > this.size) {
+            throw new EOFException();
+        }
+
+        this.lock.readLock().lock();
+        try {
+            if (this.closed) {
+                throw new ClosedChannelException();
+            }
+            if (offset + length > this.channel.size()) {
+                throw new EOFException();
+            }
+
+            int region = (int) (offset / REGION_SIZE);
+            int start = (int) (offset % REGION_SIZE);
+
+            /* only reads that are not page aligned can cross into the next region */
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                ByteBuffer part = this.regions[region].duplicate();
+                part.position(start);
+                part.limit(Math.min(part.capacity(), start + buffer.remaining()));
+                buffer.put(part);
+                region++;
+                start = 0;
+            }
+            buffer.flip();
+            return buffer;
+        } catch (InternalError e) {
+            // the file was cut short between the size check and the copy
+            throw new IOException("File was truncated while being read", e);
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuffer getPage(long pageNumber, long pageSize) throws IOException {
+        return read((pageNumber - 1) * pageSize, (int) pageSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prefetch(int[] pageNumbers, long pageSize) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        this.lock.writeLock().lock();
+        try {
+            if (!this.closed) {
+                this.closed = true;
+                for (MappedByteBuffer region : this.regions) {
+                    unmap(region);
+                }
+            }
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+        this.channel.close();
+    }
+
+    /**
+     * Releases a map straight away. There is no public way to do so, so
+     * the cleaner of the buffer is called the way the running version of
+     * Java allows. If neither way works the map is released when it is
+     * collected.
+     *
+     * @param region The map to release, must not be read again.
+     */
+    private static void unmap(MappedByteBuffer region) {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            invokeCleaner.invoke(theUnsafe.get(null), region);
+            return;
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+        }
+        try {
+            // before Java 9 the buffer gives out its cleaner
+            Method getCleaner = region.getClass().getMethod("cleaner");
+            getCleaner.setAccessible(true);
+            Object cleaner = getCleaner.invoke(region);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        } catch (ReflectiveOperationException | RuntimeException ignored) {
+        }
+    }
+}
@@ -0,0 +1,452 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * <h1> Page Cache </h1>
+ *
+ * <p>
+ * A bounded least recently used cache of raw pages, keyed by page number.
+ * The size of the cache is limited by the number of bytes held rather then
+ * the number of pages, once full the least recently used page is evicted.
+ *
+ * <p>
+ * The cache is kept between parses so the live updater does not have to go
+ * back to the file for pages that have not changed. When the file change
+ * counter or page count in the header moves on, every page is marked as
+ * unverified. An unverified page is only trusted again once the page has
+ * been read and its bytes match the cached copy. A rollback journal is
+ * gone by the time the commit is seen, so unlike the WAL frames it can
+ * not say which pages a commit left alone.
+ *
+ * <p>
+ * Each check against a header starts a new generation whenever anything
+ * may have changed, and returns it. A parse reads and adds pages under the
+ * generation it was given, so a parse that is still running when the
+ * cache moves on to another file, or a newer state of the same file,
+ * neither reads the newer pages nor adds its own older ones.
+ *
+ * @author Paul Batty
+ * @see CachingPageSource
+ * @since 1.0
+ */
+public class PageCache {
+
+    /**
+     * Default size of the cache in bytes.
+     */
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+    private final LinkedHashMap<Long, CachedPage> pages;
+
+    private long maxSize;
+    private long size;
+
+    private int generation;
+    private String fileName;
+    private long pageSize;
+    private int fileChangeCounter;
+    private int pageCount;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Constructor, creates a cache with the default size.
+     */
+    public PageCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param maxSize Maximum number of bytes to hold.
+     */
+    public PageCache(long maxSize) {
+        this.pages = new LinkedHashMap<>(16, 0.75f, true);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Checks the cache against the header of the file about to be parsed.
+     * If the file has changed since the last parse the cached pages are
+     * marked as unverified, if it is a different file the cache is cleared.
+     *
+     * <p>
+     * In WAL mode the change counter is not always updated on a checkpoint,
+     * so the pages are always marked as unverified.
+     *
+     * @param fileName Path to the file.
+     * @param pageSize Page size of the file.
+     * @param fileChangeCounter The file change counter from the header.
+     * @param pageCount Number of pages in the file.
+     * @param wal True if the file is in WAL mode.
+     *
+     * @return The generation to read and add pages under.
+     */
+    public synchronized int validate(String fileName, long pageSize, int fileChangeCounter, int pageCount, boolean wal) {
+        if (!fileName.equals(this.fileName) || pageSize != this.pageSize) {
+            clear();
+            this.fileName = fileName;
+            this.pageSize = pageSize;
+        } else if (wal || fileChangeCounter != this.fileChangeCounter || pageCount != this.pageCount) {
+            this.generation++;
+            Iterator<Map.Entry<Long, CachedPage>> iterator = this.pages.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<Long, CachedPage> entry = iterator.next();
+                if (entry.getKey() > pageCount) {
+                    this.size -= entry.getValue().bytes.length;
+                    iterator.remove();
+                }
+            }
+        }
+        this.fileChangeCounter = fileChangeCounter;
+        this.pageCount = pageCount;
+        return this.generation;
+    }
+
+    /**
+     * Checks the cache against the header of the file about to be parsed,
+     * when it is known exactly which pages have changed. The given pages
+     * are removed and every other verified page stays verified, under a
+     * new generation.
+     *
+     * @param fileName Path to the file.
+     * @param pageSize Page size of the file.
+     * @param fileChangeCounter The file change counter from the header.
+     * @param pageCount Number of pages in the file.
+     * @param updatedPages The page numbers that have changed.
+     *
+     * @return The generation to read and add pages under.
+     */
+    public synchronized int validate(String fileName, long pageSize, int fileChangeCounter, int pageCount, Collection<Long> updatedPages) {
+        if (!fileName.equals(this.fileName) || pageSize != this.pageSize) {
+            return validate(fileName, pageSize, fileChangeCounter, pageCount, false);
+        }
+        int previous = this.generation++;
+        Iterator<Map.Entry<Long, CachedPage>> iterator = this.pages.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, CachedPage> entry = iterator.next();
+            CachedPage page = entry.getValue();
+            if (entry.getKey() > pageCount || updatedPages.contains(entry.getKey())) {
+                this.size -= page.bytes.length;
+                iterator.remove();
+            } else if (page.generation == previous) {
+                page.generation = this.generation;
+            }
+        }
+        this.fileChangeCounter = fileChangeCounter;
+        this.pageCount = pageCount;
+        return this.generation;
+    }
+
+    /**
+     * Gets a page from the cache, under the current generation.
+     *
+     * @param pageNumber The page number.
+     *
+     * @return The page if it is cached and verified else null.
+     */
+    public synchronized ByteBuffer get(long pageNumber) {
+        return get(pageNumber, this.generation);
+    }
+
+    /**
+     * Gets a page from the cache.
+     *
+     * @param pageNumber The page number.
+     * @param generation The generation given when the header was checked.
+     *
+     * @return The page if it is cached and verified in that generation, and
+     *         the cache has not moved on since, else null.
+     */
+    public synchronized ByteBuffer get(long pageNumber, int generation) {
+        CachedPage page = this.pages.get(pageNumber);
+        if (page == null || generation != this.generation || page.generation != generation) {
+            return null;
+        }
+        this.hits++;
+        return ByteBuffer.wrap(page.bytes).asReadOnlyBuffer();
+    }
+
+    /**
+     * Checks if a page is cached and verified, without counting a hit.
+     *
+     * @param pageNumber The page number.
+     * @param generation The generation given when the header was checked.
+     *
+     * @return True if get would return the page.
+     */
+    public synchronized boolean contains(long pageNumber, int generation) {
+        CachedPage page = this.pages.get(pageNumber);
+        return page != null && generation == this.generation && page.generation == generation;
+    }
+
+    /**
+     * Adds a page that has been read from the file to the cache.
+     *
+     * <p>
+     * If an unverified copy of the page is already cached and the bytes
+     * match, the cached copy is kept and marked as verified, without
+     * working out a checksum. The compare and the checksum of a changed
+     * page are done before taking the lock so parallel parses do not
+     * queue up behind them.
+     *
+     * @param pageNumber The page number.
+     * @param page The page read from the file, positioned at the start of the page.
+     *
+     * @return The cached page.
+     */
+    public ByteBuffer put(long pageNumber, ByteBuffer page) {
+        int generation;
+        synchronized (this) {
+            generation = this.generation;
+        }
+        return put(pageNumber, page, generation);
+    }
+
+    /**
+     * Adds a page that has been read from the file to the cache, if the
+     * cache has not moved on from the generation the page was read under.
+     *
+     * @param pageNumber The page number.
+     * @param page The page read from the file, positioned at the start of the page.
+     * @param generation The generation given when the header was checked.
+     *
+     * @return The cached page, or the page as read if the cache has moved on.
+     *
+     * @see #put(long, ByteBuffer)
+     */
+    public ByteBuffer put(long pageNumber, ByteBuffer page, int generation) {
+        byte[] cached = getBytes(pageNumber);
+        if (cached != null && ByteBuffer.wrap(cached).equals(page)) {
+            ByteBuffer verified = verify(pageNumber, cached, generation);
+            if (verified != null) {
+                return verified;
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(page.duplicate());
+        return put(pageNumber, page, generation, crc.getValue());
+    }
+
+    /**
+     * Gets the bytes of a cached page, verified or not. The bytes of a
+     * cached page are never changed, a new page is added in its place.
+     *
+     * @param pageNumber The page number.
+     *
+     * @return The bytes, or null if not cached.
+     */
+    private synchronized byte[] getBytes(long pageNumber) {
+        CachedPage page = this.pages.get(pageNumber);
+        return (page == null) ? null : page.bytes;
+    }
+
+    /**
+     * Marks a cached page as verified, once its bytes have been found to
+     * match the file.
+     *
+     * @param pageNumber The page number.
+     * @param bytes The bytes that were compared.
+     * @param generation The generation given when the header was checked.
+     *
+     * @return The cached page, or null if the cache has moved on or the page was replaced since.
+     */
+    private synchronized ByteBuffer verify(long pageNumber, byte[] bytes, int generation) {
+        CachedPage cached = this.pages.get(pageNumber);
+        if (generation != this.generation || cached == null || cached.bytes != bytes) {
+            return null;
+        }
+        this.misses++;
+        cached.generation = this.generation;
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    private synchronized ByteBuffer put(long pageNumber, ByteBuffer page, int generation, long checksum) {
+        this.misses++;
+        if (generation != this.generation) {
+            return page;
+        }
+
+        CachedPage cached = this.pages.get(pageNumber);
+        byte[] bytes = new byte[page.remaining()];
+        page.duplicate().get(bytes);
+        if (cached != null) {
+            this.size -= cached.bytes.length;
+        }
+        this.pages.put(pageNumber, new CachedPage(bytes, checksum, this.generation));
+        this.size += bytes.length;
+        evict();
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    /**
+     * Gets the checksum of a cached page.
+     *
+     * @param pageNumber The page number.
+     *
+     * @return The CRC32 checksum of the page, or -1 if not cached.
+     */
+    public synchronized long getChecksum(long pageNumber) {
+        CachedPage page = this.pages.get(pageNumber);
+        return (page == null) ? -1 : page.checksum;
+    }
+
+    /**
+     * Removes the given pages from the cache, used when it is known exactly
+     * which pages have changed.
+     *
+     * @param pageNumbers The page numbers to remove.
+     */
+    public synchronized void invalidate(Collection<Long> pageNumbers) {
+        for (long pageNumber : pageNumbers) {
+            CachedPage page = this.pages.remove(pageNumber);
+            if (page != null) {
+                this.size -= page.bytes.length;
+            }
+        }
+    }
+
+    /**
+     * Removes every page from the cache.
+     */
+    public synchronized void clear() {
+        this.pages.clear();
+        this.size = 0;
+        this.generation++;
+    }
+
+    /**
+     * Sets the maximum number of bytes the cache can hold, evicting
+     * pages if the cache is now over the limit.
+     *
+     * @param maxSize Maximum size in bytes, zero disables the cache.
+     */
+    public synchronized void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+        evict();
+    }
+
+    /**
+     * Gets the maximum number of bytes the cache can hold.
+     *
+     * @return Maximum size in bytes.
+     */
+    public synchronized long getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * Gets the number of bytes currently held.
+     *
+     * @return Size in bytes.
+     */
+    public synchronized long getSize() {
+        return this.size;
+    }
+
+    /**
+     * Gets the number of pages currently held.
+     *
+     * @return Number of pages.
+     */
+    public synchronized int getPageCount() {
+        return this.pages.size();
+    }
+
+    /**
+     * Gets the number of reads that were served from the cache.
+     *
+     * @return Number of hits.
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Gets the number of reads that had to go to the file.
+     *
+     * @return Number of misses.
+     */
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Gets the number of pages evicted to stay within the size limit.
+     *
+     * @return Number of evictions.
+     */
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * Resets the hit, miss and eviction counters.
+     */
+    public synchronized void resetStatistics() {
+        this.hits = 0;
+        this.misses = 0;
+        this.evictions = 0;
+    }
+
+    /**
+     * Evicts the least recently used pages until the cache is in budget.
+     */
+    private void evict() {
+        Iterator<CachedPage> iterator = this.pages.values().iterator();
+        while (this.size > this.maxSize && iterator.hasNext()) {
+            this.size -= iterator.next().bytes.length;
+            iterator.remove();
+            this.evictions++;
+        }
+    }
+
+    /**
+     * A page held in the cache.
+     */
+    private static class CachedPage {
+
+        private final byte[] bytes;
+        private final long checksum;
+        private int generation;
+
+        private CachedPage(byte[] bytes, long checksum, int generation) {
+            this.bytes = bytes;
+            this.checksum = checksum;
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.*;
+import battyp.lancaster.sqlitevisualiser.model.exceptions.InvalidFileException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * <h1> Page Classifier </h1>
+ *
+ * <p>
+ * Tags every page in the file with what it is used for, after the
+ * btree, the freelist and the pointer map have been parsed.
+ *
+ * @author Paul Batty
+ * @see PageMap
+ * @since 1.0
+ */
+class PageClassifier {
+
+    private final PageDecoder decoder;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor.
+     *
+     * @param decoder The decoder to read the pages the tree does not hold.
+     * @param pool The pool to read the ranges on.
+     */
+    PageClassifier(PageDecoder decoder, ForkJoinPool pool) {
+        this.decoder = decoder;
+        this.pool = pool;
+    }
+
+    /**
+     * Tags every page in the file with what it is used for. The file is
+     * read in ranges in parallel, tagging each page that has a btree page
+     * header as an unreachable btree page and the rest as unreachable.
+     * The pages that can be reached are then tagged from the parsed tree,
+     * the overflow chains, the freelist and the pointer map.
+     *
+     * <p>
+     * The tree only holds the right most child of an index interior page,
+     * so the pages below the other children are read and decoded here.
+     *
+     * <p>
+     * The ranges are read in large reads, which go around the page cache,
+     * so the classification does not push out the parsed pages.
+     *
+     * @param in The page source.
+     * @param metadata The database metadata, with the freelist and pointer map read.
+     * @param root The root of the parsed tree.
+     * @param readers Opens the database to read large overflow payloads.
+     *
+     * @return The page map.
+     *
+     * @throws IOException If there is a problem reading the file.
+     */
+    PageMap classify(PageSource in, Metadata metadata, BTreeNode<BTreeCell> root, PageReaderFactory readers) throws IOException {
+        PageMap pageMap = new PageMap((int) PageDecoder.getPageCount(in, metadata));
+        int pageCount = pageMap.getPageCount();
+
+        try {
+            this.pool.invoke(new ClassifyRangeTask(in, pageMap, metadata.pageSize, 1, pageCount));
+        } catch (ParseTaskException e) {
+            throw (IOException) e.getCause();
+        }
+
+        byte[] tags = pageMap.tags;
+        Map<Long, BTreeCell> parsed = new HashMap<>();
+        Deque<BTreeNode<BTreeCell>> nodes = new ArrayDeque<>();
+        if (root != null) {
+            nodes.push(root);
+        }
+        while (!nodes.isEmpty()) {
+            BTreeNode<BTreeCell> node = nodes.pop();
+            parsed.put(node.getData().pageNumber + 1, node.getData());
+            if (node.isMaterialised()) {
+                for (BTreeNode<BTreeCell> child : node.getChildren()) {
+                    nodes.push(child);
+                }
+            }
+        }
+
+        BitSet visited = new BitSet(pageCount + 1);
+        Deque<Long> stack = new ArrayDeque<>();
+        if (root != null) {
+            stack.push(1L);
+            visited.set(1);
+        }
+        while (!stack.isEmpty()) {
+            long cellPageNumber = stack.pop();
+            BTreeCell cell = parsed.get(cellPageNumber);
+            if (cell == null) {
+                try {
+                    cell = this.decoder.readPage(in, cellPageNumber, metadata.pageSize, metadata, BtreeParser.NO_PREVIOUS, readers);
+                } catch (InvalidFileException e) {
+                    continue;
+                }
+            }
+            tags[(int) cellPageNumber] = PageMap.getBtreeTag(cell.cellType);
+            if (cell.overflowPayloads != null) {
+                for (OverflowPayload payload : cell.overflowPayloads) {
+                    if (payload != null) {
+                        for (int pageNumber : payload.pages) {
+                            if (pageNumber >= 1 && pageNumber <= pageCount) {
+                                tags[pageNumber] = PageMap.OVERFLOW;
+                            }
+                        }
+                    }
+                }
+            }
+
+            int[] children = PageDecoder.getChildPageNumbers(cell);
+            if (cell.cellType == SqliteConstants.INDEX_BTREE_INTERIOR_CELL) {
+                int[] all = Arrays.copyOf(children, children.length + cell.cellCount);
+                System.arraycopy(cell.childPointers, 0, all, children.length, cell.cellCount);
+                children = all;
+            }
+            for (int child : children) {
+                if (child >= 1 && child <= pageCount && !visited.get(child)) {
+                    visited.set(child);
+                    stack.push((long) child);
+                }
+            }
+        }
+
+        Freelist freelist = metadata.freelist;
+        for (int pageNumber = freelist.pages.nextSetBit(1); pageNumber >= 1 && pageNumber <= pageCount; pageNumber = freelist.pages.nextSetBit(pageNumber + 1)) {
+            tags[pageNumber] = freelist.leafPages.get(pageNumber) ? PageMap.FREELIST_LEAF : PageMap.FREELIST_TRUNK;
+        }
+
+        long pendingBytePage = PointerMap.getPendingBytePage(metadata.pageSize);
+        if (pendingBytePage <= pageCount) {
+            tags[(int) pendingBytePage] = PageMap.PENDING_BYTE;
+        }
+        if (metadata.pointerMap != null) {
+            int usableSize = metadata.pageSize - metadata.unusedSpaceAtEndOfEachPage;
+            for (int pageNumber = 2; pageNumber <= pageCount; pageNumber++) {
+                if (PointerMap.isPointerMapPage(pageNumber, metadata.pageSize, usableSize)) {
+                    tags[pageNumber] = PageMap.POINTER_MAP;
+                }
+            }
+        }
+        return pageMap;
+    }
+
+    /**
+     * Fork join task that tags a range of pages by their page header, the
+     * range is split in half until it fits in a single read.
+     */
+    private static class ClassifyRangeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final PageSource in;
+        private final PageMap pageMap;
+        private final int pageSize;
+        private final int first;
+        private final int last;
+
+        private ClassifyRangeTask(PageSource in, PageMap pageMap, int pageSize, int first, int last) {
+            this.in = in;
+            this.pageMap = pageMap;
+            this.pageSize = pageSize;
+            this.first = first;
+            this.last = last;
+        }
+
+        @Override
+        protected void compute() {
+            int pagesPerRead = (int) Math.max(1, ScanBtreeParser.SCAN_READ_SIZE / this.pageSize);
+            if (this.last - this.first + 1 > pagesPerRead) {
+                int middle = (this.first + this.last) >>> 1;
+                invokeAll(new ClassifyRangeTask(this.in, this.pageMap, this.pageSize, this.first, middle),
+                        new ClassifyRangeTask(this.in, this.pageMap, this.pageSize, middle + 1, this.last));
+                return;
+            }
+            if (this.first > this.last) {
+                return;
+            }
+
+            ByteBuffer batch;
+            try {
+                batch = this.in.read((long) (this.first - 1) * this.pageSize, (this.last - this.first + 1) * this.pageSize);
+            } catch (IOException e) {
+                throw new ParseTaskException(e);
+            }
+            for (int pageNumber = this.first; pageNumber <= this.last; pageNumber++) {
+                batch.limit((pageNumber - this.first + 1) * this.pageSize).position((pageNumber - this.first) * this.pageSize);
+                boolean btree = PageDecoder.isBtreePage(batch.slice(), pageNumber);
+                this.pageMap.tags[pageNumber] = btree ? PageMap.UNREACHABLE_BTREE : PageMap.UNREACHABLE;
+                batch.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,755 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.*;
+import battyp.lancaster.sqlitevisualiser.model.exceptions.InvalidFileException;
+import battyp.lancaster.sqlitevisualiser.view.CellType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * <h1> Page Decoder </h1>
+ *
+ * <p>
+ * Decodes single btree pages into cells, following the overflow chains
+ * of the records that do not fit on the page. Every btree parser reads
+ * its pages through here, they only differ in the order the pages are
+ * read and how the nodes are put together.
+ *
+ * <p>
+ * The decoder can be used by many threads at once, each thread has its
+ * own record cursor and digest.
+ *
+ * @author Paul Batty
+ * @see BtreeParser
+ * @see PageHeader
+ * @since 1.0
+ */
+class PageDecoder {
+
+    private static final String TABLE = "table";
+    private static final String INDEX = "index";
+    private static final String DIGEST = "SHA-256";
+
+    private final ThreadLocal<RecordCursor> cursors;
+    private final ThreadLocal<MessageDigest> digests;
+    private int overflowLoadSize;
+
+    /**
+     * Constructor.
+     */
+    PageDecoder() {
+        this.cursors = ThreadLocal.withInitial(RecordCursor::new);
+        this.digests = ThreadLocal.withInitial(PageDecoder::newDigest);
+        this.overflowLoadSize = OverflowPayload.DEFAULT_LOAD_SIZE;
+    }
+
+    /**
+     * Sets the largest overflowing payload that is loaded into memory when
+     * decoded. Larger payloads are read from the database when asked for.
+     *
+     * @param overflowLoadSize Size in bytes.
+     */
+    void setOverflowLoadSize(int overflowLoadSize) {
+        this.overflowLoadSize = overflowLoadSize;
+    }
+
+    /**
+     * Gets the largest overflowing payload that is loaded into memory when decoded.
+     *
+     * @return Size in bytes.
+     */
+    int getOverflowLoadSize() {
+        return this.overflowLoadSize;
+    }
+
+    /**
+     * Parses a single btree page, without its children.
+     *
+     * <p>
+     * If the page has the same digest as in the previous parse, the cell
+     * from the previous parse is used rather than decoding it again. The
+     * cell only keeps the records off the page, not the page itself, so
+     * the digest is a SHA-256 rather than a CRC, which a changed page
+     * could match and so keep the old contents.
+     * Cells that are marked as changed are copied so the mark does not
+     * carry over, and cells with overflowing records are always decoded
+     * as their overflow pages may have changed.
+     *
+     * @param in The page source.
+     * @param pageNumber The page number to parse.
+     * @param pageSize The page size.
+     * @param metadata The database metadata.
+     * @param previous The tree of a previous parse, indexed by page number.
+     * @param readers Opens the database to read large overflow payloads, null to load every payload.
+     *
+     * @return BtreeNode with the cell data and no children.
+     *
+     * @throws IOException If there is a problem reading the file.
+     * @throws InvalidFileException If there is an unusual format.
+     */
+    BTreeNode<BTreeCell> parsePage(PageSource in, long pageNumber, long pageSize, Metadata metadata, BTree<BTreeCell> previous, PageReaderFactory readers) throws IOException, InvalidFileException {
+        BTreeNode<BTreeCell> node = new BTreeNode<>();
+        node.setData(readPage(in, pageNumber, pageSize, metadata, previous, readers));
+        return node;
+    }
+
+    /**
+     * Reads and decodes a single btree page, see parsePage.
+     *
+     * @param in The page source.
+     * @param pageNumber The page number to parse.
+     * @param pageSize The page size.
+     * @param metadata The database metadata.
+     * @param previous The tree of a previous parse, indexed by page number.
+     * @param readers Opens the database to read large overflow payloads, null to load every payload.
+     *
+     * @return The decoded page.
+     *
+     * @throws IOException If there is a problem reading the file.
+     * @throws InvalidFileException If there is an unusual format.
+     */
+    BTreeCell readPage(PageSource in, long pageNumber, long pageSize, Metadata metadata, BTree<BTreeCell> previous, PageReaderFactory readers) throws IOException, InvalidFileException {
+        return decodePage(in, in.getPage(pageNumber, pageSize), pageNumber, pageSize, metadata, previous, readers);
+    }
+
+    /**
+     * Decodes a single btree page that has already been read.
+     *
+     * @param in The page source, used to follow overflow pages.
+     * @param page The page, positioned at the start of the page.
+     * @param pageNumber The page number.
+     * @param pageSize The page size.
+     * @param metadata The database metadata.
+     * @param previous The tree of a previous parse, indexed by page number.
+     * @param readers Opens the database to read large overflow payloads, null to load every payload.
+     *
+     * @return The decoded page.
+     *
+     * @throws IOException If there is a problem reading the file.
+     * @throws InvalidFileException If there is an unusual format.
+     */
+    BTreeCell decodePage(PageSource in, ByteBuffer page, long pageNumber, long pageSize, Metadata metadata, BTree<BTreeCell> previous, PageReaderFactory readers) throws IOException, InvalidFileException {
+
+        // the file header on page one changes with every write, so leave it out
+        ByteBuffer content = page.duplicate();
+        if (pageNumber == 1) {
+            content.position(content.position() + SqliteConstants.HEADER_SIZE);
+        }
+        MessageDigest digest = this.digests.get();
+        digest.update(content);
+        byte[] checksum = digest.digest();
+
+        BTreeNode<BTreeCell> previousNode = previous.findByKey((int) pageNumber);
+        if (previousNode != null) {
+            BTreeCell previousCell = previousNode.getData();
+            if (Arrays.equals(previousCell.checksum, checksum) && previousCell.overflowPayloads == null) {
+                return previousCell.changed ? new BTreeCell(previousCell) : previousCell;
+            }
+        }
+
+        PageHeader pageHeader = new PageHeader(page, pageNumber, pageSize);
+
+        final int cellType = pageHeader.getPageType();
+        BTreeCell cell;
+        switch (cellType) {
+            case SqliteConstants.TABLE_BTREE_LEAF_CELL: {
+                cell = parseTableBtreeLeafCell(in, page, pageHeader, metadata, readers);
+            }
+            break;
+            case SqliteConstants.TABLE_BTREE_INTERIOR_CELL: {
+                cell = parseTableBtreeInteriorCell(in, page, pageHeader, metadata, readers);
+            }
+            break;
+            case SqliteConstants.INDEX_BTREE_LEAF_CELL: {
+                cell = parseIndexBtreeLeafCell(in, page, pageHeader, metadata, readers);
+            }
+            break;
+            case SqliteConstants.INDEX_BTREE_INTERIOR_CELL: {
+                cell = parseIndexBtreeInteriorCell(in, page, pageHeader, metadata, readers);
+            }
+            break;
+            default: {
+                cell = new BTreeCell(cellType, pageHeader.getNumberOfCells(), pageHeader.getPageNumber());
+            }
+            break;
+        }
+
+        if (cell.page != null) {
+            cell.page = copyRecords(cell);
+        }
+        cell.rightChildPointer = pageHeader.getRightMostPointer();
+        cell.textDecoder = metadata.textDecoder;
+        cell.checksum = checksum;
+        return cell;
+    }
+
+    /**
+     * Creates the digest used to tell if a page has changed.
+     *
+     * @return A new digest.
+     */
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Copies the records that fit on the page into one array, moving the
+     * column offsets to match. Cached pages are shared between parses,
+     * so the cell keeps its own copy of only the bytes it needs rather
+     * than the whole page.
+     *
+     * @param cell The parsed cell, with the page it was parsed from.
+     *
+     * @return Buffer holding the records.
+     */
+    private ByteBuffer copyRecords(BTreeCell cell) {
+        int size = 0;
+        for (int i = 0; i < cell.cellCount; i++) {
+            if (isRecordOnPage(cell, i)) {
+                size += getRecordEnd(cell, i) - cell.offsets[i][0];
+            }
+        }
+
+        byte[] records = new byte[size];
+        int position = 0;
+        for (int i = 0; i < cell.cellCount; i++) {
+            if (!isRecordOnPage(cell, i)) {
+                continue;
+            }
+            int start = cell.offsets[i][0];
+            int length = getRecordEnd(cell, i) - start;
+            ByteBuffer record = cell.page.duplicate();
+            record.position(start);
+            record.get(records, position, length);
+            for (int j = 0; j < cell.offsets[i].length; j++) {
+                cell.offsets[i][j] += position - start;
+            }
+            position += length;
+        }
+        return ByteBuffer.wrap(records).asReadOnlyBuffer();
+    }
+
+    /**
+     * Checks if a record has columns stored on the page.
+     *
+     * @param cell The cell.
+     * @param cellNumber The cell the record is in.
+     *
+     * @return True if the record has columns and did not overflow.
+     */
+    private boolean isRecordOnPage(BTreeCell cell, int cellNumber) {
+        return cell.serialTypes[cellNumber] != null && cell.serialTypes[cellNumber].length > 0
+                && (cell.overflowPayloads == null || cell.overflowPayloads[cellNumber] == null);
+    }
+
+    /**
+     * Gets the offset just past the last column of a record.
+     *
+     * @param cell The cell.
+     * @param cellNumber The cell the record is in.
+     *
+     * @return End of the record on the page.
+     */
+    private int getRecordEnd(BTreeCell cell, int cellNumber) {
+        int last = cell.serialTypes[cellNumber].length - 1;
+        return cell.offsets[cellNumber][last] + SerialType.getSize(cell.serialTypes[cellNumber][last]);
+    }
+
+    /**
+     * Swaps a newly parsed node for the node from the previous parse, if
+     * it has the same cell and the same children. So a subtree that has
+     * not changed at all is shared between the parses.
+     *
+     * @param node The newly parsed node, with its children.
+     * @param previousNode The node for the same page in the previous parse, may be null.
+     *
+     * @return The node to use.
+     */
+    static BTreeNode<BTreeCell> reuseNode(BTreeNode<BTreeCell> node, BTreeNode<BTreeCell> previousNode) {
+        if (previousNode == null || previousNode.getData() != node.getData() || !previousNode.isMaterialised()) {
+            return node;
+        }
+        List<BTreeNode<BTreeCell>> children = node.getChildren();
+        List<BTreeNode<BTreeCell>> previousChildren = previousNode.getChildren();
+        if (children.size() != previousChildren.size()) {
+            return node;
+        }
+        for (int i = 0; i < children.size(); i++) {
+            if (children.get(i) != previousChildren.get(i)) {
+                return node;
+            }
+        }
+        for (BTreeNode<BTreeCell> child : previousChildren) {
+            child.setParent(previousNode);
+        }
+        return previousNode;
+    }
+
+    /**
+     * Gets the page numbers of the children of a parsed page, in the
+     * order they should be attached to the node.
+     *
+     * <p>
+     * Interior table pages point to every left child, index pages and leaf
+     * pages only point to the root pages of the tables and indexes listed
+     * in them. Interior pages then point to the right most child.
+     *
+     * @param cell The parsed page.
+     *
+     * @return Array of child page numbers.
+     */
+    static int[] getChildPageNumbers(BTreeCell cell) {
+        int[] children = new int[cell.cellCount + 1];
+        int numberOfChildren = 0;
+
+        switch (cell.cellType) {
+            case SqliteConstants.TABLE_BTREE_INTERIOR_CELL: {
+                for (int i = 0; i < cell.cellCount; i++) {
+                    children[numberOfChildren++] = cell.childPointers[i];
+                }
+            }
+            break;
+            case SqliteConstants.TABLE_BTREE_LEAF_CELL:
+            case SqliteConstants.INDEX_BTREE_LEAF_CELL:
+            case SqliteConstants.INDEX_BTREE_INTERIOR_CELL: {
+                if (cell.tables != null) {
+                    for (int i = cell.tables.nextSetBit(0); i >= 0; i = cell.tables.nextSetBit(i + 1)) {
+                        children[numberOfChildren++] = cell.getChildPageNumber(i);
+                    }
+                }
+            }
+            break;
+            default: {
+                return new int[0];
+            }
+        }
+
+        if (cell.cellType == SqliteConstants.INDEX_BTREE_INTERIOR_CELL || cell.cellType == SqliteConstants.TABLE_BTREE_INTERIOR_CELL) {
+            if (cell.rightChildPointer != 0) {
+                children[numberOfChildren++] = cell.rightChildPointer;
+            }
+        }
+
+        int[] result = new int[numberOfChildren];
+        System.arraycopy(children, 0, result, 0, numberOfChildren);
+        return result;
+    }
+
+    /**
+     * Parses a Table Btree Leaf Cell: Hex value of: 0x0D
+     *
+     * @param in The page source.
+     * @param page Buffer holding the page.
+     * @param pageHeader PageHeader of the page with the cells.
+     *
+     * @param metadata
+     * @param readers Opens the database to read large overflow payloads, null to load every payload.
+     * @return BTreeCell containing the cell data.
+     *
+     * @throws IOException If there is a problem reading the file.
+     * @throws InvalidFileException If there is an unusual format.
+     */
+    private BTreeCell parseTableBtreeLeafCell(PageSource in, ByteBuffer page, PageHeader pageHeader, Metadata metadata, PageReaderFactory readers) throws IOException, InvalidFileException {
+        final int numberOfCells = pageHeader.getNumberOfCells();
+        final int cellType = pageHeader.getPageType();
+        final long[] cellPointers = pageHeader.getCellPointers();
+
+        BTreeCell cell = new BTreeCell(cellType, numberOfCells, pageHeader.getPageNumber());
+        cell.type = CellType.TABLE_LEAF;
+        cell.page = page;
+
+        RecordCursor cursor = this.cursors.get();
+        for (int i = 0; i < numberOfCells; i++) {
+            cursor.wrap(page).position((int) (cellPointers[i] - pageHeader.getPageOffset()));
+
+            cell.payLoadSize[i] = cursor.readVarint();
+            cell.rowId[i] = cursor.readVarint();
+            parseRecordPayload(in, cursor, cell, i, metadata, readers);
+        }
+        return cell;
+    }
+
+    /**
+     * Parses a Table Btree Interior Cell: Hex value of: 0x05
+     *
+     * @param in The page source.
+     * @param page Buffer holding the page.
+     * @param pageHeader PageHeader of the page with the cells.
+     *
+     * @param metadata
+     * @param readers Opens the database to read large overflow payloads, null to load every payload.
+     * @return BTreeCell containing the cell data.
+     *
+     * @throws IOException If there is a problem reading the file.
+     * @throws InvalidFileException If there is an unusual format.
+     */
+    private BTreeCell parseTableBtreeInteriorCell(PageSource in, ByteBuffer page, PageHeader pageHeader, Metadata metadata, PageReaderFactory readers) throws IOException, InvalidFileException {
+        final int numberOfCells = pageHeader.getNumberOfCells();
+        final int cellType = pageHeader.getPageType();
+        final long[] cellPointers = pageHeader.getCellPointers();
+
+        BTreeCell cell = new BTreeCell(cellType, numberOfCells, pageHeader.getPageNumber());
+        cell.type = CellType.Table_Pointer_Internal;
+
+        RecordCursor cursor = this.cursors.get();
+        for (int i = 0; i < numberOfCells; i++) {
+            cursor.wrap(page).position((int) (cellPointers[i] - pageHeader.getPageOffset()));
+
+            cell.childPointers[i] = cursor.readInt();
+            cell.rowId[i] = cursor.readVarint();
+        }
+        return cell;
+    }
+
+    /**
+     * Parses a Index Btree Leaf Cell: Hex value of: 0x0A
+     *
+     * @param in The page source.
+     * @param page Buffer holding the page.
+     * @param pageHeader PageHeader of the page with the cells.
+     *
+     * @param metadata
+     * @param readers Opens the database to read large overflow payloads, null to load every payload.
+     * @return BTreeCell containing the cell data.
+     *
+     * @throws IOException If there is a problem reading the file.
+     * @throws InvalidFileException If there is an unusual format.
+     */
+    private BTreeCell parseIndexBtreeLeafCell(PageSource in, ByteBuffer page, PageHeader pageHeader, Metadata metadata, PageReaderFactory readers) throws IOException, InvalidFileException {
+        final int numberOfCells = pageHeader.getNumberOfCells();
+        final int cellType = pageHeader.getPageType();
+        final long[] cellPointers = pageHeader.getCellPointers();
+
+        BTreeCell cell = new BTreeCell(cellType, numberOfCells, pageHeader.getPageNumber());
+        cell.type = CellType.Index_Leaf;
+        cell.page = page;
+
+        RecordCursor cursor = this.cursors.get();
+        for (int i = 0; i < numberOfCells; i++) {
+            cursor.wrap(page).position((int) (cellPointers[i] - pageHeader.getPageOffset()));
+
+            cell.payLoadSize[i] = cursor.readVarint();
+            parseRecordPayload(in, cursor, cell, i, metadata, readers);
+        }
+        return cell;
+    }
+
+    /**
+     * Parses a Index Btree Interior Cell: Hex value of: 0x02
+     *
+     * @param in The page source.
+     * @param page Buffer holding the page.
+     * @param pageHeader PageHeader of the page with the cells.
+     *
+     * @param metadata
+     * @param readers Opens the database to read large overflow payloads, null to load every payload.
+     * @return BTreeCell containing the cell data.
+     *
+     * @throws IOException If there is a problem reading the file.
+     * @throws InvalidFileException If there is an unusual format.
+     */
+    private BTreeCell parseIndexBtreeInteriorCell(PageSource in, ByteBuffer page, PageHeader pageHeader, Metadata metadata, PageReaderFactory readers) throws IOException, InvalidFileException {
+        final int numberOfCells = pageHeader.getNumberOfCells();
+        final int cellType = pageHeader.getPageType();
+        final long[] cellPointers = pageHeader.getCellPointers();
+
+        BTreeCell cell = new BTreeCell(cellType, numberOfCells, pageHeader.getPageNumber());
+        cell.type = CellType.Index_Pointer_Internal;
+        cell.page = page;
+
+        RecordCursor cursor = this.cursors.get();
+        for (int i = 0; i < numberOfCells; i++) {
+            cursor.wrap(page).position((int) (cellPointers[i] - pageHeader.getPageOffset()));
+
+            cell.childPointers[i] = cursor.readInt();
+            cell.payLoadSize[i] = cursor.readVarint();
+            parseRecordPayload(in, cursor, cell, i, metadata, readers);
+        }
+        return cell;
+    }
+
+    /**
+     * Parsers a record, storing the serial type and offset of each column
+     * in the cell. A record that spills onto overflow pages is read through
+     * its overflow payload, which is loaded into memory unless it is larger
+     * than the overflow load size.
+     *
+     * <p>
+     * Records naming a table or index are marked as tables, with the root
+     * page of the table or index as a child page.
+     *
+     * @param source The page source, used to follow overflow pages.
+     * @param in Cursor positioned at the start of the record.
+     * @param cell cell to read from.
+     * @param cellNumber cell number to read.
+     * @param metadata The database metadata.
+     * @param readers Opens the database to read large overflow payloads, null to load every payload.
+     *
+     * @throws IOException If there is a problem reading the file.
+     * @throws InvalidFileException If the record is corrupt.
+     */
+    private void parseRecordPayload(PageSource source, RecordCursor in, BTreeCell cell, int cellNumber,  Metadata metadata, PageReaderFactory readers) throws IOException, InvalidFileException {
+        int usableSize = metadata.pageSize - metadata.unusedSpaceAtEndOfEachPage;
+        int maxLocal;
+        if (cell.cellType == SqliteConstants.TABLE_BTREE_LEAF_CELL) {
+            maxLocal = usableSize - 35;
+        } else {
+            maxLocal = (usableSize - 12) * metadata.maxEmbeddedPayload / 255 - 23;
+        }
+
+        OverflowPayload payload = null;
+        PageReader reader = null;
+        if (cell.payLoadSize[cellNumber] > maxLocal) {
+            if (cell.overflowPayloads == null) {
+                cell.overflowPayloads = new OverflowPayload[cell.cellCount];
+            }
+            payload = readOverflowChain(source, in.getBuffer(), cell, cellNumber, usableSize, maxLocal, metadata, readers);
+            cell.overflowPayloads[cellNumber] = payload;
+            reader = new SourcePageReader(source, metadata.pageSize, false);
+            if (readers == null || payload.size <= this.overflowLoadSize) {
+                payload.load(reader);
+                in.wrap(payload.data);
+            } else {
+                in.wrap(readRecordHeader(in, payload, reader));
+            }
+        }
+        ByteBuffer record = in.getBuffer();
+        long recordSize = (payload == null) ? record.limit() : payload.size;
+
+        int start = in.position();
+        long headerSize = in.readVarint();
+        if (headerSize < in.getLastLength() || start + headerSize > record.limit()) {
+            throw new InvalidFileException();
+        }
+
+        int[] types = in.getTypes((int) headerSize);
+        int numberOfColumns = 0;
+        while (in.position() < start + headerSize) {
+            types[numberOfColumns++] = (int) in.readVarint();
+        }
+
+        int[] offsets = new int[numberOfColumns];
+        long offset = start + headerSize;
+        for (int j = 0; j < numberOfColumns; j++) {
+            offsets[j] = (int) offset;
+            offset += SerialType.getSize(types[j]);
+        }
+        if (offset > recordSize) {
+            throw new InvalidFileException();
+        }
+        cell.serialTypes[cellNumber] = Arrays.copyOf(types, numberOfColumns);
+        cell.offsets[cellNumber] = offsets;
+
+        if (payload != null && !payload.isLoaded()) {
+            payload.hashRecord(reader, cell.serialTypes[cellNumber], offsets);
+            record = readRecordPrefix(payload, reader, cell.serialTypes[cellNumber], offsets, (int) headerSize);
+        }
+        int tablePageNumber = findTablePageNumber(cell, cellNumber, record, metadata.textDecoder);
+        if (tablePageNumber > 0) {
+            cell.type = CellType.Table;
+            cell.setTable(cellNumber, tablePageNumber);
+        }
+    }
+
+    /**
+     * Follows the overflow chain of a payload. The first part is on the page
+     * followed by the first overflow page number, each overflow page then
+     * starts with the number of the next one. Only the page numbers are
+     * read, the payload is left on the pages.
+     *
+     * @param source The page source.
+     * @param page The page, positioned at the start of the payload.
+     * @param cell The cell the payload belongs to.
+     * @param cellNumber The cell number.
+     * @param usableSize The usable size of a page.
+     * @param maxLocal The most of the payload that can be stored on the page.
+     * @param metadata The database metadata.
+     * @param readers Opens the database to read the payload after the parse.
+     *
+     * @return The payload, not yet loaded.
+     *
+     * @throws IOException If there is a problem reading the file.
+     * @throws InvalidFileException If the overflow chain is corrupt.
+     */
+    private OverflowPayload readOverflowChain(PageSource source, ByteBuffer page, BTreeCell cell, int cellNumber, int usableSize, int maxLocal, Metadata metadata, PageReaderFactory readers) throws IOException, InvalidFileException {
+        long payloadSize = cell.payLoadSize[cellNumber];
+        if (payloadSize > Integer.MAX_VALUE) {
+            throw new InvalidFileException();
+        }
+
+        int minLocal = (usableSize - 12) * metadata.minEmbeddedPayload / 255 - 23;
+        int localSize = (int) (minLocal + (payloadSize - minLocal) % (usableSize - 4));
+        if (localSize > maxLocal) {
+            localSize = minLocal;
+        }
+        if (page.remaining() < localSize + 4) {
+            throw new InvalidFileException();
+        }
+
+        // copied so the payload does not keep the page it was read from
+        ByteBuffer local = ByteBuffer.allocate(localSize);
+        ByteBuffer onPage = page.slice();
+        onPage.limit(localSize);
+        local.put(onPage).flip();
+        int overflowPageNumber = page.getInt(page.position() + localSize);
+
+        int pageContentSize = usableSize - 4;
+        long maxPages = source.size() / metadata.pageSize;
+        long pageCount = (payloadSize - localSize + pageContentSize - 1) / pageContentSize;
+        if (pageCount > maxPages) {
+            throw new InvalidFileException();
+        }
+
+        int[] pages = new int[(int) pageCount];
+        for (int i = 0; i < pages.length; i++) {
+            if (overflowPageNumber < 1 || overflowPageNumber > maxPages) {
+                throw new InvalidFileException();
+            }
+            pages[i] = overflowPageNumber;
+            ByteBuffer overflowPage = source.getPage(overflowPageNumber, metadata.pageSize);
+            overflowPageNumber = overflowPage.getInt(overflowPage.position());
+        }
+        return new OverflowPayload(local.asReadOnlyBuffer(), pages, payloadSize, pageContentSize, readers);
+    }
+
+    /**
+     * Reads the header of a record in an overflow payload that is not loaded.
+     *
+     * @param in The cursor, used to read the header size.
+     * @param payload The payload.
+     * @param reader Reader for the overflow pages.
+     *
+     * @return Buffer holding the header.
+     *
+     * @throws IOException If there is a problem reading the file.
+     * @throws InvalidFileException If the header is larger than the payload.
+     */
+    private ByteBuffer readRecordHeader(RecordCursor in, OverflowPayload payload, PageReader reader) throws IOException, InvalidFileException {
+        long headerSize = in.wrap(payload.read(reader, 0, (int) Math.min(9, payload.size))).readVarint();
+        if (headerSize > payload.size) {
+            throw new InvalidFileException();
+        }
+        return payload.read(reader, 0, (int) headerSize);
+    }
+
+    /**
+     * Reads the start of a record in an overflow payload that is not loaded,
+     * up to the first column that would take it over the default load size.
+     *
+     * @param payload The payload.
+     * @param reader Reader for the overflow pages.
+     * @param types Serial types of each column.
+     * @param offsets Offset of each column.
+     * @param headerSize Size of the record header.
+     *
+     * @return Buffer holding the start of the record.
+     *
+     * @throws IOException If there is a problem reading the file.
+     */
+    private ByteBuffer readRecordPrefix(OverflowPayload payload, PageReader reader, int[] types, int[] offsets, int headerSize) throws IOException {
+        int length = headerSize;
+        for (int j = 0; j < types.length; j++) {
+            long end = (long) offsets[j] + SerialType.getSize(types[j]);
+            if (end > OverflowPayload.DEFAULT_LOAD_SIZE) {
+                break;
+            }
+            length = (int) end;
+        }
+        return payload.read(reader, 0, length);
+    }
+
+    /**
+     * Finds the root page of the table or index a record names. That is the
+     * first integer column after a text column of "table" or "index". Only
+     * the columns in the buffer are looked at.
+     *
+     * @param cell The cell the record is in.
+     * @param cellNumber The cell number.
+     * @param record The buffer the record is in.
+     * @param textDecoder The text encoding of the database.
+     *
+     * @return The root page, or 0 if the record does not name a table or index.
+     */
+    private int findTablePageNumber(BTreeCell cell, int cellNumber, ByteBuffer record, TextDecoder textDecoder) {
+        int[] types = cell.serialTypes[cellNumber];
+        int[] offsets = cell.offsets[cellNumber];
+        boolean isTable = false;
+        for (int j = 0; j < types.length; j++) {
+            if ((long) offsets[j] + SerialType.getSize(types[j]) > record.limit()) {
+                return 0;
+            }
+            if (!isTable) {
+                int size = SerialType.getSize(types[j]);
+                isTable = SerialType.isText(types[j]) && (textDecoder.matches(record, offsets[j], size, TABLE) || textDecoder.matches(record, offsets[j], size, INDEX));
+            } else if (SerialType.isInteger(types[j])) {
+                return (int) SerialType.readLong(record, offsets[j], types[j]);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the number of pages in the database, from the header if it
+     * is valid else from the size of the file.
+     *
+     * @param in The page source.
+     * @param metadata The database metadata.
+     *
+     * @return The number of pages.
+     */
+    static long getPageCount(PageSource in, Metadata metadata) {
+        long pageCount = in.size() / metadata.pageSize;
+        if (metadata.versionValidNumber == metadata.fileChangeCounter && metadata.sizeOfDatabaseInPages > 0) {
+            pageCount = Math.min(pageCount, metadata.sizeOfDatabaseInPages);
+        }
+        return pageCount;
+    }
+
+    /**
+     * Checks the type byte of a page against the btree page types.
+     *
+     * @param page The page, positioned at the start of the page.
+     * @param pageNumber The page number, page one starts after the file header.
+     *
+     * @return True if the page has a btree page type.
+     */
+    static boolean isBtreePage(ByteBuffer page, long pageNumber) {
+        int type = page.get(page.position() + ((pageNumber == 1) ? SqliteConstants.HEADER_SIZE : 0));
+        return type == SqliteConstants.TABLE_BTREE_LEAF_CELL || type == SqliteConstants.TABLE_BTREE_INTERIOR_CELL
+                || type == SqliteConstants.INDEX_BTREE_LEAF_CELL || type == SqliteConstants.INDEX_BTREE_INTERIOR_CELL;
+    }
+}
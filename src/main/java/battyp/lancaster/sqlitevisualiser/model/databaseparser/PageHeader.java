@@ -27,8 +27,7 @@ package battyp.lancaster.sqlitevisualiser.model.databaseparser;
 
 import battyp.lancaster.sqlitevisualiser.model.datastructures.SqliteConstants;
 
-import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 
 /**
  * <h1> Page Header </h1>
@@ -61,48 +60,53 @@ public class PageHeader {
     /**
      * Constructor.
      *
-     * @param in File input stream to the file
+     * @param page Buffer holding the page, positioned at the start of the page.
      * @param pageNumber Page number to parse.
      * @param pageSize Size of the pages.
      */
-    public PageHeader(RandomAccessFile in, long pageNumber, long pageSize) throws IOException {
-        parsePageHeader(in, pageNumber, pageSize);
+    public PageHeader(ByteBuffer page, long pageNumber, long pageSize) {
+        parsePageHeader(page, pageNumber, pageSize);
     }
 
     /**
      * Parses the page header.
      *
-     * @param in File input stream to the file
+     * <p>
+     * Uses absolute reads so the position of the buffer is left untouched.
+     *
+     * @param page Buffer holding the page, positioned at the start of the page.
      * @param pageNumber Page number to parse.
      * @param pageSize Size of the pages.
      */
-    public void parsePageHeader(RandomAccessFile in, long pageNumber, long pageSize) throws IOException {
+    public void parsePageHeader(ByteBuffer page, long pageNumber, long pageSize) {
         this.pageSize = pageSize;
         this.realPageNumber = pageNumber - 1;               /* take one as Sqlite start count at one rather than zero */
         this.pageOffset = this.realPageNumber * pageSize;
+
+        int offset = 0;
         if (this.realPageNumber == 0) {                     /* if its the first page skip the header */
-            in.seek(SqliteConstants.HEADER_SIZE);
-        } else {
-            in.seek(this.pageOffset);
+            offset = SqliteConstants.HEADER_SIZE;
         }
 
-        this.pageType = in.readByte();
-        this.firstFreeBlockOffset = in.readShort();
-        this.numberOfCells = in.readShort();
-        this.startOfCell = in.readShort();
+        this.pageType = page.get(offset);
+        this.firstFreeBlockOffset = page.getShort(offset + 1);
+        this.numberOfCells = page.getShort(offset + 3);
+        this.startOfCell = page.getShort(offset + 5);
         if (this.startOfCell == 1) {                        /* see sqlite header taber for more information but */
             this.startOfCell = 65536;                       /* max size is stored as one                        */
         }
-        this.fagmentedFreeBytes = in.readByte();
+        this.fagmentedFreeBytes = page.get(offset + 7);
         this.rightMostPointer = 0;
+        offset += 8;
 
         if (this.pageType == SqliteConstants.INDEX_BTREE_INTERIOR_CELL || this.pageType == SqliteConstants.TABLE_BTREE_INTERIOR_CELL) {
-            this.rightMostPointer = in.readInt();
+            this.rightMostPointer = page.getInt(offset);
+            offset += 4;
         }
 
         this.cellPointers = new long[this.numberOfCells];
         for (int i = 0; i < this.numberOfCells; i++) {
-            this.cellPointers[i] = in.readShort() + this.pageOffset;
+            this.cellPointers[i] = page.getShort(offset + i * 2) + this.pageOffset;
         }
     }
 
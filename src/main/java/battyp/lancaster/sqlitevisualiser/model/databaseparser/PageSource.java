@@ -0,0 +1,85 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <h1> Page Source </h1>
+ *
+ * <p>
+ * Provides the raw bytes of the database file to the parser, one page
+ * at a time. Each page is handed out as a big endian ByteBuffer so the
+ * parser can decode the fields without going back to the file for each one.
+ *
+ * @author Paul Batty
+ * @see MappedPageSource
+ * @see RandomAccessPageSource
+ * @since 1.0
+ */
+public interface PageSource extends Closeable {
+
+    /**
+     * Reads a section of the file.
+     *
+     * @param offset Byte offset from the start of the file.
+     * @param length Number of bytes to read.
+     *
+     * @return ByteBuffer positioned at zero containing the bytes.
+     *
+     * @throws IOException If the section cannot be read.
+     */
+    public ByteBuffer read(long offset, int length) throws IOException;
+
+    /**
+     * Gets a page from the file.
+     *
+     * @param pageNumber The page number, Sqlite starts counting at one.
+     * @param pageSize The size of the pages.
+     *
+     * @return ByteBuffer positioned at the start of the page.
+     *
+     * @throws IOException If the page cannot be read.
+     */
+    public ByteBuffer getPage(long pageNumber, long pageSize) throws IOException;
+
+    /**
+     * Hints that the pages will be asked for soon, so they can be read
+     * ahead of time. Sources that cannot read ahead ignore the hint.
+     *
+     * @param pageNumbers The page numbers.
+     * @param pageSize The size of the pages.
+     */
+    public void prefetch(int[] pageNumbers, long pageSize);
+
+    /**
+     * Gets the size of the file.
+     *
+     * @return Size of the file in bytes.
+     */
+    public long size();
+}
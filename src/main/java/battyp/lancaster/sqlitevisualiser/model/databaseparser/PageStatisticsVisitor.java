@@ -0,0 +1,202 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SqliteConstants;
+
+/**
+ * <h1> Page Statistics Visitor </h1>
+ *
+ * <p>
+ * Visitor that counts the pages, cells, fields and overflowing records
+ * of a database as it is streamed, keeping only the totals.
+ *
+ * @author Paul Batty
+ * @see PageVisitor
+ * @since 1.0
+ */
+public class PageStatisticsVisitor implements PageVisitor {
+
+    private int tableInteriorPages;
+    private int tableLeafPages;
+    private int indexInteriorPages;
+    private int indexLeafPages;
+    private long cells;
+    private long fields;
+    private long overflowCells;
+    private long payloadBytes;
+    private int depth;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void startPage(BTreeCell page, int depth) {
+        switch (page.cellType) {
+            case SqliteConstants.TABLE_BTREE_INTERIOR_CELL: {
+                this.tableInteriorPages++;
+            }
+            break;
+            case SqliteConstants.TABLE_BTREE_LEAF_CELL: {
+                this.tableLeafPages++;
+            }
+            break;
+            case SqliteConstants.INDEX_BTREE_INTERIOR_CELL: {
+                this.indexInteriorPages++;
+            }
+            break;
+            case SqliteConstants.INDEX_BTREE_LEAF_CELL: {
+                this.indexLeafPages++;
+            }
+            break;
+        }
+        this.depth = Math.max(this.depth, depth + 1);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void cell(BTreeCell page, int cellNumber) {
+        this.cells++;
+        if (page.payLoadSize != null) {
+            this.payloadBytes += page.payLoadSize[cellNumber];
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void field(BTreeCell page, int cellNumber, int column) {
+        this.fields++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void overflow(BTreeCell page, int cellNumber) {
+        this.overflowCells++;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void endPage(BTreeCell page, int depth) {
+    }
+
+    /**
+     * Gets the number of pages visited.
+     *
+     * @return Number of pages.
+     */
+    public int getPageCount() {
+        return this.tableInteriorPages + this.tableLeafPages + this.indexInteriorPages + this.indexLeafPages;
+    }
+
+    /**
+     * Gets the number of table interior pages.
+     *
+     * @return Number of table interior pages.
+     */
+    public int getTableInteriorPages() {
+        return this.tableInteriorPages;
+    }
+
+    /**
+     * Gets the number of table leaf pages.
+     *
+     * @return Number of table leaf pages.
+     */
+    public int getTableLeafPages() {
+        return this.tableLeafPages;
+    }
+
+    /**
+     * Gets the number of index interior pages.
+     *
+     * @return Number of index interior pages.
+     */
+    public int getIndexInteriorPages() {
+        return this.indexInteriorPages;
+    }
+
+    /**
+     * Gets the number of index leaf pages.
+     *
+     * @return Number of index leaf pages.
+     */
+    public int getIndexLeafPages() {
+        return this.indexLeafPages;
+    }
+
+    /**
+     * Gets the number of cells over all pages.
+     *
+     * @return Number of cells.
+     */
+    public long getCells() {
+        return this.cells;
+    }
+
+    /**
+     * Gets the number of record fields over all cells.
+     *
+     * @return Number of fields.
+     */
+    public long getFields() {
+        return this.fields;
+    }
+
+    /**
+     * Gets the number of cells whose record spills onto overflow pages.
+     *
+     * @return Number of overflowing cells.
+     */
+    public long getOverflowCells() {
+        return this.overflowCells;
+    }
+
+    /**
+     * Gets the total size of the record payloads.
+     *
+     * @return Payload size in bytes.
+     */
+    public long getPayloadBytes() {
+        return this.payloadBytes;
+    }
+
+    /**
+     * Gets the depth of the deepest page, a tree with just a root is one.
+     *
+     * @return The depth of the tree.
+     */
+    public int getDepth() {
+        return this.depth;
+    }
+}
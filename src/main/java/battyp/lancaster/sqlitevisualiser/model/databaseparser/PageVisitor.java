@@ -0,0 +1,91 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell;
+
+/**
+ * <h1> Page Visitor </h1>
+ *
+ * <p>
+ * Receives the events of a streaming parse as the parser walks the
+ * btree, depth first in the same order as the tree is built. Each page
+ * starts with startPage, followed by the cell, field and overflow events
+ * of the page, then the pages below it, and finishes with endPage.
+ *
+ * <p>
+ * The cell handed to each event is only the page being visited, the
+ * parser does not keep hold of it afterwards. So a visitor that does not
+ * keep the cells can walk files larger than the heap.
+ *
+ * @author Paul Batty
+ * @see StreamingDatabaseParser
+ * @since 1.0
+ */
+public interface PageVisitor {
+
+    /**
+     * Called when the parser enters a page, before its cells.
+     *
+     * @param page The decoded page.
+     * @param depth Depth of the page, the root is zero.
+     */
+    public void startPage(BTreeCell page, int depth);
+
+    /**
+     * Called for each cell on the page.
+     *
+     * @param page The decoded page.
+     * @param cellNumber The cell on the page.
+     */
+    public void cell(BTreeCell page, int cellNumber);
+
+    /**
+     * Called for each field in the record of a cell, after the cell event.
+     * The value can be read with the typed getters on the page.
+     *
+     * @param page The decoded page.
+     * @param cellNumber The cell on the page.
+     * @param column The column in the record.
+     */
+    public void field(BTreeCell page, int cellNumber, int column);
+
+    /**
+     * Called for a cell whose record spills onto overflow pages, after
+     * its field events. The whole chain is in the overflow payload.
+     *
+     * @param page The decoded page.
+     * @param cellNumber The cell on the page.
+     */
+    public void overflow(BTreeCell page, int cellNumber);
+
+    /**
+     * Called when the parser leaves a page, after the pages below it.
+     *
+     * @param page The decoded page.
+     * @param depth Depth of the page, the root is zero.
+     */
+    public void endPage(BTreeCell page, int depth);
+}
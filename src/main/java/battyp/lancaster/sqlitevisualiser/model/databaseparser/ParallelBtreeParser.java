@@ -0,0 +1,135 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTree;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeNode;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.Metadata;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.PageReaderFactory;
+import battyp.lancaster.sqlitevisualiser.model.exceptions.InvalidFileException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <h1> Parallel Btree Parser </h1>
+ *
+ * <p>
+ * Parses the btree on a fork join pool, forking a task for each child
+ * page so independent subtrees are parsed at the same time.
+ *
+ * <p>
+ * The children are joined in the same order they are found, so the
+ * tree is identical to the one built by the streaming parser. The page
+ * source must support concurrent reads.
+ *
+ * @author Paul Batty
+ * @see StreamingBtreeParser
+ * @since 1.0
+ */
+class ParallelBtreeParser implements BtreeParser {
+
+    private final PageDecoder decoder;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor.
+     *
+     * @param decoder The decoder to read the pages with.
+     * @param pool The pool to parse on.
+     */
+    ParallelBtreeParser(PageDecoder decoder, ForkJoinPool pool) {
+        this.decoder = decoder;
+        this.pool = pool;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BTreeNode<BTreeCell> parse(PageSource in, long pageNumber, long pageSize, Metadata metadata, BTree<BTreeCell> previous, PageReaderFactory readers) throws IOException, InvalidFileException {
+        try {
+            return this.pool.invoke(new ParsePageTask(in, pageNumber, pageSize, metadata, previous, readers));
+        } catch (ParseTaskException e) {
+            if (e.getCause() instanceof InvalidFileException) {
+                throw (InvalidFileException) e.getCause();
+            }
+            throw (IOException) e.getCause();
+        }
+    }
+
+    /**
+     * Fork join task that parses a page, then forks a task for each child.
+     */
+    private class ParsePageTask extends RecursiveTask<BTreeNode<BTreeCell>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final PageSource in;
+        private final long pageNumber;
+        private final long pageSize;
+        private final Metadata metadata;
+        private final BTree<BTreeCell> previous;
+        private final PageReaderFactory readers;
+
+        private ParsePageTask(PageSource in, long pageNumber, long pageSize, Metadata metadata, BTree<BTreeCell> previous, PageReaderFactory readers) {
+            this.in = in;
+            this.pageNumber = pageNumber;
+            this.pageSize = pageSize;
+            this.metadata = metadata;
+            this.previous = previous;
+            this.readers = readers;
+        }
+
+        @Override
+        protected BTreeNode<BTreeCell> compute() {
+            BTreeNode<BTreeCell> node;
+            try {
+                node = decoder.parsePage(this.in, this.pageNumber, this.pageSize, this.metadata, this.previous, this.readers);
+            } catch (IOException | InvalidFileException e) {
+                throw new ParseTaskException(e);
+            }
+
+            int[] children = PageDecoder.getChildPageNumbers(node.getData());
+            if (children.length > 0) {
+                this.in.prefetch(children, this.pageSize);
+            }
+            List<ParsePageTask> tasks = new ArrayList<>();
+            for (int childPageNumber : children) {
+                tasks.add(new ParsePageTask(this.in, childPageNumber, this.pageSize, this.metadata, this.previous, this.readers));
+            }
+            invokeAll(tasks);
+
+            for (ParsePageTask task : tasks) {
+                node.addChild(task.join());
+            }
+            return PageDecoder.reuseNode(node, this.previous.findByKey((int) this.pageNumber));
+        }
+    }
+}
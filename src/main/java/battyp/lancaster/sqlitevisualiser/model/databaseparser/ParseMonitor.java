@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell;
+
+import java.util.List;
+
+/**
+ * <h1> Parse Monitor </h1>
+ *
+ * <p>
+ * Watches a parse running in the background. The parser reports the
+ * number of pages parsed so far, hands over the pages of each level of
+ * the tree once it is parsed, and stops if the monitor is cancelled.
+ *
+ * <p>
+ * The events come from the thread running the parse, or from the threads
+ * of its fork join pool when the levels are parsed in parallel, in which
+ * case progress can be reported from more than one thread at once, and
+ * the counts may arrive slightly out of order. Only the new level is
+ * handed over, so the parser never copies the tree it is building, and
+ * the level is not touched by the parser again, so it can be passed to
+ * another thread to be added to a tree there and drawn.
+ *
+ * @author Paul Batty
+ * @see DatabaseParser
+ * @since 1.0
+ */
+public interface ParseMonitor {
+
+    /**
+     * Called after each page is parsed.
+     *
+     * @param pagesParsed The number of pages parsed so far.
+     * @param pageCount The number of pages in the database.
+     */
+    public void progress(long pagesParsed, long pageCount);
+
+    /**
+     * Called each time a level of the tree has been parsed, with the
+     * pages of that level. The levels are reported in order from the
+     * root, the pages of a level in the order they hang from the level
+     * above.
+     *
+     * @param level The pages of the level.
+     * @param parents For each page, the index in the level above of the page it hangs from, -1 for the root.
+     * @param depth The depth of the level, the root is zero.
+     */
+    public void levelParsed(List<BTreeCell> level, int[] parents, int depth);
+
+    /**
+     * Checked before each page is parsed, the parse stops with a
+     * CancellationException once it returns true.
+     *
+     * @return True to stop the parse else false.
+     */
+    public boolean isCancelled();
+}
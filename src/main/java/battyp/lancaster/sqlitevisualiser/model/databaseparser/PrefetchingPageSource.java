@@ -0,0 +1,319 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * <h1> Prefetching Page Source </h1>
+ *
+ * <p>
+ * Wraps another page source and reads pages ahead of time, so the wait
+ * for the disk overlaps with decoding the pages already read. The parser
+ * asks for the children of each interior page as soon as it is decoded,
+ * these are read through an AsynchronousFileChannel into a bounded pool
+ * of direct buffers.
+ *
+ * <p>
+ * When a prefetched page is asked for, the read is waited on and the page
+ * copied out so the buffer can go back to the pool. Pages that were not
+ * prefetched, or whose read failed, are read from the wrapped source.
+ * Once every buffer is in use no more reads are started, beyond taking
+ * back buffers of finished reads that were never asked for.
+ *
+ * @author Paul Batty
+ * @see PageSource
+ * @since 1.0
+ */
+public class PrefetchingPageSource implements PageSource {
+
+    /**
+     * Default number of pages that can be read ahead at once.
+     */
+    public static final int DEFAULT_MAX_PAGES = 64;
+
+    private final PageSource source;
+    private final AsynchronousFileChannel channel;
+    private final int maxPages;
+
+    private final LinkedHashMap<Long, Prefetch> pending;
+    private final Deque<ByteBuffer> pool;
+    private int allocated;
+
+    private long issued;
+    private long hits;
+
+    /**
+     * Constructor, uses the default number of buffers.
+     *
+     * @param source The page source to read from when a page was not prefetched.
+     * @param file The database file.
+     *
+     * @throws IOException If the file cannot be opened.
+     */
+    public PrefetchingPageSource(PageSource source, File file) throws IOException {
+        this(source, file, DEFAULT_MAX_PAGES);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param source The page source to read from when a page was not prefetched.
+     * @param file The database file.
+     * @param maxPages Maximum number of pages read ahead at once.
+     *
+     * @throws IOException If the file cannot be opened.
+     */
+    public PrefetchingPageSource(PageSource source, File file, int maxPages) throws IOException {
+        this.source = source;
+        this.channel = AsynchronousFileChannel.open(file.toPath(), StandardOpenOption.READ);
+        this.maxPages = maxPages;
+        this.pending = new LinkedHashMap<>();
+        this.pool = new ArrayDeque<>();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuffer read(long offset, int length) throws IOException {
+        return this.source.read(offset, length);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuffer getPage(long pageNumber, long pageSize) throws IOException {
+        Prefetch prefetch;
+        synchronized (this) {
+            prefetch = this.pending.remove(pageNumber);
+        }
+        if (prefetch != null) {
+            ByteBuffer page = prefetch.await(pageSize);
+            release(prefetch);
+            if (page != null) {
+                synchronized (this) {
+                    this.hits++;
+                }
+                return page;
+            }
+        }
+        return this.source.getPage(pageNumber, pageSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Starts an asynchronous read for each page that is not already
+     * pending, while there are buffers free.
+     */
+    @Override
+    public void prefetch(int[] pageNumbers, long pageSize) {
+        for (int pageNumber : pageNumbers) {
+            long position = (pageNumber - 1) * pageSize;
+            if (pageNumber < 1 || position + pageSize > this.source.size()) {
+                continue;
+            }
+
+            synchronized (this) {
+                if (this.pending.containsKey((long) pageNumber)) {
+                    continue;
+                }
+                ByteBuffer buffer = acquire(pageSize);
+                if (buffer == null) {
+                    return;
+                }
+                this.pending.put((long) pageNumber, new Prefetch(buffer, this.channel.read(buffer, position), position));
+                this.issued++;
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long size() {
+        return this.source.size();
+    }
+
+    /**
+     * Gets the number of reads started ahead of time.
+     *
+     * @return Number of prefetched pages.
+     */
+    public synchronized long getIssued() {
+        return this.issued;
+    }
+
+    /**
+     * Gets the number of pages served from a read started ahead of time.
+     *
+     * @return Number of hits.
+     */
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Gets the number of reads ahead that have not been asked for yet.
+     *
+     * @return Number of pending pages.
+     */
+    public synchronized int getPendingCount() {
+        return this.pending.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Reads still in flight are cancelled by closing the channel.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            this.pending.clear();
+            this.pool.clear();
+        }
+        try {
+            this.channel.close();
+        } finally {
+            this.source.close();
+        }
+    }
+
+    /**
+     * Takes a buffer from the pool, allocating a new one while under the
+     * limit. If the pool is used up, the oldest finished read that was
+     * never asked for gives up its buffer.
+     *
+     * @param pageSize The page size.
+     *
+     * @return A cleared buffer of the page size, or null if none are free.
+     */
+    private ByteBuffer acquire(long pageSize) {
+        ByteBuffer buffer = this.pool.poll();
+        if (buffer == null && this.allocated < this.maxPages) {
+            this.allocated++;
+            buffer = ByteBuffer.allocateDirect((int) pageSize);
+        }
+        if (buffer == null) {
+            Iterator<Map.Entry<Long, Prefetch>> iterator = this.pending.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Prefetch prefetch = iterator.next().getValue();
+                if (prefetch.future.isDone()) {
+                    iterator.remove();
+                    buffer = prefetch.buffer;
+                    break;
+                }
+            }
+        }
+        if (buffer == null) {
+            return null;
+        }
+        if (buffer.capacity() != pageSize) {
+            buffer = ByteBuffer.allocateDirect((int) pageSize);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Gives the buffer of a read back to the pool. A buffer whose read
+     * did not finish may still be written to, so it is dropped instead.
+     *
+     * @param prefetch The read.
+     */
+    private synchronized void release(Prefetch prefetch) {
+        if (prefetch.future.isDone()) {
+            this.pool.push(prefetch.buffer);
+        } else {
+            this.allocated--;
+        }
+    }
+
+    /**
+     * A read started ahead of time.
+     */
+    private class Prefetch {
+
+        private final ByteBuffer buffer;
+        private final Future<Integer> future;
+        private final long position;
+
+        private Prefetch(ByteBuffer buffer, Future<Integer> future, long position) {
+            this.buffer = buffer;
+            this.future = future;
+            this.position = position;
+        }
+
+        /**
+         * Waits for the read, finishing it if it came back short.
+         *
+         * @param pageSize The page size.
+         *
+         * @return Heap copy of the page, or null if the read failed.
+         */
+        private ByteBuffer await(long pageSize) {
+            try {
+                if (this.future.get() < 0) {
+                    return null;
+                }
+                while (this.buffer.hasRemaining()) {
+                    if (channel.read(this.buffer, this.position + this.buffer.position()).get() < 0) {
+                        return null;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                return null;
+            }
+            if (this.buffer.position() != pageSize) {
+                return null;
+            }
+
+            this.buffer.flip();
+            ByteBuffer page = ByteBuffer.allocate(this.buffer.remaining());
+            page.put(this.buffer).flip();
+            return page;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <h1> Random Access Page Source </h1>
+ *
+ * <p>
+ * Page source that reads each page through a RandomAccessFile. This is
+ * the fallback for when the file cannot be memory mapped, each page is
+ * read in one go and then decoded from the buffer.
+ *
+ * <p>
+ * Reads are positional on the file channel, so there is no shared file
+ * pointer and many threads can read pages at the same time.
+ *
+ * @author Paul Batty
+ * @see PageSource
+ * @since 1.0
+ */
+public class RandomAccessPageSource implements PageSource {
+
+    private final RandomAccessFile in;
+    private final FileChannel channel;
+    private final long size;
+
+    /**
+     * Constructor.
+     *
+     * @param file The database file to read.
+     *
+     * @throws IOException If the file cannot be opened.
+     */
+    public RandomAccessPageSource(File file) throws IOException {
+        this.in = new RandomAccessFile(file, "r");
+        this.channel = this.in.getChannel();
+        this.size = this.in.length();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuffer read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            int read = this.channel.read(buffer, offset + buffer.position());
+            if (read < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuffer getPage(long pageNumber, long pageSize) throws IOException {
+        return read((pageNumber - 1) * pageSize, (int) pageSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void prefetch(int[] pageNumbers, long pageSize) {
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+}
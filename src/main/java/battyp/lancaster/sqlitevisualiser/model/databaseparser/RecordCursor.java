@@ -0,0 +1,213 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <h1> Record Cursor </h1>
+ *
+ * <p>
+ * A reusable cursor for decoding the varints and fields of a record from
+ * a page buffer. Every read returns a primitive and moves the cursor on,
+ * the number of bytes used by the last varint is kept so the caller does
+ * not need a second return value.
+ *
+ * <p>
+ * The cursor keeps scratch space for serial types that grows as needed
+ * and is then reused, so once warmed up decoding a page does not allocate
+ * anything. A cursor is not thread safe, each thread should use its own.
+ *
+ * @author Paul Batty
+ * @see PageDecoder
+ * @since 1.0
+ */
+public class RecordCursor {
+
+    private static final int MAX_VARINT_LENGTH = 9;
+
+    private ByteBuffer buffer;
+    private int lastLength;
+    private int[] types;
+
+    /**
+     * Constructor.
+     */
+    public RecordCursor() {
+        this.types = new int[16];
+    }
+
+    /**
+     * Points the cursor at a buffer, reading continues from the
+     * current position of the buffer.
+     *
+     * @param buffer The buffer to read.
+     *
+     * @return This cursor.
+     */
+    public RecordCursor wrap(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.lastLength = 0;
+        return this;
+    }
+
+    /**
+     * Gets the buffer the cursor is reading.
+     *
+     * @return The buffer.
+     */
+    public ByteBuffer getBuffer() {
+        return this.buffer;
+    }
+
+    /**
+     * Gets the position of the cursor in the buffer.
+     *
+     * @return The position.
+     */
+    public int position() {
+        return this.buffer.position();
+    }
+
+    /**
+     * Moves the cursor to the given position in the buffer.
+     *
+     * @param position The new position.
+     */
+    public void position(int position) {
+        this.buffer.position(position);
+    }
+
+    /**
+     * Gets the number of bytes used by the last varint read.
+     *
+     * @return Number of bytes.
+     */
+    public int getLastLength() {
+        return this.lastLength;
+    }
+
+    /**
+     * Reads a varint, the number of bytes it used can then be
+     * got from getLastLength.
+     *
+     * <p>
+     * A varint is one to nine bytes, big endian. The first eight bytes
+     * give seven bits each and have the high bit set if another byte
+     * follows, the ninth byte gives all eight bits.
+     *
+     * @return The value of the varint.
+     */
+    public long readVarint() {
+        ByteBuffer in = this.buffer;
+        long value = 0;
+        for (int i = 0; i < MAX_VARINT_LENGTH - 1; i++) {
+            byte b = in.get();
+            value = (value << 7) | (b & 0x7F);
+            if (b >= 0) {
+                this.lastLength = i + 1;
+                return value;
+            }
+        }
+        this.lastLength = MAX_VARINT_LENGTH;
+        return (value << 8) | (in.get() & 0xFF);
+    }
+
+    /**
+     * Reads a single signed byte.
+     *
+     * @return The byte.
+     */
+    public byte readByte() {
+        return this.buffer.get();
+    }
+
+    /**
+     * Reads a big endian two byte int.
+     *
+     * @return The short.
+     */
+    public short readShort() {
+        return this.buffer.getShort();
+    }
+
+    /**
+     * Reads a big endian four byte int.
+     *
+     * @return The int.
+     */
+    public int readInt() {
+        return this.buffer.getInt();
+    }
+
+    /**
+     * Reads a big endian eight byte int.
+     *
+     * @return The long.
+     */
+    public long readLong() {
+        return this.buffer.getLong();
+    }
+
+    /**
+     * Reads a big endian eight byte float.
+     *
+     * @return The double.
+     */
+    public double readDouble() {
+        return this.buffer.getDouble();
+    }
+
+    /**
+     * Reads a big endian signed int of one to eight bytes.
+     *
+     * @param length The number of bytes to read.
+     *
+     * @return The long.
+     */
+    public long readLong(int length) {
+        ByteBuffer in = this.buffer;
+        long value = in.get();
+        for (int i = 1; i < length; i++) {
+            value = (value << 8) | (in.get() & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * Gets the scratch array for serial types, it holds at least
+     * the number of types asked for.
+     *
+     * @param size The number of types needed.
+     *
+     * @return The scratch array.
+     */
+    public int[] getTypes(int size) {
+        if (this.types.length < size) {
+            this.types = new int[Math.max(size, this.types.length * 2)];
+        }
+        return this.types;
+    }
+}
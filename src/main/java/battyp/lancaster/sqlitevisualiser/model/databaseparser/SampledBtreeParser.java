@@ -0,0 +1,269 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTree;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeNode;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.Metadata;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.PageReaderFactory;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SampleEstimate;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SqliteConstants;
+import battyp.lancaster.sqlitevisualiser.model.exceptions.InvalidFileException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+/**
+ * <h1> Sampled Btree Parser </h1>
+ *
+ * <p>
+ * Parses every interior page of the btree, but only a random sample
+ * of the leaf pages of the tables and indexes, storing the estimates
+ * in the metadata.
+ *
+ * <p>
+ * The progress is reported to the monitor and it can be cancelled,
+ * but the levels are not reported as the tree is walked depth first.
+ *
+ * @author Paul Batty
+ * @see SampleEstimate
+ * @since 1.0
+ */
+class SampledBtreeParser implements BtreeParser {
+
+    /**
+     * Seed of the leaf sample, fixed so parses of the same file pick the same leaves.
+     */
+    private static final long SAMPLE_SEED = 0x5eed;
+
+    private final PageDecoder decoder;
+    private final double sampleRate;
+    private final ParseMonitor monitor;
+
+    /**
+     * Constructor.
+     *
+     * @param decoder The decoder to read the pages with.
+     * @param sampleRate The share of leaves to parse.
+     * @param monitor The monitor to report to, or null if there is none.
+     */
+    SampledBtreeParser(PageDecoder decoder, double sampleRate, ParseMonitor monitor) {
+        this.decoder = decoder;
+        this.sampleRate = sampleRate;
+        this.monitor = monitor;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The previous parse is not used, the sample is drawn again each time.
+     *
+     * @throws CancellationException If the monitor is cancelled.
+     */
+    @Override
+    public BTreeNode<BTreeCell> parse(PageSource in, long pageNumber, long pageSize, Metadata metadata, BTree<BTreeCell> previous, PageReaderFactory readers) throws IOException, InvalidFileException {
+        LeafSampler sampler = new LeafSampler(in, pageSize, metadata, readers, this.monitor);
+        BTreeNode<BTreeCell> root = sampler.parse(pageNumber, null, 0);
+        metadata.sampleEstimate = sampler.estimate;
+        return root;
+    }
+
+    /**
+     * Counts the bytes of a btree page that are not in use, the gap
+     * between the cell pointers and the cells, the free blocks and the
+     * fragmented bytes.
+     *
+     * @param page The page, with the page starting at index zero.
+     * @param pageNumber The page number.
+     * @param usableSize The usable size of a page.
+     *
+     * @return Number of free bytes.
+     */
+    private int getFreeBytes(ByteBuffer page, long pageNumber, int usableSize) {
+        int offset = pageNumber == 1 ? SqliteConstants.HEADER_SIZE : 0;
+        int type = page.get(offset);
+        boolean interior = type == SqliteConstants.TABLE_BTREE_INTERIOR_CELL || type == SqliteConstants.INDEX_BTREE_INTERIOR_CELL;
+        int headerSize = interior ? 12 : 8;
+        int cells = page.getShort(offset + 3) & 0xffff;
+        int contentStart = page.getShort(offset + 5) & 0xffff;
+        if (contentStart == 0) {
+            contentStart = 65536;
+        }
+
+        int free = Math.max(0, Math.min(contentStart, usableSize) - (offset + headerSize + cells * 2));
+        free += page.get(offset + 7) & 0xff;
+
+        int freeBlock = page.getShort(offset + 1) & 0xffff;
+        for (int i = 0; freeBlock != 0 && freeBlock + 4 <= usableSize && i < usableSize / 4; i++) {
+            free += page.getShort(freeBlock + 2) & 0xffff;
+            freeBlock = page.getShort(freeBlock) & 0xffff;
+        }
+        return Math.min(free, usableSize);
+    }
+
+    /**
+     * Walks the btree depth first, parsing only a sample of the table
+     * and index leaves. Btrees are balanced, so once the first leaf of a tree is
+     * found the depth of its leaves is known and the rest can be skipped
+     * without reading them. The first leaf has to be read to find the
+     * depth, but it is only kept if it is drawn, so every leaf has the
+     * same chance of being in the sample.
+     */
+    private class LeafSampler {
+
+        private final PageSource in;
+        private final long pageSize;
+        private final Metadata metadata;
+        private final PageReaderFactory readers;
+        private final ParseMonitor monitor;
+        private final int usableSize;
+        private final long pageCount;
+        private final Random random;
+        private final SampleEstimate estimate;
+        private long pagesParsed;
+
+        private LeafSampler(PageSource in, long pageSize, Metadata metadata, PageReaderFactory readers, ParseMonitor monitor) {
+            this.in = in;
+            this.pageSize = pageSize;
+            this.metadata = metadata;
+            this.readers = readers;
+            this.monitor = monitor;
+            this.usableSize = metadata.pageSize - metadata.unusedSpaceAtEndOfEachPage;
+            this.pageCount = PageDecoder.getPageCount(in, metadata);
+            this.random = new Random(SAMPLE_SEED);
+            this.estimate = new SampleEstimate(sampleRate);
+        }
+
+        /**
+         * Parses a page and the sampled pages below it.
+         *
+         * @param pageNumber The page number.
+         * @param leafDepth Holds the depth of the leaves of the tree once known, null for the schema.
+         * @param depth The depth of the page in its tree.
+         *
+         * @return BtreeNode with the cell data.
+         *
+         * @throws IOException If there is a problem reading the file.
+         * @throws InvalidFileException If a sampled leaf is not the leaf of its tree, or there is an unusual format.
+         */
+        private BTreeNode<BTreeCell> parse(long pageNumber, int[] leafDepth, int depth) throws IOException, InvalidFileException {
+            BTreeNode<BTreeCell> node = readNode(pageNumber);
+            BTreeCell cell = node.getData();
+            int[] children = PageDecoder.getChildPageNumbers(cell);
+
+            if (cell.cellType != SqliteConstants.TABLE_BTREE_INTERIOR_CELL && cell.cellType != SqliteConstants.INDEX_BTREE_INTERIOR_CELL) {
+                if (leafDepth != null && cell.cellType == SqliteConstants.TABLE_BTREE_LEAF_CELL) {
+                    leafDepth[0] = depth;
+                    if (depth == 0) {
+                        this.estimate.addExactPage(cell.cellCount, getFillFactor(cell), cell.payLoadSize);
+                    }
+                } else if (leafDepth != null && cell.cellType == SqliteConstants.INDEX_BTREE_LEAF_CELL) {
+                    leafDepth[0] = depth;
+                    if (depth == 0) {
+                        this.estimate.addExactIndexPage();
+                    }
+                }
+                // the children of a leaf are the roots of other trees
+                for (int childPageNumber : children) {
+                    node.addChild(parse(childPageNumber, new int[] {-1}, 0));
+                }
+                return node;
+            }
+
+            // the schema is always parsed in full
+            boolean sampled = leafDepth != null;
+            boolean table = cell.cellType == SqliteConstants.TABLE_BTREE_INTERIOR_CELL;
+            for (int childPageNumber : children) {
+                if (sampled && leafDepth[0] == depth + 1) {
+                    countLeaf(table);
+                    if (draw()) {
+                        node.addChild(sample(readNode(childPageNumber), table));
+                    }
+                } else {
+                    BTreeNode<BTreeCell> child = parse(childPageNumber, leafDepth, depth + 1);
+                    if (sampled && leafDepth[0] == depth + 1) {
+                        countLeaf(table);
+                        if (draw()) {
+                            node.addChild(sample(child, table));
+                        }
+                    } else {
+                        node.addChild(child);
+                    }
+                }
+            }
+            if (sampled && leafDepth[0] == depth + 1) {
+                this.estimate.addSampledParent(pageNumber);
+            }
+            return node;
+        }
+
+        private BTreeNode<BTreeCell> readNode(long pageNumber) throws IOException, InvalidFileException {
+            if (this.monitor != null && this.monitor.isCancelled()) {
+                throw new CancellationException();
+            }
+            BTreeNode<BTreeCell> node = decoder.parsePage(this.in, pageNumber, this.pageSize, this.metadata, NO_PREVIOUS, this.readers);
+            if (this.monitor != null) {
+                this.monitor.progress(++this.pagesParsed, this.pageCount);
+            }
+            return node;
+        }
+
+        private void countLeaf(boolean table) {
+            if (table) {
+                this.estimate.leafPages++;
+            } else {
+                this.estimate.indexLeafPages++;
+            }
+        }
+
+        private BTreeNode<BTreeCell> sample(BTreeNode<BTreeCell> leaf, boolean table) throws IOException, InvalidFileException {
+            BTreeCell cell = leaf.getData();
+            if (cell.cellType != (table ? SqliteConstants.TABLE_BTREE_LEAF_CELL : SqliteConstants.INDEX_BTREE_LEAF_CELL)) {
+                throw new InvalidFileException();
+            }
+            if (table) {
+                this.estimate.addPage(cell.cellCount, getFillFactor(cell), cell.payLoadSize);
+            } else {
+                this.estimate.addIndexPage();
+            }
+            return leaf;
+        }
+
+        private double getFillFactor(BTreeCell cell) throws IOException {
+            // the cell does not keep the page, read it again for the free space
+            ByteBuffer page = this.in.getPage(cell.pageNumber + 1, this.pageSize);
+            int free = getFreeBytes(page, cell.pageNumber + 1, this.usableSize);
+            return (double) (this.usableSize - free) / this.usableSize;
+        }
+
+        private boolean draw() {
+            return this.random.nextDouble() < this.estimate.sampleRate;
+        }
+    }
+}
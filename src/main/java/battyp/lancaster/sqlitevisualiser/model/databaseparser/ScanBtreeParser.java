@@ -0,0 +1,126 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTree;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeNode;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.Metadata;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.PageReaderFactory;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.PointerMap;
+import battyp.lancaster.sqlitevisualiser.model.exceptions.InvalidFileException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <h1> Scan Btree Parser </h1>
+ *
+ * <p>
+ * Parses the btree by scanning the file in page order, then linking
+ * the scanned pages into the tree.
+ *
+ * <p>
+ * The tree is identical to the one built by the streaming parser, pages
+ * that are not reached from the root, such as free pages, are dropped.
+ *
+ * @author Paul Batty
+ * @see StreamingBtreeParser
+ * @since 1.0
+ */
+class ScanBtreeParser implements BtreeParser {
+
+    /**
+     * Number of bytes read at a time by a sequential scan.
+     */
+    static final long SCAN_READ_SIZE = 1024 * 1024;
+
+    private final PageDecoder decoder;
+    private final StreamingBtreeParser walker;
+
+    /**
+     * Constructor.
+     *
+     * @param decoder The decoder to read the pages with.
+     */
+    ScanBtreeParser(PageDecoder decoder) {
+        this.decoder = decoder;
+        this.walker = new StreamingBtreeParser(decoder);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BTreeNode<BTreeCell> parse(PageSource in, long pageNumber, long pageSize, Metadata metadata, BTree<BTreeCell> previous, PageReaderFactory readers) throws IOException, InvalidFileException {
+        BTreeCell[] pages = scanPages(in, pageSize, metadata, previous, readers);
+        return this.walker.build(in, pageNumber, pageSize, metadata, previous, readers, pages);
+    }
+
+    /**
+     * Reads every page of the file in page order, a batch of pages at a
+     * time, and decodes each one that has a btree page type.
+     *
+     * <p>
+     * Free pages can still hold an old btree page, which may no longer
+     * decode. These are skipped, if such a page is in the tree after all
+     * the walk reads it again and reports the error.
+     *
+     * @param in The page source.
+     * @param pageSize The page size.
+     * @param metadata The database metadata.
+     * @param previous The tree of a previous parse, indexed by page number.
+     * @param readers Opens the database to read large overflow payloads, null to load every payload.
+     *
+     * @return The decoded pages by page number, null where a page is not a btree page.
+     *
+     * @throws IOException If there is a problem reading the file.
+     */
+    BTreeCell[] scanPages(PageSource in, long pageSize, Metadata metadata, BTree<BTreeCell> previous, PageReaderFactory readers) throws IOException {
+        long pageCount = PageDecoder.getPageCount(in, metadata);
+        boolean autoVacuum = metadata.pageNumberToLargestBTreePage != 0;
+        int usableSize = metadata.pageSize - metadata.unusedSpaceAtEndOfEachPage;
+        BTreeCell[] pages = new BTreeCell[(int) pageCount + 1];
+
+        int pagesPerRead = (int) Math.max(1, SCAN_READ_SIZE / pageSize);
+        for (long first = 1; first <= pageCount; first += pagesPerRead) {
+            int count = (int) Math.min(pagesPerRead, pageCount - first + 1);
+            ByteBuffer batch = in.read((first - 1) * pageSize, (int) (count * pageSize));
+            for (int i = 0; i < count; i++) {
+                long pageNumber = first + i;
+                batch.limit((int) ((i + 1) * pageSize)).position((int) (i * pageSize));
+                ByteBuffer page = batch.slice();
+                if (PageDecoder.isBtreePage(page, pageNumber) && !(autoVacuum && PointerMap.isPointerMapPage(pageNumber, metadata.pageSize, usableSize))) {
+                    try {
+                        pages[(int) pageNumber] = this.decoder.decodePage(in, page, pageNumber, pageSize, metadata, previous, readers);
+                    } catch (InvalidFileException | RuntimeException ignored) {
+                    }
+                }
+                batch.clear();
+            }
+        }
+        return pages;
+    }
+}
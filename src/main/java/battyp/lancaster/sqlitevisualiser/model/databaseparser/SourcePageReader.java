@@ -0,0 +1,78 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.PageReader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <h1> Source Page Reader </h1>
+ *
+ * <p>
+ * Reads whole pages from a page source, for the overflow payloads.
+ *
+ * @author Paul Batty
+ * @see PageReader
+ * @since 1.0
+ */
+class SourcePageReader implements PageReader {
+
+    private final PageSource source;
+    private final long pageSize;
+    private final boolean closeSource;
+
+    /**
+     * Constructor.
+     *
+     * @param source The page source.
+     * @param pageSize The page size.
+     * @param closeSource True to close the source when the reader is closed.
+     */
+    SourcePageReader(PageSource source, long pageSize, boolean closeSource) {
+        this.source = source;
+        this.pageSize = pageSize;
+        this.closeSource = closeSource;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuffer getPage(long pageNumber) throws IOException {
+        return this.source.getPage(pageNumber, this.pageSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.closeSource) {
+            this.source.close();
+        }
+    }
+}
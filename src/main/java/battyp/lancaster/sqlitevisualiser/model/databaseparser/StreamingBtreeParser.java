@@ -0,0 +1,197 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTree;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeNode;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.Metadata;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.PageReaderFactory;
+import battyp.lancaster.sqlitevisualiser.model.exceptions.InvalidFileException;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * <h1> Streaming Btree Parser </h1>
+ *
+ * <p>
+ * Walks the btree once depth first, handing each page to a visitor.
+ * Building the tree is done by one such visitor, a streaming parse
+ * just hands the pages to the visitor given instead.
+ *
+ * <p>
+ * This is the parser used when no other mode is set.
+ *
+ * @author Paul Batty
+ * @see PageVisitor
+ * @see StreamingDatabaseParser
+ * @since 1.0
+ */
+class StreamingBtreeParser implements BtreeParser {
+
+    private final PageDecoder decoder;
+
+    /**
+     * Constructor.
+     *
+     * @param decoder The decoder to read the pages with.
+     */
+    StreamingBtreeParser(PageDecoder decoder) {
+        this.decoder = decoder;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BTreeNode<BTreeCell> parse(PageSource in, long pageNumber, long pageSize, Metadata metadata, BTree<BTreeCell> previous, PageReaderFactory readers) throws IOException, InvalidFileException {
+        return build(in, pageNumber, pageSize, metadata, previous, readers, null);
+    }
+
+    /**
+     * Builds the btree from a walk, reusing the unchanged pages of a
+     * previous parse.
+     *
+     * @param in The page source.
+     * @param pageNumber The page number of the root.
+     * @param pageSize The page size.
+     * @param metadata The database metadata.
+     * @param previous The tree of a previous parse, indexed by page number.
+     * @param readers Opens the database to read large overflow payloads, null to load every payload.
+     * @param scanned Pages already decoded by a scan, or null to read each page as it is reached.
+     *
+     * @return BtreeNode with the cell data.
+     *
+     * @throws IOException If there is a problem reading the file.
+     * @throws InvalidFileException If there is an unusual format.
+     */
+    BTreeNode<BTreeCell> build(PageSource in, long pageNumber, long pageSize, Metadata metadata, BTree<BTreeCell> previous, PageReaderFactory readers, BTreeCell[] scanned) throws IOException, InvalidFileException {
+        TreeBuilder builder = new TreeBuilder(previous);
+        walk(in, pageNumber, pageSize, metadata, previous, readers, scanned, builder, 0);
+        return builder.getRoot();
+    }
+
+    /**
+     * Walks the btree depth first, handing each page to the visitor.
+     *
+     * <p>
+     * Only the pages on the path down to the current page are held, so
+     * memory is bounded by the depth of the tree rather then its size.
+     *
+     * @param in The page source.
+     * @param pageNumber The page number we are on.
+     * @param pageSize The page size.
+     * @param metadata The database metadata.
+     * @param previous The tree of a previous parse, indexed by page number.
+     * @param readers Opens the database to read large overflow payloads, null to load every payload.
+     * @param scanned Pages already decoded by a scan, or null to read each page as it is reached.
+     * @param visitor The visitor to call.
+     * @param depth The depth of the page.
+     *
+     * @throws IOException If there is a problem reading the file.
+     * @throws InvalidFileException If there is an unusual format.
+     */
+    void walk(PageSource in, long pageNumber, long pageSize, Metadata metadata, BTree<BTreeCell> previous, PageReaderFactory readers, BTreeCell[] scanned, PageVisitor visitor, int depth) throws IOException, InvalidFileException {
+        BTreeCell page = null;
+        if (scanned != null && pageNumber < scanned.length) {
+            page = scanned[(int) pageNumber];
+        }
+        if (page == null) {
+            page = this.decoder.readPage(in, pageNumber, pageSize, metadata, previous, readers);
+        }
+
+        int[] children = PageDecoder.getChildPageNumbers(page);
+        if (scanned == null && children.length > 0) {
+            in.prefetch(children, pageSize);
+        }
+        visitor.startPage(page, depth);
+        for (int i = 0; i < page.cellCount; i++) {
+            visitor.cell(page, i);
+            int columns = page.getColumnCount(i);
+            for (int j = 0; j < columns; j++) {
+                visitor.field(page, i, j);
+            }
+            if (page.overflowPayloads != null && page.overflowPayloads[i] != null) {
+                visitor.overflow(page, i);
+            }
+        }
+        for (int childPageNumber : children) {
+            walk(in, childPageNumber, pageSize, metadata, previous, readers, scanned, visitor, depth + 1);
+        }
+        visitor.endPage(page, depth);
+    }
+
+    /**
+     * Builds the btree from the events of a walk. Each node is added to its
+     * parent once all of its children are in, so an unchanged subtree from
+     * a previous parse can be swapped in whole.
+     */
+    private static class TreeBuilder implements PageVisitor {
+
+        private final BTree<BTreeCell> previous;
+        private final Deque<BTreeNode<BTreeCell>> stack;
+        private BTreeNode<BTreeCell> root;
+
+        private TreeBuilder(BTree<BTreeCell> previous) {
+            this.previous = previous;
+            this.stack = new ArrayDeque<>();
+        }
+
+        @Override
+        public void startPage(BTreeCell page, int depth) {
+            BTreeNode<BTreeCell> node = new BTreeNode<>();
+            node.setData(page);
+            this.stack.push(node);
+        }
+
+        @Override
+        public void cell(BTreeCell page, int cellNumber) {
+        }
+
+        @Override
+        public void field(BTreeCell page, int cellNumber, int column) {
+        }
+
+        @Override
+        public void overflow(BTreeCell page, int cellNumber) {
+        }
+
+        @Override
+        public void endPage(BTreeCell page, int depth) {
+            BTreeNode<BTreeCell> node = PageDecoder.reuseNode(this.stack.pop(), this.previous.findByKey((int) page.pageNumber + 1));
+            if (this.stack.isEmpty()) {
+                this.root = node;
+            } else {
+                this.stack.peek().addChild(node);
+            }
+        }
+
+        private BTreeNode<BTreeCell> getRoot() {
+            return this.root;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.Metadata;
+import battyp.lancaster.sqlitevisualiser.model.exceptions.InvalidFileException;
+
+import java.io.IOException;
+
+/**
+ * <h1> Streaming Database Parser </h1>
+ *
+ * <p>
+ * Parses a database file without building the btree, handing each page
+ * to a visitor as it is read instead. Useful for working out statistics
+ * over the whole file, where only the totals need to be kept.
+ *
+ * @author Paul Batty
+ * @see PageVisitor
+ * @see DatabaseParser
+ * @since 1.0
+ */
+public interface StreamingDatabaseParser {
+
+    /**
+     * Walks the btree of the database file, calling the visitor for each page.
+     *
+     * @param pathToDatabase The string path to the database including file name and extension.
+     * @param metadata The metadata class to fill with the header.
+     * @param visitor The visitor to call.
+     *
+     * @return Metadata class filled with the header data.
+     *
+     * @throws IOException If there is a problem reading the file.
+     * @throws InvalidFileException If there is an unusual format.
+     */
+    public Metadata streamDatabase(final String pathToDatabase, Metadata metadata, PageVisitor visitor) throws IOException, InvalidFileException;
+}
@@ -0,0 +1,271 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SqliteConstants;
+import battyp.lancaster.sqlitevisualiser.model.exceptions.InvalidFileException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <h1> Torn Read Retry </h1>
+ *
+ * <p>
+ * Retries a parse until no commit is written while it runs. The change
+ * counter is read straight from the file before and after, so the tree
+ * is never a mix of two versions. A commit that has written its pages
+ * but not yet page one is only kept out by the shared lock.
+ *
+ * <p>
+ * The page cache is cleared after a torn read, as it may hold pages
+ * from either version.
+ *
+ * @author Paul Batty
+ * @see PageCache
+ * @since 1.0
+ */
+class TornReadRetry {
+
+    private static final int DEFAULT_MAX_RETRIES = 5;
+    private static final long FIRST_RETRY_DELAY = 10;
+
+    private final PageCache pageCache;
+    private int maxRetries;
+    private boolean sharedLock;
+    private final AtomicLong retries;
+    private final AtomicLong tornReads;
+
+    /**
+     * Constructor.
+     *
+     * @param pageCache The page cache to clear after a torn read.
+     */
+    TornReadRetry(PageCache pageCache) {
+        this.pageCache = pageCache;
+        this.maxRetries = DEFAULT_MAX_RETRIES;
+        this.retries = new AtomicLong();
+        this.tornReads = new AtomicLong();
+    }
+
+    /**
+     * Sets the number of times a parse is retried before giving up.
+     *
+     * @param maxRetries Number of retries.
+     */
+    void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    /**
+     * Gets the number of times a parse is retried before giving up.
+     *
+     * @return Number of retries.
+     */
+    int getMaxRetries() {
+        return this.maxRetries;
+    }
+
+    /**
+     * Sets if the shared lock is held while parsing.
+     *
+     * @param sharedLock True to hold the shared lock.
+     */
+    void setSharedLock(boolean sharedLock) {
+        this.sharedLock = sharedLock;
+    }
+
+    /**
+     * Gets if the shared lock is held while parsing.
+     *
+     * @return True if the shared lock is held.
+     */
+    boolean isSharedLock() {
+        return this.sharedLock;
+    }
+
+    /**
+     * Gets the number of parses retried, because the file changed or a
+     * writer held the lock.
+     *
+     * @return Number of retries.
+     */
+    long getRetries() {
+        return this.retries.get();
+    }
+
+    /**
+     * Gets the number of parses where the file changed while it was read.
+     *
+     * @return Number of torn reads.
+     */
+    long getTornReads() {
+        return this.tornReads.get();
+    }
+
+    /**
+     * Resets the retry and torn read counts.
+     */
+    void resetStatistics() {
+        this.retries.set(0);
+        this.tornReads.set(0);
+    }
+
+    /**
+     * Parses the database, retrying with a growing delay until no commit
+     * is written while it is read.
+     *
+     * @param file The database file.
+     * @param snapshot Parses the database once.
+     *
+     * @throws IOException If there is a problem reading the file, or it changed during every attempt.
+     * @throws InvalidFileException If there is an unusual format.
+     */
+    void parse(File file, Snapshot snapshot) throws IOException, InvalidFileException {
+        long delay = FIRST_RETRY_DELAY;
+        for (int attempt = 0; ; attempt++) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                FileLock lock = this.sharedLock ? lockShared(channel) : null;
+                if (!this.sharedLock || lock != null) {
+                    try {
+                        if (snapshot.parse(channel)) {
+                            return;
+                        }
+                    } finally {
+                        if (lock != null && lock.isValid()) {
+                            lock.release();
+                        }
+                    }
+                    this.tornReads.incrementAndGet();
+                    this.pageCache.clear();
+                }
+            }
+
+            if (attempt >= this.maxRetries) {
+                throw new IOException("The database changed during every attempt to parse it");
+            }
+            this.retries.incrementAndGet();
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            delay *= 2;
+        }
+    }
+
+    /**
+     * Checks no commit has been written since a parse started. The
+     * counter does not change on commits to the WAL, but then only
+     * committed frames are read, unless the WAL is restarted.
+     *
+     * @param channel Channel on the file.
+     * @param wal The WAL frames laid over the file, or null if there are none.
+     * @param changeCounter The change counter when the parse started.
+     *
+     * @return True if the file has not changed.
+     *
+     * @throws IOException If there is a problem reading the files.
+     */
+    static boolean isUnchanged(FileChannel channel, WalPageSource wal, int changeCounter) throws IOException {
+        return readChangeCounter(channel) == changeCounter && (wal == null || wal.isCurrent());
+    }
+
+    /**
+     * Reads the change counter straight from the file, skipping the page
+     * cache and the WAL.
+     *
+     * @param channel Channel on the file.
+     *
+     * @return The change counter, or zero if the file is too small to have one.
+     *
+     * @throws IOException If there is a problem reading the file.
+     */
+    static int readChangeCounter(FileChannel channel) throws IOException {
+        ByteBuffer counter = ByteBuffer.allocate(4);
+        while (counter.hasRemaining()) {
+            if (channel.read(counter, SqliteConstants.FILE_CHANGE_COUNTER_OFFSET + counter.position()) < 0) {
+                return 0;
+            }
+        }
+        counter.flip();
+        return counter.getInt();
+    }
+
+    /**
+     * Takes a shared lock the same way Sqlite readers do, holding the
+     * pending byte while the shared range is locked, so a writer waiting
+     * for readers to finish is not starved.
+     *
+     * @param channel Channel on the file.
+     *
+     * @return The lock on the shared range, or null if a writer holds the database.
+     *
+     * @throws IOException If there is a problem locking the file.
+     */
+    private FileLock lockShared(FileChannel channel) throws IOException {
+        try {
+            FileLock pending = channel.tryLock(SqliteConstants.PENDING_BYTE, 1, true);
+            if (pending == null) {
+                return null;
+            }
+            try {
+                return channel.tryLock(SqliteConstants.SHARED_FIRST, SqliteConstants.SHARED_SIZE, true);
+            } finally {
+                pending.release();
+            }
+        } catch (OverlappingFileLockException e) {
+            // another parse in this process holds the lock
+            return null;
+        }
+    }
+
+    /**
+     * A single attempt at a parse.
+     */
+    interface Snapshot {
+
+        /**
+         * Parses the database once, checking the file did not change
+         * while it was read.
+         *
+         * @param channel Channel on the file, used to read the change counter.
+         *
+         * @return True if the parse is a snapshot, false if a commit was written during it.
+         *
+         * @throws IOException If there is a problem reading the file, that was not caused by a commit.
+         * @throws InvalidFileException If there is an unusual format, that was not caused by a commit.
+         */
+        boolean parse(FileChannel channel) throws IOException, InvalidFileException;
+    }
+}
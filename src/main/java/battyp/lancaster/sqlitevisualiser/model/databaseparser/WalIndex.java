@@ -0,0 +1,349 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SqliteConstants;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <h1> Wal Index </h1>
+ *
+ * <p>
+ * Index of the write ahead log next to a database in WAL mode, mapping
+ * each page number to the latest committed frame holding that page.
+ * Frames after the last commit frame, or after a frame with a bad salt
+ * or checksum, are not part of the database and are left out.
+ *
+ * <p>
+ * The index remembers how far into the log it has read, so each update
+ * only reads the frames appended since the last one. When the log is
+ * restarted after a checkpoint the salts change and the index is built
+ * again from the start.
+ *
+ * <p>
+ * The frame map is replaced rather then changed on each update, so the
+ * map handed out by getFrames can be read by other threads while the
+ * index moves on.
+ *
+ * @author Paul Batty
+ * @see WalPageSource
+ * @since 1.0
+ */
+public class WalIndex {
+
+    private final File file;
+
+    private int pageSize;
+    private int checkpointSequence;
+    private int salt1;
+    private int salt2;
+    private ByteOrder checksumOrder;
+
+    private volatile Map<Long, Long> frames;
+    private Set<Long> updatedPages;
+    private long databaseSize;
+    private int frameCount;
+
+    private long nextFrameOffset;
+    private int checksum1;
+    private int checksum2;
+
+    /**
+     * Constructor, the index is empty until it is first updated.
+     *
+     * @param file The WAL file.
+     */
+    public WalIndex(File file) {
+        this.file = file;
+        this.frames = Collections.emptyMap();
+    }
+
+    /**
+     * Reads the frames appended to the log since the last update. If the
+     * log has been restarted, or shrunk, the index is built from the start.
+     *
+     * @throws IOException If there is a problem reading the file.
+     */
+    public synchronized void update() throws IOException {
+        try (RandomAccessFile in = new RandomAccessFile(this.file, "r")) {
+            FileChannel channel = in.getChannel();
+            long length = channel.size();
+            if (length < SqliteConstants.WAL_HEADER_SIZE) {
+                reset();
+                return;
+            }
+
+            ByteBuffer header = read(channel, 0, SqliteConstants.WAL_HEADER_SIZE);
+            if (this.nextFrameOffset == 0 || length < this.nextFrameOffset
+                    || header.getInt(12) != this.checkpointSequence || header.getInt(16) != this.salt1 || header.getInt(20) != this.salt2) {
+                if (!readHeader(header)) {
+                    reset();
+                    return;
+                }
+                this.updatedPages = null;
+            } else {
+                this.updatedPages = new HashSet<>();
+            }
+            readFrames(channel, length);
+        }
+    }
+
+    /**
+     * Gets the WAL file.
+     *
+     * @return The WAL file.
+     */
+    public File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Gets the page size recorded in the WAL header.
+     *
+     * @return The page size, zero if the log is empty.
+     */
+    public synchronized int getPageSize() {
+        return this.pageSize;
+    }
+
+    /**
+     * Gets the checkpoint sequence number from the WAL header.
+     *
+     * @return The checkpoint sequence number.
+     */
+    public synchronized int getCheckpointSequence() {
+        return this.checkpointSequence;
+    }
+
+    /**
+     * Gets the first salt from the WAL header.
+     *
+     * @return The first salt.
+     */
+    public synchronized int getSalt1() {
+        return this.salt1;
+    }
+
+    /**
+     * Gets the second salt from the WAL header.
+     *
+     * @return The second salt.
+     */
+    public synchronized int getSalt2() {
+        return this.salt2;
+    }
+
+    /**
+     * Gets the latest committed frame for each page.
+     *
+     * @return Unmodifiable map of page number to the offset of the page data in the log.
+     */
+    public Map<Long, Long> getFrames() {
+        return this.frames;
+    }
+
+    /**
+     * Gets the number of committed frames in the log.
+     *
+     * @return Number of committed frames.
+     */
+    public synchronized int getFrameCount() {
+        return this.frameCount;
+    }
+
+    /**
+     * Gets the size of the database in pages after the last commit.
+     *
+     * @return Size in pages, zero if there are no commits.
+     */
+    public synchronized long getDatabaseSize() {
+        return this.databaseSize;
+    }
+
+    /**
+     * Checks if there are any committed frames.
+     *
+     * @return True if there are no committed frames.
+     */
+    public boolean isEmpty() {
+        return this.frames.isEmpty();
+    }
+
+    /**
+     * Gets the pages written by the frames read in the last update.
+     *
+     * @return The page numbers, or null if the last update built the index from the start.
+     */
+    public synchronized Set<Long> getUpdatedPages() {
+        return (this.updatedPages == null) ? null : Collections.unmodifiableSet(this.updatedPages);
+    }
+
+    /**
+     * Reads the header and checks its checksum, starting a new index.
+     *
+     * @param header The WAL header.
+     *
+     * @return True if the header is valid.
+     */
+    private boolean readHeader(ByteBuffer header) {
+        int magic = header.getInt(0);
+        if (magic == SqliteConstants.WAL_MAGIC_NUMBER_BIG_ENDIAN) {
+            this.checksumOrder = ByteOrder.BIG_ENDIAN;
+        } else if (magic == SqliteConstants.WAL_MAGIC_NUMBER_LITTLE_ENDIAN) {
+            this.checksumOrder = ByteOrder.LITTLE_ENDIAN;
+        } else {
+            return false;
+        }
+
+        int[] checksum = new int[2];
+        checksum(header, 0, 24, checksum);
+        if (checksum[0] != header.getInt(24) || checksum[1] != header.getInt(28)) {
+            return false;
+        }
+
+        this.pageSize = header.getInt(8);
+        this.checkpointSequence = header.getInt(12);
+        this.salt1 = header.getInt(16);
+        this.salt2 = header.getInt(20);
+        this.checksum1 = checksum[0];
+        this.checksum2 = checksum[1];
+        this.nextFrameOffset = SqliteConstants.WAL_HEADER_SIZE;
+        this.frames = Collections.emptyMap();
+        this.frameCount = 0;
+        this.databaseSize = 0;
+        return true;
+    }
+
+    /**
+     * Reads the frames from the last commit read up to the end of the file.
+     * Frames are only added once their commit frame has been read.
+     *
+     * @param channel The WAL file.
+     * @param length Length of the file.
+     *
+     * @throws IOException If there is a problem reading the file.
+     */
+    private void readFrames(FileChannel channel, long length) throws IOException {
+        int frameSize = SqliteConstants.WAL_FRAME_HEADER_SIZE + this.pageSize;
+        int[] checksum = new int[] {this.checksum1, this.checksum2};
+        Map<Long, Long> pending = new HashMap<>();
+        Map<Long, Long> committed = null;
+        int pendingCount = 0;
+
+        long offset = this.nextFrameOffset;
+        while (offset + frameSize <= length) {
+            ByteBuffer frame = read(channel, offset, frameSize);
+            if (frame.getInt(8) != this.salt1 || frame.getInt(12) != this.salt2) {
+                break;
+            }
+            checksum(frame, 0, 8, checksum);
+            checksum(frame, SqliteConstants.WAL_FRAME_HEADER_SIZE, this.pageSize, checksum);
+            if (checksum[0] != frame.getInt(16) || checksum[1] != frame.getInt(20)) {
+                break;
+            }
+
+            long pageNumber = frame.getInt(0) & 0xFFFFFFFFL;
+            pending.put(pageNumber, offset + SqliteConstants.WAL_FRAME_HEADER_SIZE);
+            pendingCount++;
+            offset += frameSize;
+
+            long commitSize = frame.getInt(4) & 0xFFFFFFFFL;
+            if (commitSize != 0) {
+                if (committed == null) {
+                    committed = new HashMap<>(this.frames);
+                }
+                committed.putAll(pending);
+                if (this.updatedPages != null) {
+                    this.updatedPages.addAll(pending.keySet());
+                }
+                pending.clear();
+                this.frameCount += pendingCount;
+                pendingCount = 0;
+                this.databaseSize = commitSize;
+                this.nextFrameOffset = offset;
+                this.checksum1 = checksum[0];
+                this.checksum2 = checksum[1];
+            }
+        }
+
+        if (committed != null) {
+            this.frames = Collections.unmodifiableMap(committed);
+        }
+    }
+
+    /**
+     * Empties the index, used when the log is missing or invalid.
+     */
+    private void reset() {
+        this.frames = Collections.emptyMap();
+        this.updatedPages = null;
+        this.frameCount = 0;
+        this.databaseSize = 0;
+        this.nextFrameOffset = 0;
+    }
+
+    /**
+     * Adds a section of a buffer to the running WAL checksum.
+     *
+     * @param buffer The buffer to read.
+     * @param offset Start of the section, in bytes.
+     * @param length Length of the section, a multiple of eight.
+     * @param checksum The two running checksum values, updated in place.
+     */
+    private void checksum(ByteBuffer buffer, int offset, int length, int[] checksum) {
+        ByteBuffer data = buffer.duplicate().order(this.checksumOrder);
+        int s0 = checksum[0];
+        int s1 = checksum[1];
+        for (int i = offset; i < offset + length; i += 8) {
+            s0 += data.getInt(i) + s1;
+            s1 += data.getInt(i + 4) + s0;
+        }
+        checksum[0] = s0;
+        checksum[1] = s1;
+    }
+
+    private ByteBuffer read(FileChannel channel, long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SqliteConstants;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * <h1> Wal Page Source </h1>
+ *
+ * <p>
+ * Wraps the page source of a database in WAL mode and lays the pages
+ * from the write ahead log over the pages in the main file. A page
+ * with a committed frame in the log is read from its latest frame,
+ * every other page is read from the main file.
+ *
+ * <p>
+ * The frames are taken from the index when the source is created, so
+ * the source keeps showing the same commit while the index moves on.
+ * Reads are positional, so many threads can read pages at the same time.
+ *
+ * @author Paul Batty
+ * @see WalIndex
+ * @see PageSource
+ * @since 1.0
+ */
+public class WalPageSource implements PageSource {
+
+    private final PageSource source;
+    private final File file;
+    private final RandomAccessFile in;
+    private final FileChannel channel;
+
+    private final Map<Long, Long> frames;
+    private final long pageSize;
+    private final long databaseSize;
+    private final int salt1;
+    private final int salt2;
+
+    /**
+     * Constructor.
+     *
+     * @param source The page source of the main database file.
+     * @param index The index of the WAL file.
+     *
+     * @throws IOException If the WAL file cannot be opened.
+     */
+    public WalPageSource(PageSource source, WalIndex index) throws IOException {
+        this(source, index.getFile(), index.getFrames(), index.getPageSize(), index.getDatabaseSize(), index.getSalt1(), index.getSalt2());
+    }
+
+    private WalPageSource(PageSource source, File file, Map<Long, Long> frames, long pageSize, long databaseSize, int salt1, int salt2) throws IOException {
+        this.source = source;
+        this.file = file;
+        this.in = new RandomAccessFile(file, "r");
+        this.channel = this.in.getChannel();
+        this.frames = frames;
+        this.pageSize = pageSize;
+        this.databaseSize = databaseSize;
+        this.salt1 = salt1;
+        this.salt2 = salt2;
+    }
+
+    /**
+     * Opens a new source over another page source of the main file, showing
+     * the same frames as this one.
+     *
+     * @param source The page source of the main database file.
+     *
+     * @return The new page source.
+     *
+     * @throws IOException If the WAL file cannot be opened.
+     */
+    public WalPageSource reopen(PageSource source) throws IOException {
+        return new WalPageSource(source, this.file, this.frames, this.pageSize, this.databaseSize, this.salt1, this.salt2);
+    }
+
+    /**
+     * Checks the log has not been restarted since the frames were taken,
+     * after a restart the frames are overwritten by new ones.
+     *
+     * @return True if the frames can still be read.
+     *
+     * @throws IOException If there is a problem reading the file.
+     */
+    public boolean isCurrent() throws IOException {
+        if (this.channel.size() < SqliteConstants.WAL_HEADER_SIZE) {
+            return false;
+        }
+        ByteBuffer header = readWal(0, SqliteConstants.WAL_HEADER_SIZE);
+        return header.getInt(16) == this.salt1 && header.getInt(20) == this.salt2;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * The parts of the section that fall on pages in the log are read
+     * from the log, so the file header comes from the latest page one.
+     * Runs of pages that are not in the log are read from the main file
+     * in one go.
+     */
+    @Override
+    public ByteBuffer read(long offset, int length) throws IOException {
+        long firstPage = offset / this.pageSize + 1;
+        long lastPage = (offset + length - 1) / this.pageSize + 1;
+        if (!hasFrame(firstPage, lastPage)) {
+            return this.source.read(offset, length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            long pageNumber = position / this.pageSize + 1;
+            long start = position % this.pageSize;
+            Long frame = this.frames.get(pageNumber);
+            if (frame != null) {
+                int part = (int) Math.min(this.pageSize - start, buffer.remaining());
+                buffer.put(readWal(frame + start, part));
+                position += part;
+            } else {
+                long end = pageNumber;
+                while (end < lastPage && !this.frames.containsKey(end + 1)) {
+                    end++;
+                }
+                int part = (int) Math.min(end * this.pageSize - position, buffer.remaining());
+                buffer.put(this.source.read(position, part));
+                position += part;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ByteBuffer getPage(long pageNumber, long pageSize) throws IOException {
+        Long frame = this.frames.get(pageNumber);
+        if (frame != null && pageSize == this.pageSize) {
+            return readWal(frame, (int) pageSize);
+        }
+        return this.source.getPage(pageNumber, pageSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>
+     * Pages in the log are not passed on, as they are not read from the main file.
+     */
+    @Override
+    public void prefetch(int[] pageNumbers, long pageSize) {
+        int[] missing = new int[pageNumbers.length];
+        int count = 0;
+        for (int pageNumber : pageNumbers) {
+            if (!this.frames.containsKey((long) pageNumber)) {
+                missing[count++] = pageNumber;
+            }
+        }
+        if (count > 0) {
+            this.source.prefetch(Arrays.copyOf(missing, count), pageSize);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long size() {
+        return Math.max(this.source.size(), this.databaseSize * this.pageSize);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.in.close();
+        } finally {
+            this.source.close();
+        }
+    }
+
+    private boolean hasFrame(long firstPage, long lastPage) {
+        for (long pageNumber = firstPage; pageNumber <= lastPage; pageNumber++) {
+            if (this.frames.containsKey(pageNumber)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ByteBuffer readWal(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (this.channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
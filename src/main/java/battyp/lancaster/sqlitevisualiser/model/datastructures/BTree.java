@@ -25,7 +25,14 @@
 package battyp.lancaster.sqlitevisualiser.model.datastructures;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * <h1> B-Tree </h1>
@@ -34,43 +41,63 @@ import java.util.List;
  * This class implements a very basic B-tree data structure with generic
  * typing.  Using BtreeNode, as the nodes inside the tree.
  *
+ * <p>
+ * The tree keeps an index of its loaded nodes by key, for data that is
+ * Indexable, along with the number of nodes on each level. These are
+ * built when the root is set and kept up to date as the nodes are
+ * changed, so looking up a page or counting the nodes does not walk
+ * the tree. A subtree shared with another tree only updates the tree
+ * its parents lead to.
+ *
  * @author Paul Batty
  * @see BTreeNode
+ * @see Indexable
  * @since 0.1
  */
 public class BTree<T> {
 
     private BTreeNode<T> root;
 
+    private final NodeIndex<T> index = new NodeIndex<>();
+    private int[] levelSizes = new int[0];
+    private int numberOfNodes;
+    private int unloadedNodes;
+    private int modifications;
+
     /**
-     * Gets the number of nodes in the tree.
+     * Gets the number of loaded nodes in the tree, the children of
+     * lazy nodes are not loaded or counted.
      *
-     * @return Number of nodes in the tree.
+     * @return Number of loaded nodes in the tree.
      */
-    public int getNumberOfNodes() {
-        if (this.root == null) {
-            return 0;
-        }
+    public synchronized int getNumberOfNodes() {
+        return (this.root == null) ? 0 : this.numberOfNodes;
+    }
 
-        int numberOfNodes = 0;
-        List<BTreeNode<T>> currentNodes = new ArrayList<>();
-        List<BTreeNode<T>> nextNodes = new ArrayList<>();
+    /**
+     * Gets the number of levels of loaded nodes in the tree.
+     *
+     * @return Number of levels, 0 if the tree is empty.
+     */
+    public synchronized int getNumberOfLevels() {
+        return this.levelSizes.length;
+    }
 
-        currentNodes.addAll(this.root.getChildren());
-        while (currentNodes.size() > 0) {
-            for (BTreeNode<T> node : currentNodes) {
-                numberOfNodes += 1;
-                nextNodes.addAll(node.getChildren());
-            }
-            currentNodes = nextNodes;
-            nextNodes = new ArrayList<>();
-        }
-        return numberOfNodes + 1;
+    /**
+     * Gets the number of loaded nodes on a level of the tree.
+     *
+     * @param level The level, the root is on level 0.
+     *
+     * @return Number of nodes on the level, 0 if there is no such level.
+     */
+    public synchronized int getNumberOfNodes(int level) {
+        return (level < 0 || level >= this.levelSizes.length) ? 0 : this.levelSizes[level];
     }
 
     /**
-     * Finds the node with the corresponding data, using depth first
-     * search.
+     * Finds the node with the corresponding data. Indexable data is
+     * only looked up by its key, other data is searched for breadth
+     * first.
      *
      * @param data TABLE_LEAF to search for
      *
@@ -80,6 +107,10 @@ public class BTree<T> {
         if (this.root == null) {
             return null;
         }
+        if (data instanceof Indexable) {
+            BTreeNode<T> node = findByKey(((Indexable) data).getIndexKey());
+            return (node != null && data.equals(node.getData())) ? node : null;
+        }
         if (this.root.getData().equals(data)) {
             return this.root;
         }
@@ -102,24 +133,61 @@ public class BTree<T> {
     }
 
     /**
-     * Finds the node with the corresponding data, using depth first
-     * search, returns true if found else false.
+     * Finds the node with the corresponding data, returns true if
+     * found else false.
      *
      * @param data TABLE_LEAF to search for.
      *
      * @return true if a node is found else false.
+     *
+     * @see #find(Object)
      */
     public boolean exists(final T data) {
         return (find(data) != null);
     }
 
+    /**
+     * Finds the loaded node whose data has the given index key, for
+     * cells this is the page number.
+     *
+     * @param key The key to look up.
+     *
+     * @return The node, or null if no loaded node has the key.
+     */
+    public synchronized BTreeNode<T> findByKey(int key) {
+        return this.index.get(key);
+    }
+
+    /**
+     * Gets whether a loaded node has the given index key.
+     *
+     * @param key The key to look up.
+     *
+     * @return True if there is a node with the key else false.
+     */
+    public boolean containsKey(int key) {
+        return (findByKey(key) != null);
+    }
+
     /**
      * Sets the root to the node passed in.
      *
      * @param node The node to set as root.
      */
-    public void setRoot(BTreeNode<T> node) {
+    public synchronized void setRoot(BTreeNode<T> node) {
+        if (this.root != null && this.root.getTree() == this) {
+            this.root.setTree(null);
+        }
         this.root = node;
+        this.index.clear();
+        this.levelSizes = new int[0];
+        this.numberOfNodes = 0;
+        this.unloadedNodes = 0;
+        this.modifications++;
+        if (node != null) {
+            node.setTree(this);
+            addNodes(node, 0);
+        }
     }
 
     /**
@@ -131,6 +199,62 @@ public class BTree<T> {
         return this.root;
     }
 
+    /**
+     * Gets an iterator over the nodes of the tree. The children of
+     * lazy nodes are loaded as they are reached.
+     *
+     * @param order The order to visit the nodes in.
+     *
+     * @return The iterator, empty if the tree is empty.
+     */
+    public Iterator<BTreeNode<T>> iterator(TraversalOrder order) {
+        BTreeNode<T> root = this.root;
+        return (root == null) ? Collections.emptyIterator() : root.iterator(order);
+    }
+
+    /**
+     * Gets a spliterator over the nodes of the tree, the number of
+     * loaded nodes is given as the estimated size.
+     *
+     * @param order The order to visit the nodes in.
+     *
+     * @return The spliterator, empty if the tree is empty.
+     *
+     * @see BTreeNode#spliterator(TraversalOrder)
+     */
+    public Spliterator<BTreeNode<T>> spliterator(TraversalOrder order) {
+        BTreeNode<T> root;
+        int loaded;
+        synchronized (this) {
+            root = this.root;
+            loaded = this.numberOfNodes;
+        }
+        return (root == null) ? Spliterators.emptySpliterator() : root.spliterator(order, loaded);
+    }
+
+    /**
+     * Gets a sequential stream of the nodes of the tree.
+     *
+     * @param order The order to visit the nodes in.
+     *
+     * @return The stream.
+     */
+    public Stream<BTreeNode<T>> stream(TraversalOrder order) {
+        return StreamSupport.stream(spliterator(order), false);
+    }
+
+    /**
+     * Gets a parallel stream of the nodes of the tree, for work over
+     * the whole tree. The tree should not be changed while the stream runs.
+     *
+     * @param order The order to visit the nodes in.
+     *
+     * @return The stream.
+     */
+    public Stream<BTreeNode<T>> parallelStream(TraversalOrder order) {
+        return StreamSupport.stream(spliterator(order), true);
+    }
+
     /**
      * Gets whether the tree is empty.
      *
@@ -139,4 +263,118 @@ public class BTree<T> {
     public boolean isEmpty() {
         return (this.root == null);
     }
+
+    /**
+     * Updates the index and counts after the children of a node in
+     * this tree have changed.
+     *
+     * @param depth Depth of the node that changed.
+     * @param removed Subtrees taken off the node.
+     * @param added Subtrees added to the node.
+     * @param unloaded Change in the number of lazy nodes.
+     */
+    synchronized void update(int depth, List<BTreeNode<T>> removed, List<BTreeNode<T>> added, int unloaded) {
+        for (BTreeNode<T> child : removed) {
+            removeNodes(child, depth + 1);
+        }
+        int levels = this.levelSizes.length;
+        while (levels > 0 && this.levelSizes[levels - 1] <= 0) {
+            levels--;
+        }
+        if (levels != this.levelSizes.length) {
+            this.levelSizes = Arrays.copyOf(this.levelSizes, levels);
+        }
+        for (BTreeNode<T> child : added) {
+            addNodes(child, depth + 1);
+        }
+        this.unloadedNodes += unloaded;
+        this.modifications++;
+    }
+
+    /**
+     * Updates the index after the data of a node in this tree has
+     * been replaced.
+     *
+     * @param node The node.
+     * @param previous The data the node held before.
+     */
+    synchronized void rekey(BTreeNode<T> node, T previous) {
+        if (previous instanceof Indexable) {
+            this.index.remove(((Indexable) previous).getIndexKey(), node);
+        }
+        T data = node.getData();
+        if (data instanceof Indexable) {
+            this.index.putIfAbsent(((Indexable) data).getIndexKey(), node);
+        }
+        this.modifications++;
+    }
+
+    /**
+     * Adds a subtree of loaded nodes to the index and counts.
+     *
+     * @param node The root of the subtree.
+     * @param depth Depth of the subtree in the tree.
+     */
+    private void addNodes(BTreeNode<T> node, int depth) {
+        if (depth >= this.levelSizes.length) {
+            this.levelSizes = Arrays.copyOf(this.levelSizes, depth + 1);
+        }
+        this.levelSizes[depth]++;
+        this.numberOfNodes++;
+        if (!node.isMaterialised()) {
+            this.unloadedNodes++;
+        }
+        T data = node.getData();
+        if (data instanceof Indexable) {
+            this.index.putIfAbsent(((Indexable) data).getIndexKey(), node);
+        }
+        for (BTreeNode<T> child : node.getLoadedChildren()) {
+            addNodes(child, depth + 1);
+        }
+    }
+
+    /**
+     * Removes a subtree of loaded nodes from the index and counts.
+     *
+     * @param node The root of the subtree.
+     * @param depth Depth of the subtree in the tree.
+     */
+    private void removeNodes(BTreeNode<T> node, int depth) {
+        if (depth < this.levelSizes.length) {
+            this.levelSizes[depth]--;
+        }
+        this.numberOfNodes--;
+        if (!node.isMaterialised()) {
+            this.unloadedNodes--;
+        }
+        T data = node.getData();
+        if (data instanceof Indexable) {
+            this.index.remove(((Indexable) data).getIndexKey(), node);
+        }
+        for (BTreeNode<T> child : node.getLoadedChildren()) {
+            removeNodes(child, depth + 1);
+        }
+    }
+
+    /**
+     * Gets the number of times the tree has been changed, by setting
+     * the root, changing the children of a node or replacing the data
+     * of a node. Like the index, a change to a subtree shared with
+     * another tree is only counted by the tree its parents lead to.
+     *
+     * @return Number of changes.
+     */
+    public synchronized int getModificationCount() {
+        return this.modifications;
+    }
+
+    /**
+     * Gets the number of lazy nodes in the tree, whose children
+     * have not been loaded.
+     *
+     * @return Number of lazy nodes.
+     */
+    public synchronized int getNumberOfLazyNodes() {
+        return (this.root == null) ? 0 : this.unloadedNodes;
+    }
 }
@@ -26,6 +26,17 @@ package battyp.lancaster.sqlitevisualiser.model.datastructures;
 
 import battyp.lancaster.sqlitevisualiser.view.CellType;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Objects;
+
 /**
  * <h1> B-tree Cell </h1>
  *
@@ -34,10 +45,27 @@ import battyp.lancaster.sqlitevisualiser.view.CellType;
  * each cell in the database.  All fields are pubic as this
  * contains no implementation as is meant to be modified.
  *
+ * <p>
+ * Records are kept in their stored form, the serial type and offset of
+ * each column into the page bytes. The typed accessors read the values
+ * straight from the page, and the string previews are only made when
+ * they are first asked for.
+ *
+ * <p>
+ * Records that overflow are read through their payload, large text and
+ * blobs can be streamed from the database with getInputStream or
+ * getChannel rather than copied onto the heap.
+ *
+ * <p>
+ * Only the arrays a page type uses are made, the others are left null.
+ * Left child pointers and the root pages of the tables named by records
+ * share one array, and which records name a table is a bit set.
+ *
  * @author Paul Batty
+ * @see SerialType
  * @since 0.6
  */
-public class BTreeCell {
+public class BTreeCell implements Indexable {
 
     /**
      * Cell type should be from the constants.
@@ -63,9 +91,14 @@ public class BTreeCell {
     public final int cellCount;
 
     /**
-     * The page numbers.
+     * Left child pointer of each cell on an interior page, followed by
+     * the root page of each record naming a table. Leaf pages only hold
+     * the root pages. Null if the page has neither.
+     *
+     * @see #getLeftChildPointer(int)
+     * @see #getChildPageNumber(int)
      */
-    public int[] leftChildPointers;
+    public int[] childPointers;
 
     /**
      * The right child pointer.
@@ -73,40 +106,69 @@ public class BTreeCell {
     public int rightChildPointer;
 
     /**
-     * Payload size.
+     * Payload size, null on table interior pages.
      */
     public long[] payLoadSize;
 
     /**
-     * The row ids.
+     * The row ids, null on index pages.
      */
     public long[] rowId;
 
     /**
-     * Preview data.
+     * Preview data, made from the records when first asked for.
+     *
+     * @see #getPreview(int)
      */
     public String[] data;
 
     /**
-     * Is this data a table.
+     * The records that fit on the page, copied off the page once it
+     * has been parsed so the rest of the page is not kept.
+     */
+    public ByteBuffer page;
+
+    /**
+     * Payloads that spilled onto overflow pages, null for the cells
+     * that fit on the page.
      */
-    public Boolean[] isTable;
+    public OverflowPayload[] overflowPayloads;
 
     /**
-     * Page number of Children.
+     * Decodes the text columns of the records.
      */
-    public int[] childrenPageNumbers;
+    public TextDecoder textDecoder;
 
     /**
-     * Overflow page numbers.
+     * Serial types of each column of each record, null on table
+     * interior pages.
      */
-    public int[] overflowPageNumbers;
+    public int[][] serialTypes;
+
+    /**
+     * Offset of each column of each record into the copied records, or
+     * into the overflow payload if the record overflowed.
+     */
+    public int[][] offsets;
+
+    /**
+     * The cells whose record names a table, null if none do.
+     *
+     * @see #isTable(int)
+     */
+    public BitSet tables;
 
     /**
      * Detects if the cell comparison is changed.
      */
     public boolean changed;
 
+    /**
+     * Digest of the raw page the cell was parsed from, used to
+     * tell if the page has changed since.
+     */
+    public byte[] checksum;
+
     /**
      * Creates a new Btree Cell.
      *
@@ -118,35 +180,498 @@ public class BTreeCell {
         this.cellType = cellType;
         this.cellCount = cellCount;
         this.pageNumber = pageNumber;
-        this.leftChildPointers = new int[cellCount];
-        this.rowId = new long[cellCount];
-        this.payLoadSize = new long[cellCount];
+        if (!isLeaf(cellType)) {
+            this.childPointers = new int[cellCount];
+        }
+        if (cellType == SqliteConstants.TABLE_BTREE_LEAF_CELL || cellType == SqliteConstants.TABLE_BTREE_INTERIOR_CELL) {
+            this.rowId = new long[cellCount];
+        }
+        if (cellType != SqliteConstants.TABLE_BTREE_INTERIOR_CELL) {
+            this.payLoadSize = new long[cellCount];
+            this.serialTypes = new int[cellCount][];
+            this.offsets = new int[cellCount][];
+        }
         this.data = new String[cellCount];
-        this.overflowPageNumbers = new int[cellCount];
-        this.isTable = new Boolean[cellCount];
-        this.childrenPageNumbers = new int[cellCount];
+        this.textDecoder = TextDecoder.UTF_8;
+        this.changed = false;
+    }
+
+    /**
+     * Creates a copy of a Btree Cell that shares its parsed data,
+     * the copy is not marked as changed.
+     *
+     * @param cell The cell to copy.
+     */
+    public BTreeCell(BTreeCell cell) {
+        this.cellType = cell.cellType;
+        this.type = cell.type;
+        this.cellCount = cell.cellCount;
+        this.pageNumber = cell.pageNumber;
+        this.childPointers = cell.childPointers;
+        this.rightChildPointer = cell.rightChildPointer;
+        this.rowId = cell.rowId;
+        this.payLoadSize = cell.payLoadSize;
+        this.data = cell.data;
+        this.page = cell.page;
+        this.overflowPayloads = cell.overflowPayloads;
+        this.textDecoder = cell.textDecoder;
+        this.serialTypes = cell.serialTypes;
+        this.offsets = cell.offsets;
+        this.tables = cell.tables;
+        this.checksum = cell.checksum;
         this.changed = false;
     }
 
     /**
-     * Calculates the hash of this cell
+     * {@inheritDoc}
+     *
+     * <p>
+     * Cells are indexed by the page number they were read from,
+     * counting from one as Sqlite does.
+     */
+    @Override
+    public int getIndexKey() {
+        return (int) this.pageNumber + 1;
+    }
+
+    /**
+     * Gets the left child pointer of a cell.
+     *
+     * @param cellNumber The cell.
+     *
+     * @return The page number, 0 on leaf pages.
+     */
+    public int getLeftChildPointer(int cellNumber) {
+        return isLeaf(this.cellType) ? 0 : this.childPointers[cellNumber];
+    }
+
+    /**
+     * Sets the left child pointer of a cell.
+     *
+     * @param cellNumber The cell.
+     * @param pageNumber The page number.
+     *
+     * @throws IllegalStateException If this is a leaf page.
+     */
+    public void setLeftChildPointer(int cellNumber, int pageNumber) {
+        if (isLeaf(this.cellType)) {
+            throw new IllegalStateException("Leaf pages have no left child pointers");
+        }
+        this.childPointers[cellNumber] = pageNumber;
+    }
+
+    /**
+     * Gets whether the record of a cell names a table.
+     *
+     * @param cellNumber The cell.
+     *
+     * @return True if it names a table else false.
+     */
+    public boolean isTable(int cellNumber) {
+        return (this.tables != null && this.tables.get(cellNumber));
+    }
+
+    /**
+     * Gets the root page of the table the record of a cell names.
+     *
+     * @param cellNumber The cell.
+     *
+     * @return The page number, 0 if the record does not name a table.
+     */
+    public int getChildPageNumber(int cellNumber) {
+        return isTable(cellNumber) ? this.childPointers[getTableOffset() + cellNumber] : 0;
+    }
+
+    /**
+     * Marks the record of a cell as naming a table.
+     *
+     * @param cellNumber The cell.
+     * @param pageNumber The root page of the table.
+     */
+    public void setTable(int cellNumber, int pageNumber) {
+        int offset = getTableOffset();
+        if (this.tables == null) {
+            this.tables = new BitSet(this.cellCount);
+            this.childPointers = (this.childPointers == null) ? new int[this.cellCount] : Arrays.copyOf(this.childPointers, offset + this.cellCount);
+        }
+        this.tables.set(cellNumber);
+        this.childPointers[offset + cellNumber] = pageNumber;
+    }
+
+    /**
+     * Gets the row id of a cell.
+     *
+     * @param cellNumber The cell.
+     *
+     * @return The row id, 0 on index pages.
+     */
+    public long getRowId(int cellNumber) {
+        return (this.rowId == null) ? 0 : this.rowId[cellNumber];
+    }
+
+    /**
+     * Gets the payload size of a cell.
+     *
+     * @param cellNumber The cell.
+     *
+     * @return The payload size, 0 on table interior pages.
+     */
+    public long getPayloadSize(int cellNumber) {
+        return (this.payLoadSize == null) ? 0 : this.payLoadSize[cellNumber];
+    }
+
+    /**
+     * Gets the first overflow page of a cell, the whole chain
+     * is in the overflow payload.
+     *
+     * @param cellNumber The cell.
+     *
+     * @return The page number, 0 if the record fits on the page.
+     */
+    public int getOverflowPageNumber(int cellNumber) {
+        OverflowPayload payload = getPayload(cellNumber);
+        return (payload == null || payload.pages.length == 0) ? 0 : payload.pages[0];
+    }
+
+    /**
+     * Gets the number of columns in a record.
+     *
+     * @param cellNumber The cell the record is in.
+     *
+     * @return Number of columns, 0 if the cell has no record.
+     */
+    public int getColumnCount(int cellNumber) {
+        if (this.serialTypes == null) {
+            return 0;
+        }
+        int[] types = this.serialTypes[cellNumber];
+        return (types == null) ? 0 : types.length;
+    }
+
+    /**
+     * Gets the serial type of a column.
+     *
+     * @param cellNumber The cell the record is in.
+     * @param column The column.
+     *
+     * @return The serial type.
+     */
+    public int getSerialType(int cellNumber, int column) {
+        return this.serialTypes[cellNumber][column];
+    }
+
+    /**
+     * Gets whether a column is null.
+     *
+     * @param cellNumber The cell the record is in.
+     * @param column The column.
+     *
+     * @return True if null else false.
+     */
+    public boolean isNull(int cellNumber, int column) {
+        return this.serialTypes[cellNumber][column] == SerialType.NULL;
+    }
+
+    /**
+     * Gets the value of a column as a long, floats are truncated
+     * and null is 0.
+     *
+     * @param cellNumber The cell the record is in.
+     * @param column The column.
+     *
+     * @return The value.
+     *
+     * @throws IllegalArgumentException If the column is text or a blob.
+     */
+    public long getLong(int cellNumber, int column) {
+        int type = this.serialTypes[cellNumber][column];
+        if (SerialType.isText(type) || SerialType.isBlob(type)) {
+            throw new IllegalArgumentException("Column " + column + " is not a number");
+        }
+        if (SerialType.getSize(type) == 0) {
+            return SerialType.readLong(null, 0, type);
+        }
+        ByteBuffer record = getColumn(cellNumber, column);
+        return SerialType.readLong(record, record.position(), type);
+    }
+
+    /**
+     * Gets the value of a column as a double, null is 0.
+     *
+     * @param cellNumber The cell the record is in.
+     * @param column The column.
+     *
+     * @return The value.
+     *
+     * @throws IllegalArgumentException If the column is text or a blob.
+     */
+    public double getDouble(int cellNumber, int column) {
+        if (this.serialTypes[cellNumber][column] == SerialType.FLOAT64) {
+            ByteBuffer record = getColumn(cellNumber, column);
+            return record.getDouble(record.position());
+        }
+        return getLong(cellNumber, column);
+    }
+
+    /**
+     * Gets the value of a column as text, numbers are converted
+     * to text and null is null. Text and blobs are decoded in the
+     * text encoding of the database.
+     *
+     * @param cellNumber The cell the record is in.
+     * @param column The column.
+     *
+     * @return The value.
+     */
+    public String getText(int cellNumber, int column) {
+        int type = this.serialTypes[cellNumber][column];
+        if (type == SerialType.NULL) {
+            return null;
+        } else if (SerialType.isFloat(type)) {
+            return String.valueOf(getDouble(cellNumber, column));
+        } else if (SerialType.isInteger(type)) {
+            return String.valueOf(getLong(cellNumber, column));
+        }
+        ByteBuffer record = getColumn(cellNumber, column);
+        return this.textDecoder.decode(record, record.position(), SerialType.getSize(type));
+    }
+
+    /**
+     * Gets the bytes of a text or blob column.
+     *
+     * @param cellNumber The cell the record is in.
+     * @param column The column.
+     *
+     * @return Copy of the bytes, null if the column is null.
+     *
+     * @throws IllegalArgumentException If the column is a number.
+     * @throws UncheckedIOException If the column overflowed and cannot be read from the database.
+     */
+    public byte[] getBlob(int cellNumber, int column) {
+        int type = this.serialTypes[cellNumber][column];
+        if (type == SerialType.NULL) {
+            return null;
+        }
+        if (!SerialType.isBlob(type) && !SerialType.isText(type)) {
+            throw new IllegalArgumentException("Column " + column + " is not text or a blob");
+        }
+        byte[] bytes = new byte[SerialType.getSize(type)];
+        getColumn(cellNumber, column).get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Gets a stream over the bytes of a text or blob column. If the
+     * record overflowed and is not loaded, the bytes are read from the
+     * database as the stream is read.
+     *
+     * @param cellNumber The cell the record is in.
+     * @param column The column.
+     *
+     * @return The stream, null if the column is null.
+     *
+     * @throws IllegalArgumentException If the column is a number.
+     */
+    public InputStream getInputStream(int cellNumber, int column) {
+        OverflowPayload payload = getPayload(cellNumber);
+        if (payload == null || payload.isLoaded()) {
+            byte[] bytes = getBlob(cellNumber, column);
+            return (bytes == null) ? null : new ByteArrayInputStream(bytes);
+        }
+        ReadableByteChannel channel = getChannel(cellNumber, column);
+        return (channel == null) ? null : Channels.newInputStream(channel);
+    }
+
+    /**
+     * Gets a channel over the bytes of a text or blob column.
+     *
+     * @param cellNumber The cell the record is in.
+     * @param column The column.
+     *
+     * @return The channel, null if the column is null.
+     *
+     * @throws IllegalArgumentException If the column is a number.
+     *
+     * @see #getInputStream(int, int)
+     */
+    public ReadableByteChannel getChannel(int cellNumber, int column) {
+        int type = this.serialTypes[cellNumber][column];
+        if (type == SerialType.NULL) {
+            return null;
+        }
+        if (!SerialType.isBlob(type) && !SerialType.isText(type)) {
+            throw new IllegalArgumentException("Column " + column + " is not text or a blob");
+        }
+        OverflowPayload payload = getPayload(cellNumber);
+        if (payload == null) {
+            return Channels.newChannel(getInputStream(cellNumber, column));
+        }
+        return payload.getChannel(this.offsets[cellNumber][column], SerialType.getSize(type));
+    }
+
+    /**
+     * Gets the preview of a cell, making it from the record the
+     * first time it is asked for.
+     *
+     * @param cellNumber The cell.
+     *
+     * @return The preview, null if the cell has no data.
+     */
+    public String getPreview(int cellNumber) {
+        if (this.data[cellNumber] == null && this.serialTypes != null && this.serialTypes[cellNumber] != null) {
+            this.data[cellNumber] = renderPreview(cellNumber);
+        }
+        return this.data[cellNumber];
+    }
+
+    /**
+     * Gets the previews of every cell.
+     *
+     * @return The previews.
+     *
+     * @see #getPreview(int)
+     */
+    public String[] getPreviews() {
+        for (int i = 0; i < this.cellCount; i++) {
+            getPreview(i);
+        }
+        return this.data;
+    }
+
+    /**
+     * Makes the preview of a record, the columns separated by commas.
+     *
+     * @param cellNumber The cell the record is in.
+     *
+     * @return The preview.
+     */
+    private String renderPreview(int cellNumber) {
+        StringBuilder builder = new StringBuilder();
+        int columns = getColumnCount(cellNumber);
+        for (int i = 0; i < columns; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            int type = this.serialTypes[cellNumber][i];
+            OverflowPayload payload = getPayload(cellNumber);
+            if (type == SerialType.NULL) {
+                builder.append("NULL");
+            } else if (payload != null && !payload.isLoaded() && (SerialType.isBlob(type) || SerialType.isText(type))) {
+                builder.append('<').append(SerialType.isBlob(type) ? "BLOB" : "TEXT").append(' ').append(SerialType.getSize(type)).append(" bytes>");
+            } else if (SerialType.isBlob(type)) {
+                builder.append("X'");
+                for (byte b : getBlob(cellNumber, i)) {
+                    builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+                }
+                builder.append('\'');
+            } else {
+                builder.append(getText(cellNumber, i));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Gets whether a page type is a leaf, leaves have no left
+     * child pointers.
+     *
+     * @param cellType The page type.
+     *
+     * @return True if a leaf else false.
+     */
+    private static boolean isLeaf(int cellType) {
+        return (cellType == SqliteConstants.TABLE_BTREE_LEAF_CELL || cellType == SqliteConstants.INDEX_BTREE_LEAF_CELL);
+    }
+
+    /**
+     * Gets where the table root pages start in the child pointers,
+     * after the left child pointers on interior pages.
+     *
+     * @return The offset.
+     */
+    private int getTableOffset() {
+        return isLeaf(this.cellType) ? 0 : this.cellCount;
+    }
+
+    /**
+     * Gets the overflow payload of a cell.
+     *
+     * @param cellNumber The cell.
+     *
+     * @return The payload, null if the record fits on the page.
+     */
+    private OverflowPayload getPayload(int cellNumber) {
+        return (this.overflowPayloads == null) ? null : this.overflowPayloads[cellNumber];
+    }
+
+    /**
+     * Gets a buffer positioned at the start of a column. The column is read
+     * from the database if the record overflowed and is not loaded.
+     *
+     * @param cellNumber The cell the record is in.
+     * @param column The column.
+     *
+     * @return Buffer positioned at the column.
+     *
+     * @throws UncheckedIOException If the column cannot be read from the database.
+     */
+    private ByteBuffer getColumn(int cellNumber, int column) {
+        int offset = this.offsets[cellNumber][column];
+        OverflowPayload payload = getPayload(cellNumber);
+        if (payload != null && !payload.isLoaded()) {
+            try {
+                return payload.read(offset, SerialType.getSize(this.serialTypes[cellNumber][column]));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        ByteBuffer record = (payload == null) ? this.page.duplicate() : payload.data.duplicate();
+        record.position(offset);
+        return record;
+    }
+
+    /**
+     * Calculates the hash of this cell, from the page type, child
+     * pointers and row ids, then from the records if it has them else
+     * from the preview data. Records that are not loaded use the hash
+     * taken of them when they were parsed.
      */
     @Override
     public int hashCode() {
         final int prime = 31;
         int hash = 1;
 
-        for( String s : data) {
-            if (s != null) {
-                hash = hash * prime + s.hashCode();
+        hash = hash * prime + this.cellType;
+        hash = hash * prime + this.rightChildPointer;
+        hash = hash * prime + Arrays.hashCode(this.childPointers);
+        hash = hash * prime + Arrays.hashCode(this.rowId);
+        for (int i = 0; i < this.cellCount; i++) {
+            OverflowPayload payload = getPayload(i);
+            if (payload != null && !payload.isLoaded()) {
+                hash = hash * payload.recordHashPower + payload.recordHash;
+            } else if (this.serialTypes != null && this.serialTypes[i] != null) {
+                ByteBuffer record = (payload == null) ? this.page : payload.data;
+                for (int j = 0; j < this.serialTypes[i].length; j++) {
+                    int type = this.serialTypes[i][j];
+                    hash = hash * prime + type;
+                    int offset = this.offsets[i][j];
+                    int end = offset + SerialType.getSize(type);
+                    for (int k = offset; k < end; k++) {
+                        hash = hash * prime + record.get(k);
+                    }
+                }
+            } else if (this.data[i] != null) {
+                hash = hash * prime + this.data[i].hashCode();
             }
         }
         return hash;
     }
 
     /**
-     * Compares to object. They are equal if they contain the
-     * same data.
+     * Compares to object. They are equal if they are the same type of
+     * page, with the same child pointers, row ids and records, or the
+     * same preview data where there are no records. The page numbers
+     * are not compared.
      *
      * @param obj Other node to compare with.
      *
@@ -165,6 +690,97 @@ public class BTreeCell {
         }
 
         BTreeCell cell = (BTreeCell) obj;
-        return this.hashCode() == cell.hashCode();
+        if (this.cellType != cell.cellType || this.cellCount != cell.cellCount
+                || this.rightChildPointer != cell.rightChildPointer
+                || !Arrays.equals(this.childPointers, cell.childPointers)
+                || !Arrays.equals(this.rowId, cell.rowId)
+                || !Arrays.equals(this.payLoadSize, cell.payLoadSize)) {
+            return false;
+        }
+        for (int i = 0; i < this.cellCount; i++) {
+            if (!recordEquals(cell, i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compares a record with the record of the same cell in another
+     * cell. A payload that is not loaded is compared by the hash taken
+     * of it when it was parsed, as the file may have changed since.
+     *
+     * @param cell The other cell.
+     * @param cellNumber The cell the records are in.
+     *
+     * @return True if the records are the same else false.
+     */
+    private boolean recordEquals(BTreeCell cell, int cellNumber) {
+        int[] types = (this.serialTypes == null) ? null : this.serialTypes[cellNumber];
+        int[] otherTypes = (cell.serialTypes == null) ? null : cell.serialTypes[cellNumber];
+        if (types == null || otherTypes == null) {
+            return types == otherTypes && Objects.equals(this.data[cellNumber], cell.data[cellNumber]);
+        }
+        if (!Arrays.equals(types, otherTypes)) {
+            return false;
+        }
+
+        if (!isRecordLoaded(cellNumber) || !cell.isRecordLoaded(cellNumber)) {
+            return hashRecord(cellNumber) == cell.hashRecord(cellNumber);
+        }
+        for (int j = 0; j < types.length; j++) {
+            ByteBuffer column = getColumn(cellNumber, j);
+            ByteBuffer otherColumn = cell.getColumn(cellNumber, j);
+            int size = SerialType.getSize(types[j]);
+            for (int k = 0; k < size; k++) {
+                if (column.get(column.position() + k) != otherColumn.get(otherColumn.position() + k)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the record of a cell is in memory.
+     *
+     * @param cellNumber The cell the record is in.
+     *
+     * @return True if the record is on the page or its payload is loaded.
+     */
+    private boolean isRecordLoaded(int cellNumber) {
+        OverflowPayload payload = getPayload(cellNumber);
+        return payload == null || payload.isLoaded();
+    }
+
+    /**
+     * Hashes the record of a cell the same way as the payload does when
+     * it is not loaded.
+     *
+     * @param cellNumber The cell the record is in.
+     *
+     * @return The hash of the record.
+     *
+     * @see OverflowPayload#hashRecord
+     */
+    private int hashRecord(int cellNumber) {
+        OverflowPayload payload = getPayload(cellNumber);
+        if (payload != null && !payload.isLoaded()) {
+            return payload.recordHash;
+        }
+
+        final int prime = 31;
+        int hash = 0;
+        ByteBuffer record = (payload == null) ? this.page : payload.data;
+        for (int j = 0; j < this.serialTypes[cellNumber].length; j++) {
+            int type = this.serialTypes[cellNumber][j];
+            hash = hash * prime + type;
+            int offset = this.offsets[cellNumber][j];
+            int end = offset + SerialType.getSize(type);
+            for (int k = offset; k < end; k++) {
+                hash = hash * prime + record.get(k);
+            }
+        }
+        return hash;
     }
 }
@@ -24,9 +24,16 @@
 
 package battyp.lancaster.sqlitevisualiser.model.datastructures;
 
+import java.lang.ref.WeakReference;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Stack;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * <h1> B-Tree Node </h1>
@@ -35,8 +42,31 @@ import java.util.Stack;
  * This class is a generic implementation of a node for
  * use inside the Btree data structure.
  *
+ * <p>
+ * A node can be lazy, holding only the page numbers of its children as
+ * placeholders. The children are loaded the first time they are asked for.
+ *
+ * <p>
+ * Changes to the children are passed up to the BTree the node is in, so
+ * the tree can keep its index and counts up to date.
+ *
+ * <p>
+ * The hash of a node is a Merkle hash over its children's data and
+ * hashes. It is worked out once and kept, any change to the node clears
+ * it on the node and its parents, so comparing two unchanged subtrees
+ * does not walk them. Changes made to the data in place are not seen,
+ * call setData to replace it.
+ *
+ * <p>
+ * A subtree can be shared by more than one parent, such as an unchanged
+ * subtree kept from the last parse. A shared node keeps weak references
+ * to its other parents, so a change under it clears the kept hashes up
+ * every parent, and the hashes of other trees are left alone. An old
+ * parent that is no longer used by anything is still collected.
+ *
  * @author Paul Batty
  * @see BTree
+ * @see BTreeNodeLoader
  * @since 0.1
  */
 public class BTreeNode<T> {
@@ -44,6 +74,13 @@ public class BTreeNode<T> {
     private T data;
     private List<BTreeNode<T>> children;
     private BTreeNode<T> parent;
+    private volatile int[] placeholders;
+    private BTreeNodeLoader<T> loader;
+    private volatile BTree<T> tree;
+
+    private volatile boolean hashKept;
+    private int hash;
+    private volatile List<WeakReference<BTreeNode<T>>> otherParents = Collections.emptyList();
 
     /**
      * Creates a new BTreeNode with the specified type.
@@ -74,56 +111,153 @@ public class BTreeNode<T> {
     }
 
     /**
-     * Sets this nodes parent.
+     * Sets this nodes parent. If the node already has another parent
+     * it is kept as one of the other parents, as it may still hold it.
      *
      * @param parent The new parent of the node.
      */
     public void setParent(BTreeNode<T> parent) {
+        if (this.parent != this && this.parent != parent && parent != this) {
+            addOtherParent(this.parent);
+        }
         this.parent = parent;
     }
 
     /**
-     * Adds this node, and all children including, children's children to a stack.
+     * Adds to the other parents of a shared node, dropping those that
+     * have been collected. The list is replaced rather than changed, so
+     * clearing the hashes can read it without a lock.
      *
-     * @return Stack containing all children.
+     * @param parent The parent to add.
      */
-    public Stack<T> childrenToStack() {
-        Stack<T> stack = new Stack<>();
-        addNodesToStack(this, stack);
-        return stack;
+    private synchronized void addOtherParent(BTreeNode<T> parent) {
+        List<WeakReference<BTreeNode<T>>> parents = new ArrayList<>(this.otherParents.size() + 1);
+        for (WeakReference<BTreeNode<T>> other : this.otherParents) {
+            BTreeNode<T> node = other.get();
+            if (node == parent) {
+                return;
+            }
+            if (node != null) {
+                parents.add(other);
+            }
+        }
+        parents.add(new WeakReference<>(parent));
+        this.otherParents = parents;
     }
 
     /**
-     * Takes a tree and turns it into a stack.
+     * Gets the tree this node is the root of.
      *
-     * @param node Root node.
-     * @param stack Stack to add the nodes to.
+     * @return The tree, or null if the node is not the root of a tree.
      */
-    private void addNodesToStack(BTreeNode<T> node, Stack<T> stack) {
-        List<BTreeNode<T>> children = node.getChildren();
-        if (node.getNumberOfChildren() > 0) {
-            for (BTreeNode<T> child : children) {
-                addNodesToStack(child, stack);
-            }
+    BTree<T> getTree() {
+        return this.tree;
+    }
+
+    /**
+     * Sets the tree this node is the root of.
+     *
+     * @param tree The tree, or null.
+     */
+    void setTree(BTree<T> tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * Gets the children that have been loaded, this does not
+     * load the children of a lazy node.
+     *
+     * @return The loaded children.
+     */
+    List<BTreeNode<T>> getLoadedChildren() {
+        return this.children;
+    }
+
+    /**
+     * Gets an iterator over this node and every node under it. The
+     * children of lazy nodes are loaded as they are reached.
+     *
+     * @param order The order to visit the nodes in.
+     *
+     * @return The iterator.
+     */
+    public Iterator<BTreeNode<T>> iterator(TraversalOrder order) {
+        return new BTreeNodeIterator<>(this, order);
+    }
+
+    /**
+     * Gets a spliterator over this node and every node under it. In
+     * pre-order it splits into subtrees, other orders split in batches.
+     *
+     * @param order The order to visit the nodes in.
+     *
+     * @return The spliterator.
+     */
+    public Spliterator<BTreeNode<T>> spliterator(TraversalOrder order) {
+        return spliterator(order, Long.MAX_VALUE);
+    }
+
+    /**
+     * Gets a spliterator over this node and every node under it.
+     *
+     * @param order The order to visit the nodes in.
+     * @param estimate Estimated number of nodes for pre-order, Long.MAX_VALUE if unknown.
+     *
+     * @return The spliterator.
+     */
+    Spliterator<BTreeNode<T>> spliterator(TraversalOrder order, long estimate) {
+        if (order == TraversalOrder.PRE_ORDER) {
+            return new BTreeNodeSpliterator<>(this, estimate);
         }
-        stack.add(node.getData());
+        return Spliterators.spliteratorUnknownSize(iterator(order),
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL);
     }
 
     /**
-     * Gets this nodes children.
+     * Gets a sequential stream of this node and every node under it.
+     *
+     * @param order The order to visit the nodes in.
+     *
+     * @return The stream.
+     */
+    public Stream<BTreeNode<T>> stream(TraversalOrder order) {
+        return StreamSupport.stream(spliterator(order), false);
+    }
+
+    /**
+     * Gets a parallel stream of this node and every node under it, for
+     * work over the whole tree. The tree should not be changed while
+     * the stream runs.
+     *
+     * @param order The order to visit the nodes in.
+     *
+     * @return The stream.
+     */
+    public Stream<BTreeNode<T>> parallelStream(TraversalOrder order) {
+        return StreamSupport.stream(spliterator(order), true);
+    }
+
+    /**
+     * Gets this nodes children, loading them first if the node is lazy.
      *
      * @return This nodes children.
      */
     public List<BTreeNode<T>> getChildren() {
+        materialise();
         return this.children;
     }
 
     /**
-     * Gets the number of children attached to this node.
+     * Gets the number of children attached to this node, this
+     * does not load the children of a lazy node.
      *
      * @return Number of children attached to this node.
      */
     public int getNumberOfChildren() {
+        int[] placeholders = this.placeholders;
+        if (placeholders != null) {
+            return placeholders.length;
+        }
         return children.size();
     }
 
@@ -133,7 +267,78 @@ public class BTreeNode<T> {
      * @return True if the node has children else false.
      */
     public boolean hasChildren() {
-        return (children.size() > 0);
+        return (getNumberOfChildren() > 0);
+    }
+
+    /**
+     * Makes this node lazy, the children are only loaded from the
+     * page numbers the first time they are asked for. Removes any
+     * existing children.
+     *
+     * @param pageNumbers The page numbers of the children.
+     * @param loader The loader to load the children with.
+     */
+    public synchronized void setPlaceholders(int[] pageNumbers, BTreeNodeLoader<T> loader) {
+        boolean wasLazy = (this.placeholders != null);
+        List<BTreeNode<T>> removed = detach(this.children);
+        this.children = new ArrayList<>();
+        if (pageNumbers.length == 0) {
+            this.placeholders = null;
+            this.loader = null;
+        } else {
+            this.placeholders = pageNumbers;
+            this.loader = loader;
+        }
+        updateTree(removed, Collections.emptyList(), (pageNumbers.length == 0 ? 0 : 1) - (wasLazy ? 1 : 0));
+        clearHash();
+    }
+
+    /**
+     * Gets the page numbers of the children that have not been loaded yet.
+     *
+     * @return The page numbers, or an empty array if the children are loaded.
+     */
+    public int[] getPlaceholders() {
+        int[] placeholders = this.placeholders;
+        return (placeholders == null) ? new int[0] : placeholders.clone();
+    }
+
+    /**
+     * Gets whether the children of this node have been loaded.
+     *
+     * @return True if the children are loaded else false.
+     */
+    public boolean isMaterialised() {
+        return (this.placeholders == null);
+    }
+
+    /**
+     * Loads the children of a lazy node, does nothing if
+     * they are already loaded. If the loader can no longer
+     * load them the node is left lazy, as its children are
+     * not known rather than none.
+     */
+    public void materialise() {
+        if (this.placeholders == null) {
+            return;
+        }
+        synchronized (this) {
+            if (this.placeholders == null) {
+                return;
+            }
+            List<BTreeNode<T>> loaded = this.loader.load(this.placeholders);
+            if (loaded == null) {
+                return;
+            }
+            for (BTreeNode<T> child : loaded) {
+                child.setParent(this);
+            }
+            this.children = new ArrayList<>(loaded);
+            this.loader = null;
+            this.placeholders = null;
+            updateTree(Collections.emptyList(), this.children, -1);
+            clearHash();
+        }
     }
 
     /**
@@ -143,10 +348,16 @@ public class BTreeNode<T> {
      * @param children Children to set.
      */
     public void setChildren(List<BTreeNode<T>> children) {
+        boolean wasLazy = (this.placeholders != null);
+        this.placeholders = null;
+        this.loader = null;
+        List<BTreeNode<T>> removed = detach(this.children);
         for (BTreeNode<T> child : children) {
             child.setParent(this);
         }
         this.children = children;
+        updateTree(removed, children, wasLazy ? -1 : 0);
+        clearHash();
     }
 
     /**
@@ -155,8 +366,11 @@ public class BTreeNode<T> {
      * @param child The child node to add.
      */
     public void addChild(BTreeNode<T> child) {
+        materialise();
         child.setParent(this);
         this.children.add(child);
+        updateTree(Collections.emptyList(), Collections.singletonList(child), 0);
+        clearHash();
     }
 
     /**
@@ -165,10 +379,13 @@ public class BTreeNode<T> {
      * @param children The children to add.
      */
     public void addChildren(List<BTreeNode<T>> children) {
+        materialise();
         for (BTreeNode<T> child : children) {
             child.setParent(this);
             this.children.add(child);
         }
+        updateTree(Collections.emptyList(), children, 0);
+        clearHash();
     }
 
     /**
@@ -178,15 +395,24 @@ public class BTreeNode<T> {
      * @param child The child to add.
      */
     public void addChildAt(final int index, BTreeNode<T> child) {
+        materialise();
         child.setParent(this);
         this.children.add(index, child);
+        updateTree(Collections.emptyList(), Collections.singletonList(child), 0);
+        clearHash();
     }
 
     /**
      * removes all children from the node.
      */
     public void removeChildren() {
+        boolean wasLazy = (this.placeholders != null);
+        this.placeholders = null;
+        this.loader = null;
+        List<BTreeNode<T>> removed = detach(this.children);
         this.children = new ArrayList<>();
+        updateTree(removed, Collections.emptyList(), wasLazy ? -1 : 0);
+        clearHash();
     }
 
     /**
@@ -195,7 +421,11 @@ public class BTreeNode<T> {
      * @param child The child to remove.
      */
     public void removeChild(BTreeNode<T> child) {
-        this.children.remove(child);
+        materialise();
+        int index = this.children.indexOf(child);
+        if (index >= 0) {
+            removeChildAt(index);
+        }
     }
 
     /**
@@ -204,7 +434,10 @@ public class BTreeNode<T> {
      * @param index Index of the child to remove.
      */
     public void removeChildAt(final int index) {
-        this.children.remove(index);
+        materialise();
+        BTreeNode<T> child = this.children.remove(index);
+        updateTree(detach(Collections.singletonList(child)), Collections.emptyList(), 0);
+        clearHash();
     }
 
     /**
@@ -222,23 +455,116 @@ public class BTreeNode<T> {
      * @param data The data to set to.
      */
     public void setData(T data) {
+        T previous = this.data;
         this.data = data;
+        int[] depth = new int[1];
+        BTree<T> tree = findTree(depth);
+        if (tree != null) {
+            tree.rekey(this, previous);
+        }
+        clearHash();
+    }
+
+    /**
+     * Clears the kept hash of this node and its parents, the other
+     * parents of a shared node included. A node whose hash is not kept
+     * has no parents with a kept hash, so this stops at the first one.
+     */
+    private void clearHash() {
+        BTreeNode<T> node = this;
+        while (node.hashKept) {
+            node.hashKept = false;
+            for (WeakReference<BTreeNode<T>> other : node.otherParents) {
+                BTreeNode<T> parent = other.get();
+                if (parent != null) {
+                    parent.clearHash();
+                }
+            }
+            if (node.parent == node) {
+                return;
+            }
+            node = node.parent;
+        }
+    }
+
+    /**
+     * Unlinks removed children from this node, so later changes to
+     * them are not passed up to this nodes tree.
+     *
+     * @param removed The children that were removed.
+     *
+     * @return The removed children.
+     */
+    private List<BTreeNode<T>> detach(List<BTreeNode<T>> removed) {
+        for (BTreeNode<T> child : removed) {
+            if (child.parent == this) {
+                child.parent = child;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Passes a change to the children of this node up to the tree.
+     *
+     * @param removed Subtrees taken off this node.
+     * @param added Subtrees added to this node.
+     * @param unloaded Change in the number of lazy nodes.
+     */
+    private void updateTree(List<BTreeNode<T>> removed, List<BTreeNode<T>> added, int unloaded) {
+        int[] depth = new int[1];
+        BTree<T> tree = findTree(depth);
+        if (tree != null) {
+            tree.update(depth[0], removed, added, unloaded);
+        }
+    }
+
+    /**
+     * Finds the tree this node is in by following the parents up to
+     * the root of a tree.
+     *
+     * @param depth Set to the depth of this node in the tree.
+     *
+     * @return The tree, or null if the node is not in a tree.
+     */
+    private BTree<T> findTree(int[] depth) {
+        BTreeNode<T> node = this;
+        while (true) {
+            BTree<T> tree = node.tree;
+            if (tree != null && tree.getRoot() == node) {
+                return tree;
+            }
+            if (node.parent == node) {
+                return null;
+            }
+            node = node.parent;
+            depth[0]++;
+        }
     }
 
     /**
      * calculate the hash of this node, sum of all children hashes.
+     * The hash is kept until the node or one of its children changes.
+     * Only loaded children are hashed, a lazy node hashes the page
+     * numbers of its children instead of loading them.
      */
     @Override
     public int hashCode() {
-        if (this.getNumberOfChildren() == 0) {
-            return 1;
+        if (this.hashKept) {
+            return this.hash;
         }
-        final int prime = 31;
         int hash = 1;
-        for (BTreeNode<T> child : children) {
+        final int prime = 31;
+        int[] placeholders = this.placeholders;
+        if (placeholders != null) {
+            hash = hash * prime + Arrays.hashCode(placeholders);
+        }
+        for (BTreeNode<T> child : this.children) {
             hash = hash * prime + child.hashCode();
             hash = hash * prime + child.getData().hashCode();
         }
+        this.hash = hash;
+        this.hashKept = true;
         return hash;
     }
 
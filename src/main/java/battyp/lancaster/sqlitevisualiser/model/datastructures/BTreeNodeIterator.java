@@ -0,0 +1,143 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.datastructures;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * <h1> B-Tree Node Iterator </h1>
+ *
+ * <p>
+ * Walks the nodes under a node in a traversal order. The nodes still
+ * to visit are kept on an explicit stack or queue rather than the call
+ * stack, so a deep tree cannot overflow it, and each node is only
+ * reached when it is asked for.
+ *
+ * <p>
+ * The children of lazy nodes are loaded as they are reached. The
+ * iterator is not synchronized and the tree should not be changed
+ * while it is in use.
+ *
+ * @author Paul Batty
+ * @see TraversalOrder
+ * @since 1.0
+ */
+class BTreeNodeIterator<T> implements Iterator<BTreeNode<T>> {
+
+    private final TraversalOrder order;
+
+    /* pre-order stack or level-order queue */
+    private final ArrayDeque<BTreeNode<T>> pending;
+
+    /* post-order path from the root, with the next child to visit of each node */
+    private BTreeNode<?>[] path;
+    private int[] positions;
+    private int depth;
+
+    /**
+     * Creates an iterator over a node and everything under it.
+     *
+     * @param root The node to start from.
+     * @param order The order to visit the nodes in.
+     */
+    BTreeNodeIterator(BTreeNode<T> root, TraversalOrder order) {
+        this.order = order;
+        this.pending = new ArrayDeque<>();
+        if (order == TraversalOrder.POST_ORDER) {
+            this.path = new BTreeNode<?>[8];
+            this.positions = new int[8];
+            this.path[0] = root;
+            this.depth = 1;
+        } else {
+            this.pending.add(root);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext() {
+        return (this.order == TraversalOrder.POST_ORDER) ? this.depth > 0 : !this.pending.isEmpty();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BTreeNode<T> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        switch (this.order) {
+            case PRE_ORDER:
+                return nextPreOrder();
+            case POST_ORDER:
+                return nextPostOrder();
+            default:
+                return nextLevelOrder();
+        }
+    }
+
+    private BTreeNode<T> nextPreOrder() {
+        BTreeNode<T> node = this.pending.pop();
+        List<BTreeNode<T>> children = node.getChildren();
+        for (int i = children.size() - 1; i >= 0; i--) {
+            this.pending.push(children.get(i));
+        }
+        return node;
+    }
+
+    private BTreeNode<T> nextLevelOrder() {
+        BTreeNode<T> node = this.pending.poll();
+        this.pending.addAll(node.getChildren());
+        return node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private BTreeNode<T> nextPostOrder() {
+        while (true) {
+            BTreeNode<T> node = (BTreeNode<T>) this.path[this.depth - 1];
+            List<BTreeNode<T>> children = node.getChildren();
+            int position = this.positions[this.depth - 1];
+            if (position == children.size()) {
+                this.path[--this.depth] = null;
+                return node;
+            }
+            this.positions[this.depth - 1]++;
+            if (this.depth == this.path.length) {
+                this.path = Arrays.copyOf(this.path, this.depth * 2);
+                this.positions = Arrays.copyOf(this.positions, this.depth * 2);
+            }
+            this.path[this.depth] = children.get(position);
+            this.positions[this.depth] = 0;
+            this.depth++;
+        }
+    }
+}
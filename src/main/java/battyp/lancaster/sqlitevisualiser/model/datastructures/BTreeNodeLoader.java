@@ -0,0 +1,52 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.datastructures;
+
+import java.util.List;
+
+/**
+ * <h1> B-Tree Node Loader </h1>
+ *
+ * <p>
+ * Loads the children of a lazy BTreeNode. A lazy node only holds the page
+ * numbers of its children until they are first asked for, the loader is
+ * then called to parse those pages into nodes.
+ *
+ * @author Paul Batty
+ * @see BTreeNode
+ * @since 1.0
+ */
+public interface BTreeNodeLoader<T> {
+
+    /**
+     * Loads the nodes for the given page numbers.
+     *
+     * @param pageNumbers The page numbers of the children to load.
+     *
+     * @return The loaded nodes, in the same order as the page numbers,
+     *         or null if they can no longer be loaded.
+     */
+    public List<BTreeNode<T>> load(int[] pageNumbers);
+}
@@ -0,0 +1,142 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.datastructures;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * <h1> B-Tree Node Spliterator </h1>
+ *
+ * <p>
+ * Walks the nodes under a node in pre-order, and splits by handing
+ * whole subtrees to the other half. The subtrees still to visit are
+ * kept on a stack, the next one on top, so the half split off is the
+ * subtrees nearest the top. A lone subtree is split by visiting its
+ * root first and splitting its children.
+ *
+ * <p>
+ * The children of lazy nodes are loaded as they are reached. The
+ * tree should not be changed while it is being walked.
+ *
+ * @author Paul Batty
+ * @see BTreeNodeIterator
+ * @since 1.0
+ */
+class BTreeNodeSpliterator<T> implements Spliterator<BTreeNode<T>> {
+
+    /* visited before the stack, its children are already on the stack */
+    private BTreeNode<T> head;
+    private final ArrayDeque<BTreeNode<T>> stack;
+    private long estimate;
+
+    /**
+     * Creates a spliterator over a node and everything under it.
+     *
+     * @param root The node to start from.
+     * @param estimate Estimated number of nodes, Long.MAX_VALUE if unknown.
+     */
+    BTreeNodeSpliterator(BTreeNode<T> root, long estimate) {
+        this.stack = new ArrayDeque<>();
+        this.stack.push(root);
+        this.estimate = estimate;
+    }
+
+    private BTreeNodeSpliterator(BTreeNode<T> head, ArrayDeque<BTreeNode<T>> stack, long estimate) {
+        this.head = head;
+        this.stack = stack;
+        this.estimate = estimate;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean tryAdvance(Consumer<? super BTreeNode<T>> action) {
+        if (this.head != null) {
+            BTreeNode<T> node = this.head;
+            this.head = null;
+            action.accept(node);
+            return true;
+        }
+        BTreeNode<T> node = this.stack.poll();
+        if (node == null) {
+            return false;
+        }
+        pushChildren(node);
+        action.accept(node);
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Spliterator<BTreeNode<T>> trySplit() {
+        if (this.head == null && this.stack.size() == 1) {
+            this.head = this.stack.pop();
+            pushChildren(this.head);
+        }
+        int size = this.stack.size();
+        if (size < 2) {
+            return null;
+        }
+
+        ArrayDeque<BTreeNode<T>> prefix = new ArrayDeque<>();
+        for (int i = 0; i < size / 2; i++) {
+            prefix.addLast(this.stack.pollFirst());
+        }
+        long half = this.estimate >>> 1;
+        this.estimate -= half;
+        BTreeNodeSpliterator<T> split = new BTreeNodeSpliterator<>(this.head, prefix, half);
+        this.head = null;
+        return split;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long estimateSize() {
+        return this.estimate;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int characteristics() {
+        return ORDERED | DISTINCT | NONNULL;
+    }
+
+    private void pushChildren(BTreeNode<T> node) {
+        List<BTreeNode<T>> children = node.getChildren();
+        for (int i = children.size() - 1; i >= 0; i--) {
+            this.stack.push(children.get(i));
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.datastructures;
+
+/**
+ * <h1> Estimate </h1>
+ *
+ * <p>
+ * A value estimated from a sample, with the margin of its 95%
+ * confidence interval. A margin of zero means the value is exact.
+ *
+ * @author Paul Batty
+ * @see SampleEstimate
+ * @since 1.0
+ */
+public class Estimate {
+
+    /**
+     * The estimated value.
+     */
+    public final double value;
+
+    /**
+     * Half the width of the confidence interval.
+     */
+    public final double margin;
+
+    /**
+     * Constructor.
+     *
+     * @param value The estimated value.
+     * @param margin Half the width of the confidence interval.
+     */
+    public Estimate(double value, double margin) {
+        this.value = value;
+        this.margin = margin;
+    }
+
+    /**
+     * Gets the bottom of the confidence interval.
+     *
+     * @return The lowest likely value.
+     */
+    public double getLow() {
+        return this.value - this.margin;
+    }
+
+    /**
+     * Gets the top of the confidence interval.
+     *
+     * @return The highest likely value.
+     */
+    public double getHigh() {
+        return this.value + this.margin;
+    }
+
+    /**
+     * Checks if the interval holds the value.
+     *
+     * @param actual The value to check.
+     *
+     * @return True if the value is within the interval.
+     */
+    public boolean contains(double actual) {
+        return actual >= getLow() && actual <= getHigh();
+    }
+
+    /**
+     * Formats the estimate as the value plus or minus the margin.
+     *
+     * @param format Format for each number, such as %.0f.
+     *
+     * @return The formatted estimate.
+     */
+    public String format(String format) {
+        return String.format(format + " \u00b1 " + format, this.value, this.margin);
+    }
+}
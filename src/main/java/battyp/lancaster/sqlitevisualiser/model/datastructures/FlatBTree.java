@@ -0,0 +1,343 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.datastructures;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * <h1> Flat B-Tree </h1>
+ *
+ * <p>
+ * A tree of pages kept in flat arrays, one slot per node, rather than
+ * as BTreeNode objects. The parent, first child and next sibling of each
+ * node, with its page number and page type, are primitive arrays, so
+ * the tree can be walked and searched by page number without following
+ * node objects.
+ *
+ * <p>
+ * A copy is made beside the BTreeNode graph, which the parser, the lazy
+ * loading and the live updates still use, so it adds to the heap rather
+ * than replacing the nodes. The log keeps the copy of the last version
+ * between updates, so it is only made once for each version.
+ *
+ * <p>
+ * Nodes are numbered in the order they are added, a parent is always
+ * added before its children. Page numbers are dense within a file, so
+ * the index of pages to nodes is an array by page number.
+ *
+ * @author Paul Batty
+ * @see TreeView
+ * @see BTree
+ * @since 1.0
+ */
+public class FlatBTree implements TreeView {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int size;
+    private int[] parents;
+    private int[] firstChildren;
+    private int[] lastChildren;
+    private int[] nextSiblings;
+    private int[] pageNumbers;
+    private byte[] pageTypes;
+    private BTreeCell[] cells;
+    private final BitSet unloaded;
+
+    private int[] nodesByPage;
+
+    private int[] hashes;
+    private boolean hashed;
+
+    /**
+     * Creates an empty tree.
+     */
+    public FlatBTree() {
+        this.parents = new int[INITIAL_CAPACITY];
+        this.firstChildren = new int[INITIAL_CAPACITY];
+        this.lastChildren = new int[INITIAL_CAPACITY];
+        this.nextSiblings = new int[INITIAL_CAPACITY];
+        this.pageNumbers = new int[INITIAL_CAPACITY];
+        this.pageTypes = new byte[INITIAL_CAPACITY];
+        this.cells = new BTreeCell[INITIAL_CAPACITY];
+        this.unloaded = new BitSet();
+        this.nodesByPage = new int[0];
+    }
+
+    /**
+     * Copies the loaded nodes of a tree. The children of lazy nodes are
+     * not loaded, the nodes are marked as not loaded instead.
+     *
+     * @param tree The tree to copy.
+     *
+     * @return The copy.
+     */
+    public static FlatBTree copyOf(BTree<BTreeCell> tree) {
+        FlatBTree flat = new FlatBTree();
+        BTreeNode<BTreeCell> root = tree.getRoot();
+        if (root == null) {
+            return flat;
+        }
+
+        // depth first, so the nodes are numbered in pre-order
+        List<BTreeNode<BTreeCell>> nodes = new ArrayList<>();
+        Deque<BTreeNode<BTreeCell>> stack = new ArrayDeque<>();
+        Deque<Integer> parents = new ArrayDeque<>();
+        stack.push(root);
+        parents.push(NONE);
+        while (!stack.isEmpty()) {
+            BTreeNode<BTreeCell> node = stack.pop();
+            int id = flat.add(parents.pop(), node.getData());
+            nodes.add(node);
+            if (!node.isMaterialised()) {
+                flat.unloaded.set(id);
+                continue;
+            }
+            List<BTreeNode<BTreeCell>> children = node.getChildren();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+                parents.push(id);
+            }
+        }
+
+        // the nodes keep their hashes, take them rather than hash every cell again
+        if (flat.unloaded.isEmpty()) {
+            flat.hashes = new int[flat.size];
+            for (int i = 0; i < flat.size; i++) {
+                flat.hashes[i] = nodes.get(i).hashCode();
+            }
+            flat.hashed = true;
+        }
+        return flat;
+    }
+
+    /**
+     * Adds a node to the tree, as the last child of its parent.
+     *
+     * @param parent The parent, or NONE to add the root.
+     * @param cell The cell of the node.
+     *
+     * @return The new node.
+     *
+     * @throws IllegalArgumentException If the parent is not in the tree, or a second root is added.
+     */
+    public int add(int parent, BTreeCell cell) {
+        if ((parent == NONE) != (this.size == 0) || parent >= this.size) {
+            throw new IllegalArgumentException("Invalid parent " + parent);
+        }
+        if (this.size == this.parents.length) {
+            grow(this.size * 2);
+        }
+
+        int node = this.size++;
+        this.parents[node] = parent;
+        this.firstChildren[node] = NONE;
+        this.lastChildren[node] = NONE;
+        this.nextSiblings[node] = NONE;
+        this.pageNumbers[node] = cell.getIndexKey();
+        this.pageTypes[node] = (byte) cell.cellType;
+        this.cells[node] = cell;
+        if (parent != NONE) {
+            if (this.firstChildren[parent] == NONE) {
+                this.firstChildren[parent] = node;
+            } else {
+                this.nextSiblings[this.lastChildren[parent]] = node;
+            }
+            this.lastChildren[parent] = node;
+        }
+        indexPage(this.pageNumbers[node], node);
+        this.hashed = false;
+        return node;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getRoot() {
+        return (this.size == 0) ? NONE : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BTreeCell getCell(int node) {
+        return this.cells[check(node)];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getPageNumber(int node) {
+        return this.pageNumbers[check(node)];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getPageType(int node) {
+        return this.pageTypes[check(node)] & 0xff;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getParent(int node) {
+        return this.parents[check(node)];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getFirstChild(int node) {
+        return this.firstChildren[check(node)];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNextSibling(int node) {
+        return this.nextSiblings[check(node)];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isLoaded(int node) {
+        return !this.unloaded.get(check(node));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int findPage(int pageNumber) {
+        return (pageNumber < 1 || pageNumber >= this.nodesByPage.length) ? NONE : this.nodesByPage[pageNumber];
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getHash(int node) {
+        check(node);
+        if (!this.hashed) {
+            computeHashes();
+        }
+        return this.hashes[node];
+    }
+
+    /**
+     * Works out the hash of every node. Children are always after
+     * their parent, so going backwards reaches them first.
+     */
+    private void computeHashes() {
+        final int prime = 31;
+        int[] hashes = new int[this.size];
+        for (int node = this.size - 1; node >= 0; node--) {
+            int hash = 1;
+            for (int child = this.firstChildren[node]; child != NONE; child = this.nextSiblings[child]) {
+                hash = hash * prime + hashes[child];
+                hash = hash * prime + this.cells[child].hashCode();
+            }
+            hashes[node] = hash;
+        }
+        this.hashes = hashes;
+        this.hashed = true;
+    }
+
+    /**
+     * Adds a page to the index, the first node added for a page
+     * is the one found.
+     *
+     * @param pageNumber The page number.
+     * @param node The node.
+     */
+    private void indexPage(int pageNumber, int node) {
+        if (pageNumber < 1) {
+            return;
+        }
+        if (pageNumber >= this.nodesByPage.length) {
+            int length = Math.max(pageNumber + 1, this.nodesByPage.length * 2);
+            int previous = this.nodesByPage.length;
+            this.nodesByPage = Arrays.copyOf(this.nodesByPage, length);
+            Arrays.fill(this.nodesByPage, previous, length, NONE);
+        }
+        if (this.nodesByPage[pageNumber] == NONE) {
+            this.nodesByPage[pageNumber] = node;
+        }
+    }
+
+    /**
+     * Grows the arrays to a new capacity.
+     *
+     * @param capacity The new capacity.
+     */
+    private void grow(int capacity) {
+        this.parents = Arrays.copyOf(this.parents, capacity);
+        this.firstChildren = Arrays.copyOf(this.firstChildren, capacity);
+        this.lastChildren = Arrays.copyOf(this.lastChildren, capacity);
+        this.nextSiblings = Arrays.copyOf(this.nextSiblings, capacity);
+        this.pageNumbers = Arrays.copyOf(this.pageNumbers, capacity);
+        this.pageTypes = Arrays.copyOf(this.pageTypes, capacity);
+        this.cells = Arrays.copyOf(this.cells, capacity);
+    }
+
+    /**
+     * Checks a node is in the tree.
+     *
+     * @param node The node.
+     *
+     * @return The node.
+     *
+     * @throws IndexOutOfBoundsException If the node is not in the tree.
+     */
+    private int check(int node) {
+        if (node < 0 || node >= this.size) {
+            throw new IndexOutOfBoundsException("Node " + node + " is not in the tree");
+        }
+        return node;
+    }
+}
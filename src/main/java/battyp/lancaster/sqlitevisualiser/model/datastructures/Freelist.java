@@ -0,0 +1,131 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.datastructures;
+
+import java.util.BitSet;
+
+/**
+ * <h1> Freelist </h1>
+ *
+ * <p>
+ * Holds the pages on the freelist of a database, the pages that are
+ * no longer used and would be given back by a vacuum. The freelist is
+ * a chain of trunk pages, each listing a number of leaf pages.
+ *
+ * <p>
+ * Free pages are kept in bitsets indexed by page number, so even a
+ * freelist with millions of pages only takes a bit for each page.
+ *
+ * @author Paul Batty
+ * @see Metadata
+ * @since 1.0
+ */
+public class Freelist {
+
+    /**
+     * Every free page, trunk and leaf.
+     */
+    public final BitSet pages;
+
+    /**
+     * The free leaf pages.
+     */
+    public final BitSet leafPages;
+
+    /**
+     * The trunk pages in the order of the chain.
+     */
+    public int[] trunkPages;
+
+    /**
+     * The cell drawn for the freelist, with a cell for each trunk page,
+     * null if the freelist is empty.
+     */
+    public BTreeCell cell;
+
+    /**
+     * Why the freelist could not be read in full, null if it was. The
+     * pages read before the problem are kept.
+     */
+    public String problem;
+
+    /**
+     * Creates an empty freelist.
+     */
+    public Freelist() {
+        this.pages = new BitSet();
+        this.leafPages = new BitSet();
+        this.trunkPages = new int[0];
+    }
+
+    /**
+     * Gets whether a page is on the freelist.
+     *
+     * @param pageNumber The page number, Sqlite starts counting at one.
+     *
+     * @return True if free else false.
+     */
+    public boolean isFree(long pageNumber) {
+        return pageNumber > 0 && pageNumber <= Integer.MAX_VALUE && this.pages.get((int) pageNumber);
+    }
+
+    /**
+     * Gets the number of pages on the freelist.
+     *
+     * @return Number of trunk and leaf pages.
+     */
+    public int getPageCount() {
+        return this.pages.cardinality();
+    }
+
+    /**
+     * Gets the number of leaf pages on the freelist.
+     *
+     * @return Number of leaf pages.
+     */
+    public int getLeafCount() {
+        return this.leafPages.cardinality();
+    }
+
+    /**
+     * Gets the number of trunk pages on the freelist.
+     *
+     * @return Number of trunk pages.
+     */
+    public int getTrunkCount() {
+        return this.trunkPages.length;
+    }
+
+    /**
+     * Gets the number of bytes a vacuum would give back.
+     *
+     * @param pageSize The page size.
+     *
+     * @return Size of the free pages in bytes.
+     */
+    public long getReclaimableBytes(int pageSize) {
+        return (long) getPageCount() * pageSize;
+    }
+}
@@ -43,6 +43,11 @@ package battyp.lancaster.sqlitevisualiser.model.datastructures;
  */
 public class Metadata {
 
+    /**
+     * Number of entries of a database whose rows were not counted.
+     */
+    public static final int ENTRIES_NOT_COUNTED = -1;
+
     /**
      * The database file name.
      */
@@ -104,6 +109,28 @@ public class Metadata {
      */
     public int totalFreeListPages;
 
+    /**
+     * The pages on the freelist, walked from the first freelist page.
+     */
+    public Freelist freelist;
+
+    /**
+     * The pointer map of an auto-vacuum database, null if the
+     * database is not auto-vacuum.
+     */
+    public PointerMap pointerMap;
+
+    /**
+     * What every page in the file is used for, null if the pages
+     * were not classified.
+     */
+    public PageMap pageMap;
+
+    /**
+     * The estimates of a sampled parse, null if every page was parsed.
+     */
+    public SampleEstimate sampleEstimate;
+
     /**
      * The schema cookie.
      */
@@ -132,6 +159,11 @@ public class Metadata {
      */
     public int textEncoding;
 
+    /**
+     * Decoder for the text encoding, picked from the header.
+     */
+    public TextDecoder textDecoder;
+
     /**
      * The User version set by user_version_pragma.
      */
@@ -166,7 +198,8 @@ public class Metadata {
     public int numberOfTables;
 
     /**
-     * Number of entries / rows in the database.
+     * Number of entries / rows in the database, or ENTRIES_NOT_COUNTED
+     * if the parse was lazy or sampled.
      */
     public int numberOfEntries;
 
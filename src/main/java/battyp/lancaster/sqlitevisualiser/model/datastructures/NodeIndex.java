@@ -0,0 +1,182 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.datastructures;
+
+/**
+ * <h1> Node Index </h1>
+ *
+ * <p>
+ * Map of int keys to the nodes of a BTree. The keys are kept in a
+ * primitive array with open addressing, so looking up a node does
+ * not box the key or walk a chain of entries.
+ *
+ * @author Paul Batty
+ * @see BTree
+ * @since 1.0
+ */
+class NodeIndex<T> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] keys;
+    private BTreeNode<T>[] nodes;
+    private int size;
+
+    /**
+     * Creates an empty index.
+     */
+    NodeIndex() {
+        clear();
+    }
+
+    /**
+     * Removes all the nodes from the index.
+     */
+    @SuppressWarnings("unchecked")
+    void clear() {
+        this.keys = new int[INITIAL_CAPACITY];
+        this.nodes = (BTreeNode<T>[]) new BTreeNode<?>[INITIAL_CAPACITY];
+        this.size = 0;
+    }
+
+    /**
+     * Gets the number of nodes in the index.
+     *
+     * @return Number of nodes.
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Gets the node with the key.
+     *
+     * @param key The key.
+     *
+     * @return The node, or null if there is none.
+     */
+    BTreeNode<T> get(int key) {
+        int mask = this.keys.length - 1;
+        for (int i = mix(key) & mask; this.nodes[i] != null; i = (i + 1) & mask) {
+            if (this.keys[i] == key) {
+                return this.nodes[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds a node under the key, if there is not already a node
+     * with the key.
+     *
+     * @param key The key.
+     * @param node The node.
+     */
+    void putIfAbsent(int key, BTreeNode<T> node) {
+        if ((this.size + 1) * 4 > this.keys.length * 3) {
+            resize(this.keys.length * 2);
+        }
+        int mask = this.keys.length - 1;
+        int i = mix(key) & mask;
+        for (; this.nodes[i] != null; i = (i + 1) & mask) {
+            if (this.keys[i] == key) {
+                return;
+            }
+        }
+        this.keys[i] = key;
+        this.nodes[i] = node;
+        this.size++;
+    }
+
+    /**
+     * Removes the key, only if it is held by the given node.
+     *
+     * @param key The key.
+     * @param node The node.
+     */
+    void remove(int key, BTreeNode<T> node) {
+        int mask = this.keys.length - 1;
+        int i = mix(key) & mask;
+        for (; this.nodes[i] != null; i = (i + 1) & mask) {
+            if (this.keys[i] == key) {
+                break;
+            }
+        }
+        if (this.nodes[i] != node) {
+            return;
+        }
+        this.nodes[i] = null;
+        this.size--;
+
+        // Shift back the entries after the gap that would no longer be found.
+        int gap = i;
+        for (int j = (gap + 1) & mask; this.nodes[j] != null; j = (j + 1) & mask) {
+            int home = mix(this.keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                this.keys[gap] = this.keys[j];
+                this.nodes[gap] = this.nodes[j];
+                this.nodes[j] = null;
+                gap = j;
+            }
+        }
+    }
+
+    /**
+     * Moves the entries into arrays of a new capacity.
+     *
+     * @param capacity The new capacity, a power of two.
+     */
+    @SuppressWarnings("unchecked")
+    private void resize(int capacity) {
+        int[] oldKeys = this.keys;
+        BTreeNode<T>[] oldNodes = this.nodes;
+        this.keys = new int[capacity];
+        this.nodes = (BTreeNode<T>[]) new BTreeNode<?>[capacity];
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldNodes[j] != null) {
+                int i = mix(oldKeys[j]) & mask;
+                while (this.nodes[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                this.keys[i] = oldKeys[j];
+                this.nodes[i] = oldNodes[j];
+            }
+        }
+    }
+
+    /**
+     * Spreads the bits of a key, page numbers are sequential and
+     * would otherwise cluster.
+     *
+     * @param key The key.
+     *
+     * @return The mixed key.
+     */
+    private static int mix(int key) {
+        int h = key * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+}
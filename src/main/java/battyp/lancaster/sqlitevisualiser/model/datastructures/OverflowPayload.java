@@ -0,0 +1,372 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.datastructures;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * <h1> Overflow Payload </h1>
+ *
+ * <p>
+ * A payload that has spilled onto overflow pages. The first part is
+ * stored on the page of the cell, the rest is spread over a chain of
+ * overflow pages that each start with the number of the next one.
+ *
+ * <p>
+ * Small payloads are loaded into memory when they are parsed. Larger
+ * ones only keep the part on the page and the page numbers of the chain,
+ * the rest is read from the database when it is asked for, so a large
+ * text or blob can be streamed without ever being held on the heap.
+ *
+ * @author Paul Batty
+ * @see BTreeCell
+ * @see PageReaderFactory
+ * @since 1.0
+ */
+public class OverflowPayload {
+
+    /**
+     * Payloads up to this size are loaded into memory when parsed.
+     */
+    public static final int DEFAULT_LOAD_SIZE = 64 * 1024;
+
+    private static final int HASH_BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Size of the whole payload.
+     */
+    public final long size;
+
+    /**
+     * The part of the payload stored on the page.
+     */
+    public final ByteBuffer local;
+
+    /**
+     * Page numbers of the overflow chain, in order.
+     */
+    public final int[] pages;
+
+    /**
+     * Number of payload bytes on each overflow page.
+     */
+    public final int pageContentSize;
+
+    /**
+     * The whole payload, null if it has not been loaded.
+     */
+    public ByteBuffer data;
+
+    /**
+     * Hash of the record in the payload, so a payload that is not
+     * loaded can be hashed without reading it again.
+     */
+    public int recordHash;
+
+    /**
+     * 31 to the power of the number of values in the record hash.
+     */
+    public int recordHashPower;
+
+    private final PageReaderFactory readers;
+
+    /**
+     * Constructor.
+     *
+     * @param local The part of the payload stored on the page.
+     * @param pages Page numbers of the overflow chain.
+     * @param size Size of the whole payload.
+     * @param pageContentSize Number of payload bytes on each overflow page.
+     * @param readers Opens the database to read the chain, null if the payload is always loaded.
+     */
+    public OverflowPayload(ByteBuffer local, int[] pages, long size, int pageContentSize, PageReaderFactory readers) {
+        this.local = local;
+        this.pages = pages;
+        this.size = size;
+        this.pageContentSize = pageContentSize;
+        this.readers = readers;
+        this.recordHashPower = 1;
+    }
+
+    /**
+     * Gets whether the whole payload is in memory.
+     *
+     * @return True if loaded else false.
+     */
+    public boolean isLoaded() {
+        return this.data != null;
+    }
+
+    /**
+     * Loads the whole payload into memory.
+     *
+     * @param reader Reader for the overflow pages.
+     *
+     * @throws IOException If the overflow pages cannot be read.
+     */
+    public void load(PageReader reader) throws IOException {
+        if (this.size > Integer.MAX_VALUE) {
+            throw new IOException("Payload of " + this.size + " bytes is to large to load");
+        }
+        this.data = read(reader, 0, (int) this.size).asReadOnlyBuffer();
+    }
+
+    /**
+     * Reads part of the payload, opening the database if the payload is not loaded.
+     *
+     * @param offset Offset into the payload.
+     * @param length Number of bytes to read.
+     *
+     * @return ByteBuffer positioned at zero containing the bytes.
+     *
+     * @throws IOException If the overflow pages cannot be read.
+     */
+    public ByteBuffer read(long offset, int length) throws IOException {
+        if (this.data != null) {
+            return read(null, offset, length);
+        }
+        try (PageReader reader = open()) {
+            return read(reader, offset, length);
+        }
+    }
+
+    /**
+     * Reads part of the payload.
+     *
+     * @param reader Reader for the overflow pages, unused if the payload is loaded.
+     * @param offset Offset into the payload.
+     * @param length Number of bytes to read.
+     *
+     * @return ByteBuffer positioned at zero containing the bytes.
+     *
+     * @throws IOException If the overflow pages cannot be read.
+     */
+    public ByteBuffer read(PageReader reader, long offset, int length) throws IOException {
+        checkRange(offset, length);
+        if (this.data != null) {
+            ByteBuffer buffer = this.data.duplicate();
+            buffer.position((int) offset).limit((int) offset + length);
+            return buffer.slice();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        copy(reader, offset, buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Gets a channel over part of the payload. The database is only
+     * opened once the first bytes are read from the overflow pages, and
+     * stays open until the channel is closed.
+     *
+     * @param offset Offset into the payload.
+     * @param length Number of bytes the channel reads.
+     *
+     * @return The channel.
+     */
+    public ReadableByteChannel getChannel(long offset, long length) {
+        checkRange(offset, length);
+        return new PayloadChannel(offset, offset + length);
+    }
+
+    /**
+     * Gets a stream over part of the payload.
+     *
+     * @param offset Offset into the payload.
+     * @param length Number of bytes the stream reads.
+     *
+     * @return The stream.
+     *
+     * @see #getChannel(long, long)
+     */
+    public InputStream getInputStream(long offset, long length) {
+        return Channels.newInputStream(getChannel(offset, length));
+    }
+
+    /**
+     * Hashes the record in the payload the same way as BTreeCell does,
+     * reading the values a piece at a time.
+     *
+     * @param reader Reader for the overflow pages.
+     * @param types Serial types of each column.
+     * @param offsets Offset of each column into the payload.
+     *
+     * @throws IOException If the overflow pages cannot be read.
+     *
+     * @see BTreeCell#hashCode()
+     */
+    public void hashRecord(PageReader reader, int[] types, int[] offsets) throws IOException {
+        final int prime = 31;
+        int hash = 0;
+        int power = 1;
+
+        ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+        for (int j = 0; j < types.length; j++) {
+            hash = hash * prime + types[j];
+            power *= prime;
+            long position = offsets[j];
+            long end = position + SerialType.getSize(types[j]);
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                copy(reader, position, buffer);
+                buffer.flip();
+                position += buffer.remaining();
+                while (buffer.hasRemaining()) {
+                    hash = hash * prime + buffer.get();
+                    power *= prime;
+                }
+            }
+        }
+        this.recordHash = hash;
+        this.recordHashPower = power;
+    }
+
+    /**
+     * Copies the payload from the position until the buffer is full.
+     *
+     * @param reader Reader for the overflow pages.
+     * @param position Offset into the payload.
+     * @param dst The buffer to copy into.
+     *
+     * @throws IOException If the overflow pages cannot be read.
+     */
+    private void copy(PageReader reader, long position, ByteBuffer dst) throws IOException {
+        if (this.data != null) {
+            ByteBuffer src = this.data.duplicate();
+            src.position((int) position).limit((int) position + dst.remaining());
+            dst.put(src);
+            return;
+        }
+
+        int localSize = this.local.limit();
+        if (position < localSize) {
+            ByteBuffer src = this.local.duplicate();
+            src.position((int) position).limit((int) Math.min(localSize, position + dst.remaining()));
+            position += src.remaining();
+            dst.put(src);
+        }
+        while (dst.hasRemaining()) {
+            long overflowOffset = position - localSize;
+            int index = (int) (overflowOffset / this.pageContentSize);
+            int within = (int) (overflowOffset % this.pageContentSize);
+            if (index >= this.pages.length) {
+                throw new EOFException();
+            }
+            ByteBuffer page = reader.getPage(this.pages[index]).duplicate();
+            int length = Math.min(dst.remaining(), this.pageContentSize - within);
+            page.position(page.position() + 4 + within);
+            page.limit(page.position() + length);
+            dst.put(page);
+            position += length;
+        }
+    }
+
+    /**
+     * Opens a reader on the database the payload was parsed from.
+     *
+     * @return The reader.
+     *
+     * @throws IOException If the database cannot be opened.
+     */
+    private PageReader open() throws IOException {
+        if (this.readers == null) {
+            throw new IOException("Payload is not loaded and cannot be read from the database");
+        }
+        return this.readers.open();
+    }
+
+    /**
+     * Checks a section is inside the payload.
+     *
+     * @param offset Offset into the payload.
+     * @param length Length of the section.
+     *
+     * @throws IndexOutOfBoundsException If the section is outside of the payload.
+     */
+    private void checkRange(long offset, long length) {
+        if (offset < 0 || length < 0 || offset + length > this.size) {
+            throw new IndexOutOfBoundsException("Section " + offset + " to " + (offset + length) + " is outside a payload of " + this.size + " bytes");
+        }
+    }
+
+    /**
+     * Channel reading a section of the payload.
+     */
+    private class PayloadChannel implements ReadableByteChannel {
+
+        private final long end;
+        private long position;
+        private PageReader reader;
+        private boolean open;
+
+        private PayloadChannel(long position, long end) {
+            this.position = position;
+            this.end = end;
+            this.open = true;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!this.open) {
+                throw new ClosedChannelException();
+            }
+            if (this.position >= this.end) {
+                return -1;
+            }
+            if (this.reader == null && data == null) {
+                this.reader = open();
+            }
+
+            int length = (int) Math.min(dst.remaining(), this.end - this.position);
+            ByteBuffer target = dst.duplicate();
+            target.limit(target.position() + length);
+            copy(this.reader, this.position, target);
+            dst.position(dst.position() + length);
+            this.position += length;
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return this.open;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.open = false;
+            if (this.reader != null) {
+                this.reader.close();
+                this.reader = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.datastructures;
+
+/**
+ * <h1> Page Map </h1>
+ *
+ * <p>
+ * Holds what every page in the database file is used for, found by
+ * reading the whole file rather than only following the btrees. Pages
+ * that nothing points to are tagged as unreachable, split by whether
+ * they still look like a btree page, such as a page lost by a crash.
+ *
+ * <p>
+ * The tags are kept in a byte array indexed by page number, so the map
+ * of even a large file stays small.
+ *
+ * @author Paul Batty
+ * @see Metadata
+ * @since 1.0
+ */
+public class PageMap {
+
+    /**
+     * A page that nothing points to.
+     */
+    public static final byte UNREACHABLE = 0;
+
+    /**
+     * A page that nothing points to, but still has a btree page header.
+     */
+    public static final byte UNREACHABLE_BTREE = 1;
+
+    /**
+     * A table btree interior page.
+     */
+    public static final byte TABLE_INTERIOR = 2;
+
+    /**
+     * A table btree leaf page.
+     */
+    public static final byte TABLE_LEAF = 3;
+
+    /**
+     * An index btree interior page.
+     */
+    public static final byte INDEX_INTERIOR = 4;
+
+    /**
+     * An index btree leaf page.
+     */
+    public static final byte INDEX_LEAF = 5;
+
+    /**
+     * A page in an overflow chain.
+     */
+    public static final byte OVERFLOW = 6;
+
+    /**
+     * A freelist trunk page.
+     */
+    public static final byte FREELIST_TRUNK = 7;
+
+    /**
+     * A freelist leaf page.
+     */
+    public static final byte FREELIST_LEAF = 8;
+
+    /**
+     * A pointer map page.
+     */
+    public static final byte POINTER_MAP = 9;
+
+    /**
+     * The page holding the lock bytes, which is never used.
+     */
+    public static final byte PENDING_BYTE = 10;
+
+    private static final String[] NAMES = new String[] {"Unreachable", "Unreachable Btree", "Table Interior", "Table Leaf",
+            "Index Interior", "Index Leaf", "Overflow", "Freelist Trunk", "Freelist Leaf", "Pointer Map", "Pending Byte"};
+
+    /**
+     * Tag of each page by page number, entry zero is not used.
+     */
+    public final byte[] tags;
+
+    /**
+     * Creates a page map with every page unreachable.
+     *
+     * @param pageCount The number of pages in the file.
+     */
+    public PageMap(int pageCount) {
+        this.tags = new byte[pageCount + 1];
+    }
+
+    /**
+     * Gets the number of pages in the map.
+     *
+     * @return The number of pages.
+     */
+    public int getPageCount() {
+        return this.tags.length - 1;
+    }
+
+    /**
+     * Gets the tag of a page.
+     *
+     * @param pageNumber The page number.
+     *
+     * @return The tag.
+     */
+    public byte getTag(long pageNumber) {
+        return this.tags[(int) pageNumber];
+    }
+
+    /**
+     * Counts the pages with a tag.
+     *
+     * @param tag The tag.
+     *
+     * @return The number of pages.
+     */
+    public int getCount(byte tag) {
+        int count = 0;
+        for (int i = 1; i < this.tags.length; i++) {
+            if (this.tags[i] == tag) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the btree tag for a Sqlite page type.
+     *
+     * @param pageType The page type from the page header.
+     *
+     * @return The tag, or unreachable if it is not a btree page type.
+     *
+     * @see SqliteConstants
+     */
+    public static byte getBtreeTag(int pageType) {
+        switch (pageType) {
+            case SqliteConstants.TABLE_BTREE_INTERIOR_CELL:
+                return TABLE_INTERIOR;
+            case SqliteConstants.TABLE_BTREE_LEAF_CELL:
+                return TABLE_LEAF;
+            case SqliteConstants.INDEX_BTREE_INTERIOR_CELL:
+                return INDEX_INTERIOR;
+            case SqliteConstants.INDEX_BTREE_LEAF_CELL:
+                return INDEX_LEAF;
+            default:
+                return UNREACHABLE;
+        }
+    }
+
+    /**
+     * Gets the name of a tag to show.
+     *
+     * @param tag The tag.
+     *
+     * @return The name.
+     */
+    public static String getName(byte tag) {
+        return NAMES[tag];
+    }
+
+    /**
+     * Gets the number of tags.
+     *
+     * @return The number of tags.
+     */
+    public static int getTagCount() {
+        return NAMES.length;
+    }
+}
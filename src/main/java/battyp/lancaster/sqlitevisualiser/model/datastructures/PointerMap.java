@@ -0,0 +1,194 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.datastructures;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <h1> Pointer Map </h1>
+ *
+ * <p>
+ * Holds the pointer map of an auto-vacuum database, the type and parent
+ * page of every page after page two. The pointer map pages themselves
+ * are spread through the file, the first is page two and each one covers
+ * the pages up to the next.
+ *
+ * <p>
+ * The entries are kept in arrays indexed by page number, so the parent
+ * of any page is found without walking the tree from the root.
+ *
+ * @author Paul Batty
+ * @see Metadata
+ * @see <a href="https://www.sqlite.org/fileformat2.html#pointer_map_or_ptrmap_pages">Pointer map pages</a>
+ * @since 1.0
+ */
+public class PointerMap {
+
+    /**
+     * The root page of a btree, has no parent.
+     */
+    public static final int ROOT_PAGE = 1;
+
+    /**
+     * A page on the freelist, has no parent.
+     */
+    public static final int FREE_PAGE = 2;
+
+    /**
+     * The first page of an overflow chain, the parent is the btree page of the cell.
+     */
+    public static final int FIRST_OVERFLOW_PAGE = 3;
+
+    /**
+     * A later page of an overflow chain, the parent is the overflow page before it.
+     */
+    public static final int OVERFLOW_PAGE = 4;
+
+    /**
+     * A btree page that is not a root, the parent is its parent btree page.
+     */
+    public static final int BTREE_PAGE = 5;
+
+    /**
+     * Type of each page by page number, zero where there is no entry.
+     */
+    public final byte[] types;
+
+    /**
+     * Parent of each page by page number.
+     */
+    public final int[] parents;
+
+    /**
+     * Number of entries on each pointer map page.
+     */
+    public final int entriesPerPage;
+
+    /**
+     * Why some entries could not be read, null if they all were. The
+     * bad entries are left with no type.
+     */
+    public String problem;
+
+    /**
+     * Creates an empty pointer map.
+     *
+     * @param pageCount Number of pages in the database.
+     * @param usableSize The usable size of a page.
+     */
+    public PointerMap(int pageCount, int usableSize) {
+        this.types = new byte[pageCount + 1];
+        this.parents = new int[pageCount + 1];
+        this.entriesPerPage = usableSize / 5;
+    }
+
+    /**
+     * Gets the pointer map page holding the entry of a page.
+     *
+     * @param pageNumber The page number.
+     * @param pageSize The page size.
+     * @param usableSize The usable size of a page.
+     *
+     * @return The page number of the pointer map page.
+     */
+    public static long getPointerMapPage(long pageNumber, int pageSize, int usableSize) {
+        long pagesPerMap = usableSize / 5 + 1;
+        long mapPage = (pageNumber - 2) / pagesPerMap * pagesPerMap + 2;
+        if (mapPage == getPendingBytePage(pageSize)) {
+            mapPage++;
+        }
+        return mapPage;
+    }
+
+    /**
+     * Gets whether a page is a pointer map page.
+     *
+     * @param pageNumber The page number.
+     * @param pageSize The page size.
+     * @param usableSize The usable size of a page.
+     *
+     * @return True if a pointer map page else false.
+     */
+    public static boolean isPointerMapPage(long pageNumber, int pageSize, int usableSize) {
+        return pageNumber >= 2 && getPointerMapPage(pageNumber, pageSize, usableSize) == pageNumber;
+    }
+
+    /**
+     * Gets the page holding the lock bytes at one gigabyte, which is never used.
+     *
+     * @param pageSize The page size.
+     *
+     * @return The page number.
+     */
+    public static long getPendingBytePage(int pageSize) {
+        return SqliteConstants.PENDING_BYTE / pageSize + 1;
+    }
+
+    /**
+     * Gets the type of a page.
+     *
+     * @param pageNumber The page number.
+     *
+     * @return The type, 0 if the page has no entry.
+     */
+    public int getType(long pageNumber) {
+        if (pageNumber < 0 || pageNumber >= this.types.length) {
+            return 0;
+        }
+        return this.types[(int) pageNumber];
+    }
+
+    /**
+     * Gets the parent of a page.
+     *
+     * @param pageNumber The page number.
+     *
+     * @return The parent page number, 0 if the page has no parent.
+     */
+    public int getParent(long pageNumber) {
+        if (pageNumber < 0 || pageNumber >= this.parents.length) {
+            return 0;
+        }
+        return this.parents[(int) pageNumber];
+    }
+
+    /**
+     * Gets the pages above a page, up to the root of its btree.
+     *
+     * @param pageNumber The page number.
+     *
+     * @return The ancestors, nearest first.
+     */
+    public List<Integer> getAncestors(long pageNumber) {
+        List<Integer> ancestors = new ArrayList<>();
+        int parent = getParent(pageNumber);
+        while (parent != 0 && ancestors.size() < this.parents.length) {
+            ancestors.add(parent);
+            parent = getParent(parent);
+        }
+        return ancestors;
+    }
+}
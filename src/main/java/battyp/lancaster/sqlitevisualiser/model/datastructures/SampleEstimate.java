@@ -0,0 +1,363 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.datastructures;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * <h1> Sample Estimate </h1>
+ *
+ * <p>
+ * Statistics of a sampled parse, which reads every interior page but
+ * only a random sample of the leaf pages below them. The number of leaf
+ * pages is exact, as it is counted from the pointers in the interior
+ * pages, the rows, fill factor and payload sizes are extrapolated from
+ * the sampled table leaves. Tables that fit on their root page are
+ * always parsed, so they are added as they are.
+ *
+ * <p>
+ * Index leaves are sampled the same way, but only counted. An index
+ * holds a copy of the columns of the rows of its table, so adding its
+ * entries to the estimates would count the same rows twice.
+ *
+ * <p>
+ * Each sampled page is one observation, so the intervals allow for rows
+ * on the same page being alike. They are 95% intervals, using the normal
+ * approximation with the finite population correction, so they shrink
+ * to nothing when every leaf is sampled.
+ *
+ * @author Paul Batty
+ * @see Estimate
+ * @since 1.0
+ */
+public class SampleEstimate {
+
+    /**
+     * Number of payload size buckets, bucket zero holds empty payloads and
+     * bucket i holds sizes from 2^(i-1) up to 2^i, the last holds the rest.
+     */
+    public static final int PAYLOAD_BUCKETS = 16;
+
+    private static final double Z = 1.96;
+
+    private static final int ROWS = 0;
+    private static final int FILL = 1;
+    private static final int PAYLOAD = 2;
+    private static final int FIRST_BUCKET = 3;
+
+    /**
+     * The chance of each leaf page being sampled.
+     */
+    public final double sampleRate;
+
+    /**
+     * Number of table leaf pages that could be sampled, sampled or not.
+     */
+    public long leafPages;
+
+    /**
+     * Number of index leaf pages that could be sampled, sampled or not.
+     */
+    public long indexLeafPages;
+
+    private final List<double[]> samples;
+    private final double[] exact;
+    private int exactPages;
+    private int sampledIndexPages;
+    private int exactIndexPages;
+    private final BitSet sampledParents;
+
+    /**
+     * Constructor.
+     *
+     * @param sampleRate The chance of each leaf page being sampled.
+     */
+    public SampleEstimate(double sampleRate) {
+        this.sampleRate = sampleRate;
+        this.samples = new ArrayList<>();
+        this.exact = new double[FIRST_BUCKET + PAYLOAD_BUCKETS];
+        this.sampledParents = new BitSet();
+    }
+
+    /**
+     * Adds a sampled leaf page.
+     *
+     * @param rows Number of rows on the page.
+     * @param fillFactor Fraction of the usable space in use.
+     * @param payloadSizes Payload size of each row.
+     */
+    public void addPage(int rows, double fillFactor, long[] payloadSizes) {
+        double[] sample = new double[FIRST_BUCKET + PAYLOAD_BUCKETS];
+        addTo(sample, rows, fillFactor, payloadSizes);
+        this.samples.add(sample);
+    }
+
+    /**
+     * Adds a table leaf page that is always parsed, such as the root of
+     * a table that fits on one page.
+     *
+     * @param rows Number of rows on the page.
+     * @param fillFactor Fraction of the usable space in use.
+     * @param payloadSizes Payload size of each row.
+     */
+    public void addExactPage(int rows, double fillFactor, long[] payloadSizes) {
+        addTo(this.exact, rows, fillFactor, payloadSizes);
+        this.exactPages++;
+    }
+
+    /**
+     * Adds a sampled index leaf page.
+     */
+    public void addIndexPage() {
+        this.sampledIndexPages++;
+    }
+
+    /**
+     * Adds an index leaf page that is always parsed, such as the root of
+     * an index that fits on one page.
+     */
+    public void addExactIndexPage() {
+        this.exactIndexPages++;
+    }
+
+    /**
+     * Marks an interior page whose leaves were sampled, so only some of
+     * its children are in the tree.
+     *
+     * @param pageNumber The page number of the interior page.
+     */
+    public void addSampledParent(long pageNumber) {
+        this.sampledParents.set((int) pageNumber);
+    }
+
+    /**
+     * Checks if only a sample of the children of a page are in the tree.
+     *
+     * @param pageNumber The page number of the page.
+     *
+     * @return True if its leaves were sampled.
+     */
+    public boolean isSampledParent(long pageNumber) {
+        return this.sampledParents.get((int) pageNumber);
+    }
+
+    /**
+     * Gets the number of leaf pages that were sampled.
+     *
+     * @return Number of sampled pages.
+     */
+    public int getSampledPages() {
+        return this.samples.size();
+    }
+
+    /**
+     * Gets the number of leaf pages that were always parsed.
+     *
+     * @return Number of exact pages.
+     */
+    public int getExactPages() {
+        return this.exactPages;
+    }
+
+    /**
+     * Gets the number of index leaf pages that were sampled.
+     *
+     * @return Number of sampled index pages.
+     */
+    public int getSampledIndexPages() {
+        return this.sampledIndexPages;
+    }
+
+    /**
+     * Gets the number of index leaf pages that were always parsed.
+     *
+     * @return Number of exact index pages.
+     */
+    public int getExactIndexPages() {
+        return this.exactIndexPages;
+    }
+
+    /**
+     * Estimates the number of rows in the table leaves.
+     *
+     * @return Estimated row count.
+     */
+    public Estimate getRows() {
+        return total(ROWS);
+    }
+
+    /**
+     * Estimates the mean fraction of the usable space of a leaf in use.
+     *
+     * @return Estimated fill factor, between zero and one.
+     */
+    public Estimate getFillFactor() {
+        Estimate total = total(FILL);
+        double pages = this.leafPages + this.exactPages;
+        if (pages == 0) {
+            return new Estimate(0, 0);
+        }
+        return new Estimate(total.value / pages, total.margin / pages);
+    }
+
+    /**
+     * Estimates the total size of the payloads in the table leaves.
+     *
+     * @return Estimated payload bytes.
+     */
+    public Estimate getPayloadBytes() {
+        return total(PAYLOAD);
+    }
+
+    /**
+     * Estimates the mean payload size of a row, as the ratio of the
+     * payload bytes to the rows.
+     *
+     * @return Estimated payload size in bytes.
+     */
+    public Estimate getPayloadSize() {
+        int n = this.samples.size();
+        double rows = 0;
+        double payload = 0;
+        for (double[] sample : this.samples) {
+            rows += sample[ROWS];
+            payload += sample[PAYLOAD];
+        }
+        if (rows == 0) {
+            double value = this.exact[ROWS] == 0 ? 0 : this.exact[PAYLOAD] / this.exact[ROWS];
+            return new Estimate(value, n == 0 && this.leafPages > 0 ? Double.POSITIVE_INFINITY : 0);
+        }
+        double ratio = payload / rows;
+
+        double[] residuals = new double[n];
+        for (int i = 0; i < n; i++) {
+            residuals[i] = this.samples.get(i)[PAYLOAD] - ratio * this.samples.get(i)[ROWS];
+        }
+        double meanRows = rows / n;
+        double margin = margin(residuals, 0) / meanRows;
+
+        // weight the sampled ratio by its share of the estimated rows
+        double sampledRows = this.leafPages * meanRows;
+        double allRows = sampledRows + this.exact[ROWS];
+        double value = (sampledRows * ratio + this.exact[PAYLOAD]) / allRows;
+        return new Estimate(value, margin * sampledRows / allRows);
+    }
+
+    /**
+     * Estimates the number of rows in a payload size bucket.
+     *
+     * @param bucket The bucket, see PAYLOAD_BUCKETS.
+     *
+     * @return Estimated row count of the bucket.
+     */
+    public Estimate getPayloadBucket(int bucket) {
+        return total(FIRST_BUCKET + bucket);
+    }
+
+    /**
+     * Gets the smallest payload size in a bucket.
+     *
+     * @param bucket The bucket, see PAYLOAD_BUCKETS.
+     *
+     * @return The smallest size in bytes.
+     */
+    public static long getBucketStart(int bucket) {
+        return bucket == 0 ? 0 : 1L << (bucket - 1);
+    }
+
+    /**
+     * Gets the bucket a payload size falls in.
+     *
+     * @param size The payload size in bytes.
+     *
+     * @return The bucket, see PAYLOAD_BUCKETS.
+     */
+    public static int getBucket(long size) {
+        return Math.min(64 - Long.numberOfLeadingZeros(size), PAYLOAD_BUCKETS - 1);
+    }
+
+    private void addTo(double[] values, int rows, double fillFactor, long[] payloadSizes) {
+        values[ROWS] += rows;
+        values[FILL] += fillFactor;
+        if (payloadSizes != null) {
+            for (long size : payloadSizes) {
+                values[PAYLOAD] += size;
+                values[FIRST_BUCKET + getBucket(size)]++;
+            }
+        }
+    }
+
+    /**
+     * Estimates the total of a value over the sampled leaves and the
+     * exact ones.
+     */
+    private Estimate total(int column) {
+        double[] values = column(column);
+        double mean = mean(values);
+        double total = this.leafPages * mean;
+        return new Estimate(total + this.exact[column], this.leafPages * margin(values, mean));
+    }
+
+    private double[] column(int column) {
+        double[] values = new double[this.samples.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = this.samples.get(i)[column];
+        }
+        return values;
+    }
+
+    private double mean(double[] values) {
+        if (values.length == 0) {
+            return 0;
+        }
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    /**
+     * Margin of the mean of a sample of the leaf pages.
+     */
+    private double margin(double[] values, double mean) {
+        int n = values.length;
+        if (n >= this.leafPages) {
+            return 0;
+        }
+        if (n < 2) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double squares = 0;
+        for (double value : values) {
+            squares += (value - mean) * (value - mean);
+        }
+        double variance = squares / (n - 1);
+        double correction = 1.0 - (double) n / this.leafPages;
+        return Z * Math.sqrt(variance / n * correction);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.datastructures;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <h1> Serial Type </h1>
+ *
+ * <p>
+ * The serial types used in the header of a record to describe the
+ * type and size of each column, along with helpers for working them out.
+ *
+ * @author Paul Batty
+ * @see BTreeCell
+ * @since 1.0
+ */
+public class SerialType {
+
+    /**
+     * Null value.
+     */
+    public static final int NULL = 0;
+
+    /**
+     * One byte signed int.
+     */
+    public static final int INT8 = 1;
+
+    /**
+     * Two byte big endian signed int.
+     */
+    public static final int INT16 = 2;
+
+    /**
+     * Three byte big endian signed int.
+     */
+    public static final int INT24 = 3;
+
+    /**
+     * Four byte big endian signed int.
+     */
+    public static final int INT32 = 4;
+
+    /**
+     * Six byte big endian signed int.
+     */
+    public static final int INT48 = 5;
+
+    /**
+     * Eight byte big endian signed int.
+     */
+    public static final int INT64 = 6;
+
+    /**
+     * Eight byte big endian IEEE 754 float.
+     */
+    public static final int FLOAT64 = 7;
+
+    /**
+     * The integer 0, no bytes are stored.
+     */
+    public static final int ZERO = 8;
+
+    /**
+     * The integer 1, no bytes are stored.
+     */
+    public static final int ONE = 9;
+
+    /**
+     * Smallest blob type, blobs are even types of this or more.
+     */
+    public static final int BLOB = 12;
+
+    /**
+     * Smallest text type, text is odd types of this or more.
+     */
+    public static final int TEXT = 13;
+
+    /**
+     * Gets the number of bytes a value of the type takes up in the record.
+     *
+     * @param type The serial type.
+     *
+     * @return Number of bytes.
+     */
+    public static int getSize(int type) {
+        switch (type) {
+            case INT8:
+                return 1;
+            case INT16:
+                return 2;
+            case INT24:
+                return 3;
+            case INT32:
+                return 4;
+            case INT48:
+                return 6;
+            case INT64:
+            case FLOAT64:
+                return 8;
+            default: {
+                if (type >= BLOB) {
+                    return (type - ((type % 2 == 0) ? BLOB : TEXT)) / 2;
+                }
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Gets whether the type is an integer, including the 0 and 1 constants.
+     *
+     * @param type The serial type.
+     *
+     * @return True if an integer else false.
+     */
+    public static boolean isInteger(int type) {
+        return (type >= INT8 && type <= INT64) || type == ZERO || type == ONE;
+    }
+
+    /**
+     * Gets whether the type is a float.
+     *
+     * @param type The serial type.
+     *
+     * @return True if a float else false.
+     */
+    public static boolean isFloat(int type) {
+        return type == FLOAT64;
+    }
+
+    /**
+     * Gets whether the type is text.
+     *
+     * @param type The serial type.
+     *
+     * @return True if text else false.
+     */
+    public static boolean isText(int type) {
+        return type >= TEXT && type % 2 != 0;
+    }
+
+    /**
+     * Gets whether the type is a blob.
+     *
+     * @param type The serial type.
+     *
+     * @return True if a blob else false.
+     */
+    public static boolean isBlob(int type) {
+        return type >= BLOB && type % 2 == 0;
+    }
+
+    /**
+     * Reads a number column as a long, floats are truncated and null is 0.
+     *
+     * @param record The buffer the record is in.
+     * @param offset Offset of the column.
+     * @param type The serial type of the column.
+     *
+     * @return The value.
+     *
+     * @throws IllegalArgumentException If the type is text or a blob.
+     */
+    public static long readLong(ByteBuffer record, int offset, int type) {
+        switch (type) {
+            case NULL:
+            case ZERO:
+                return 0;
+            case ONE:
+                return 1;
+            case FLOAT64:
+                return (long) record.getDouble(offset);
+            case INT8:
+            case INT16:
+            case INT24:
+            case INT32:
+            case INT48:
+            case INT64: {
+                int size = getSize(type);
+                long value = record.get(offset);
+                for (int i = 1; i < size; i++) {
+                    value = (value << 8) | (record.get(offset + i) & 0xFF);
+                }
+                return value;
+            }
+            default:
+                throw new IllegalArgumentException("Type " + type + " is not a number");
+        }
+    }
+
+    /**
+     * Private constructor so it cannot be created.
+     */
+    private SerialType() {
+    }
+}
@@ -46,6 +46,79 @@ public class SqliteConstants {
      */
     public static final int HEADER_RESERVED_SPACE_SIZE = 20;
 
+    /**
+     * Offset of the file format write version in the header.
+     */
+    public static final int WRITE_VERSION_OFFSET = 18;
+
+    /**
+     * Offset of the file change counter in the header.
+     */
+    public static final int FILE_CHANGE_COUNTER_OFFSET = 24;
+
+    /**
+     * Write version of a database in WAL mode.
+     */
+    public static final int WAL_WRITE_VERSION = 2;
+
+    /**
+     * Suffix added to the database file name to get the WAL file.
+     */
+    public static final String WAL_FILE_SUFFIX = "-wal";
+
+    /**
+     * Size of the WAL header.
+     */
+    public static final int WAL_HEADER_SIZE = 32;
+
+    /**
+     * Size of the header before each frame in the WAL.
+     */
+    public static final int WAL_FRAME_HEADER_SIZE = 24;
+
+    /**
+     * WAL magic number when the checksums are little endian.
+     */
+    public static final int WAL_MAGIC_NUMBER_LITTLE_ENDIAN = 0x377f0682;
+
+    /**
+     * WAL magic number when the checksums are big endian.
+     */
+    public static final int WAL_MAGIC_NUMBER_BIG_ENDIAN = 0x377f0683;
+
+    /**
+     * Suffix added to the database file name to get the rollback journal.
+     */
+    public static final String JOURNAL_FILE_SUFFIX = "-journal";
+
+    /**
+     * Size of the fields in a rollback journal header, the header is
+     * padded out to the sector size.
+     */
+    public static final int JOURNAL_HEADER_SIZE = 28;
+
+    /**
+     * Magic number at the start of each rollback journal header.
+     */
+    public static final long JOURNAL_MAGIC_NUMBER = 0xd9d505f920a163d7L;
+
+    /**
+     * Offset of the byte writers lock before taking the database, the
+     * page holding it is never used.
+     */
+    public static final long PENDING_BYTE = 0x40000000L;
+
+    /**
+     * Offset of the range of bytes readers lock, after the pending and
+     * reserved bytes.
+     */
+    public static final long SHARED_FIRST = PENDING_BYTE + 2;
+
+    /**
+     * Size of the range of bytes readers lock.
+     */
+    public static final long SHARED_SIZE = 510;
+
     /**
      * Length of the magic number.
      */
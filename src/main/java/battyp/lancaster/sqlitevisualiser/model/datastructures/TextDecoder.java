@@ -0,0 +1,161 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.datastructures;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <h1> Text Decoder </h1>
+ *
+ * <p>
+ * Decodes the text columns of records in the text encoding of the
+ * database, which is picked once from the header. The text is decoded
+ * straight out of the page buffers, without copying the bytes out first.
+ *
+ * <p>
+ * A charset decoder cannot be shared between threads, so each thread
+ * keeps its own and resets it for each column.
+ *
+ * @author Paul Batty
+ * @see Metadata#textEncoding
+ * @since 1.0
+ */
+public class TextDecoder {
+
+    /**
+     * Decoder for UTF-8 databases, the default.
+     */
+    public static final TextDecoder UTF_8 = new TextDecoder(StandardCharsets.UTF_8, 1);
+
+    /**
+     * Decoder for UTF-16le databases.
+     */
+    public static final TextDecoder UTF_16LE = new TextDecoder(StandardCharsets.UTF_16LE, 2);
+
+    /**
+     * Decoder for UTF-16be databases.
+     */
+    public static final TextDecoder UTF_16BE = new TextDecoder(StandardCharsets.UTF_16BE, 2);
+
+    private final Charset charset;
+    private final int unitSize;
+    private final ThreadLocal<CharsetDecoder> decoders;
+
+    private TextDecoder(Charset charset, int unitSize) {
+        this.charset = charset;
+        this.unitSize = unitSize;
+        this.decoders = ThreadLocal.withInitial(() -> charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE));
+    }
+
+    /**
+     * Gets the decoder for the text encoding in the header. Databases
+     * with an unknown encoding are read as UTF-8.
+     *
+     * @param textEncoding The text encoding from the header.
+     *
+     * @return The decoder.
+     */
+    public static TextDecoder forEncoding(int textEncoding) {
+        switch (textEncoding) {
+            case 2:
+                return UTF_16LE;
+            case 3:
+                return UTF_16BE;
+            default:
+                return UTF_8;
+        }
+    }
+
+    /**
+     * Gets the charset of the text.
+     *
+     * @return The charset.
+     */
+    public Charset getCharset() {
+        return this.charset;
+    }
+
+    /**
+     * Decodes a section of a buffer, bytes that are not valid in the
+     * encoding are replaced.
+     *
+     * @param buffer The buffer, it is not moved.
+     * @param offset Offset of the text in the buffer.
+     * @param length Length of the text in bytes.
+     *
+     * @return The text.
+     */
+    public String decode(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer in = buffer.duplicate();
+        in.limit(offset + length).position(offset);
+
+        CharsetDecoder decoder = this.decoders.get().reset();
+        CharBuffer out = CharBuffer.allocate((int) Math.ceil(length * (double) decoder.maxCharsPerByte()));
+        decoder.decode(in, out, true);
+        decoder.flush(out);
+        out.flip();
+        return out.toString();
+    }
+
+    /**
+     * Compares a section of a buffer with some ASCII text, without
+     * decoding it.
+     *
+     * @param buffer The buffer, it is not moved.
+     * @param offset Offset of the text in the buffer.
+     * @param length Length of the text in bytes.
+     * @param text The ASCII text to compare with.
+     *
+     * @return True if equal else false.
+     */
+    public boolean matches(ByteBuffer buffer, int offset, int length, String text) {
+        if (length != text.length() * this.unitSize) {
+            return false;
+        }
+        boolean bigEndian = this.charset == StandardCharsets.UTF_16BE;
+        for (int i = 0; i < text.length(); i++) {
+            int position = offset + i * this.unitSize;
+            int c;
+            if (this.unitSize == 1) {
+                c = buffer.get(position) & 0xFF;
+            } else if (bigEndian) {
+                c = ((buffer.get(position) & 0xFF) << 8) | (buffer.get(position + 1) & 0xFF);
+            } else {
+                c = (buffer.get(position) & 0xFF) | ((buffer.get(position + 1) & 0xFF) << 8);
+            }
+            if (c != text.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.model.datastructures;
+
+/**
+ * <h1> Tree View </h1>
+ *
+ * <p>
+ * Read only view of a tree of pages, where each node is an int rather
+ * than an object. Walking the tree is done by following the parent,
+ * first child and next sibling of each node.
+ *
+ * @author Paul Batty
+ * @see FlatBTree
+ * @since 1.0
+ */
+public interface TreeView {
+
+    /**
+     * Returned in place of a node when there is none.
+     */
+    public static final int NONE = -1;
+
+    /**
+     * Gets the root node.
+     *
+     * @return The root, or NONE if the tree is empty.
+     */
+    public int getRoot();
+
+    /**
+     * Gets the number of nodes in the tree.
+     *
+     * @return Number of nodes.
+     */
+    public int size();
+
+    /**
+     * Gets the cell of a node.
+     *
+     * @param node The node.
+     *
+     * @return The cell.
+     */
+    public BTreeCell getCell(int node);
+
+    /**
+     * Gets the page number of a node, counting from one as Sqlite does.
+     *
+     * @param node The node.
+     *
+     * @return The page number.
+     */
+    public int getPageNumber(int node);
+
+    /**
+     * Gets the page type of a node, one of the cell types in SqliteConstants.
+     *
+     * @param node The node.
+     *
+     * @return The page type.
+     *
+     * @see SqliteConstants
+     */
+    public int getPageType(int node);
+
+    /**
+     * Gets the parent of a node.
+     *
+     * @param node The node.
+     *
+     * @return The parent, or NONE for the root.
+     */
+    public int getParent(int node);
+
+    /**
+     * Gets the first child of a node.
+     *
+     * @param node The node.
+     *
+     * @return The first child, or NONE if it has no children.
+     */
+    public int getFirstChild(int node);
+
+    /**
+     * Gets the next child of the same parent.
+     *
+     * @param node The node.
+     *
+     * @return The next sibling, or NONE if it is the last child.
+     */
+    public int getNextSibling(int node);
+
+    /**
+     * Gets whether the children of a node were loaded, a lazy node
+     * shows no children until they are.
+     *
+     * @param node The node.
+     *
+     * @return True if loaded else false.
+     */
+    public boolean isLoaded(int node);
+
+    /**
+     * Finds the node for a page.
+     *
+     * @param pageNumber The page number, counting from one.
+     *
+     * @return The node, or NONE if the page is not in the tree.
+     */
+    public int findPage(int pageNumber);
+
+    /**
+     * Gets the hash of a node, over its children's cells and hashes.
+     * Two nodes with equal cells and equal hashes hold the same subtree.
+     *
+     * @param node The node.
+     *
+     * @return The hash.
+     *
+     * @see BTreeNode#hashCode()
+     */
+    public int getHash(int node);
+}
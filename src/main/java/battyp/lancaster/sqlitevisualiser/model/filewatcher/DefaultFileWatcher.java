@@ -24,6 +24,7 @@
 
 package battyp.lancaster.sqlitevisualiser.model.filewatcher;
 
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SqliteConstants;
 import battyp.lancaster.sqlitevisualiser.observerinterface.Observer;
 import battyp.lancaster.sqlitevisualiser.util.FileUtil;
 
@@ -39,6 +40,10 @@ import java.util.List;
  * <p>
  * Default implementation of the file watcher.
  *
+ * <p>
+ * The WAL file next to the database is watched as well, as in WAL mode
+ * commits are only written to it until a checkpoint.
+ *
  * @author Paul Batty
  * @see FileWatcher
  * @since 0.8
@@ -51,7 +56,10 @@ public class DefaultFileWatcher implements FileWatcher {
     private volatile String fileName;
 
     private File file;
+    private File walFile;
     private long lastTime;
+    private long lastWalTime;
+    private long lastWalLength;
 
     private volatile boolean running;
 
@@ -70,9 +78,11 @@ public class DefaultFileWatcher implements FileWatcher {
     public void run() {
         while(running) {
             if (path != null && fileName != null) {
-                if (file.lastModified() != lastTime) {
+                if (file.lastModified() != lastTime || walFile.lastModified() != lastWalTime || walFile.length() != lastWalLength) {
                     notifyObservers();
                     lastTime = file.lastModified();
+                    lastWalTime = walFile.lastModified();
+                    lastWalLength = walFile.length();
                 }
             }
         }
@@ -96,6 +106,9 @@ public class DefaultFileWatcher implements FileWatcher {
         this.path = this.path.substring(0, this.path.lastIndexOf(File.separator));
         this.fileName = file.getName();
         this.lastTime = file.lastModified();
+        this.walFile = new File(file.getPath() + SqliteConstants.WAL_FILE_SUFFIX);
+        this.lastWalTime = walFile.lastModified();
+        this.lastWalLength = walFile.length();
     }
 
     /**
@@ -70,7 +70,7 @@ public class DefaultLiveUpdater implements LiveUpdater {
      * {@inheritDoc}
      */
     @Override
-    public void setDatabase(String path) {
+    public synchronized void setDatabase(String path) {
         this.path = path;
     }
 
@@ -83,7 +83,20 @@ public class DefaultLiveUpdater implements LiveUpdater {
             return;
         }
 
-        Database newDatabase = databaseParser.parseDatabase(path, new Database(new BTree(), new Metadata()));
+        Database newDatabase = databaseParser.parseDatabase(path, new Database(new BTree<>(), new Metadata()), databaseInterface.getLatest());
+
+        // a transaction is in progress, so add the state before it if it is not already there
+        Database before = databaseParser.parseJournal(path, new Database(new BTree<>(), new Metadata()), newDatabase);
+        Database latest = databaseInterface.getLatest();
+        if (before != null && (latest == null || latest.getMetadata().fileChangeCounter != before.getMetadata().fileChangeCounter)) {
+            updateMetaData(before);
+            this.model.getLog().detectChanges(before, databaseInterface.getCurrent());
+            databaseInterface.addDatabase(before);
+            if (live) {
+                databaseInterface.nextStep();
+            }
+        }
+
         updateMetaData(newDatabase);
         this.model.getLog().detectChanges(newDatabase, databaseInterface.getCurrent());
         databaseInterface.addDatabase(newDatabase);
@@ -94,6 +107,11 @@ public class DefaultLiveUpdater implements LiveUpdater {
 
     /**
      * {@inheritDoc}
+     *
+     * <p>
+     * The rows are counted with count(*) so they are not read back one at
+     * a time. Lazy and sampled parses are there to avoid reading the whole
+     * file, so their rows are not counted at all.
      */
     @Override
     public void updateMetaData(Database database) {
@@ -102,6 +120,7 @@ public class DefaultLiveUpdater implements LiveUpdater {
         }
 
         Metadata metadata = database.getMetadata();
+        boolean countEntries = metadata.sampleEstimate == null && database.getBTree().getNumberOfLazyNodes() == 0;
         metadata.fileName = this.model.getFileWatcher().getFileName();
         try {
             this.model.getSqlExecutor().connect();
@@ -112,7 +131,7 @@ public class DefaultLiveUpdater implements LiveUpdater {
             metadata.numberOfTables = 0;
             metadata.numberOfPrimaryKeys = 0;
             metadata.numberOfForeignKeys = 0;
-            metadata.numberOfEntries = 0;
+            metadata.numberOfEntries = countEntries ? 0 : Metadata.ENTRIES_NOT_COUNTED;
 
             ResultSet count = databaseMetaData.getTables(catalog, null, null, null);
 
@@ -128,9 +147,13 @@ public class DefaultLiveUpdater implements LiveUpdater {
                 metadata.numberOfForeignKeys += getRowCount(fkeys);
                 fkeys.close();
 
-                ResultSet entries = this.model.getSqlExecutor().executeSql("Select * from " + table);
-                metadata.numberOfEntries += getRowCount(entries);
-                entries.close();
+                if (countEntries) {
+                    ResultSet entries = this.model.getSqlExecutor().executeSql("Select count(*) from \"" + table.replace("\"", "\"\"") + "\"");
+                    if (entries.next()) {
+                        metadata.numberOfEntries += entries.getInt(1);
+                    }
+                    entries.close();
+                }
             }
             count.close();
 
@@ -157,7 +180,7 @@ public class DefaultLiveUpdater implements LiveUpdater {
      * {@inheritDoc}
      */
     @Override
-    public void notifyObserver() {
+    public synchronized void notifyObserver() {
         try {
             if (path != null) {
                 update(path, this.model.getDatabaseParser(), this.model.getDatabaseInterface());
@@ -66,9 +66,10 @@ public interface LiveUpdater extends Observer {
     public void updateMetaData(Database database);
 
     /**
-     * Sets up the updater for the incoming requests
+     * Sets up the updater for the incoming requests. Waits for an update
+     * already under way to finish, so none run on the old path afterwards.
      *
-     * @param path Path to the database
+     * @param path Path to the database, null to stop updating
      */
     public void setDatabase(String path);
 
@@ -25,12 +25,17 @@
 package battyp.lancaster.sqlitevisualiser.model.log;
 
 import battyp.lancaster.sqlitevisualiser.model.database.Database;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTree;
 import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell;
 import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeNode;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.FlatBTree;
 import battyp.lancaster.sqlitevisualiser.model.datastructures.LogItem;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.TreeView;
 
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
 import java.util.stream.Collectors;
 
 /**
@@ -39,6 +44,21 @@ import java.util.stream.Collectors;
  * <p>
  * Default implementation of Log.
  *
+ * <p>
+ * Pages are matched between the two databases by page number, using
+ * the index kept by each tree rather than comparing every pair. A page
+ * whose node is equal to the node before, by the kept Merkle hashes,
+ * is skipped along with everything below it. The trees are compared as
+ * flat copies, walked through the links between nodes rather than by
+ * recursion or a stack of cells. The copy of the newer tree is kept, so
+ * on the next update only the new tree is copied, as long as the kept
+ * tree has not been changed since.
+ *
+ * <p>
+ * Lazy nodes are not loaded for the compare, only the pages both trees
+ * have loaded are compared. A page is only reported as added or removed
+ * if the other tree has loaded the page it would be under.
+ *
  * @author Paul Batty
  * @see Log
  * @since 0.9
@@ -50,6 +70,12 @@ public class DefaultLog implements Log {
 
     private List<LogItem> logItems;
 
+    private BTree<BTreeCell> copiedTree;
+    private BTreeNode<BTreeCell> copiedRoot;
+    private int copiedModifications;
+    private int copiedHash;
+    private FlatBTree copy;
+
     /**
      * Constructor.
      */
@@ -63,34 +89,76 @@ public class DefaultLog implements Log {
      */
     @Override
     public void detectChanges(Database newDatabase, Database previousDatabase) {
-        sqlLog.clear();
         if (previousDatabase != null && newDatabase != null) {
-            BTreeNode<BTreeCell> oldRoot = previousDatabase.getBTree().getRoot();
-            BTreeNode<BTreeCell> newRoot = newDatabase.getBTree().getRoot();
+            BTree<BTreeCell> oldBTree = previousDatabase.getBTree();
+            BTree<BTreeCell> newBTree = newDatabase.getBTree();
+            BTreeNode<BTreeCell> oldRoot = oldBTree.getRoot();
+            BTreeNode<BTreeCell> newRoot = newBTree.getRoot();
 
             if (oldRoot != null && newRoot != null) {
                 if (newRoot.equals(oldRoot)) {
+                    sqlLog.clear();
                     return;
                 }
-                Stack<BTreeCell> oldTree = oldRoot.childrenToStack();
-                Stack<BTreeCell> newTree = newRoot.childrenToStack();
-
-                String date = new SimpleDateFormat("HH:mm:ss dd/MM/yyyy").format(Calendar.getInstance().getTime());
-                    detectTreeChanges(newTree, oldTree);
-                    detectDataChanges(newTree, oldTree);
-                if (sqlLog.size() != 0) {
-                    sqlLog.set(sqlLog.size() - 1, sqlLog.get(sqlLog.size() - 1) + "\n");
-
-                    LogItem entry = new LogItem();
-                    entry.date = date;
-                    entry.items = sqlLog;
-                    logItems.add(entry);
-                }
+                FlatBTree oldCopy = copyOf(oldBTree);
+                detectChanges(copyOf(newBTree), oldCopy);
+                return;
             }
         }
+        sqlLog.clear();
+    }
+
+    /**
+     * Gets a flat copy of a tree, reusing the copy kept from the last
+     * update if it is of the same tree and the tree has not changed.
+     * The new copy is kept in its place.
+     *
+     * @param tree The tree to copy.
+     *
+     * @return The copy.
+     */
+    private FlatBTree copyOf(BTree<BTreeCell> tree) {
+        BTreeNode<BTreeCell> root = tree.getRoot();
+        int modifications = tree.getModificationCount();
+        // the kept hash also catches changes made through subtrees shared with another tree
+        if (tree != this.copiedTree || root != this.copiedRoot
+                || modifications != this.copiedModifications || root.hashCode() != this.copiedHash) {
+            this.copy = FlatBTree.copyOf(tree);
+            this.copiedTree = tree;
+            this.copiedRoot = root;
+            this.copiedModifications = modifications;
+            this.copiedHash = root.hashCode();
+        }
+        return this.copy;
+    }
+
+    /**
+     * Detects the changes between two trees of pages, marking the
+     * changed cells and adding an entry to the log if anything changed.
+     *
+     * @param newTree The tree after the changes.
+     * @param previousTree The tree before the changes.
+     */
+    public void detectChanges(TreeView newTree, TreeView previousTree) {
+        sqlLog.clear();
+        if (newTree.getRoot() == TreeView.NONE || previousTree.getRoot() == TreeView.NONE) {
+            return;
+        }
+
+        String date = new SimpleDateFormat("HH:mm:ss dd/MM/yyyy").format(Calendar.getInstance().getTime());
+        detectTreeChanges(newTree, previousTree);
+        detectDataChanges(newTree, previousTree);
+        if (sqlLog.size() != 0) {
+            sqlLog.set(sqlLog.size() - 1, sqlLog.get(sqlLog.size() - 1) + "\n");
+
+            LogItem entry = new LogItem();
+            entry.date = date;
+            entry.items = sqlLog;
+            logItems.add(entry);
+        }
     }
 
-    private void detectTreeChanges(Stack<BTreeCell> newTree, Stack<BTreeCell> oldTree) {
+    private void detectTreeChanges(TreeView newTree, TreeView oldTree) {
         int newNumNodes = newTree.size();
         int oldNumNodes = oldTree.size();
 
@@ -101,45 +169,122 @@ public class DefaultLog implements Log {
         }
     }
 
-    private void detectAddedPages(Stack<BTreeCell> newTree, Stack<BTreeCell> oldTree) {
-        detectPageChanges(newTree, oldTree, 1, "ADDED PAGE ");
-    }
-
-    private void detectRemovedPages(Stack<BTreeCell> newTree, Stack<BTreeCell> oldTree) {
-        detectPageChanges(oldTree, newTree, 2, "REMOVED PAGE ");
+    private void detectAddedPages(TreeView newTree, TreeView oldTree) {
+        walkPostOrder(newTree, node -> false, node -> {
+            if (oldTree.findPage(newTree.getPageNumber(node)) == TreeView.NONE && isLoadedIn(oldTree, newTree, node)) {
+                BTreeCell cell = newTree.getCell(node);
+                cell.changed = true;
+                sqlLog.add("ADDED PAGE '" + cell.pageNumber + "'");
+            }
+        });
     }
 
-    private void detectPageChanges(Stack<BTreeCell> newTree, Stack<BTreeCell> oldTree, int newCell, String message) {
-        for (BTreeCell n : newTree) {
-            for (BTreeCell nn : oldTree) {
-                if (nn.pageNumber != n.pageNumber) {
-                    if (newCell == 1) {
-                        n.changed = true;
-                    } else {
-                        nn.changed = true;
+    private void detectRemovedPages(TreeView newTree, TreeView oldTree) {
+        walkPostOrder(oldTree, node -> false, node -> {
+            int pageNumber = oldTree.getPageNumber(node);
+            if (newTree.findPage(pageNumber) == TreeView.NONE && isLoadedIn(newTree, oldTree, node)) {
+                // the removed page is not shown, so mark the page it was removed from
+                int oldNode = oldTree.findPage(pageNumber);
+                if (oldNode != TreeView.NONE && oldTree.getParent(oldNode) != TreeView.NONE) {
+                    int newParent = newTree.findPage(oldTree.getPageNumber(oldTree.getParent(oldNode)));
+                    if (newParent != TreeView.NONE) {
+                        newTree.getCell(newParent).changed = true;
                     }
-                    sqlLog.add(message + "'" + n.pageNumber + "'");
                 }
+                sqlLog.add("REMOVED PAGE '" + oldTree.getCell(node).pageNumber + "'");
+            }
+        });
+    }
+
+    /**
+     * Checks if a tree has loaded the part where a node of the other tree
+     * would be, by finding the nearest page above the node that is in the
+     * tree. A lazy tree does not know the pages under a node it has not
+     * loaded, so they cannot be said to be missing.
+     *
+     * @param tree The tree to look in.
+     * @param other The tree the node is in.
+     * @param node The node.
+     *
+     * @return True if the tree would have the page of the node, if it had it.
+     */
+    private static boolean isLoadedIn(TreeView tree, TreeView other, int node) {
+        for (int parent = other.getParent(node); parent != TreeView.NONE; parent = other.getParent(parent)) {
+            int found = tree.findPage(other.getPageNumber(parent));
+            if (found != TreeView.NONE) {
+                return tree.isLoaded(found);
             }
         }
+        return true;
     }
 
-    private void detectDataChanges(Stack<BTreeCell> newTree, Stack<BTreeCell> oldTree) {
-        for (BTreeCell newTreeCell : newTree) {
-            for (BTreeCell oldTreeCell : oldTree) {
-                if (newTreeCell.pageNumber == oldTreeCell.pageNumber) {
+    private void detectDataChanges(TreeView newTree, TreeView oldTree) {
+        // a page equal to the page before, by its cell and hash, has nothing changed below it
+        // the page is looked up once when tested, the match is kept for the visit
+        int[] oldNodes = new int[newTree.size()];
+        IntPredicate unchanged = node -> {
+            int oldNode = oldTree.findPage(newTree.getPageNumber(node));
+            oldNodes[node] = oldNode;
+            return oldNode != TreeView.NONE
+                    && oldTree.getHash(oldNode) == newTree.getHash(node)
+                    && oldTree.getCell(oldNode).equals(newTree.getCell(node));
+        };
+        walkPostOrder(newTree, unchanged, node -> {
+            int oldNode = oldNodes[node];
+            if (oldNode != TreeView.NONE) {
+                BTreeCell newTreeCell = newTree.getCell(node);
+                BTreeCell oldTreeCell = oldTree.getCell(oldNode);
 
-                    int newCellCount = newTreeCell.cellCount;
-                    int oldCellCount = oldTreeCell.cellCount;
+                int newCellCount = newTreeCell.cellCount;
+                int oldCellCount = oldTreeCell.cellCount;
 
-                    if (newCellCount > oldCellCount) {
-                        detectAddedRows(newTreeCell, oldTreeCell);
-                    } else if (newCellCount < oldCellCount) {
-                        detectRemovedRows(newTreeCell, oldTreeCell);
-                    } else if (!oldTreeCell.equals(newTreeCell)) {
-                        detectUpdatedRows(newTreeCell, oldTreeCell);
-                    }
+                if (newCellCount > oldCellCount) {
+                    detectAddedRows(newTreeCell, oldTreeCell);
+                } else if (newCellCount < oldCellCount) {
+                    detectRemovedRows(newTreeCell, oldTreeCell);
+                } else if (!oldTreeCell.equals(newTreeCell)) {
+                    detectUpdatedRows(newTreeCell, oldTreeCell);
+                }
+            }
+        });
+    }
+
+    /**
+     * Visits the nodes of a tree children first, by following the links
+     * between nodes so no stack is needed. A skipped node is not visited,
+     * nor is anything below it. Each node is tested once, on the way down.
+     *
+     * @param tree The tree to walk.
+     * @param skip Whether to skip a node.
+     * @param visit Called for each node visited.
+     */
+    private static void walkPostOrder(TreeView tree, IntPredicate skip, IntConsumer visit) {
+        int root = tree.getRoot();
+        if (root == TreeView.NONE) {
+            return;
+        }
+        int node = root;
+        while (true) {
+            if (!skip.test(node)) {
+                int child = tree.getFirstChild(node);
+                if (child != TreeView.NONE) {
+                    node = child;
+                    continue;
+                }
+                visit.accept(node);
+            }
+            // the parents on the way back up were not skipped, or they would not have been gone into
+            while (true) {
+                if (node == root) {
+                    return;
+                }
+                int next = tree.getNextSibling(node);
+                if (next != TreeView.NONE) {
+                    node = next;
+                    break;
                 }
+                node = tree.getParent(node);
+                visit.accept(node);
             }
         }
     }
@@ -159,15 +304,15 @@ public class DefaultLog implements Log {
             comparisonCell.changed = true;
         }
 
-        List<String> newCellData = new ArrayList<>(Arrays.asList(mainCell.data));
-        newCellData.removeAll(new ArrayList<>(Arrays.asList(comparisonCell.data)));
+        List<String> newCellData = new ArrayList<>(Arrays.asList(mainCell.getPreviews()));
+        newCellData.removeAll(new ArrayList<>(Arrays.asList(comparisonCell.getPreviews())));
         sqlLog.addAll(newCellData.stream().map(s -> message + "'" + s + "'").collect(Collectors.toList()));
     }
 
     private void detectUpdatedRows(BTreeCell newCell, BTreeCell oldCell) {
         newCell.changed = true;
-        String[] oldData = oldCell.data;
-        String[] newData = newCell.data;
+        String[] oldData = oldCell.getPreviews();
+        String[] newData = newCell.getPreviews();
         int size = oldCell.cellCount;
         for (int j = 0; j < size; j++) {
             if (!oldData[j].equals(newData[j])) {
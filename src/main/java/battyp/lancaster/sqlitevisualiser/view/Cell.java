@@ -97,6 +97,14 @@ public class Cell extends Pane {
         this.setEffect(borderGlow);
     }
 
+    /**
+     * Adds a dashed outline to the cell, to show only a sample of its
+     * children were parsed.
+     */
+    public void markSampled() {
+        this.getStyleClass().add("sampledCell");
+    }
+
     public void addCellChild(Cell cell) {
         children.add(cell);
     }
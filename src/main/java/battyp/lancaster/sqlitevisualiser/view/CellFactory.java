@@ -76,6 +76,10 @@ public class CellFactory {
                 cellReturn = new IndexPointerInternalCell(cell);
                 break;
             }
+            case Freelist: {
+                cellReturn = new FreelistCell(cell);
+                break;
+            }
         }
         if (cell.changed) {
            cellReturn.highlight();
@@ -40,5 +40,6 @@ public enum CellType {
     TABLE_LEAF,
     Table_Pointer_Internal,
     Index_Leaf,
-    Index_Pointer_Internal
+    Index_Pointer_Internal,
+    Freelist
 }
@@ -27,7 +27,9 @@ package battyp.lancaster.sqlitevisualiser.tests.model;
 import battyp.lancaster.sqlitevisualiser.model.DefaultModel;
 import battyp.lancaster.sqlitevisualiser.model.database.Database;
 import battyp.lancaster.sqlitevisualiser.model.databaseparser.DefaultDatabaseParser;
+import battyp.lancaster.sqlitevisualiser.model.databaseparser.ParseMonitor;
 import battyp.lancaster.sqlitevisualiser.model.datastructures.BTree;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell;
 import battyp.lancaster.sqlitevisualiser.model.datastructures.Metadata;
 import battyp.lancaster.sqlitevisualiser.model.exceptions.InvalidFileException;
 import battyp.lancaster.sqlitevisualiser.tests.model.mocks.*;
@@ -37,6 +39,8 @@ import org.junit.Test;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
 
 /**
  * JUnit tests for DefaultModel
@@ -79,6 +83,83 @@ public class DefaultModelTest {
         Assert.assertEquals(true, model.isFileOpen());
     }
 
+    @Test
+    public void TestOpenFileClassifiesPages() throws IOException, InvalidFileException, SQLException, ClassNotFoundException {
+        DefaultModel model = new DefaultModel();
+        model.openDatabase("validDatabase", new Database(new BTree(), new Metadata()));
+        Assert.assertNotNull(model.getDatabase().getMetadata().pageMap);
+    }
+
+    @Test
+    public void TestParseDatabaseDoesNotOpenUntilAsked() throws IOException, InvalidFileException {
+        DefaultModel model = new DefaultModel();
+        Database database = model.parseDatabase("validDatabase", new Database(new BTree(), new Metadata()), 1, null);
+        Assert.assertNotNull(database.getBTree().getRoot());
+        Assert.assertEquals(false, model.isFileOpen());
+
+        model.openParsedDatabase("validDatabase", database);
+        Assert.assertEquals(true, model.isFileOpen());
+        Assert.assertEquals(database, model.getDatabase());
+    }
+
+    @Test
+    public void TestSmallFileIsNotParsedLazily() throws IOException, InvalidFileException {
+        DefaultModel model = new DefaultModel();
+        Database database = model.parseDatabase("validDatabase", new Database(new BTree(), new Metadata()), 1, null);
+        Assert.assertEquals(false, model.getDatabaseParser().isLazy());
+        Assert.assertEquals(true, database.getBTree().getRoot().isMaterialised());
+    }
+
+    @Test
+    public void TestLargeFileIsParsedLazily() throws IOException, InvalidFileException {
+        DefaultModel model = new DefaultModel();
+        model.setLazyFileSize(-1);
+        Database database = model.parseDatabase("validDatabase", new Database(new BTree(), new Metadata()), 1, null);
+        Assert.assertEquals(false, model.getDatabaseParser().isLazy());
+        Assert.assertEquals(false, database.getBTree().getRoot().isMaterialised());
+    }
+
+    @Test
+    public void TestOpenedLargeFileIsUpdatedLazily() throws IOException, InvalidFileException {
+        DefaultModel model = new DefaultModel();
+        model.setLazyFileSize(-1);
+        Database database = model.parseDatabase("validDatabase", new Database(new BTree(), new Metadata()), 1, null);
+        model.openParsedDatabase("validDatabase", database);
+        Assert.assertEquals(true, model.getDatabaseParser().isLazy());
+    }
+
+    @Test
+    public void TestSampledParseLeavesSampleRate() throws IOException, InvalidFileException {
+        DefaultModel model = new DefaultModel();
+        Database database = model.parseDatabase("validDatabase", new Database(new BTree(), new Metadata()), 0.5, null);
+        Assert.assertNotNull(database.getMetadata().sampleEstimate);
+        Assert.assertEquals(1, model.getDatabaseParser().getSampleRate(), 0);
+    }
+
+    @Test
+    public void TestCancelledOpenLeavesFileClosed() throws IOException, InvalidFileException, SQLException, ClassNotFoundException {
+        DefaultModel model = new DefaultModel();
+        try {
+            model.openDatabase("validDatabase", new Database(new BTree(), new Metadata()), new ParseMonitor() {
+                @Override
+                public void progress(long pagesParsed, long pageCount) {
+                }
+
+                @Override
+                public void levelParsed(List<BTreeCell> level, int[] parents, int depth) {
+                }
+
+                @Override
+                public boolean isCancelled() {
+                    return true;
+                }
+            });
+            Assert.fail();
+        } catch (CancellationException e) {
+            Assert.assertEquals(false, model.isFileOpen());
+        }
+    }
+
     @Test(expected = InvalidFileException.class)
     public void TestOpenFileReturnInValidFileWhenOpeningInValidFile() throws IOException, InvalidFileException, SQLException, ClassNotFoundException {
         DefaultModel model = new DefaultModel();
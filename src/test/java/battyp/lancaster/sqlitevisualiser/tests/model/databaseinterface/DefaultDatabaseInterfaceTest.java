@@ -273,4 +273,21 @@ public class DefaultDatabaseInterfaceTest {
         databaseInterface.clear();
         Assert.assertEquals(null, databaseInterface.getCurrent());
     }
+
+    @Test
+    public void TestGetLatestWhenEmpty() {
+        DefaultDatabaseInterface databaseInterface = new DefaultDatabaseInterface();
+        Assert.assertEquals(null, databaseInterface.getLatest());
+    }
+
+    @Test
+    public void TestGetLatestIgnoresCurrent() {
+        DefaultDatabaseInterface databaseInterface = new DefaultDatabaseInterface();
+        Database first = new Database(new BTree(), new Metadata());
+        Database second = new Database(new BTree(), new Metadata());
+        databaseInterface.addDatabase(first);
+        databaseInterface.addDatabase(second);
+        Assert.assertEquals(first, databaseInterface.getCurrent());
+        Assert.assertEquals(second, databaseInterface.getLatest());
+    }
 }
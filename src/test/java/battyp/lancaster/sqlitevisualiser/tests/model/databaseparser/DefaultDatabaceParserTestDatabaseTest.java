@@ -56,8 +56,8 @@ public class DefaultDatabaceParserTestDatabaseTest {
     @Test
     public void TestRootNodeHash() {
         BTreeCell cell = (BTreeCell) database.getBTree().getRoot().getData();
-        Assert.assertEquals(1, cell.hashCode());
-        Assert.assertEquals(-1978372773, database.getBTree().getRoot().hashCode());
+        Assert.assertEquals(1148551, cell.hashCode());
+        Assert.assertEquals(139652227, database.getBTree().getRoot().hashCode());
     }
 
     @Test
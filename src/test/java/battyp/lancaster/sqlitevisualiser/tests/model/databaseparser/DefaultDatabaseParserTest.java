@@ -26,13 +26,48 @@ package battyp.lancaster.sqlitevisualiser.tests.model.databaseparser;
 
 import battyp.lancaster.sqlitevisualiser.model.database.Database;
 import battyp.lancaster.sqlitevisualiser.model.databaseparser.DefaultDatabaseParser;
+import battyp.lancaster.sqlitevisualiser.model.databaseparser.PageStatisticsVisitor;
+import battyp.lancaster.sqlitevisualiser.model.databaseparser.ParseMonitor;
+import battyp.lancaster.sqlitevisualiser.model.databaseparser.PageVisitor;
 import battyp.lancaster.sqlitevisualiser.model.datastructures.BTree;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeNode;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.Freelist;
 import battyp.lancaster.sqlitevisualiser.model.datastructures.Metadata;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.OverflowPayload;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.PageMap;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.PointerMap;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SampleEstimate;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SerialType;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SqliteConstants;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.TraversalOrder;
 import battyp.lancaster.sqlitevisualiser.model.exceptions.InvalidFileException;
+import battyp.lancaster.sqlitevisualiser.util.FileUtil;
+import battyp.lancaster.sqlitevisualiser.view.CellType;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.zip.CRC32;
 
 /**
  * JUnit tests for DefaultDatabaseParser
@@ -91,4 +126,1331 @@ public class DefaultDatabaseParserTest {
         Assert.assertEquals(1, metadata.versionValidNumber);
         Assert.assertEquals(3008002, metadata.sqliteVersion);
     }
+
+    @Test
+    public void TestMemoryMappedByDefault() {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        Assert.assertEquals(true, parser.isMemoryMapped());
+    }
+
+    @Test
+    public void TestRandomAccessMatchesMemoryMapped() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        Database mapped = parser.parseDatabase("testDatabase", new Database(new BTree(), new Metadata()));
+
+        parser.setMemoryMapped(false);
+        Database randomAccess = parser.parseDatabase("testDatabase", new Database(new BTree(), new Metadata()));
+
+        Assert.assertEquals(mapped.getBTree().getNumberOfNodes(), randomAccess.getBTree().getNumberOfNodes());
+        Assert.assertEquals(mapped.getBTree().getRoot(), randomAccess.getBTree().getRoot());
+    }
+
+    @Test
+    public void TestCellsKeepOnlyTheirRecords() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        Database mapped = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+        int pageSize = mapped.getMetadata().pageSize;
+
+        BTreeNode<BTreeCell> root = mapped.getBTree().getRoot();
+        root.stream(TraversalOrder.PRE_ORDER).filter(node -> node != root).forEach(node -> {
+            BTreeCell cell = node.getData();
+            if (cell.page != null) {
+                Assert.assertEquals(false, cell.page.isDirect());
+                Assert.assertEquals(true, cell.page.capacity() < pageSize);
+            }
+        });
+
+        parser.setMemoryMapped(false);
+        Database randomAccess = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+        Assert.assertEquals(mapped.getBTree().getRoot(), randomAccess.getBTree().getRoot());
+    }
+
+    @Test
+    public void TestReparseIsServedFromPageCache() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.parseDatabase("testDatabase", new Database(new BTree(), new Metadata()));
+        long misses = parser.getPageCache().getMisses();
+
+        parser.parseDatabase("testDatabase", new Database(new BTree(), new Metadata()));
+        Assert.assertEquals(misses, parser.getPageCache().getMisses());
+        Assert.assertEquals(misses, parser.getPageCache().getHits());
+    }
+
+    @Test(expected = InvalidFileException.class)
+    public void TestOpenInvalidFileRandomAccess() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setMemoryMapped(false);
+        parser.parseDatabase("invalidDatabase.db", new Database(new BTree(), new Metadata()));
+    }
+
+    @Test
+    public void TestSequentialByDefault() {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        Assert.assertEquals(1, parser.getParallelism());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TestInvalidParallelism() {
+        new DefaultDatabaseParser().setParallelism(0);
+    }
+
+    @Test
+    public void TestParallelMatchesSequential() throws IOException, InvalidFileException {
+        Database sequential = new DefaultDatabaseParser().parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setParallelism(4);
+        Database parallel = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+
+        Assert.assertEquals(sequential.getBTree().getNumberOfNodes(), parallel.getBTree().getNumberOfNodes());
+        assertSameTree(sequential.getBTree().getRoot(), parallel.getBTree().getRoot());
+    }
+
+    @Test
+    public void TestParallelRandomAccessMatchesSequential() throws IOException, InvalidFileException {
+        Database sequential = new DefaultDatabaseParser().parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setMemoryMapped(false);
+        parser.setParallelism(4);
+        Database parallel = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+
+        assertSameTree(sequential.getBTree().getRoot(), parallel.getBTree().getRoot());
+    }
+
+    @Test
+    public void TestMonitoredParseMatchesSequential() throws IOException, InvalidFileException {
+        for (String file : new String[] {"Chinook_Sqlite.sqlite", "overflowDatabase", "testDatabase"}) {
+            Database sequential = new DefaultDatabaseParser().parseDatabase(file, new Database(new BTree(), new Metadata()));
+
+            RecordingMonitor monitor = new RecordingMonitor(-1);
+            Database monitored = new DefaultDatabaseParser().parseDatabase(file, new Database(new BTree(), new Metadata()), null, monitor);
+
+            assertSameTree(sequential.getBTree().getRoot(), monitored.getBTree().getRoot());
+        }
+    }
+
+    @Test
+    public void TestParallelMonitoredParseMatchesSequential() throws IOException, InvalidFileException {
+        Database sequential = new DefaultDatabaseParser().parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setParallelism(4);
+        RecordingMonitor monitor = new RecordingMonitor(-1);
+        Database monitored = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()), null, monitor);
+
+        assertSameTree(sequential.getBTree().getRoot(), monitored.getBTree().getRoot());
+        Assert.assertEquals(sequential.getBTree().getNumberOfNodes(), monitor.pagesParsed);
+    }
+
+    @Test
+    public void TestMonitorReportsProgressAndLevels() throws IOException, InvalidFileException {
+        RecordingMonitor monitor = new RecordingMonitor(-1);
+        Database database = new DefaultDatabaseParser().parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()), null, monitor);
+
+        Assert.assertEquals(database.getBTree().getNumberOfNodes(), monitor.pagesParsed);
+        Assert.assertTrue(monitor.pagesParsed <= monitor.pageCount);
+        Assert.assertTrue(monitor.depths.size() > 1);
+        for (int i = 0; i < monitor.depths.size(); i++) {
+            Assert.assertEquals(i, (int) monitor.depths.get(i));
+        }
+    }
+
+    @Test
+    public void TestMonitorLevelsRebuildTheTree() throws IOException, InvalidFileException {
+        RecordingMonitor monitor = new RecordingMonitor(-1);
+        Database database = new DefaultDatabaseParser().parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()), null, monitor);
+
+        Assert.assertEquals(1, monitor.levelSizes.get(0).intValue());
+        assertSameTree(database.getBTree().getRoot(), monitor.root);
+    }
+
+    @Test(expected = CancellationException.class)
+    public void TestCancelledParse() throws IOException, InvalidFileException {
+        RecordingMonitor monitor = new RecordingMonitor(10);
+        try {
+            new DefaultDatabaseParser().parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()), null, monitor);
+        } finally {
+            Assert.assertEquals(10, monitor.pagesParsed);
+        }
+    }
+
+    @Test
+    public void TestNoRetriesOnUnchangedFile() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+        Assert.assertEquals(0, parser.getRetries());
+        Assert.assertEquals(0, parser.getTornReads());
+    }
+
+    @Test
+    public void TestTornReadIsRetried() throws IOException, InvalidFileException {
+        File copy = File.createTempFile("torn", ".sqlite");
+        copy.deleteOnExit();
+        Files.copy(FileUtil.openFile("Chinook_Sqlite.sqlite").toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Database expected = new DefaultDatabaseParser().parseDatabase(copy.getPath(), new Database(new BTree(), new Metadata()));
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        Database database = parser.parseDatabase(copy.getPath(), new Database(new BTree(), new Metadata()), null, new CommitWriter(copy, 1));
+
+        Assert.assertEquals(1, parser.getTornReads());
+        Assert.assertEquals(1, parser.getRetries());
+        assertSameTree(expected.getBTree().getRoot(), database.getBTree().getRoot());
+        Assert.assertEquals(expected.getMetadata().fileChangeCounter + 1, database.getMetadata().fileChangeCounter);
+    }
+
+    @Test
+    public void TestTornReadsRunOutOfRetries() throws IOException, InvalidFileException {
+        File copy = File.createTempFile("torn", ".sqlite");
+        copy.deleteOnExit();
+        Files.copy(FileUtil.openFile("testDatabase").toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setMaxRetries(2);
+        try {
+            parser.parseDatabase(copy.getPath(), new Database(new BTree(), new Metadata()), null, new CommitWriter(copy, Integer.MAX_VALUE));
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals(3, parser.getTornReads());
+            Assert.assertEquals(2, parser.getRetries());
+        }
+    }
+
+    @Test
+    public void TestSharedLockParse() throws IOException, InvalidFileException {
+        Database expected = new DefaultDatabaseParser().parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setSharedLock(true);
+        Database locked = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+
+        assertSameTree(expected.getBTree().getRoot(), locked.getBTree().getRoot());
+        Assert.assertEquals(0, parser.getRetries());
+    }
+
+    @Test
+    public void TestSharedLockWaitsForWriter() throws IOException, InvalidFileException {
+        File copy = File.createTempFile("locked", ".sqlite");
+        copy.deleteOnExit();
+        Files.copy(FileUtil.openFile("testDatabase").toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setSharedLock(true);
+        parser.setMaxRetries(1);
+        try (FileChannel channel = FileChannel.open(copy.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock pending = channel.lock(SqliteConstants.PENDING_BYTE, 1, false)) {
+            parser.parseDatabase(copy.getPath(), new Database(new BTree(), new Metadata()));
+            Assert.fail();
+        } catch (IOException e) {
+            Assert.assertEquals(1, parser.getRetries());
+            Assert.assertEquals(0, parser.getTornReads());
+        }
+        parser.parseDatabase(copy.getPath(), new Database(new BTree(), new Metadata()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TestInvalidMaxRetries() {
+        new DefaultDatabaseParser().setMaxRetries(-1);
+    }
+
+    @Test
+    public void TestNoSampleByDefault() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        Assert.assertEquals(1, parser.getSampleRate(), 0);
+        Database database = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+        Assert.assertEquals(null, database.getMetadata().sampleEstimate);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TestInvalidSampleRate() {
+        new DefaultDatabaseParser().setSampleRate(0);
+    }
+
+    @Test
+    public void TestSampledParseEstimatesLeaves() throws IOException, InvalidFileException {
+        Database full = new DefaultDatabaseParser().parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+        long[] actual = new long[3];
+        countTableLeaves(full.getBTree().getRoot(), true, actual);
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setSampleRate(0.3);
+        Database sampled = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+        SampleEstimate estimate = sampled.getMetadata().sampleEstimate;
+
+        Assert.assertEquals(actual[0], estimate.leafPages + estimate.getExactPages());
+        Assert.assertTrue(estimate.getSampledPages() > 0);
+        Assert.assertTrue(estimate.getSampledPages() < estimate.leafPages);
+        Assert.assertTrue(estimate.getRows().contains(actual[1]));
+        Assert.assertTrue(estimate.getPayloadBytes().contains(actual[2]));
+        Assert.assertTrue(sampled.getBTree().getNumberOfNodes() < full.getBTree().getNumberOfNodes());
+    }
+
+    @Test
+    public void TestSampledParseSamplesIndexLeaves() throws IOException, InvalidFileException {
+        Database full = new DefaultDatabaseParser().parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+        int actual = countIndexLeaves(full.getBTree().getRoot());
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setSampleRate(0.3);
+        Database sampled = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+        SampleEstimate estimate = sampled.getMetadata().sampleEstimate;
+
+        Assert.assertEquals(actual, estimate.indexLeafPages + estimate.getExactIndexPages());
+        Assert.assertTrue(estimate.getSampledIndexPages() > 0);
+        Assert.assertTrue(estimate.getSampledIndexPages() < estimate.indexLeafPages);
+        Assert.assertEquals(estimate.getSampledIndexPages() + estimate.getExactIndexPages(), countIndexLeaves(sampled.getBTree().getRoot()));
+    }
+
+    private int countIndexLeaves(BTreeNode<BTreeCell> node) {
+        int count = node.getData().cellType == SqliteConstants.INDEX_BTREE_LEAF_CELL ? 1 : 0;
+        for (BTreeNode<BTreeCell> child : node.getChildren()) {
+            count += countIndexLeaves(child);
+        }
+        return count;
+    }
+
+    @Test
+    public void TestSampledParseKeepsEveryTree() throws IOException, InvalidFileException {
+        Database full = new DefaultDatabaseParser().parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setSampleRate(0.1);
+        Database sampled = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+
+        List<BTreeNode<BTreeCell>> fullRoots = full.getBTree().getRoot().getChildren();
+        List<BTreeNode<BTreeCell>> sampledRoots = sampled.getBTree().getRoot().getChildren();
+        Assert.assertEquals(fullRoots.size(), sampledRoots.size());
+        for (int i = 0; i < fullRoots.size(); i++) {
+            Assert.assertEquals(fullRoots.get(i).getData().pageNumber, sampledRoots.get(i).getData().pageNumber);
+        }
+    }
+
+    @Test
+    public void TestSampledParseIsRepeatable() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setSampleRate(0.2);
+        Database first = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+        Database second = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+
+        assertSameTree(first.getBTree().getRoot(), second.getBTree().getRoot());
+        Assert.assertEquals(first.getMetadata().sampleEstimate.getRows().value, second.getMetadata().sampleEstimate.getRows().value, 0);
+    }
+
+    @Test
+    public void TestSampledParseDoesNotClassify() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setSampleRate(0.5);
+        parser.setClassifyPages(true);
+        Database database = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+        Assert.assertEquals(null, database.getMetadata().pageMap);
+    }
+
+    @Test
+    public void TestSampleRatePerParseLeavesSetting() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        Database sampled = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()), null, null, false, 0.5);
+        Assert.assertNotNull(sampled.getMetadata().sampleEstimate);
+        Assert.assertEquals(1, parser.getSampleRate(), 0);
+
+        Database full = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+        Assert.assertEquals(null, full.getMetadata().sampleEstimate);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TestInvalidSampleRatePerParse() throws IOException, InvalidFileException {
+        new DefaultDatabaseParser().parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()), null, null, false, 0);
+    }
+
+    /**
+     * Counts the table leaf pages, rows and payload bytes outside the schema.
+     */
+    private void countTableLeaves(BTreeNode<BTreeCell> node, boolean schema, long[] counts) {
+        BTreeCell cell = node.getData();
+        if (cell.cellType == SqliteConstants.TABLE_BTREE_LEAF_CELL && !schema) {
+            counts[0]++;
+            counts[1] += cell.cellCount;
+            for (long size : cell.payLoadSize) {
+                counts[2] += size;
+            }
+        }
+        for (BTreeNode<BTreeCell> child : node.getChildren()) {
+            countTableLeaves(child, schema && cell.cellType == SqliteConstants.TABLE_BTREE_INTERIOR_CELL, counts);
+        }
+    }
+
+    @Test
+    public void TestNoScanByDefault() {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        Assert.assertEquals(false, parser.isSequentialScan());
+    }
+
+    @Test
+    public void TestScanMatchesSequential() throws IOException, InvalidFileException {
+        for (String file : new String[] {"Chinook_Sqlite.sqlite", "overflowDatabase", "testDatabase"}) {
+            Database sequential = new DefaultDatabaseParser().parseDatabase(file, new Database(new BTree(), new Metadata()));
+
+            DefaultDatabaseParser parser = new DefaultDatabaseParser();
+            parser.setSequentialScan(true);
+            Database scanned = parser.parseDatabase(file, new Database(new BTree(), new Metadata()));
+
+            assertSameTree(sequential.getBTree().getRoot(), scanned.getBTree().getRoot());
+        }
+    }
+
+    @Test
+    public void TestScanRandomAccessMatchesSequential() throws IOException, InvalidFileException {
+        Database sequential = new DefaultDatabaseParser().parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setMemoryMapped(false);
+        parser.setSequentialScan(true);
+        Database scanned = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+
+        assertSameTree(sequential.getBTree().getRoot(), scanned.getBTree().getRoot());
+    }
+
+    @Test
+    public void TestScanReadsWalFrames() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setSequentialScan(true);
+        assertWalRows(parser.parseDatabase("walDatabase", new Database(new BTree(), new Metadata())), "uno", "two", "three");
+    }
+
+    @Test(expected = InvalidFileException.class)
+    public void TestOpenInvalidFileScan() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setSequentialScan(true);
+        parser.parseDatabase("invalidDatabase.db", new Database(new BTree(), new Metadata()));
+    }
+
+    @Test
+    public void TestNoPrefetchByDefault() {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        Assert.assertEquals(false, parser.isPrefetch());
+    }
+
+    @Test
+    public void TestPrefetchMatchesSequential() throws IOException, InvalidFileException {
+        Database sequential = new DefaultDatabaseParser().parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setMemoryMapped(false);
+        parser.setPrefetch(true);
+        Database prefetched = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+        assertSameTree(sequential.getBTree().getRoot(), prefetched.getBTree().getRoot());
+
+        parser = new DefaultDatabaseParser();
+        parser.setPrefetch(true);
+        parser.setParallelism(4);
+        prefetched = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+        assertSameTree(sequential.getBTree().getRoot(), prefetched.getBTree().getRoot());
+    }
+
+    @Test
+    public void TestPrefetchReadsWalFrames() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setPrefetch(true);
+        assertWalRows(parser.parseDatabase("walDatabase", new Database(new BTree(), new Metadata())), "uno", "two", "three");
+    }
+
+    @Test(expected = InvalidFileException.class)
+    public void TestOpenInvalidFileParallel() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setParallelism(4);
+        parser.parseDatabase("invalidDatabase.db", new Database(new BTree(), new Metadata()));
+    }
+
+    @Test
+    public void TestLazyParsesOnlyTheRoot() throws IOException, InvalidFileException {
+        Database eager = new DefaultDatabaseParser().parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setLazy(true);
+        Database lazy = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+
+        BTreeNode<BTreeCell> root = lazy.getBTree().getRoot();
+        Assert.assertEquals(false, root.isMaterialised());
+        Assert.assertEquals(eager.getBTree().getRoot().getNumberOfChildren(), root.getNumberOfChildren());
+    }
+
+    @Test
+    public void TestLazyMatchesEager() throws IOException, InvalidFileException {
+        Database eager = new DefaultDatabaseParser().parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setLazy(true);
+        Database lazy = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+
+        assertSameTree(eager.getBTree().getRoot(), lazy.getBTree().getRoot());
+        Assert.assertEquals(eager.getBTree().getNumberOfNodes(), lazy.getBTree().getNumberOfNodes());
+    }
+
+    @Test
+    public void TestLazyPerParseLeavesSetting() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        Database lazy = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()), null, null, true, 1);
+        Assert.assertEquals(false, lazy.getBTree().getRoot().isMaterialised());
+        Assert.assertEquals(false, parser.isLazy());
+
+        Database eager = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+        Assert.assertEquals(true, eager.getBTree().getRoot().isMaterialised());
+    }
+
+    @Test
+    public void TestLazyDoesNotLoadFromChangedFile() throws IOException, InvalidFileException {
+        File copy = File.createTempFile("lazy", ".sqlite");
+        copy.deleteOnExit();
+        Files.copy(FileUtil.openFile("Chinook_Sqlite.sqlite").toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setLazy(true);
+        Database lazy = parser.parseDatabase(copy.getPath(), new Database(new BTree(), new Metadata()));
+
+        try (RandomAccessFile file = new RandomAccessFile(copy, "rw")) {
+            file.seek(24);
+            file.writeInt(lazy.getMetadata().fileChangeCounter + 1);
+        }
+        Assert.assertEquals(0, lazy.getBTree().getRoot().getChildren().size());
+        Assert.assertEquals(false, lazy.getBTree().getRoot().isMaterialised());
+    }
+
+    @Test
+    public void TestLazyTakesPriorityOverMonitor() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setLazy(true);
+        parser.setClassifyPages(true);
+        Database lazy = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()), null, new RecordingMonitor(-1));
+
+        Assert.assertEquals(false, lazy.getBTree().getRoot().isMaterialised());
+        Assert.assertEquals(1, lazy.getBTree().getNumberOfNodes());
+        Assert.assertEquals(null, lazy.getMetadata().pageMap);
+    }
+
+    @Test
+    public void TestPreviewsAreNotMadeWhenParsing() throws IOException, InvalidFileException {
+        Database database = new DefaultDatabaseParser().parseDatabase("overflowDatabase", new Database(new BTree(), new Metadata()));
+        BTreeCell cell = findRow(database.getBTree().getRoot(), 1);
+        int row = indexOfRow(cell, 1);
+        Assert.assertEquals(null, cell.data[row]);
+        Assert.assertEquals(4, cell.getColumnCount(row));
+    }
+
+    @Test
+    public void TestSchemaRecordIsTyped() throws IOException, InvalidFileException {
+        Database database = new DefaultDatabaseParser().parseDatabase("overflowDatabase", new Database(new BTree(), new Metadata()));
+        BTreeCell cell = (BTreeCell) database.getBTree().getRoot().getData();
+        Assert.assertEquals("table", cell.getText(0, 0));
+        Assert.assertEquals("Item", cell.getText(0, 1));
+        Assert.assertEquals(2, cell.getLong(0, 3));
+        Assert.assertEquals(true, cell.isTable(0));
+        Assert.assertEquals(2, cell.getChildPageNumber(0));
+    }
+
+    @Test
+    public void TestRecordValues() throws IOException, InvalidFileException {
+        Database database = new DefaultDatabaseParser().parseDatabase("overflowDatabase", new Database(new BTree(), new Metadata()));
+        BTreeCell cell = findRow(database.getBTree().getRoot(), 1);
+        int row = indexOfRow(cell, 1);
+        Assert.assertEquals(true, cell.isNull(row, 0));
+        Assert.assertEquals("small", cell.getText(row, 1));
+        Assert.assertEquals(1.5, cell.getDouble(row, 2), 0);
+        Assert.assertEquals(true, Arrays.equals(new byte[] {0x00, (byte) 0xFF}, cell.getBlob(row, 3)));
+        Assert.assertEquals("NULL, small, 1.5, X'00ff'", cell.getPreview(row));
+
+        cell = findRow(database.getBTree().getRoot(), 4);
+        Assert.assertEquals(-70000, cell.getLong(indexOfRow(cell, 4), 2));
+    }
+
+    @Test
+    public void TestOverflowRecordValues() throws IOException, InvalidFileException {
+        Database database = new DefaultDatabaseParser().parseDatabase("overflowDatabase", new Database(new BTree(), new Metadata()));
+        BTreeCell cell = findRow(database.getBTree().getRoot(), 2);
+        int row = indexOfRow(cell, 2);
+        Assert.assertEquals(5000, cell.getText(row, 1).length());
+        Assert.assertEquals(-2.25, cell.getDouble(row, 2), 0);
+        Assert.assertEquals(true, cell.isNull(row, 3));
+
+        cell = findRow(database.getBTree().getRoot(), 3);
+        row = indexOfRow(cell, 3);
+        byte[] blob = cell.getBlob(row, 3);
+        Assert.assertEquals(256 * 12, blob.length);
+        for (int i = 0; i < blob.length; i++) {
+            Assert.assertEquals((byte) i, blob[i]);
+        }
+        Assert.assertEquals(300000, cell.getLong(row, 2));
+    }
+
+    @Test
+    public void TestOverflowChainPages() throws IOException, InvalidFileException {
+        Database database = new DefaultDatabaseParser().parseDatabase("overflowDatabase", new Database(new BTree(), new Metadata()));
+        BTreeCell cell = findRow(database.getBTree().getRoot(), 2);
+        int row = indexOfRow(cell, 2);
+        OverflowPayload payload = cell.overflowPayloads[row];
+        Assert.assertEquals(cell.payLoadSize[row], payload.size);
+        Assert.assertEquals(cell.getOverflowPageNumber(row), payload.pages[0]);
+        Assert.assertEquals(true, payload.isLoaded());
+        Assert.assertEquals(payload.size, payload.local.limit() + (long) payload.pages.length * payload.pageContentSize, payload.pageContentSize);
+    }
+
+    @Test
+    public void TestLargeOverflowIsStreamed() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setOverflowLoadSize(0);
+        Database database = parser.parseDatabase("overflowDatabase", new Database(new BTree(), new Metadata()));
+        Database loaded = new DefaultDatabaseParser().parseDatabase("overflowDatabase", new Database(new BTree(), new Metadata()));
+
+        BTreeCell cell = findRow(database.getBTree().getRoot(), 2);
+        int row = indexOfRow(cell, 2);
+        Assert.assertEquals(false, cell.overflowPayloads[row].isLoaded());
+        Assert.assertEquals(-2.25, cell.getDouble(row, 2), 0);
+        try (InputStream in = cell.getInputStream(row, 1)) {
+            for (int i = 0; i < 5000; i++) {
+                Assert.assertEquals('a', in.read());
+            }
+            Assert.assertEquals(-1, in.read());
+        }
+        Assert.assertEquals(true, cell.getPreview(row).contains("<TEXT 5000 bytes>"));
+
+        cell = findRow(database.getBTree().getRoot(), 3);
+        row = indexOfRow(cell, 3);
+        ByteBuffer blob = ByteBuffer.allocate(256 * 12);
+        try (ReadableByteChannel channel = cell.getChannel(row, 3)) {
+            while (channel.read(blob) >= 0) {
+            }
+        }
+        Assert.assertEquals(256 * 12, blob.position());
+        for (int i = 0; i < blob.position(); i++) {
+            Assert.assertEquals((byte) i, blob.get(i));
+        }
+        Assert.assertEquals(true, Arrays.equals(blob.array(), cell.getBlob(row, 3)));
+
+        Assert.assertEquals(loaded.getBTree().getRoot().hashCode(), database.getBTree().getRoot().hashCode());
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void TestLargeOverflowOfChangedFile() throws IOException, InvalidFileException {
+        File copy = File.createTempFile("overflow", ".sqlite");
+        copy.deleteOnExit();
+        Files.copy(FileUtil.openFile("overflowDatabase").toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setOverflowLoadSize(0);
+        Database database = parser.parseDatabase(copy.getPath(), new Database(new BTree(), new Metadata()));
+        try (RandomAccessFile file = new RandomAccessFile(copy, "rw")) {
+            file.seek(24);
+            file.writeInt(database.getMetadata().fileChangeCounter + 1);
+        }
+        BTreeCell cell = findRow(database.getBTree().getRoot(), 3);
+        cell.getBlob(indexOfRow(cell, 3), 3);
+    }
+
+    @Test
+    public void TestFreelist() throws IOException, InvalidFileException {
+        Database database = new DefaultDatabaseParser().parseDatabase("freelistDatabase", new Database(new BTree(), new Metadata()));
+        Metadata metadata = database.getMetadata();
+        Freelist freelist = metadata.freelist;
+        Assert.assertEquals(metadata.totalFreeListPages, freelist.getPageCount());
+        Assert.assertEquals(true, Arrays.equals(new int[] {252, 131, 9}, freelist.trunkPages));
+        Assert.assertEquals(297, freelist.getLeafCount());
+        Assert.assertEquals(true, freelist.isFree(131));
+        Assert.assertEquals(false, freelist.isFree(1));
+        Assert.assertEquals(false, freelist.leafPages.get(131));
+
+        Assert.assertEquals(CellType.Freelist, freelist.cell.type);
+        Assert.assertEquals(3, freelist.cell.cellCount);
+        Assert.assertEquals(57, freelist.cell.payLoadSize[0]);
+        Assert.assertEquals(9, freelist.cell.getLeftChildPointer(2));
+        Assert.assertEquals(null, freelist.problem);
+    }
+
+    @Test
+    public void TestEmptyFreelist() throws IOException, InvalidFileException {
+        Database database = new DefaultDatabaseParser().parseDatabase("testDatabase", new Database(new BTree(), new Metadata()));
+        Assert.assertEquals(0, database.getMetadata().freelist.getPageCount());
+        Assert.assertEquals(null, database.getMetadata().freelist.cell);
+    }
+
+    @Test
+    public void TestFreelistLoop() throws IOException, InvalidFileException {
+        File copy = File.createTempFile("freelist", ".sqlite");
+        copy.deleteOnExit();
+        Files.copy(FileUtil.openFile("freelistDatabase").toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        try (RandomAccessFile file = new RandomAccessFile(copy, "rw")) {
+            file.seek(8 * 512);
+            file.writeInt(252);
+        }
+        Database database = new DefaultDatabaseParser().parseDatabase(copy.getPath(), new Database(new BTree(), new Metadata()));
+        Freelist freelist = database.getMetadata().freelist;
+        Assert.assertNotNull(freelist.problem);
+        Assert.assertEquals(true, Arrays.equals(new int[] {252, 131, 9}, freelist.trunkPages));
+        Assert.assertNotNull(database.getBTree().getRoot());
+    }
+
+    @Test
+    public void TestPointerMap() throws IOException, InvalidFileException {
+        Database database = new DefaultDatabaseParser().parseDatabase("autoVacuumDatabase", new Database(new BTree(), new Metadata()));
+        PointerMap pointerMap = database.getMetadata().pointerMap;
+        Assert.assertEquals(PointerMap.ROOT_PAGE, pointerMap.getType(3));
+        Assert.assertEquals(0, pointerMap.getParent(3));
+        Assert.assertEquals(PointerMap.FIRST_OVERFLOW_PAGE, pointerMap.getType(248));
+        Assert.assertEquals(246, pointerMap.getParent(248));
+        Assert.assertEquals(PointerMap.OVERFLOW_PAGE, pointerMap.getType(251));
+        Assert.assertEquals(Arrays.asList(250, 249, 248, 246), pointerMap.getAncestors(251).subList(0, 4));
+        Assert.assertEquals(0, pointerMap.getType(105));
+        Assert.assertEquals(true, PointerMap.isPointerMapPage(105, 512, 512));
+        Assert.assertEquals(false, PointerMap.isPointerMapPage(106, 512, 512));
+
+        assertParentsMatchTree(database.getBTree().getRoot(), pointerMap);
+        Assert.assertEquals(null, pointerMap.problem);
+    }
+
+    @Test
+    public void TestBadPointerMapEntry() throws IOException, InvalidFileException {
+        File copy = File.createTempFile("pointermap", ".sqlite");
+        copy.deleteOnExit();
+        Files.copy(FileUtil.openFile("autoVacuumDatabase").toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        try (RandomAccessFile file = new RandomAccessFile(copy, "rw")) {
+            file.seek(512);
+            file.writeByte(9);
+        }
+        Database database = new DefaultDatabaseParser().parseDatabase(copy.getPath(), new Database(new BTree(), new Metadata()));
+        PointerMap pointerMap = database.getMetadata().pointerMap;
+        Assert.assertNotNull(pointerMap.problem);
+        Assert.assertEquals(0, pointerMap.getType(3));
+        Assert.assertEquals(PointerMap.FIRST_OVERFLOW_PAGE, pointerMap.getType(248));
+    }
+
+    @Test
+    public void TestNoPointerMapWithoutAutoVacuum() throws IOException, InvalidFileException {
+        Database database = new DefaultDatabaseParser().parseDatabase("testDatabase", new Database(new BTree(), new Metadata()));
+        Assert.assertEquals(null, database.getMetadata().pointerMap);
+    }
+
+    @Test
+    public void TestScanSkipsPointerMapPages() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        Database expected = parser.parseDatabase("autoVacuumDatabase", new Database(new BTree(), new Metadata()));
+        parser.setSequentialScan(true);
+        Database scanned = parser.parseDatabase("autoVacuumDatabase", new Database(new BTree(), new Metadata()));
+        assertSameTree(expected.getBTree().getRoot(), scanned.getBTree().getRoot());
+    }
+
+    @Test
+    public void TestClassifyPages() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setClassifyPages(true);
+        Database database = parser.parseDatabase("autoVacuumDatabase", new Database(new BTree(), new Metadata()));
+        PageMap pageMap = database.getMetadata().pageMap;
+        Assert.assertEquals(255, pageMap.getPageCount());
+        Assert.assertEquals(PageMap.TABLE_LEAF, pageMap.getTag(1));
+        Assert.assertEquals(PageMap.POINTER_MAP, pageMap.getTag(105));
+        Assert.assertEquals(3, pageMap.getCount(PageMap.POINTER_MAP));
+        Assert.assertEquals(PageMap.INDEX_LEAF, pageMap.getTag(246));
+        Assert.assertEquals(PageMap.OVERFLOW, pageMap.getTag(248));
+        Assert.assertEquals(PageMap.OVERFLOW, pageMap.getTag(255));
+        Assert.assertEquals(8, pageMap.getCount(PageMap.OVERFLOW));
+        Assert.assertEquals(0, pageMap.getCount(PageMap.UNREACHABLE));
+        Assert.assertEquals(0, pageMap.getCount(PageMap.UNREACHABLE_BTREE));
+    }
+
+    @Test
+    public void TestClassifyFreelistPages() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setClassifyPages(true);
+        parser.setParallelism(4);
+        Database database = parser.parseDatabase("freelistDatabase", new Database(new BTree(), new Metadata()));
+        PageMap pageMap = database.getMetadata().pageMap;
+        Assert.assertEquals(PageMap.FREELIST_TRUNK, pageMap.getTag(131));
+        Assert.assertEquals(3, pageMap.getCount(PageMap.FREELIST_TRUNK));
+        Assert.assertEquals(297, pageMap.getCount(PageMap.FREELIST_LEAF));
+        Assert.assertEquals(0, pageMap.getCount(PageMap.UNREACHABLE) + pageMap.getCount(PageMap.UNREACHABLE_BTREE));
+    }
+
+    @Test
+    public void TestClassifyUnreachablePages() throws IOException, InvalidFileException {
+        File copy = File.createTempFile("orphan", ".sqlite");
+        copy.deleteOnExit();
+        byte[] bytes = Files.readAllBytes(FileUtil.openFile("testDatabase").toPath());
+        int pageSize = 1024;
+        byte[] grown = Arrays.copyOf(bytes, bytes.length + 2 * pageSize);
+        // a copy of the last page is left where nothing points to it, followed by an empty page
+        System.arraycopy(bytes, bytes.length - pageSize, grown, bytes.length, pageSize);
+        ByteBuffer.wrap(grown).putInt(28, bytes.length / pageSize + 2);
+        Files.write(copy.toPath(), grown);
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setClassifyPages(true);
+        Database database = parser.parseDatabase(copy.getPath(), new Database(new BTree(), new Metadata()));
+        PageMap pageMap = database.getMetadata().pageMap;
+        int pageCount = bytes.length / pageSize;
+        Assert.assertEquals(pageCount + 2, pageMap.getPageCount());
+        Assert.assertEquals(1, pageMap.getCount(PageMap.UNREACHABLE_BTREE));
+        Assert.assertEquals(1, pageMap.getCount(PageMap.UNREACHABLE));
+        Assert.assertEquals(PageMap.UNREACHABLE_BTREE, pageMap.getTag(pageCount + 1));
+        Assert.assertEquals(PageMap.UNREACHABLE, pageMap.getTag(pageCount + 2));
+    }
+
+    @Test
+    public void TestNoClassifyByDefault() throws IOException, InvalidFileException {
+        Database database = new DefaultDatabaseParser().parseDatabase("testDatabase", new Database(new BTree(), new Metadata()));
+        Assert.assertEquals(null, database.getMetadata().pageMap);
+    }
+
+    /**
+     * Checks the pointer map parent of every btree page below a root is the page above it.
+     */
+    private void assertParentsMatchTree(BTreeNode<BTreeCell> node, PointerMap pointerMap) {
+        for (BTreeNode<BTreeCell> child : node.getChildren()) {
+            long childPage = child.getData().pageNumber + 1;
+            if (pointerMap.getType(childPage) == PointerMap.BTREE_PAGE) {
+                Assert.assertEquals(node.getData().pageNumber + 1, pointerMap.getParent(childPage));
+            } else {
+                Assert.assertEquals(PointerMap.ROOT_PAGE, pointerMap.getType(childPage));
+            }
+            assertParentsMatchTree(child, pointerMap);
+        }
+    }
+
+    @Test
+    public void TestReparseUnchangedFileReusesTree() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        Database first = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+        Database second = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()), first);
+        Assert.assertEquals(true, first.getBTree().getRoot() == second.getBTree().getRoot());
+    }
+
+    @Test
+    public void TestReparseOnlyDecodesChangedPage() throws IOException, InvalidFileException {
+        File copy = File.createTempFile("reparse", ".sqlite");
+        copy.deleteOnExit();
+        Files.copy(FileUtil.openFile("Chinook_Sqlite.sqlite").toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        Database first = parser.parseDatabase(copy.getPath(), new Database(new BTree(), new Metadata()));
+        BTreeCell target = findTextLeaf(first.getBTree().getRoot());
+        long pageSize = first.getMetadata().pageSize;
+
+        try (RandomAccessFile file = new RandomAccessFile(copy, "rw")) {
+            long offset = target.pageNumber * pageSize + target.offsets[0][1];
+            file.seek(offset);
+            int value = file.read();
+            file.seek(offset);
+            file.write(value ^ 0x01);
+            file.seek(SqliteConstants.FILE_CHANGE_COUNTER_OFFSET);
+            file.writeInt(first.getMetadata().fileChangeCounter + 1);
+        }
+
+        parser.setParallelism(4);
+        Database second = parser.parseDatabase(copy.getPath(), new Database(new BTree(), new Metadata()), first);
+        Database full = new DefaultDatabaseParser().parseDatabase(copy.getPath(), new Database(new BTree(), new Metadata()));
+        assertSameTree(full.getBTree().getRoot(), second.getBTree().getRoot());
+
+        List<BTreeCell> before = cells(first.getBTree().getRoot(), new ArrayList<>());
+        List<BTreeCell> after = cells(second.getBTree().getRoot(), new ArrayList<>());
+        Assert.assertEquals(before.size(), after.size());
+        for (int i = 0; i < before.size(); i++) {
+            Assert.assertEquals(before.get(i) != target, before.get(i) == after.get(i));
+        }
+    }
+
+    @Test
+    public void TestReparseDecodesPageWithSameCrc() throws IOException, InvalidFileException {
+        File copy = File.createTempFile("reparse", ".sqlite");
+        copy.deleteOnExit();
+        Files.copy(FileUtil.openFile("Chinook_Sqlite.sqlite").toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        Database first = parser.parseDatabase(copy.getPath(), new Database(new BTree(), new Metadata()));
+        BTreeCell target = findTextLeaf(first.getBTree().getRoot());
+        int pageSize = (int) first.getMetadata().pageSize;
+        long start = target.pageNumber * pageSize;
+
+        try (RandomAccessFile file = new RandomAccessFile(copy, "rw")) {
+            byte[] page = new byte[pageSize];
+            file.seek(start);
+            file.readFully(page);
+            long crc = crc(page);
+
+            // change a record, then undo the change to the crc in the unused space
+            int freeStart = 8 + 2 * target.cellCount;
+            int freeEnd = ((page[5] & 0xFF) << 8) | (page[6] & 0xFF);
+            Assert.assertTrue(freeEnd - freeStart >= 4);
+            ByteBuffer records = target.page.duplicate();
+            records.position(target.offsets[0][1]);
+            byte[] text = new byte[4];
+            records.get(text);
+            int offset = indexOf(page, text);
+            page[offset] ^= 0x01;
+            forceCrc(page, freeStart, crc);
+            Assert.assertEquals(crc, crc(page));
+
+            file.seek(start);
+            file.write(page);
+            file.seek(SqliteConstants.FILE_CHANGE_COUNTER_OFFSET);
+            file.writeInt(first.getMetadata().fileChangeCounter + 1);
+        }
+
+        Database second = parser.parseDatabase(copy.getPath(), new Database(new BTree(), new Metadata()), first);
+        Database full = new DefaultDatabaseParser().parseDatabase(copy.getPath(), new Database(new BTree(), new Metadata()));
+        assertSameTree(full.getBTree().getRoot(), second.getBTree().getRoot());
+        Assert.assertNotSame(target, findPage(second.getBTree().getRoot(), target.pageNumber));
+    }
+
+    private static long crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+    private static int indexOf(byte[] bytes, byte[] search) {
+        for (int i = 0; i + search.length <= bytes.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + search.length), search)) {
+                return i;
+            }
+        }
+        throw new AssertionError("Bytes not found");
+    }
+
+    /**
+     * Flips bits of the four bytes at the position so the bytes have the
+     * crc given. The crc is linear, so the bits to flip are found by
+     * gaussian elimination over the change each bit makes on its own.
+     */
+    private static void forceCrc(byte[] bytes, int position, long crc) {
+        long zero = crc(new byte[bytes.length]);
+        int[] changes = new int[32];
+        int[] bits = new int[32];
+        for (int bit = 0; bit < 32; bit++) {
+            byte[] single = new byte[bytes.length];
+            single[position + bit / 8] = (byte) (1 << (bit % 8));
+            changes[bit] = (int) (crc(single) ^ zero);
+            bits[bit] = 1 << bit;
+        }
+
+        int rank = 0;
+        int[] pivots = new int[32];
+        for (int column = 31; column >= 0; column--) {
+            int row = rank;
+            while (row < 32 && (changes[row] & (1 << column)) == 0) {
+                row++;
+            }
+            if (row == 32) {
+                continue;
+            }
+            int change = changes[row];
+            changes[row] = changes[rank];
+            changes[rank] = change;
+            int bit = bits[row];
+            bits[row] = bits[rank];
+            bits[rank] = bit;
+            for (int i = 0; i < 32; i++) {
+                if (i != rank && (changes[i] & (1 << column)) != 0) {
+                    changes[i] ^= changes[rank];
+                    bits[i] ^= bits[rank];
+                }
+            }
+            pivots[rank++] = column;
+        }
+
+        int wanted = (int) (crc(bytes) ^ crc);
+        int flip = 0;
+        for (int i = 0; i < rank; i++) {
+            if ((wanted & (1 << pivots[i])) != 0) {
+                wanted ^= changes[i];
+                flip ^= bits[i];
+            }
+        }
+        Assert.assertEquals(0, wanted);
+        for (int bit = 0; bit < 32; bit++) {
+            if ((flip & (1 << bit)) != 0) {
+                bytes[position + bit / 8] ^= (byte) (1 << (bit % 8));
+            }
+        }
+    }
+
+    @Test
+    public void TestReparseCopiesChangedCells() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        Database first = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+        BTreeCell root = (BTreeCell) first.getBTree().getRoot().getData();
+        root.changed = true;
+
+        Database second = parser.parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()), first);
+        BTreeCell copy = (BTreeCell) second.getBTree().getRoot().getData();
+        Assert.assertEquals(false, copy == root);
+        Assert.assertEquals(false, copy.changed);
+        Assert.assertEquals(true, root.changed);
+        Assert.assertEquals(true, Arrays.equals(root.getPreviews(), copy.getPreviews()));
+    }
+
+    @Test
+    public void TestWalFramesAreLaidOverFile() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        Database database = parser.parseDatabase("walDatabase", new Database(new BTree(), new Metadata()));
+        Assert.assertEquals(2, database.getMetadata().writeVersion);
+        Assert.assertEquals(3, parser.getWalIndex().getFrameCount());
+        assertWalRows(database, "uno", "two", "three");
+    }
+
+    @Test
+    public void TestWalIsIgnoredWhenMissing() throws IOException, InvalidFileException {
+        File copy = File.createTempFile("wal", ".sqlite");
+        copy.deleteOnExit();
+        Files.copy(FileUtil.openFile("walDatabase").toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        Database database = parser.parseDatabase(copy.getPath(), new Database(new BTree(), new Metadata()));
+        Assert.assertEquals(null, parser.getWalIndex());
+        assertWalRows(database, "one");
+    }
+
+    @Test
+    public void TestWalReparseReadsNewFrames() throws IOException, InvalidFileException {
+        File copy = File.createTempFile("wal", ".sqlite");
+        copy.deleteOnExit();
+        File wal = new File(copy.getPath() + "-wal");
+        wal.deleteOnExit();
+        Files.copy(FileUtil.openFile("walDatabase").toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        byte[] frames = Files.readAllBytes(FileUtil.openFile("walDatabase-wal").toPath());
+        Files.write(wal.toPath(), Arrays.copyOf(frames, 32 + 2 * (24 + 1024)));
+
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setMemoryMapped(false);
+        Database first = parser.parseDatabase(copy.getPath(), new Database(new BTree(), new Metadata()));
+        assertWalRows(first, "one", "two", "three");
+
+        Files.write(wal.toPath(), frames);
+        Database second = parser.parseDatabase(copy.getPath(), new Database(new BTree(), new Metadata()), first);
+        Assert.assertEquals(new HashSet<>(Collections.singletonList(2L)), parser.getWalIndex().getUpdatedPages());
+        Assert.assertEquals(true, first.getBTree().getRoot().getData() == second.getBTree().getRoot().getData());
+        assertWalRows(second, "uno", "two", "three");
+    }
+
+    @Test
+    public void TestWalLazyLoadsFromFrames() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        parser.setLazy(true);
+        Database database = parser.parseDatabase("walDatabase", new Database(new BTree(), new Metadata()));
+        assertWalRows(database, "uno", "two", "three");
+    }
+
+    @Test
+    public void TestStreamVisitsPagesInTreeOrder() throws IOException, InvalidFileException {
+        Database database = new DefaultDatabaseParser().parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+        List<BTreeCell> expected = cells(database.getBTree().getRoot(), new ArrayList<>());
+
+        List<Long> started = new ArrayList<>();
+        List<Long> ended = new ArrayList<>();
+        Deque<Long> open = new ArrayDeque<>();
+        Metadata metadata = new DefaultDatabaseParser().streamDatabase("Chinook_Sqlite.sqlite", new Metadata(), new PageVisitor() {
+            @Override
+            public void startPage(BTreeCell page, int depth) {
+                Assert.assertEquals(open.size(), depth);
+                open.push(page.pageNumber);
+                started.add(page.pageNumber);
+            }
+
+            @Override
+            public void cell(BTreeCell page, int cellNumber) {
+                Assert.assertEquals(open.peek(), Long.valueOf(page.pageNumber));
+            }
+
+            @Override
+            public void field(BTreeCell page, int cellNumber, int column) {
+                Assert.assertEquals(true, column < page.getColumnCount(cellNumber));
+            }
+
+            @Override
+            public void overflow(BTreeCell page, int cellNumber) {
+            }
+
+            @Override
+            public void endPage(BTreeCell page, int depth) {
+                Assert.assertEquals(open.pop(), Long.valueOf(page.pageNumber));
+                ended.add(page.pageNumber);
+            }
+        });
+
+        Assert.assertEquals(database.getMetadata().pageSize, metadata.pageSize);
+        Assert.assertEquals(expected.size(), started.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Assert.assertEquals(expected.get(i).pageNumber, (long) started.get(i));
+        }
+        Assert.assertEquals(expected.size(), ended.size());
+        Assert.assertEquals(true, open.isEmpty());
+    }
+
+    @Test(expected = InvalidFileException.class)
+    public void TestStreamOpenInvalidFile() throws IOException, InvalidFileException {
+        new DefaultDatabaseParser().streamDatabase("invalidDatabase.db", new Metadata(), new PageStatisticsVisitor());
+    }
+
+    private void assertWalRows(Database database, String... names) {
+        BTreeNode<BTreeCell> root = database.getBTree().getRoot();
+        BTreeCell cell = root.getChildren().get(0).getData();
+        Assert.assertEquals(names.length, cell.cellCount);
+        for (int i = 0; i < names.length; i++) {
+            Assert.assertEquals(names[i], cell.getText(i, 1));
+        }
+    }
+
+    /**
+     * Finds a table leaf cell whose first row has text in its second column.
+     */
+    private BTreeCell findTextLeaf(BTreeNode<BTreeCell> node) {
+        BTreeCell cell = node.getData();
+        if (cell.cellType == SqliteConstants.TABLE_BTREE_LEAF_CELL && cell.overflowPayloads == null
+                && cell.cellCount > 0 && cell.getColumnCount(0) > 1 && SerialType.isText(cell.getSerialType(0, 1))) {
+            return cell;
+        }
+        for (BTreeNode<BTreeCell> child : node.getChildren()) {
+            BTreeCell found = findTextLeaf(child);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private List<BTreeCell> cells(BTreeNode<BTreeCell> node, List<BTreeCell> cells) {
+        cells.add(node.getData());
+        for (BTreeNode<BTreeCell> child : node.getChildren()) {
+            cells(child, cells);
+        }
+        return cells;
+    }
+
+    /**
+     * Finds the table leaf cell holding the row with the row id.
+     */
+    @Test
+    public void TestJournalBeforeState() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        Database after = parser.parseDatabase("journalDatabase", new Database(new BTree(), new Metadata()));
+        Database before = parser.parseJournal("journalDatabase", new Database(new BTree(), new Metadata()), after);
+
+        Assert.assertEquals(200, countRows(before.getBTree().getRoot()));
+        Assert.assertEquals(247, countRows(after.getBTree().getRoot()));
+        BTreeCell cell = findRow(before.getBTree().getRoot(), 1);
+        Assert.assertEquals("before000", cell.getText(indexOfRow(cell, 1), 1));
+        Assert.assertEquals(null, findRow(before.getBTree().getRoot(), 201));
+    }
+
+    @Test
+    public void TestJournalMatchesFullParse() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        Database after = parser.parseDatabase("journalDatabase", new Database(new BTree(), new Metadata()));
+        Database reused = parser.parseJournal("journalDatabase", new Database(new BTree(), new Metadata()), after);
+        Database full = parser.parseJournal("journalDatabase", new Database(new BTree(), new Metadata()), null);
+        assertSameTree(full.getBTree().getRoot(), reused.getBTree().getRoot());
+    }
+
+    @Test
+    public void TestJournalReusesUnchangedPages() throws IOException, InvalidFileException {
+        DefaultDatabaseParser parser = new DefaultDatabaseParser();
+        Database after = parser.parseDatabase("journalDatabase", new Database(new BTree(), new Metadata()));
+        Database before = parser.parseJournal("journalDatabase", new Database(new BTree(), new Metadata()), after);
+
+        // pages three, four and six are in the journal
+        Assert.assertSame(findPage(after.getBTree().getRoot(), 5), findPage(before.getBTree().getRoot(), 5));
+        Assert.assertNotSame(findPage(after.getBTree().getRoot(), 3), findPage(before.getBTree().getRoot(), 3));
+    }
+
+    @Test
+    public void TestUtf16Database() throws IOException, InvalidFileException {
+        Database database = new DefaultDatabaseParser().parseDatabase("utf16Database", new Database(new BTree(), new Metadata()));
+        BTreeNode<BTreeCell> root = database.getBTree().getRoot();
+        Assert.assertEquals(3, database.getMetadata().textEncoding);
+        Assert.assertEquals(2, root.getChildren().size());
+        Assert.assertEquals("table", root.getData().getText(0, 0));
+        Assert.assertEquals("names", root.getData().getText(0, 1));
+
+        BTreeCell cell = findRow(root, 3);
+        Assert.assertEquals("\u65e5\u672c\u8a9e", cell.getText(indexOfRow(cell, 3), 1));
+        Assert.assertEquals("NULL, Zo\u00eb", cell.getPreview(indexOfRow(cell, 1)));
+    }
+
+    @Test
+    public void TestNoJournal() throws IOException, InvalidFileException {
+        Database before = new DefaultDatabaseParser().parseJournal("testDatabase", new Database(new BTree(), new Metadata()), null);
+        Assert.assertEquals(null, before);
+    }
+
+    @Test
+    public void TestCompactCellFootprint() throws IOException, InvalidFileException {
+        Database database = new DefaultDatabaseParser().parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+        long[] bytes = new long[3];
+        countCellBytes(database.getBTree().getRoot(), bytes);
+
+        long pages = bytes[0];
+        long compactPerPage = bytes[1] / pages;
+        long previousPerPage = bytes[2] / pages;
+        Assert.assertEquals(true, compactPerPage < previousPerPage);
+        Assert.assertEquals(true, compactPerPage * 4 < previousPerPage * 3);
+    }
+
+    /**
+     * Adds up the bytes of the arrays each cell holds, and of the arrays
+     * the cell held before it was made compact. Sizes are worked out as
+     * a 64 bit JVM with compressed references lays them out, a 16 byte
+     * header then the elements, rounded up to 8 bytes.
+     */
+    private void countCellBytes(BTreeNode<BTreeCell> node, long[] bytes) {
+        BTreeCell cell = node.getData();
+        int n = cell.cellCount;
+        bytes[0]++;
+        bytes[1] += arrayBytes(cell.childPointers == null ? -1 : cell.childPointers.length, 4)
+                + arrayBytes(cell.rowId == null ? -1 : n, 8)
+                + arrayBytes(cell.payLoadSize == null ? -1 : n, 8)
+                + arrayBytes(n, 4)
+                + arrayBytes(cell.serialTypes == null ? -1 : n, 4) * 2
+                + (cell.tables == null ? 0 : 24 + arrayBytes(cell.tables.size() / 64, 8));
+        // left child pointers, children page numbers and overflow page numbers as int[],
+        // row ids and payload sizes as long[], previews, serial types, offsets and Boolean[]
+        bytes[2] += arrayBytes(n, 4) * 3 + arrayBytes(n, 8) * 2 + arrayBytes(n, 4) * 4;
+        for (BTreeNode<BTreeCell> child : node.getChildren()) {
+            countCellBytes(child, bytes);
+        }
+    }
+
+    private long arrayBytes(int length, int elementSize) {
+        return (length < 0) ? 0 : (16 + (long) length * elementSize + 7) / 8 * 8;
+    }
+
+    private BTreeCell findRow(BTreeNode<BTreeCell> node, long rowId) {
+        BTreeCell cell = node.getData();
+        if (cell.cellType == SqliteConstants.TABLE_BTREE_LEAF_CELL && indexOfRow(cell, rowId) >= 0 && !cell.isTable(indexOfRow(cell, rowId))) {
+            return cell;
+        }
+        for (BTreeNode<BTreeCell> child : node.getChildren()) {
+            BTreeCell found = findRow(child, rowId);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private int countRows(BTreeNode<BTreeCell> node) {
+        int rows = node.getData().cellType == SqliteConstants.TABLE_BTREE_LEAF_CELL && node.getData().pageNumber != 0 ? node.getData().cellCount : 0;
+        for (BTreeNode<BTreeCell> child : node.getChildren()) {
+            rows += countRows(child);
+        }
+        return rows;
+    }
+
+    private BTreeCell findPage(BTreeNode<BTreeCell> node, long pageNumber) {
+        if (node.getData().pageNumber + 1 == pageNumber) {
+            return node.getData();
+        }
+        for (BTreeNode<BTreeCell> child : node.getChildren()) {
+            BTreeCell found = findPage(child, pageNumber);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private int indexOfRow(BTreeCell cell, long rowId) {
+        for (int i = 0; i < cell.cellCount; i++) {
+            if (cell.rowId[i] == rowId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void assertSameTree(BTreeNode<BTreeCell> expected, BTreeNode<BTreeCell> actual) {
+        Assert.assertEquals(expected.getData().pageNumber, actual.getData().pageNumber);
+        Assert.assertEquals(expected.getData().cellType, actual.getData().cellType);
+        Assert.assertEquals(true, Arrays.equals(expected.getData().getPreviews(), actual.getData().getPreviews()));
+        Assert.assertEquals(expected.getChildren().size(), actual.getChildren().size());
+        for (int i = 0; i < expected.getChildren().size(); i++) {
+            assertSameTree(expected.getChildren().get(i), actual.getChildren().get(i));
+        }
+    }
+
+    private static class RecordingMonitor implements ParseMonitor {
+
+        private final long cancelAfter;
+        private volatile long pagesParsed;
+        private volatile long pageCount;
+        private List<Integer> depths = new ArrayList<>();
+        private List<Integer> levelSizes = new ArrayList<>();
+        private BTreeNode<BTreeCell> root;
+        private List<BTreeNode<BTreeCell>> lastLevel = new ArrayList<>();
+
+        private RecordingMonitor(long cancelAfter) {
+            this.cancelAfter = cancelAfter;
+        }
+
+        @Override
+        public synchronized void progress(long pagesParsed, long pageCount) {
+            this.pagesParsed = Math.max(this.pagesParsed, pagesParsed);
+            this.pageCount = pageCount;
+        }
+
+        @Override
+        public void levelParsed(List<BTreeCell> level, int[] parents, int depth) {
+            this.depths.add(depth);
+            this.levelSizes.add(level.size());
+            List<BTreeNode<BTreeCell>> nodes = new ArrayList<>();
+            for (int i = 0; i < level.size(); i++) {
+                BTreeNode<BTreeCell> node = new BTreeNode<>(level.get(i));
+                if (parents[i] < 0) {
+                    this.root = node;
+                } else {
+                    this.lastLevel.get(parents[i]).addChild(node);
+                }
+                nodes.add(node);
+            }
+            this.lastLevel = nodes;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return this.cancelAfter >= 0 && this.pagesParsed >= this.cancelAfter;
+        }
+    }
+
+    /**
+     * Bumps the change counter of the file part way through the first
+     * parses, as a commit would.
+     */
+    private static class CommitWriter implements ParseMonitor {
+
+        private final File file;
+        private int commits;
+
+        private CommitWriter(File file, int commits) {
+            this.file = file;
+            this.commits = commits;
+        }
+
+        @Override
+        public void progress(long pagesParsed, long pageCount) {
+        }
+
+        @Override
+        public void levelParsed(List<BTreeCell> level, int[] parents, int depth) {
+            if (depth != 1 || this.commits == 0) {
+                return;
+            }
+            this.commits--;
+            try (RandomAccessFile out = new RandomAccessFile(this.file, "rw")) {
+                out.seek(SqliteConstants.FILE_CHANGE_COUNTER_OFFSET);
+                int counter = out.readInt();
+                out.seek(SqliteConstants.FILE_CHANGE_COUNTER_OFFSET);
+                out.writeInt(counter + 1);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+    }
 }
@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.tests.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.databaseparser.JournalIndex;
+import battyp.lancaster.sqlitevisualiser.util.FileUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * JUnit tests for the JournalIndex
+ *
+ * <p>
+ * The journalDatabase-journal file holds three segments, each with a
+ * single record, of pages three, four and six.
+ *
+ * @see battyp.lancaster.sqlitevisualiser.model.databaseparser.JournalIndex
+ *
+ * @author Paul Batty
+ */
+public class JournalIndexTest {
+
+    private static final int PAGE_SIZE = 1024;
+    private static final int SECTOR_SIZE = 512;
+
+    private byte[] readJournal() throws IOException {
+        return Files.readAllBytes(FileUtil.openFile("journalDatabase-journal").toPath());
+    }
+
+    private File writeJournal(byte[] bytes, int length) throws IOException {
+        File file = File.createTempFile("index", ".sqlite-journal");
+        file.deleteOnExit();
+        Files.write(file.toPath(), Arrays.copyOf(bytes, length));
+        return file;
+    }
+
+    @Test
+    public void TestEmptyBeforeRead() {
+        JournalIndex index = new JournalIndex(new File("journalDatabase-journal"));
+        Assert.assertEquals(true, index.isEmpty());
+        Assert.assertEquals(0, index.getRecordCount());
+    }
+
+    @Test
+    public void TestReadsHeader() throws IOException {
+        JournalIndex index = new JournalIndex(FileUtil.openFile("journalDatabase-journal"));
+        index.read();
+        Assert.assertEquals(PAGE_SIZE, index.getPageSize());
+        Assert.assertEquals(6, index.getDatabaseSize());
+    }
+
+    @Test
+    public void TestReadsEverySegment() throws IOException {
+        JournalIndex index = new JournalIndex(FileUtil.openFile("journalDatabase-journal"));
+        index.read();
+        Assert.assertEquals(3, index.getRecordCount());
+        Assert.assertEquals(new HashSet<>(Arrays.asList(3L, 4L, 6L)), index.getPages().keySet());
+        Assert.assertEquals(SECTOR_SIZE + 4L, (long) index.getPages().get(3L));
+        Assert.assertEquals(4 * SECTOR_SIZE + SECTOR_SIZE + 4L, (long) index.getPages().get(4L));
+    }
+
+    @Test
+    public void TestStopsAtBadChecksum() throws IOException {
+        byte[] bytes = readJournal();
+        // the second segment's record, one of the bytes in the checksum
+        bytes[4 * SECTOR_SIZE + SECTOR_SIZE + 4 + PAGE_SIZE - 200] ^= 1;
+        JournalIndex index = new JournalIndex(writeJournal(bytes, bytes.length));
+        index.read();
+        Assert.assertEquals(1, index.getRecordCount());
+        Assert.assertEquals(new HashSet<>(Arrays.asList(3L)), index.getPages().keySet());
+    }
+
+    @Test
+    public void TestStopsAtPartialRecord() throws IOException {
+        byte[] bytes = readJournal();
+        JournalIndex index = new JournalIndex(writeJournal(bytes, 4 * SECTOR_SIZE + SECTOR_SIZE + 100));
+        index.read();
+        Assert.assertEquals(new HashSet<>(Arrays.asList(3L)), index.getPages().keySet());
+    }
+
+    @Test
+    public void TestZeroedHeaderIsEmpty() throws IOException {
+        byte[] bytes = readJournal();
+        Arrays.fill(bytes, 0, 28, (byte) 0);
+        JournalIndex index = new JournalIndex(writeJournal(bytes, bytes.length));
+        index.read();
+        Assert.assertEquals(true, index.isEmpty());
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.tests.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.databaseparser.PageCache;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * JUnit tests for the PageCache
+ *
+ * @see battyp.lancaster.sqlitevisualiser.model.databaseparser.PageCache
+ *
+ * @author Paul Batty
+ */
+public class PageCacheTest {
+
+    private static final int PAGE_SIZE = 16;
+
+    private ByteBuffer createPage(int value) {
+        byte[] bytes = new byte[PAGE_SIZE];
+        bytes[0] = (byte) value;
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private PageCache createCache(long maxSize) {
+        PageCache cache = new PageCache(maxSize);
+        cache.validate("file", PAGE_SIZE, 1, 10, false);
+        return cache;
+    }
+
+    @Test
+    public void TestInvalidateRemovesOnlyGivenPages() {
+        PageCache cache = createCache(PAGE_SIZE * 4);
+        cache.put(1, createPage(1));
+        cache.put(2, createPage(2));
+        cache.invalidate(Arrays.asList(2L, 3L));
+        Assert.assertEquals(createPage(1), cache.get(1));
+        Assert.assertEquals(null, cache.get(2));
+        Assert.assertEquals(PAGE_SIZE, cache.getSize());
+    }
+
+    @Test
+    public void TestGetReturnsNullWhenEmpty() {
+        PageCache cache = createCache(PAGE_SIZE * 4);
+        Assert.assertEquals(null, cache.get(1));
+    }
+
+    @Test
+    public void TestPutThenGetIsAHit() {
+        PageCache cache = createCache(PAGE_SIZE * 4);
+        cache.put(1, createPage(1));
+        Assert.assertEquals(createPage(1), cache.get(1));
+        Assert.assertEquals(1, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void TestSizeIsTrackedInBytes() {
+        PageCache cache = createCache(PAGE_SIZE * 4);
+        cache.put(1, createPage(1));
+        cache.put(2, createPage(2));
+        Assert.assertEquals(PAGE_SIZE * 2, cache.getSize());
+        Assert.assertEquals(2, cache.getPageCount());
+    }
+
+    @Test
+    public void TestLeastRecentlyUsedIsEvicted() {
+        PageCache cache = createCache(PAGE_SIZE * 2);
+        cache.put(1, createPage(1));
+        cache.put(2, createPage(2));
+        cache.get(1);
+        cache.put(3, createPage(3));
+
+        Assert.assertEquals(1, cache.getEvictions());
+        Assert.assertEquals(null, cache.get(2));
+        Assert.assertEquals(createPage(1), cache.get(1));
+        Assert.assertEquals(createPage(3), cache.get(3));
+    }
+
+    @Test
+    public void TestZeroSizeDisablesCache() {
+        PageCache cache = createCache(0);
+        cache.put(1, createPage(1));
+        Assert.assertEquals(null, cache.get(1));
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void TestUnchangedFileKeepsPages() {
+        PageCache cache = createCache(PAGE_SIZE * 4);
+        cache.put(1, createPage(1));
+        cache.validate("file", PAGE_SIZE, 1, 10, false);
+        Assert.assertEquals(createPage(1), cache.get(1));
+    }
+
+    @Test
+    public void TestChangeCounterInvalidatesPages() {
+        PageCache cache = createCache(PAGE_SIZE * 4);
+        cache.put(1, createPage(1));
+        cache.validate("file", PAGE_SIZE, 2, 10, false);
+        Assert.assertEquals(null, cache.get(1));
+    }
+
+    @Test
+    public void TestWalModeAlwaysInvalidatesPages() {
+        PageCache cache = createCache(PAGE_SIZE * 4);
+        cache.put(1, createPage(1));
+        cache.validate("file", PAGE_SIZE, 1, 10, true);
+        Assert.assertEquals(null, cache.get(1));
+    }
+
+    @Test
+    public void TestMatchingChecksumRevalidatesPage() {
+        PageCache cache = createCache(PAGE_SIZE * 4);
+        cache.put(1, createPage(1));
+        long checksum = cache.getChecksum(1);
+        cache.validate("file", PAGE_SIZE, 2, 10, false);
+        cache.put(1, createPage(1));
+
+        Assert.assertEquals(checksum, cache.getChecksum(1));
+        Assert.assertEquals(createPage(1), cache.get(1));
+    }
+
+    @Test
+    public void TestMatchingPageIsKeptNotCopied() {
+        PageCache cache = createCache(PAGE_SIZE * 4);
+        cache.put(1, createPage(1));
+        cache.validate("file", PAGE_SIZE, 2, 10, false);
+        cache.put(1, createPage(1));
+        cache.validate("file", PAGE_SIZE, 3, 10, false);
+        cache.put(1, createPage(1));
+
+        Assert.assertEquals(createPage(1), cache.get(1));
+        Assert.assertEquals(PAGE_SIZE, cache.getSize());
+        Assert.assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void TestChangedChecksumReplacesPage() {
+        PageCache cache = createCache(PAGE_SIZE * 4);
+        cache.put(1, createPage(1));
+        long checksum = cache.getChecksum(1);
+        cache.validate("file", PAGE_SIZE, 2, 10, false);
+        cache.put(1, createPage(2));
+
+        Assert.assertTrue(checksum != cache.getChecksum(1));
+        Assert.assertEquals(createPage(2), cache.get(1));
+        Assert.assertEquals(PAGE_SIZE, cache.getSize());
+    }
+
+    @Test
+    public void TestDifferentFileClearsCache() {
+        PageCache cache = createCache(PAGE_SIZE * 4);
+        cache.put(1, createPage(1));
+        cache.validate("other file", PAGE_SIZE, 1, 10, false);
+        Assert.assertEquals(0, cache.getPageCount());
+    }
+
+    @Test
+    public void TestOtherFileDoesNotReadPages() {
+        PageCache cache = new PageCache(PAGE_SIZE * 4);
+        int generation = cache.validate("file", PAGE_SIZE, 1, 10, false);
+        int other = cache.validate("other file", PAGE_SIZE, 1, 10, false);
+        cache.put(1, createPage(2), other);
+
+        Assert.assertEquals(null, cache.get(1, generation));
+        Assert.assertEquals(false, cache.contains(1, generation));
+        Assert.assertEquals(createPage(2), cache.get(1, other));
+    }
+
+    @Test
+    public void TestStaleGenerationDoesNotAddPages() {
+        PageCache cache = new PageCache(PAGE_SIZE * 4);
+        int generation = cache.validate("file", PAGE_SIZE, 1, 10, false);
+        int other = cache.validate("other file", PAGE_SIZE, 1, 10, false);
+
+        Assert.assertEquals(createPage(1), cache.put(1, createPage(1), generation));
+        Assert.assertEquals(0, cache.getPageCount());
+        Assert.assertEquals(null, cache.get(1, other));
+    }
+
+    @Test
+    public void TestUpdatedPagesAreRemovedOthersKept() {
+        PageCache cache = new PageCache(PAGE_SIZE * 4);
+        int generation = cache.validate("file", PAGE_SIZE, 1, 10, false);
+        cache.put(1, createPage(1), generation);
+        cache.put(2, createPage(2), generation);
+        int next = cache.validate("file", PAGE_SIZE, 1, 10, Arrays.asList(2L));
+
+        Assert.assertTrue(next != generation);
+        Assert.assertEquals(createPage(1), cache.get(1, next));
+        Assert.assertEquals(null, cache.get(2, next));
+        Assert.assertEquals(null, cache.get(1, generation));
+    }
+
+    @Test
+    public void TestShrunkFileDropsPages() {
+        PageCache cache = createCache(PAGE_SIZE * 4);
+        cache.put(1, createPage(1));
+        cache.put(5, createPage(5));
+        cache.validate("file", PAGE_SIZE, 2, 2, false);
+        Assert.assertEquals(1, cache.getPageCount());
+        Assert.assertEquals(-1, cache.getChecksum(5));
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.tests.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.databaseparser.MappedPageSource;
+import battyp.lancaster.sqlitevisualiser.model.databaseparser.PageSource;
+import battyp.lancaster.sqlitevisualiser.model.databaseparser.PrefetchingPageSource;
+import battyp.lancaster.sqlitevisualiser.model.databaseparser.RandomAccessPageSource;
+import battyp.lancaster.sqlitevisualiser.util.FileUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * JUnit tests for the PageSource implementations
+ *
+ * @see battyp.lancaster.sqlitevisualiser.model.databaseparser.MappedPageSource
+ * @see battyp.lancaster.sqlitevisualiser.model.databaseparser.RandomAccessPageSource
+ * @see battyp.lancaster.sqlitevisualiser.model.databaseparser.PrefetchingPageSource
+ *
+ * @author Paul Batty
+ */
+public class PageSourceTest {
+
+    private static final int PAGE_SIZE = 1024;
+
+    @Test
+    public void TestMappedSizeIsFileSize() throws IOException {
+        File file = FileUtil.openFile("validDatabase");
+        try (PageSource source = new MappedPageSource(file)) {
+            Assert.assertEquals(file.length(), source.size());
+        }
+    }
+
+    @Test
+    public void TestRandomAccessSizeIsFileSize() throws IOException {
+        File file = FileUtil.openFile("validDatabase");
+        try (PageSource source = new RandomAccessPageSource(file)) {
+            Assert.assertEquals(file.length(), source.size());
+        }
+    }
+
+    @Test
+    public void TestGetPageIsOnePageLong() throws IOException {
+        try (PageSource source = new MappedPageSource(FileUtil.openFile("validDatabase"))) {
+            ByteBuffer page = source.getPage(2, PAGE_SIZE);
+            Assert.assertEquals(0, page.position());
+            Assert.assertEquals(PAGE_SIZE, page.remaining());
+        }
+    }
+
+    @Test
+    public void TestSourcesReturnTheSamePages() throws IOException {
+        File file = FileUtil.openFile("validDatabase");
+        try (PageSource mapped = new MappedPageSource(file); PageSource randomAccess = new RandomAccessPageSource(file)) {
+            for (int i = 1; i <= file.length() / PAGE_SIZE; i++) {
+                Assert.assertEquals(mapped.getPage(i, PAGE_SIZE), randomAccess.getPage(i, PAGE_SIZE));
+            }
+        }
+    }
+
+    @Test(expected = EOFException.class)
+    public void TestMappedReadPastEndOfFile() throws IOException {
+        File file = FileUtil.openFile("validDatabase");
+        try (PageSource source = new MappedPageSource(file)) {
+            source.read(file.length() - 1, 2);
+        }
+    }
+
+    @Test
+    public void TestMappedReadOfTruncatedFile() throws IOException {
+        File copy = File.createTempFile("truncated", ".sqlite");
+        copy.deleteOnExit();
+        Files.copy(FileUtil.openFile("validDatabase").toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        try (PageSource source = new MappedPageSource(copy)) {
+            ByteBuffer page = source.getPage(2, PAGE_SIZE);
+            try (RandomAccessFile file = new RandomAccessFile(copy, "rw")) {
+                file.setLength(PAGE_SIZE);
+            }
+            Assert.assertEquals(PAGE_SIZE, page.remaining());
+            source.getPage(2, PAGE_SIZE);
+            Assert.fail();
+        } catch (EOFException expected) {
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void TestMappedReadAfterClose() throws IOException {
+        PageSource source = new MappedPageSource(FileUtil.openFile("validDatabase"));
+        source.close();
+        source.getPage(1, PAGE_SIZE);
+    }
+
+    @Test(expected = EOFException.class)
+    public void TestRandomAccessReadPastEndOfFile() throws IOException {
+        File file = FileUtil.openFile("validDatabase");
+        try (PageSource source = new RandomAccessPageSource(file)) {
+            source.read(file.length() - 1, 2);
+        }
+    }
+
+    @Test
+    public void TestPrefetchedPagesMatchSource() throws IOException {
+        File file = FileUtil.openFile("Chinook_Sqlite.sqlite");
+        try (PageSource randomAccess = new RandomAccessPageSource(file);
+             PrefetchingPageSource prefetching = new PrefetchingPageSource(new RandomAccessPageSource(file), file)) {
+            prefetching.prefetch(new int[] {2, 3, 500}, PAGE_SIZE);
+            Assert.assertEquals(3, prefetching.getIssued());
+            for (int page : new int[] {2, 500, 3, 4}) {
+                Assert.assertEquals(randomAccess.getPage(page, PAGE_SIZE), prefetching.getPage(page, PAGE_SIZE));
+            }
+            Assert.assertEquals(3, prefetching.getHits());
+            Assert.assertEquals(0, prefetching.getPendingCount());
+        }
+    }
+
+    @Test
+    public void TestPrefetchIsBounded() throws IOException {
+        File file = FileUtil.openFile("Chinook_Sqlite.sqlite");
+        try (PrefetchingPageSource source = new PrefetchingPageSource(new RandomAccessPageSource(file), file, 4)) {
+            source.prefetch(new int[] {2, 3, 4, 5, 6, 7, 8, 9}, PAGE_SIZE);
+            Assert.assertEquals(true, source.getPendingCount() <= 4);
+            source.getPage(2, PAGE_SIZE);
+            source.prefetch(new int[] {10}, PAGE_SIZE);
+            Assert.assertEquals(true, source.getPendingCount() <= 4);
+        }
+    }
+
+    @Test
+    public void TestPrefetchSkipsPagesOutsideFile() throws IOException {
+        File file = FileUtil.openFile("validDatabase");
+        try (PrefetchingPageSource source = new PrefetchingPageSource(new RandomAccessPageSource(file), file)) {
+            source.prefetch(new int[] {0, 4, 1000}, PAGE_SIZE);
+            Assert.assertEquals(0, source.getIssued());
+        }
+    }
+}
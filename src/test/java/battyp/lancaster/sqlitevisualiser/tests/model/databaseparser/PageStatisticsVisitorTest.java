@@ -0,0 +1,112 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.tests.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.database.Database;
+import battyp.lancaster.sqlitevisualiser.model.databaseparser.DefaultDatabaseParser;
+import battyp.lancaster.sqlitevisualiser.model.databaseparser.PageStatisticsVisitor;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTree;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeNode;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.Metadata;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SqliteConstants;
+import battyp.lancaster.sqlitevisualiser.model.exceptions.InvalidFileException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * JUnit tests for the PageStatisticsVisitor, checked against the tree
+ * built by a full parse of the same file.
+ *
+ * @see battyp.lancaster.sqlitevisualiser.model.databaseparser.PageStatisticsVisitor
+ *
+ * @author Paul Batty
+ */
+public class PageStatisticsVisitorTest {
+
+    private long pages;
+    private long tableLeafPages;
+    private long cells;
+    private long fields;
+    private long overflowCells;
+    private int depth;
+
+    private void count(BTreeNode<BTreeCell> node, int level) {
+        BTreeCell cell = node.getData();
+        this.pages++;
+        if (cell.cellType == SqliteConstants.TABLE_BTREE_LEAF_CELL) {
+            this.tableLeafPages++;
+        }
+        this.cells += cell.cellCount;
+        for (int i = 0; i < cell.cellCount; i++) {
+            this.fields += cell.getColumnCount(i);
+            if (cell.overflowPayloads != null && cell.overflowPayloads[i] != null) {
+                this.overflowCells++;
+            }
+        }
+        this.depth = Math.max(this.depth, level);
+        for (BTreeNode<BTreeCell> child : node.getChildren()) {
+            count(child, level + 1);
+        }
+    }
+
+    private PageStatisticsVisitor stream(String file) throws IOException, InvalidFileException {
+        Database database = new DefaultDatabaseParser().parseDatabase(file, new Database(new BTree(), new Metadata()));
+        count(database.getBTree().getRoot(), 1);
+
+        PageStatisticsVisitor statistics = new PageStatisticsVisitor();
+        new DefaultDatabaseParser().streamDatabase(file, new Metadata(), statistics);
+        return statistics;
+    }
+
+    @Test
+    public void TestEmptyStatistics() {
+        PageStatisticsVisitor statistics = new PageStatisticsVisitor();
+        Assert.assertEquals(0, statistics.getPageCount());
+        Assert.assertEquals(0, statistics.getCells());
+        Assert.assertEquals(0, statistics.getDepth());
+    }
+
+    @Test
+    public void TestCountsMatchTree() throws IOException, InvalidFileException {
+        PageStatisticsVisitor statistics = stream("Chinook_Sqlite.sqlite");
+        Assert.assertEquals(514, statistics.getPageCount());
+        Assert.assertEquals(this.pages, statistics.getPageCount());
+        Assert.assertEquals(this.tableLeafPages, statistics.getTableLeafPages());
+        Assert.assertEquals(this.cells, statistics.getCells());
+        Assert.assertEquals(this.fields, statistics.getFields());
+        Assert.assertEquals(this.depth, statistics.getDepth());
+    }
+
+    @Test
+    public void TestCountsOverflowCells() throws IOException, InvalidFileException {
+        PageStatisticsVisitor statistics = stream("overflowDatabase");
+        Assert.assertEquals(true, this.overflowCells > 0);
+        Assert.assertEquals(this.overflowCells, statistics.getOverflowCells());
+        Assert.assertEquals(true, statistics.getPayloadBytes() > 5000);
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.tests.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.databaseparser.RecordCursor;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SerialType;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SqliteConstants;
+import battyp.lancaster.sqlitevisualiser.util.FileUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+/**
+ * JUnit tests for the RecordCursor
+ *
+ * @see battyp.lancaster.sqlitevisualiser.model.databaseparser.RecordCursor
+ *
+ * @author Paul Batty
+ */
+public class RecordCursorTest {
+
+    private static final int ITERATIONS = 100000;
+
+    private static final int PAGE_PASSES = 1000;
+
+    /**
+     * Bytes a loop of primitive reads may allocate, to allow for the
+     * measuring itself. Allocating per read would be megabytes.
+     */
+    private static final long ALLOCATION_ALLOWANCE = 4096;
+
+    @Test
+    public void TestSingleByteVarint() {
+        RecordCursor cursor = new RecordCursor().wrap(ByteBuffer.wrap(new byte[] {0x05, 0x7F}));
+        Assert.assertEquals(5, cursor.readVarint());
+        Assert.assertEquals(1, cursor.getLastLength());
+        Assert.assertEquals(127, cursor.readVarint());
+        Assert.assertEquals(2, cursor.position());
+    }
+
+    @Test
+    public void TestTwoByteVarint() {
+        RecordCursor cursor = new RecordCursor().wrap(ByteBuffer.wrap(new byte[] {(byte) 0x81, 0x00}));
+        Assert.assertEquals(128, cursor.readVarint());
+        Assert.assertEquals(2, cursor.getLastLength());
+    }
+
+    @Test
+    public void TestMultiByteVarint() {
+        RecordCursor cursor = new RecordCursor().wrap(ByteBuffer.wrap(new byte[] {(byte) 0x81, (byte) 0x81, 0x01, 0x05}));
+        Assert.assertEquals((1 << 14) | (1 << 7) | 1, cursor.readVarint());
+        Assert.assertEquals(3, cursor.getLastLength());
+        Assert.assertEquals(3, cursor.position());
+        Assert.assertEquals(5, cursor.readVarint());
+    }
+
+    @Test
+    public void TestNineByteVarintUsesAllOfLastByte() {
+        byte[] bytes = new byte[9];
+        java.util.Arrays.fill(bytes, (byte) 0xFF);
+        RecordCursor cursor = new RecordCursor().wrap(ByteBuffer.wrap(bytes));
+        Assert.assertEquals(-1, cursor.readVarint());
+        Assert.assertEquals(9, cursor.getLastLength());
+    }
+
+    @Test
+    public void TestReadLongIsBigEndian() {
+        RecordCursor cursor = new RecordCursor().wrap(ByteBuffer.wrap(new byte[] {0x01, 0x02, 0x03}));
+        Assert.assertEquals(0x010203, cursor.readLong(3));
+        Assert.assertEquals(3, cursor.position());
+    }
+
+    @Test
+    public void TestReadLongIsSigned() {
+        RecordCursor cursor = new RecordCursor().wrap(ByteBuffer.wrap(new byte[] {(byte) 0xFF, (byte) 0xFF, (byte) 0xFE}));
+        Assert.assertEquals(-2, cursor.readLong(3));
+    }
+
+    @Test
+    public void TestReadsFromReadOnlyBuffer() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[] {0x00, 0x00, 0x00, 0x2A}).asReadOnlyBuffer();
+        Assert.assertEquals(42, new RecordCursor().wrap(buffer).readInt());
+    }
+
+    @Test
+    public void TestTypesGrow() {
+        RecordCursor cursor = new RecordCursor();
+        Assert.assertEquals(true, cursor.getTypes(100).length >= 100);
+        Assert.assertEquals(cursor.getTypes(100), cursor.getTypes(10));
+    }
+
+    @Test
+    public void TestVarintDecodingDoesNotAllocate() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4 * ITERATIONS);
+        for (int i = 0; i < ITERATIONS; i++) {
+            buffer.put((byte) 0x81).put((byte) 0x05).put((byte) 0x7F).put((byte) 0x00);
+        }
+        buffer.flip();
+        RecordCursor cursor = new RecordCursor().wrap(buffer);
+
+        long before = allocatedBytes();
+        long sum = 0;
+        while (buffer.hasRemaining()) {
+            sum += cursor.readVarint() + cursor.getLastLength();
+        }
+        long allocated = allocatedBytes() - before;
+
+        Assert.assertEquals(true, sum != 0);
+        Assert.assertEquals(true, allocated < ALLOCATION_ALLOWANCE);
+    }
+
+    @Test
+    public void TestFieldDecodingDoesNotAllocate() {
+        ByteBuffer buffer = ByteBuffer.allocate(32 * ITERATIONS);
+        RecordCursor cursor = new RecordCursor().wrap(buffer);
+        cursor.getTypes(16);
+
+        long before = allocatedBytes();
+        long sum = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            sum += cursor.readByte() + cursor.readShort() + cursor.readLong(3) + cursor.readInt() + cursor.readLong(6) + cursor.readLong();
+            sum += (long) cursor.readDouble() + cursor.getTypes(16).length;
+        }
+        long allocated = allocatedBytes() - before;
+
+        Assert.assertEquals(true, sum != 0);
+        Assert.assertEquals(true, allocated < ALLOCATION_ALLOWANCE);
+    }
+
+    @Test
+    public void TestLeafPageDecodingDoesNotAllocate() throws IOException {
+        ByteBuffer page = readLeafPage("Chinook_Sqlite.sqlite");
+        RecordCursor cursor = new RecordCursor();
+        long expected = decodeLeafPage(cursor, page);
+
+        long before = allocatedBytes();
+        long sum = 0;
+        for (int i = 0; i < PAGE_PASSES; i++) {
+            sum += decodeLeafPage(cursor, page);
+        }
+        long allocated = allocatedBytes() - before;
+
+        Assert.assertEquals(expected * PAGE_PASSES, sum);
+        Assert.assertEquals(true, expected != 0);
+        Assert.assertEquals(true, allocated < ALLOCATION_ALLOWANCE);
+    }
+
+    /**
+     * Reads the first table leaf page of a database with more than one
+     * record and no overflowing records.
+     */
+    private static ByteBuffer readLeafPage(String fileName) throws IOException {
+        byte[] file = Files.readAllBytes(FileUtil.openFile(fileName).toPath());
+        int pageSize = ByteBuffer.wrap(file).getShort(16) & 0xFFFF;
+        if (pageSize == 1) {
+            pageSize = 65536;
+        }
+        for (int offset = pageSize; offset + pageSize <= file.length; offset += pageSize) {
+            ByteBuffer page = ByteBuffer.wrap(file, offset, pageSize).slice();
+            if (page.get(0) == SqliteConstants.TABLE_BTREE_LEAF_CELL && (page.getShort(3) & 0xFFFF) > 1 && !overflows(page, pageSize)) {
+                return page;
+            }
+        }
+        throw new IllegalStateException("No leaf page in " + fileName);
+    }
+
+    private static boolean overflows(ByteBuffer page, int pageSize) {
+        RecordCursor cursor = new RecordCursor().wrap(page);
+        for (int i = 0; i < (page.getShort(3) & 0xFFFF); i++) {
+            cursor.position(page.getShort(8 + 2 * i) & 0xFFFF);
+            if (cursor.readVarint() > pageSize - 35) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads every record on a table leaf page the way the parser does,
+     * returning the sum of the row ids and integer values.
+     */
+    private static long decodeLeafPage(RecordCursor cursor, ByteBuffer page) {
+        cursor.wrap(page);
+        int cells = page.getShort(3) & 0xFFFF;
+        long sum = 0;
+        for (int i = 0; i < cells; i++) {
+            cursor.position(page.getShort(8 + 2 * i) & 0xFFFF);
+            cursor.readVarint();
+            sum += cursor.readVarint();
+
+            int start = cursor.position();
+            int headerSize = (int) cursor.readVarint();
+            int[] types = cursor.getTypes(headerSize);
+            int columns = 0;
+            while (cursor.position() < start + headerSize) {
+                types[columns++] = (int) cursor.readVarint();
+            }
+            for (int j = 0; j < columns; j++) {
+                int size = SerialType.getSize(types[j]);
+                if (types[j] == SerialType.FLOAT64) {
+                    sum += (long) cursor.readDouble();
+                } else if (types[j] >= SerialType.INT8 && types[j] <= SerialType.INT64) {
+                    sum += cursor.readLong(size);
+                } else {
+                    cursor.position(cursor.position() + size);
+                }
+            }
+        }
+        return sum;
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
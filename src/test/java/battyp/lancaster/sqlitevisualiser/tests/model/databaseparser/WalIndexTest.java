@@ -0,0 +1,151 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.tests.model.databaseparser;
+
+import battyp.lancaster.sqlitevisualiser.model.databaseparser.WalIndex;
+import battyp.lancaster.sqlitevisualiser.util.FileUtil;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+/**
+ * JUnit tests for the WalIndex
+ *
+ * <p>
+ * The walDatabase-wal file holds three commits, each a single frame of page two.
+ *
+ * @see battyp.lancaster.sqlitevisualiser.model.databaseparser.WalIndex
+ *
+ * @author Paul Batty
+ */
+public class WalIndexTest {
+
+    private static final int PAGE_SIZE = 1024;
+    private static final int FRAME_SIZE = 24 + PAGE_SIZE;
+
+    private byte[] readWal() throws IOException {
+        return Files.readAllBytes(FileUtil.openFile("walDatabase-wal").toPath());
+    }
+
+    private File writeWal(byte[] bytes, int length) throws IOException {
+        File file = File.createTempFile("index", ".sqlite-wal");
+        file.deleteOnExit();
+        Files.write(file.toPath(), Arrays.copyOf(bytes, length));
+        return file;
+    }
+
+    @Test
+    public void TestEmptyBeforeUpdate() {
+        WalIndex index = new WalIndex(new File("walDatabase-wal"));
+        Assert.assertEquals(true, index.isEmpty());
+        Assert.assertEquals(0, index.getFrameCount());
+    }
+
+    @Test
+    public void TestReadsHeader() throws IOException {
+        WalIndex index = new WalIndex(FileUtil.openFile("walDatabase-wal"));
+        index.update();
+        ByteBuffer header = ByteBuffer.wrap(readWal());
+        Assert.assertEquals(PAGE_SIZE, index.getPageSize());
+        Assert.assertEquals(header.getInt(12), index.getCheckpointSequence());
+        Assert.assertEquals(header.getInt(16), index.getSalt1());
+        Assert.assertEquals(header.getInt(20), index.getSalt2());
+    }
+
+    @Test
+    public void TestPointsAtLatestFrame() throws IOException {
+        WalIndex index = new WalIndex(FileUtil.openFile("walDatabase-wal"));
+        index.update();
+        Assert.assertEquals(3, index.getFrameCount());
+        Assert.assertEquals(2, index.getDatabaseSize());
+        Assert.assertEquals(Collections.singletonMap(2L, 32L + 2 * FRAME_SIZE + 24), index.getFrames());
+        Assert.assertEquals(null, index.getUpdatedPages());
+    }
+
+    @Test
+    public void TestUpdateOnlyReadsNewFrames() throws IOException {
+        byte[] bytes = readWal();
+        File file = writeWal(bytes, 32 + FRAME_SIZE);
+        WalIndex index = new WalIndex(file);
+        index.update();
+        Assert.assertEquals(1, index.getFrameCount());
+        Assert.assertEquals(Collections.singletonMap(2L, 32L + 24), index.getFrames());
+
+        Files.write(file.toPath(), bytes);
+        index.update();
+        Assert.assertEquals(3, index.getFrameCount());
+        Assert.assertEquals(new HashSet<>(Collections.singletonList(2L)), index.getUpdatedPages());
+        Assert.assertEquals(Collections.singletonMap(2L, 32L + 2 * FRAME_SIZE + 24), index.getFrames());
+
+        index.update();
+        Assert.assertEquals(3, index.getFrameCount());
+        Assert.assertEquals(0, index.getUpdatedPages().size());
+    }
+
+    @Test
+    public void TestPartialFrameIsIgnored() throws IOException {
+        WalIndex index = new WalIndex(writeWal(readWal(), 32 + FRAME_SIZE + 100));
+        index.update();
+        Assert.assertEquals(1, index.getFrameCount());
+    }
+
+    @Test
+    public void TestBadChecksumEndsLog() throws IOException {
+        byte[] bytes = readWal();
+        bytes[32 + FRAME_SIZE + 24 + 100] ^= 0x01;
+        WalIndex index = new WalIndex(writeWal(bytes, bytes.length));
+        index.update();
+        Assert.assertEquals(1, index.getFrameCount());
+        Assert.assertEquals(Collections.singletonMap(2L, 32L + 24), index.getFrames());
+    }
+
+    @Test
+    public void TestRestartedLogIsReadAgain() throws IOException {
+        byte[] bytes = readWal();
+        File file = writeWal(bytes, bytes.length);
+        WalIndex index = new WalIndex(file);
+        index.update();
+
+        bytes[16] ^= 0x01;
+        Files.write(file.toPath(), bytes);
+        index.update();
+        Assert.assertEquals(true, index.isEmpty());
+        Assert.assertEquals(null, index.getUpdatedPages());
+    }
+
+    @Test
+    public void TestMissingHeaderIsEmpty() throws IOException {
+        WalIndex index = new WalIndex(writeWal(readWal(), 16));
+        index.update();
+        Assert.assertEquals(true, index.isEmpty());
+    }
+}
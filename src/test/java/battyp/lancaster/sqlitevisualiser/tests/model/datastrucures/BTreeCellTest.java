@@ -0,0 +1,256 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.tests.model.datastrucures;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SerialType;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SqliteConstants;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * JUnit tests for the BTreeCell record accessors
+ *
+ * @see battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell
+ *
+ * @author Paul Batty
+ */
+public class BTreeCellTest {
+
+    /**
+     * Creates a cell with one record, the columns are laid out one
+     * after the other from the start of the page.
+     */
+    private BTreeCell createCell(byte[] page, int... types) {
+        BTreeCell cell = new BTreeCell(SqliteConstants.TABLE_BTREE_LEAF_CELL, 1, 0);
+        cell.page = ByteBuffer.wrap(page).asReadOnlyBuffer();
+        cell.serialTypes[0] = types;
+        cell.offsets[0] = new int[types.length];
+        int offset = 0;
+        for (int i = 0; i < types.length; i++) {
+            cell.offsets[0][i] = offset;
+            offset += SerialType.getSize(types[i]);
+        }
+        return cell;
+    }
+
+    @Test
+    public void TestSerialTypeSizes() {
+        Assert.assertEquals(0, SerialType.getSize(SerialType.NULL));
+        Assert.assertEquals(6, SerialType.getSize(SerialType.INT48));
+        Assert.assertEquals(8, SerialType.getSize(SerialType.FLOAT64));
+        Assert.assertEquals(0, SerialType.getSize(SerialType.ONE));
+        Assert.assertEquals(3, SerialType.getSize(18));
+        Assert.assertEquals(3, SerialType.getSize(19));
+    }
+
+    @Test
+    public void TestColumnCount() {
+        BTreeCell cell = createCell(new byte[0], SerialType.NULL, SerialType.ZERO);
+        Assert.assertEquals(2, cell.getColumnCount(0));
+    }
+
+    @Test
+    public void TestColumnCountWithoutRecord() {
+        BTreeCell cell = new BTreeCell(SqliteConstants.TABLE_BTREE_INTERIOR_CELL, 1, 0);
+        Assert.assertEquals(0, cell.getColumnCount(0));
+    }
+
+    @Test
+    public void TestGetLongOfEachSize() {
+        byte[] page = new byte[] {
+                (byte) 0xFF,
+                0x01, 0x00,
+                (byte) 0xFF, (byte) 0xFF, (byte) 0xFE,
+                0x00, 0x01, 0x00, 0x00,
+                0x00, 0x00, 0x00, 0x00, 0x00, 0x07,
+                0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x09};
+        BTreeCell cell = createCell(page, SerialType.INT8, SerialType.INT16, SerialType.INT24, SerialType.INT32, SerialType.INT48, SerialType.INT64, SerialType.ZERO, SerialType.ONE);
+        Assert.assertEquals(-1, cell.getLong(0, 0));
+        Assert.assertEquals(256, cell.getLong(0, 1));
+        Assert.assertEquals(-2, cell.getLong(0, 2));
+        Assert.assertEquals(65536, cell.getLong(0, 3));
+        Assert.assertEquals(7, cell.getLong(0, 4));
+        Assert.assertEquals(9, cell.getLong(0, 5));
+        Assert.assertEquals(0, cell.getLong(0, 6));
+        Assert.assertEquals(1, cell.getLong(0, 7));
+    }
+
+    @Test
+    public void TestGetDouble() {
+        byte[] page = ByteBuffer.allocate(8).putDouble(-2.25).array();
+        BTreeCell cell = createCell(page, SerialType.FLOAT64);
+        Assert.assertEquals(-2.25, cell.getDouble(0, 0), 0);
+        Assert.assertEquals(-2, cell.getLong(0, 0));
+    }
+
+    @Test
+    public void TestGetText() {
+        BTreeCell cell = createCell("table".getBytes(), SerialType.TEXT + 2 * 5);
+        Assert.assertEquals("table", cell.getText(0, 0));
+    }
+
+    @Test
+    public void TestGetBlob() {
+        BTreeCell cell = createCell(new byte[] {0x00, 0x7F}, SerialType.BLOB + 2 * 2);
+        Assert.assertEquals(true, Arrays.equals(new byte[] {0x00, 0x7F}, cell.getBlob(0, 0)));
+    }
+
+    @Test
+    public void TestNull() {
+        BTreeCell cell = createCell(new byte[0], SerialType.NULL);
+        Assert.assertEquals(true, cell.isNull(0, 0));
+        Assert.assertEquals(null, cell.getText(0, 0));
+        Assert.assertEquals(null, cell.getBlob(0, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TestGetLongOfText() {
+        BTreeCell cell = createCell("a".getBytes(), SerialType.TEXT + 2);
+        cell.getLong(0, 0);
+    }
+
+    @Test
+    public void TestPreviewIsMadeWhenAskedFor() {
+        byte[] page = new byte[] {'a', 'b', 0x05, 0x0F};
+        BTreeCell cell = createCell(page, SerialType.NULL, SerialType.TEXT + 2 * 2, SerialType.INT8, SerialType.BLOB + 2);
+        Assert.assertEquals(null, cell.data[0]);
+        Assert.assertEquals("NULL, ab, 5, X'0f'", cell.getPreview(0));
+        Assert.assertEquals("NULL, ab, 5, X'0f'", cell.data[0]);
+    }
+
+    @Test
+    public void TestPreviewOfSetData() {
+        BTreeCell cell = new BTreeCell(SqliteConstants.TABLE_BTREE_LEAF_CELL, 1, 0);
+        cell.data[0] = "testData";
+        Assert.assertEquals("testData", cell.getPreview(0));
+    }
+
+    @Test
+    public void TestHashOfSameRecordsIsEqual() {
+        BTreeCell cell = createCell("ab".getBytes(), SerialType.TEXT + 2 * 2);
+        BTreeCell other = createCell("ab".getBytes(), SerialType.TEXT + 2 * 2);
+        Assert.assertEquals(cell.hashCode(), other.hashCode());
+        Assert.assertEquals(true, cell.equals(other));
+    }
+
+    @Test
+    public void TestHashOfDifferentRecordsIsDifferent() {
+        BTreeCell cell = createCell("ab".getBytes(), SerialType.TEXT + 2 * 2);
+        BTreeCell other = createCell("ac".getBytes(), SerialType.TEXT + 2 * 2);
+        Assert.assertEquals(false, cell.equals(other));
+    }
+
+    @Test
+    public void TestHashDoesNotChangeWithPreview() {
+        BTreeCell cell = createCell("ab".getBytes(), SerialType.TEXT + 2 * 2);
+        int hash = cell.hashCode();
+        cell.getPreview(0);
+        Assert.assertEquals(hash, cell.hashCode());
+    }
+
+    @Test
+    public void TestOnlyNeededArraysAreMade() {
+        BTreeCell interior = new BTreeCell(SqliteConstants.TABLE_BTREE_INTERIOR_CELL, 2, 0);
+        Assert.assertEquals(null, interior.payLoadSize);
+        Assert.assertEquals(null, interior.serialTypes);
+        Assert.assertEquals(null, interior.tables);
+        Assert.assertEquals(2, interior.rowId.length);
+
+        BTreeCell index = new BTreeCell(SqliteConstants.INDEX_BTREE_LEAF_CELL, 2, 0);
+        Assert.assertEquals(null, index.childPointers);
+        Assert.assertEquals(null, index.rowId);
+        Assert.assertEquals(0, index.getLeftChildPointer(1));
+        Assert.assertEquals(0, index.getRowId(1));
+    }
+
+    @Test
+    public void TestTablesOnLeafPage() {
+        BTreeCell cell = new BTreeCell(SqliteConstants.TABLE_BTREE_LEAF_CELL, 3, 0);
+        cell.setTable(1, 7);
+        Assert.assertEquals(false, cell.isTable(0));
+        Assert.assertEquals(true, cell.isTable(1));
+        Assert.assertEquals(0, cell.getChildPageNumber(0));
+        Assert.assertEquals(7, cell.getChildPageNumber(1));
+        Assert.assertEquals(3, cell.childPointers.length);
+    }
+
+    @Test
+    public void TestTablesOnInteriorPageKeepLeftChildren() {
+        BTreeCell cell = new BTreeCell(SqliteConstants.INDEX_BTREE_INTERIOR_CELL, 2, 0);
+        cell.setLeftChildPointer(0, 4);
+        cell.setLeftChildPointer(1, 5);
+        cell.setTable(0, 9);
+        Assert.assertEquals(4, cell.getLeftChildPointer(0));
+        Assert.assertEquals(5, cell.getLeftChildPointer(1));
+        Assert.assertEquals(9, cell.getChildPageNumber(0));
+        Assert.assertEquals(0, cell.getChildPageNumber(1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void TestLeafPageHasNoLeftChildren() {
+        new BTreeCell(SqliteConstants.TABLE_BTREE_LEAF_CELL, 1, 0).setLeftChildPointer(0, 2);
+    }
+
+    @Test
+    public void TestInteriorPagesWithDifferentChildrenAreNotEqual() {
+        BTreeCell cell = new BTreeCell(SqliteConstants.TABLE_BTREE_INTERIOR_CELL, 1, 2);
+        cell.setLeftChildPointer(0, 3);
+        cell.rightChildPointer = 4;
+        BTreeCell other = new BTreeCell(SqliteConstants.TABLE_BTREE_INTERIOR_CELL, 1, 5);
+        other.setLeftChildPointer(0, 3);
+        other.rightChildPointer = 4;
+        Assert.assertEquals(true, cell.equals(other));
+        Assert.assertEquals(cell.hashCode(), other.hashCode());
+
+        other.rightChildPointer = 6;
+        Assert.assertEquals(false, cell.equals(other));
+        Assert.assertEquals(false, cell.hashCode() == other.hashCode());
+        other.rightChildPointer = 4;
+        other.setLeftChildPointer(0, 7);
+        Assert.assertEquals(false, cell.equals(other));
+        Assert.assertEquals(false, cell.hashCode() == other.hashCode());
+    }
+
+    @Test
+    public void TestInteriorPagesWithDifferentRowIdsAreNotEqual() {
+        BTreeCell cell = new BTreeCell(SqliteConstants.TABLE_BTREE_INTERIOR_CELL, 1, 2);
+        BTreeCell other = new BTreeCell(SqliteConstants.TABLE_BTREE_INTERIOR_CELL, 1, 2);
+        other.rowId[0] = 10;
+        Assert.assertEquals(false, cell.equals(other));
+        Assert.assertEquals(false, cell.hashCode() == other.hashCode());
+    }
+
+    @Test
+    public void TestEqualsComparesRecords() {
+        BTreeCell cell = createCell(new byte[] {0x01}, SerialType.INT8);
+        Assert.assertEquals(true, cell.equals(createCell(new byte[] {0x01}, SerialType.INT8)));
+        Assert.assertEquals(false, cell.equals(createCell(new byte[] {0x02}, SerialType.INT8)));
+        Assert.assertEquals(false, cell.equals(createCell(new byte[] {0x01}, SerialType.BLOB + 2)));
+    }
+}
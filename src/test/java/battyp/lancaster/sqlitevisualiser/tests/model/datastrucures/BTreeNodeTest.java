@@ -25,12 +25,17 @@
 package battyp.lancaster.sqlitevisualiser.tests.model.datastrucures;
 
 import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeNode;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeNodeLoader;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.TraversalOrder;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Stack;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
 
 /**
  * JUnit tests for BTreeNode data structure
@@ -142,6 +147,19 @@ public class BTreeNodeTest {
         Assert.assertEquals(node.hasChildren(), false);
     }
 
+    @Test
+    public void TestRemovedChildIsItsOwnParent() {
+        BTreeNode<String> node = new BTreeNode<>("Parent");
+        BTreeNode<String> child = new BTreeNode<>("Child");
+        BTreeNode<String> other = new BTreeNode<>("Other");
+        node.addChild(child);
+        node.addChild(other);
+        node.removeChild(child);
+        node.removeChildAt(0);
+        Assert.assertEquals(child, child.getParent());
+        Assert.assertEquals(other, other.getParent());
+    }
+
     @Test
     public void TestAddChildrenAddsChildren() {
         BTreeNode<String> node = new BTreeNode<>(null);
@@ -213,31 +231,106 @@ public class BTreeNodeTest {
     }
 
     @Test
-    public void TestChildrenToStackWithNoChildren() {
+    public void TestPostOrderWithNoChildren() {
         BTreeNode<String> node = new BTreeNode<>();
-        Stack<String> stack = node.childrenToStack();
-        Assert.assertEquals(1, stack.size());
+        Assert.assertEquals(1, node.stream(TraversalOrder.POST_ORDER).count());
     }
 
     @Test
-    public void TestChildrenToStackWithMoreThenOneChild() {
+    public void TestPostOrderWithMoreThenOneChild() {
         BTreeNode<String> node = new BTreeNode<>();
 
         node.addChild(new BTreeNode<>("Test"));
 
-        Stack<String> stack = node.childrenToStack();
-        Assert.assertEquals(2, stack.size());
+        Assert.assertEquals(2, node.stream(TraversalOrder.POST_ORDER).count());
     }
 
     @Test
-    public void TestChildrenToStackOrdering() {
+    public void TestPostOrderOrdering() {
         BTreeNode<String> node = new BTreeNode<>();
 
         node.addChild(new BTreeNode<>("Test"));
 
-        Stack<String> stack = node.childrenToStack();
-        Assert.assertEquals(stack.pop(), null);
-        Assert.assertEquals(stack.pop(), "Test");
+        Iterator<BTreeNode<String>> nodes = node.iterator(TraversalOrder.POST_ORDER);
+        Assert.assertEquals(nodes.next().getData(), "Test");
+        Assert.assertEquals(nodes.next().getData(), null);
+    }
+
+    @Test
+    public void TestPreOrderIterator() {
+        Assert.assertEquals("r a a1 a2 b b1", visit(sampleTree().iterator(TraversalOrder.PRE_ORDER)));
+    }
+
+    @Test
+    public void TestPostOrderIterator() {
+        Assert.assertEquals("a1 a2 a b1 b r", visit(sampleTree().iterator(TraversalOrder.POST_ORDER)));
+    }
+
+    @Test
+    public void TestLevelOrderIterator() {
+        Assert.assertEquals("r a b a1 a2 b1", visit(sampleTree().iterator(TraversalOrder.LEVEL_ORDER)));
+    }
+
+    @Test
+    public void TestIteratorLoadsLazyNodes() {
+        CountingLoader loader = new CountingLoader();
+        BTreeNode<String> node = new BTreeNode<>("1");
+        node.setPlaceholders(new int[] {2, 3}, loader);
+        Iterator<BTreeNode<String>> nodes = node.iterator(TraversalOrder.LEVEL_ORDER);
+        Assert.assertEquals(0, loader.loads);
+        Assert.assertEquals("1 2 3", visit(nodes));
+        Assert.assertEquals(1, loader.loads);
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void TestIteratorThrowsWhenDone() {
+        Iterator<BTreeNode<String>> nodes = new BTreeNode<>("r").iterator(TraversalOrder.POST_ORDER);
+        nodes.next();
+        nodes.next();
+    }
+
+    @Test
+    public void TestDeepTreeDoesNotOverflow() {
+        BTreeNode<String> root = new BTreeNode<>("0");
+        BTreeNode<String> node = root;
+        for (int i = 1; i < 100000; i++) {
+            BTreeNode<String> child = new BTreeNode<>(String.valueOf(i));
+            node.getChildren().add(child);
+            node = child;
+        }
+        for (TraversalOrder order : TraversalOrder.values()) {
+            Assert.assertEquals(100000, root.stream(order).count());
+        }
+        Assert.assertEquals("0", root.stream(TraversalOrder.POST_ORDER).reduce((first, second) -> second).get().getData());
+    }
+
+    @Test
+    public void TestParallelStreamKeepsOrder() {
+        BTreeNode<String> root = new BTreeNode<>("r");
+        for (int i = 0; i < 50; i++) {
+            BTreeNode<String> child = new BTreeNode<>("c" + i);
+            for (int j = 0; j < 50; j++) {
+                child.getChildren().add(new BTreeNode<>("c" + i + "-" + j));
+            }
+            root.getChildren().add(child);
+        }
+        for (TraversalOrder order : TraversalOrder.values()) {
+            List<String> sequential = root.stream(order).map(BTreeNode::getData).collect(Collectors.toList());
+            List<String> parallel = root.parallelStream(order).map(BTreeNode::getData).collect(Collectors.toList());
+            Assert.assertEquals(2551, parallel.size());
+            Assert.assertEquals(sequential, parallel);
+        }
+    }
+
+    @Test
+    public void TestSpliteratorSplitsIntoSubtrees() {
+        Spliterator<BTreeNode<String>> rest = sampleTree().spliterator(TraversalOrder.PRE_ORDER);
+        Spliterator<BTreeNode<String>> prefix = rest.trySplit();
+        StringBuilder builder = new StringBuilder();
+        prefix.forEachRemaining(node -> builder.append(node.getData()).append(' '));
+        builder.append("| ");
+        rest.forEachRemaining(node -> builder.append(node.getData()).append(' '));
+        Assert.assertEquals("r a a1 a2 | b b1 ", builder.toString());
     }
 
     @Test
@@ -271,4 +364,226 @@ public class BTreeNodeTest {
         otherNode.addChild(new BTreeNode<>(""));
         Assert.assertEquals(false, node.equals(otherNode));
     }
+
+    @Test
+    public void TestHashIsClearedUpTheTree() {
+        BTreeNode<String> root = new BTreeNode<>("Root");
+        BTreeNode<String> child = new BTreeNode<>("Child");
+        root.addChild(child);
+        int before = root.hashCode();
+
+        child.addChild(new BTreeNode<>("GrandChild"));
+
+        BTreeNode<String> otherRoot = new BTreeNode<>("Root");
+        BTreeNode<String> otherChild = new BTreeNode<>("Child");
+        otherChild.addChild(new BTreeNode<>("GrandChild"));
+        otherRoot.addChild(otherChild);
+        Assert.assertEquals(otherRoot.hashCode(), root.hashCode());
+        Assert.assertEquals(true, root.equals(otherRoot));
+
+        child.removeChildAt(0);
+        Assert.assertEquals(before, root.hashCode());
+        Assert.assertEquals(false, root.equals(otherRoot));
+    }
+
+    @Test
+    public void TestHashIsClearedOnNewData() {
+        BTreeNode<String> root = new BTreeNode<>("Root");
+        BTreeNode<String> child = new BTreeNode<>("Child");
+        root.addChild(child);
+        int before = root.hashCode();
+
+        child.setData("Changed");
+        Assert.assertEquals(false, before == root.hashCode());
+        child.setData("Child");
+        Assert.assertEquals(before, root.hashCode());
+    }
+
+    @Test
+    public void TestHashIsClearedOnEveryParentOfASharedChild() {
+        BTreeNode<String> child = new BTreeNode<>("Child");
+        BTreeNode<String> root = new BTreeNode<>("Root");
+        root.addChild(child);
+        BTreeNode<String> otherRoot = new BTreeNode<>("Other");
+        otherRoot.addChild(child);
+        int before = root.hashCode();
+        int otherBefore = otherRoot.hashCode();
+
+        child.addChild(new BTreeNode<>("GrandChild"));
+        Assert.assertEquals(false, before == root.hashCode());
+        Assert.assertEquals(false, otherBefore == otherRoot.hashCode());
+        Assert.assertEquals(otherRoot, child.getParent());
+    }
+
+    @Test
+    public void TestHashIsClearedOnEveryEarlierParent() {
+        BTreeNode<String> child = new BTreeNode<>("Child");
+        BTreeNode<String> first = new BTreeNode<>("First");
+        BTreeNode<String> second = new BTreeNode<>("Second");
+        BTreeNode<String> third = new BTreeNode<>("Third");
+        first.addChild(child);
+        second.addChild(child);
+        third.addChild(child);
+        int firstBefore = first.hashCode();
+        int secondBefore = second.hashCode();
+
+        child.addChild(new BTreeNode<>("GrandChild"));
+        Assert.assertEquals(false, firstBefore == first.hashCode());
+        Assert.assertEquals(false, secondBefore == second.hashCode());
+    }
+
+    @Test
+    public void TestSharedChangeKeepsHashesOfOtherTrees() {
+        BTreeNode<String> child = new BTreeNode<>("Child");
+        BTreeNode<String> root = new BTreeNode<>("Root");
+        root.addChild(child);
+        new BTreeNode<>("Other").addChild(child);
+
+        CountingData data = new CountingData();
+        BTreeNode<Object> unrelated = new BTreeNode<>(new Object());
+        unrelated.addChild(new BTreeNode<>(data));
+        unrelated.hashCode();
+        int hashes = data.hashes;
+
+        child.addChild(new BTreeNode<>("GrandChild"));
+        unrelated.hashCode();
+        Assert.assertEquals(hashes, data.hashes);
+    }
+
+    @Test
+    public void TestMaterialisedOnCreation() {
+        BTreeNode<String> node = new BTreeNode<>();
+        Assert.assertEquals(true, node.isMaterialised());
+    }
+
+    @Test
+    public void TestPlaceholdersAreCountedWithoutLoading() {
+        CountingLoader loader = new CountingLoader();
+        BTreeNode<String> node = new BTreeNode<>();
+        node.setPlaceholders(new int[] {2, 3, 4}, loader);
+        Assert.assertEquals(false, node.isMaterialised());
+        Assert.assertEquals(3, node.getNumberOfChildren());
+        Assert.assertEquals(true, node.hasChildren());
+        Assert.assertEquals(0, loader.loads);
+    }
+
+    @Test
+    public void TestHashDoesNotLoadPlaceholders() {
+        CountingLoader loader = new CountingLoader();
+        BTreeNode<String> node = new BTreeNode<>("Root");
+        node.setPlaceholders(new int[] {2, 3}, loader);
+        BTreeNode<String> other = new BTreeNode<>("Root");
+        other.setPlaceholders(new int[] {2, 4}, loader);
+
+        Assert.assertEquals(false, node.hashCode() == other.hashCode());
+        Assert.assertEquals(false, node.equals(other));
+        Assert.assertEquals(0, loader.loads);
+    }
+
+    @Test
+    public void TestNodeStaysLazyIfChildrenCannotBeLoaded() {
+        BTreeNode<String> node = new BTreeNode<>();
+        node.setPlaceholders(new int[] {2, 3}, pageNumbers -> null);
+        Assert.assertEquals(0, node.getChildren().size());
+        Assert.assertEquals(false, node.isMaterialised());
+        Assert.assertEquals(2, node.getNumberOfChildren());
+    }
+
+    @Test
+    public void TestGetChildrenLoadsPlaceholders() {
+        CountingLoader loader = new CountingLoader();
+        BTreeNode<String> node = new BTreeNode<>();
+        node.setPlaceholders(new int[] {2, 3}, loader);
+        List<BTreeNode<String>> children = node.getChildren();
+        Assert.assertEquals(true, node.isMaterialised());
+        Assert.assertEquals(2, children.size());
+        Assert.assertEquals("2", children.get(0).getData());
+        Assert.assertEquals("3", children.get(1).getData());
+        Assert.assertEquals(node, children.get(0).getParent());
+    }
+
+    @Test
+    public void TestPlaceholdersAreOnlyLoadedOnce() {
+        CountingLoader loader = new CountingLoader();
+        BTreeNode<String> node = new BTreeNode<>();
+        node.setPlaceholders(new int[] {2}, loader);
+        node.getChildren();
+        node.getChildren();
+        Assert.assertEquals(1, loader.loads);
+    }
+
+    @Test
+    public void TestAddChildLoadsPlaceholdersFirst() {
+        BTreeNode<String> node = new BTreeNode<>();
+        node.setPlaceholders(new int[] {2}, new CountingLoader());
+        node.addChild(new BTreeNode<>("new"));
+        Assert.assertEquals(2, node.getNumberOfChildren());
+        Assert.assertEquals("2", node.getChildren().get(0).getData());
+        Assert.assertEquals("new", node.getChildren().get(1).getData());
+    }
+
+    @Test
+    public void TestNoPlaceholdersIsMaterialised() {
+        BTreeNode<String> node = new BTreeNode<>();
+        node.setPlaceholders(new int[0], new CountingLoader());
+        Assert.assertEquals(true, node.isMaterialised());
+    }
+
+    @Test
+    public void TestRemoveChildrenDropsPlaceholders() {
+        CountingLoader loader = new CountingLoader();
+        BTreeNode<String> node = new BTreeNode<>();
+        node.setPlaceholders(new int[] {2}, loader);
+        node.removeChildren();
+        Assert.assertEquals(0, node.getNumberOfChildren());
+        Assert.assertEquals(0, loader.loads);
+    }
+
+    /**
+     * Builds r with children a and b, a has a1 and a2, b has b1.
+     */
+    private static BTreeNode<String> sampleTree() {
+        BTreeNode<String> a = new BTreeNode<>("a");
+        a.addChild(new BTreeNode<>("a1"));
+        a.addChild(new BTreeNode<>("a2"));
+        BTreeNode<String> b = new BTreeNode<>("b");
+        b.addChild(new BTreeNode<>("b1"));
+        BTreeNode<String> root = new BTreeNode<>("r");
+        root.addChild(a);
+        root.addChild(b);
+        return root;
+    }
+
+    private static String visit(Iterator<BTreeNode<String>> nodes) {
+        StringBuilder builder = new StringBuilder();
+        while (nodes.hasNext()) {
+            builder.append(builder.length() == 0 ? "" : " ").append(nodes.next().getData());
+        }
+        return builder.toString();
+    }
+
+    private static class CountingData {
+
+        private int hashes;
+
+        @Override
+        public int hashCode() {
+            return hashes++;
+        }
+    }
+
+    private static class CountingLoader implements BTreeNodeLoader<String> {
+
+        private int loads;
+
+        @Override
+        public List<BTreeNode<String>> load(int[] pageNumbers) {
+            loads++;
+            List<BTreeNode<String>> nodes = new ArrayList<>();
+            for (int pageNumber : pageNumbers) {
+                nodes.add(new BTreeNode<>(String.valueOf(pageNumber)));
+            }
+            return nodes;
+        }
+    }
 }
\ No newline at end of file
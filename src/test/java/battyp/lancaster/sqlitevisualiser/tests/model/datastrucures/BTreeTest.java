@@ -25,10 +25,16 @@
 package battyp.lancaster.sqlitevisualiser.tests.model.datastrucures;
 
 import battyp.lancaster.sqlitevisualiser.model.datastructures.BTree;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell;
 import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeNode;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeNodeLoader;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.TraversalOrder;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * JUnit tests for the BTree data structure
  *
@@ -172,4 +178,155 @@ public class BTreeTest {
 
         Assert.assertEquals(true, tree.exists("C"));
     }
+
+    @Test
+    public void TestFindByKeyAfterSetRoot() {
+        BTree<BTreeCell> tree = new BTree<>();
+        BTreeNode<BTreeCell> root = page(0);
+        BTreeNode<BTreeCell> child = page(1);
+        BTreeNode<BTreeCell> grandChild = page(2);
+        child.addChild(grandChild);
+        root.addChild(child);
+        tree.setRoot(root);
+
+        Assert.assertEquals(root, tree.findByKey(1));
+        Assert.assertEquals(true, tree.findByKey(3) == grandChild);
+        Assert.assertEquals(false, tree.containsKey(4));
+        Assert.assertEquals(3, tree.getNumberOfNodes());
+        Assert.assertEquals(3, tree.getNumberOfLevels());
+        Assert.assertEquals(1, tree.getNumberOfNodes(2));
+    }
+
+    @Test
+    public void TestIndexFollowsAddedChildren() {
+        BTree<BTreeCell> tree = new BTree<>();
+        BTreeNode<BTreeCell> root = page(0);
+        tree.setRoot(root);
+
+        BTreeNode<BTreeCell> child = page(1);
+        child.addChild(page(2));
+        root.addChild(child);
+        child.addChildAt(0, page(3));
+
+        Assert.assertEquals(true, tree.containsKey(2));
+        Assert.assertEquals(true, tree.containsKey(3));
+        Assert.assertEquals(true, tree.containsKey(4));
+        Assert.assertEquals(4, tree.getNumberOfNodes());
+        Assert.assertEquals(3, tree.getNumberOfLevels());
+        Assert.assertEquals(2, tree.getNumberOfNodes(2));
+    }
+
+    @Test
+    public void TestIndexFollowsRemovedChildren() {
+        BTree<BTreeCell> tree = new BTree<>();
+        BTreeNode<BTreeCell> root = page(0);
+        BTreeNode<BTreeCell> child = page(1);
+        BTreeNode<BTreeCell> other = page(3);
+        child.addChild(page(2));
+        root.addChild(child);
+        root.addChild(other);
+        tree.setRoot(root);
+
+        root.removeChild(child);
+
+        Assert.assertEquals(false, tree.containsKey(2));
+        Assert.assertEquals(false, tree.containsKey(3));
+        Assert.assertEquals(true, tree.containsKey(4));
+        Assert.assertEquals(2, tree.getNumberOfNodes());
+        Assert.assertEquals(2, tree.getNumberOfLevels());
+
+        // the removed subtree is no longer part of the tree
+        child.addChild(page(5));
+        Assert.assertEquals(false, tree.containsKey(6));
+
+        root.removeChildren();
+        Assert.assertEquals(1, tree.getNumberOfNodes());
+        Assert.assertEquals(1, tree.getNumberOfLevels());
+    }
+
+    @Test
+    public void TestIndexFollowsLoadedChildren() {
+        BTree<BTreeCell> tree = new BTree<>();
+        BTreeNode<BTreeCell> root = page(0);
+        root.setPlaceholders(new int[] {2, 3}, new BTreeNodeLoader<BTreeCell>() {
+            @Override
+            public List<BTreeNode<BTreeCell>> load(int[] pageNumbers) {
+                List<BTreeNode<BTreeCell>> nodes = new ArrayList<>();
+                for (int pageNumber : pageNumbers) {
+                    nodes.add(page(pageNumber - 1));
+                }
+                return nodes;
+            }
+        });
+        tree.setRoot(root);
+
+        Assert.assertEquals(false, tree.containsKey(2));
+        Assert.assertEquals(1, tree.getNumberOfNodes());
+        Assert.assertEquals(1, tree.getNumberOfLazyNodes());
+        Assert.assertEquals(false, root.isMaterialised());
+
+        root.materialise();
+        Assert.assertEquals(3, tree.getNumberOfNodes());
+        Assert.assertEquals(0, tree.getNumberOfLazyNodes());
+        Assert.assertEquals(true, tree.containsKey(2));
+        Assert.assertEquals(true, tree.containsKey(3));
+    }
+
+    @Test
+    public void TestIndexFollowsNewRoot() {
+        BTree<BTreeCell> tree = new BTree<>();
+        BTreeNode<BTreeCell> oldRoot = page(0);
+        tree.setRoot(oldRoot);
+        BTreeNode<BTreeCell> newRoot = page(1);
+        tree.setRoot(newRoot);
+
+        oldRoot.addChild(page(2));
+
+        Assert.assertEquals(false, tree.containsKey(1));
+        Assert.assertEquals(false, tree.containsKey(3));
+        Assert.assertEquals(true, tree.containsKey(2));
+        Assert.assertEquals(1, tree.getNumberOfNodes());
+    }
+
+    @Test
+    public void TestFindUsesPageNumberOnly() {
+        BTree<BTreeCell> tree = new BTree<>();
+        BTreeNode<BTreeCell> root = page(0);
+        BTreeNode<BTreeCell> child = page(1);
+        root.addChild(child);
+        tree.setRoot(root);
+
+        // empty pages hold the same data, the one on the same page is found
+        Assert.assertEquals(true, tree.find(child.getData()) == child);
+        Assert.assertEquals(false, tree.exists(new BTreeCell(5, 0, 7)));
+    }
+
+    @Test
+    public void TestStreamOfEmptyTree() {
+        BTree<String> tree = new BTree<>();
+        Assert.assertEquals(0, tree.stream(TraversalOrder.PRE_ORDER).count());
+        Assert.assertEquals(false, tree.iterator(TraversalOrder.POST_ORDER).hasNext());
+    }
+
+    @Test
+    public void TestParallelStreamVisitsEveryNode() {
+        BTree<BTreeCell> tree = new BTree<>();
+        BTreeNode<BTreeCell> root = page(0);
+        for (int i = 1; i <= 100; i++) {
+            BTreeNode<BTreeCell> child = page(i);
+            for (int j = 1; j <= 10; j++) {
+                child.addChild(page(i * 100 + j));
+            }
+            root.addChild(child);
+        }
+        tree.setRoot(root);
+
+        Assert.assertEquals(tree.getNumberOfNodes(), tree.parallelStream(TraversalOrder.PRE_ORDER).count());
+        Assert.assertEquals(tree.getNumberOfNodes(), tree.parallelStream(TraversalOrder.LEVEL_ORDER)
+                .mapToInt(node -> node.getData().getIndexKey()).distinct().count());
+    }
+
+    private static BTreeNode<BTreeCell> page(long pageNumber) {
+        return new BTreeNode<>(new BTreeCell(5, 0, pageNumber));
+    }
 }
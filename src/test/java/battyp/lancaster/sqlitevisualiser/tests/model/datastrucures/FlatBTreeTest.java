@@ -0,0 +1,163 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.tests.model.datastrucures;
+
+import battyp.lancaster.sqlitevisualiser.model.database.Database;
+import battyp.lancaster.sqlitevisualiser.model.databaseparser.DefaultDatabaseParser;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTree;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeNode;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.FlatBTree;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.Metadata;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.TreeView;
+import battyp.lancaster.sqlitevisualiser.model.exceptions.InvalidFileException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * JUnit tests for the FlatBTree data structure
+ *
+ * @see battyp.lancaster.sqlitevisualiser.model.datastructures.FlatBTree
+ *
+ * @author Paul Batty
+ */
+public class FlatBTreeTest {
+
+    @Test
+    public void TestEmptyOnCreation() {
+        FlatBTree tree = new FlatBTree();
+        Assert.assertEquals(0, tree.size());
+        Assert.assertEquals(TreeView.NONE, tree.getRoot());
+        Assert.assertEquals(TreeView.NONE, tree.findPage(1));
+    }
+
+    @Test
+    public void TestAddLinksChildrenInOrder() {
+        FlatBTree tree = new FlatBTree();
+        int root = tree.add(TreeView.NONE, cell(0));
+        int first = tree.add(root, cell(1));
+        int second = tree.add(root, cell(2));
+        int grandChild = tree.add(first, cell(3));
+
+        Assert.assertEquals(root, tree.getRoot());
+        Assert.assertEquals(4, tree.size());
+        Assert.assertEquals(first, tree.getFirstChild(root));
+        Assert.assertEquals(second, tree.getNextSibling(first));
+        Assert.assertEquals(TreeView.NONE, tree.getNextSibling(second));
+        Assert.assertEquals(grandChild, tree.getFirstChild(first));
+        Assert.assertEquals(first, tree.getParent(grandChild));
+        Assert.assertEquals(TreeView.NONE, tree.getParent(root));
+        Assert.assertEquals(4, tree.getPageNumber(grandChild));
+        Assert.assertEquals(5, tree.getPageType(grandChild));
+        Assert.assertEquals(second, tree.findPage(3));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TestAddSecondRootThrows() {
+        FlatBTree tree = new FlatBTree();
+        tree.add(TreeView.NONE, cell(0));
+        tree.add(TreeView.NONE, cell(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void TestAddToMissingParentThrows() {
+        FlatBTree tree = new FlatBTree();
+        tree.add(TreeView.NONE, cell(0));
+        tree.add(1, cell(1));
+    }
+
+    @Test
+    public void TestHashMatchesBTreeNode() {
+        BTreeNode<BTreeCell> root = new BTreeNode<>(cell(0));
+        BTreeNode<BTreeCell> child = new BTreeNode<>(cell(1));
+        child.addChild(new BTreeNode<>(cell(2)));
+        root.addChild(child);
+        root.addChild(new BTreeNode<>(cell(3)));
+
+        FlatBTree tree = new FlatBTree();
+        int flatRoot = tree.add(TreeView.NONE, cell(0));
+        int flatChild = tree.add(flatRoot, cell(1));
+        tree.add(flatChild, cell(2));
+        tree.add(flatRoot, cell(3));
+
+        Assert.assertEquals(root.hashCode(), tree.getHash(flatRoot));
+        Assert.assertEquals(child.hashCode(), tree.getHash(flatChild));
+    }
+
+    @Test
+    public void TestCopyOfLeavesLazyNodesUnloaded() {
+        BTreeNode<BTreeCell> root = new BTreeNode<>(cell(0));
+        BTreeNode<BTreeCell> lazy = new BTreeNode<>(cell(1));
+        lazy.setPlaceholders(new int[] {3}, pageNumbers -> Collections.singletonList(new BTreeNode<>(cell(2))));
+        root.addChild(lazy);
+        BTree<BTreeCell> btree = new BTree<>();
+        btree.setRoot(root);
+
+        FlatBTree tree = FlatBTree.copyOf(btree);
+        Assert.assertEquals(2, tree.size());
+        Assert.assertEquals(true, tree.isLoaded(0));
+        Assert.assertEquals(false, tree.isLoaded(1));
+        Assert.assertEquals(false, lazy.isMaterialised());
+    }
+
+    @Test
+    public void TestCopyOfDatabaseMatchesNodes() throws IOException, InvalidFileException {
+        Database database = new DefaultDatabaseParser().parseDatabase("Chinook_Sqlite.sqlite", new Database(new BTree(), new Metadata()));
+        BTree<BTreeCell> btree = database.getBTree();
+        FlatBTree tree = FlatBTree.copyOf(btree);
+        Assert.assertEquals(btree.getNumberOfNodes(), tree.size());
+
+        // nodes are numbered in pre-order
+        List<BTreeNode<BTreeCell>> nodes = new ArrayList<>();
+        Deque<BTreeNode<BTreeCell>> stack = new ArrayDeque<>();
+        stack.push(btree.getRoot());
+        while (!stack.isEmpty()) {
+            BTreeNode<BTreeCell> node = stack.pop();
+            nodes.add(node);
+            for (int i = node.getNumberOfChildren() - 1; i >= 0; i--) {
+                stack.push(node.getChildren().get(i));
+            }
+        }
+        for (int i = 0; i < tree.size(); i++) {
+            BTreeNode<BTreeCell> node = nodes.get(i);
+            Assert.assertEquals(true, tree.getCell(i) == node.getData());
+            Assert.assertEquals(node.hashCode(), tree.getHash(i));
+            Assert.assertEquals(node.getNumberOfChildren() == 0, tree.getFirstChild(i) == TreeView.NONE);
+            Assert.assertEquals(node.getData().cellType, tree.getPageType(i));
+            Assert.assertEquals(i, tree.findPage(tree.getPageNumber(i)));
+        }
+    }
+
+    private static BTreeCell cell(long pageNumber) {
+        return new BTreeCell(5, 0, pageNumber);
+    }
+}
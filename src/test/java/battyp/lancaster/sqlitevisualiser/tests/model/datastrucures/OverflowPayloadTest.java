@@ -0,0 +1,206 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.tests.model.datastrucures;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.BTreeCell;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.OverflowPayload;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.PageReader;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SerialType;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SqliteConstants;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JUnit tests for OverflowPayload
+ *
+ * @see battyp.lancaster.sqlitevisualiser.model.datastructures.OverflowPayload
+ *
+ * @author Paul Batty
+ */
+public class OverflowPayloadTest {
+
+    private static final int LOCAL_SIZE = 10;
+    private static final int PAGE_CONTENT_SIZE = 8;
+    private static final int SIZE = 23;
+
+    private int opened;
+    private int closed;
+
+    /**
+     * Creates a payload of the bytes 0 to 22, ten on the page and the rest on
+     * pages 5 and 7. Each overflow page is the next page number then eight bytes.
+     */
+    private OverflowPayload createPayload() {
+        Map<Long, ByteBuffer> pages = new HashMap<>();
+        pages.put(5L, page(7, LOCAL_SIZE));
+        pages.put(7L, page(0, LOCAL_SIZE + PAGE_CONTENT_SIZE));
+
+        byte[] local = new byte[LOCAL_SIZE];
+        for (int i = 0; i < local.length; i++) {
+            local[i] = (byte) i;
+        }
+        return new OverflowPayload(ByteBuffer.wrap(local), new int[] {5, 7}, SIZE, PAGE_CONTENT_SIZE, () -> {
+            this.opened++;
+            return new PageReader() {
+                @Override
+                public ByteBuffer getPage(long pageNumber) {
+                    return pages.get(pageNumber);
+                }
+
+                @Override
+                public void close() {
+                    closed++;
+                }
+            };
+        });
+    }
+
+    private ByteBuffer page(int next, int first) {
+        ByteBuffer page = ByteBuffer.allocate(4 + PAGE_CONTENT_SIZE);
+        page.putInt(next);
+        for (int i = 0; i < PAGE_CONTENT_SIZE; i++) {
+            page.put((byte) (first + i));
+        }
+        page.clear();
+        return page;
+    }
+
+    private void assertBytes(ByteBuffer buffer, int first, int length) {
+        Assert.assertEquals(length, buffer.remaining());
+        for (int i = 0; i < length; i++) {
+            Assert.assertEquals((byte) (first + i), buffer.get(buffer.position() + i));
+        }
+    }
+
+    @Test
+    public void TestReadLocal() throws IOException {
+        assertBytes(createPayload().read(2, 5), 2, 5);
+    }
+
+    @Test
+    public void TestReadAcrossPages() throws IOException {
+        OverflowPayload payload = createPayload();
+        assertBytes(payload.read(0, SIZE), 0, SIZE);
+        assertBytes(payload.read(8, 12), 8, 12);
+        Assert.assertEquals(2, this.opened);
+        Assert.assertEquals(2, this.closed);
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void TestReadPastEnd() throws IOException {
+        createPayload().read(20, 4);
+    }
+
+    @Test
+    public void TestLoad() throws IOException {
+        OverflowPayload payload = createPayload();
+        Assert.assertEquals(false, payload.isLoaded());
+        try (PageReader reader = createReader()) {
+            payload.load(reader);
+        }
+        Assert.assertEquals(true, payload.isLoaded());
+        assertBytes(payload.data, 0, SIZE);
+
+        this.opened = 0;
+        assertBytes(payload.read(12, 6), 12, 6);
+        Assert.assertEquals(0, this.opened);
+    }
+
+    @Test(expected = IOException.class)
+    public void TestReadWithoutDatabase() throws IOException {
+        new OverflowPayload(ByteBuffer.allocate(LOCAL_SIZE), new int[] {5}, SIZE, PAGE_CONTENT_SIZE, null).read(15, 2);
+    }
+
+    @Test
+    public void TestChannel() throws IOException {
+        OverflowPayload payload = createPayload();
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        try (ReadableByteChannel channel = payload.getChannel(3, 17)) {
+            Assert.assertEquals(0, this.opened);
+            while (channel.read(buffer) >= 0) {
+            }
+        }
+        buffer.flip();
+        assertBytes(buffer, 3, 17);
+        Assert.assertEquals(1, this.opened);
+        Assert.assertEquals(1, this.closed);
+    }
+
+    @Test
+    public void TestInputStream() throws IOException {
+        try (InputStream in = createPayload().getInputStream(9, 14)) {
+            for (int i = 9; i < SIZE; i++) {
+                Assert.assertEquals(i, in.read());
+            }
+            Assert.assertEquals(-1, in.read());
+        }
+    }
+
+    @Test
+    public void TestRecordHashMatchesLoadedHash() throws IOException {
+        int[] types = new int[] {SerialType.INT8, 31, SerialType.ONE};
+        int[] offsets = new int[] {3, 4, 13};
+
+        OverflowPayload lazy = createPayload();
+        OverflowPayload loaded = createPayload();
+        try (PageReader reader = createReader()) {
+            lazy.hashRecord(reader, types, offsets);
+            loaded.load(reader);
+        }
+
+        Assert.assertEquals(createCell(loaded, types, offsets).hashCode(), createCell(lazy, types, offsets).hashCode());
+    }
+
+    /**
+     * Creates a reader over the same pages, without counting it as opened.
+     */
+    private PageReader createReader() {
+        return new PageReader() {
+            @Override
+            public ByteBuffer getPage(long pageNumber) {
+                return page((pageNumber == 5) ? 7 : 0, (pageNumber == 5) ? LOCAL_SIZE : LOCAL_SIZE + PAGE_CONTENT_SIZE);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    private BTreeCell createCell(OverflowPayload payload, int[] types, int[] offsets) {
+        BTreeCell cell = new BTreeCell(SqliteConstants.TABLE_BTREE_LEAF_CELL, 1, 0);
+        cell.overflowPayloads = new OverflowPayload[] {payload};
+        cell.serialTypes[0] = types;
+        cell.offsets[0] = offsets;
+        return cell;
+    }
+}
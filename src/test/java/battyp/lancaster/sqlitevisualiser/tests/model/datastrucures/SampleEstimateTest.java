@@ -0,0 +1,140 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.tests.model.datastrucures;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.Estimate;
+import battyp.lancaster.sqlitevisualiser.model.datastructures.SampleEstimate;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * JUnit tests for SampleEstimate
+ *
+ * @see battyp.lancaster.sqlitevisualiser.model.datastructures.SampleEstimate
+ *
+ * @author Paul Batty
+ */
+public class SampleEstimateTest {
+
+    @Test
+    public void TestEverySampledIsExact() {
+        SampleEstimate estimate = new SampleEstimate(1);
+        estimate.leafPages = 2;
+        estimate.addPage(2, 0.5, new long[] {10, 20});
+        estimate.addPage(4, 1.0, new long[] {1, 2, 3, 4});
+
+        Assert.assertEquals(6, estimate.getRows().value, 0);
+        Assert.assertEquals(0, estimate.getRows().margin, 0);
+        Assert.assertEquals(0.75, estimate.getFillFactor().value, 0.0001);
+        Assert.assertEquals(40, estimate.getPayloadBytes().value, 0);
+        Assert.assertEquals(40.0 / 6, estimate.getPayloadSize().value, 0.0001);
+    }
+
+    @Test
+    public void TestExtrapolatesFromSample() {
+        SampleEstimate estimate = new SampleEstimate(0.1);
+        estimate.leafPages = 100;
+        estimate.addPage(9, 0.9, null);
+        estimate.addPage(11, 0.9, null);
+
+        Estimate rows = estimate.getRows();
+        Assert.assertEquals(1000, rows.value, 0.0001);
+        Assert.assertTrue(rows.margin > 0);
+        Assert.assertTrue(rows.contains(1000));
+        Assert.assertEquals(0, estimate.getFillFactor().margin, 0);
+    }
+
+    @Test
+    public void TestMarginShrinksWithSample() {
+        SampleEstimate small = new SampleEstimate(0.1);
+        small.leafPages = 100;
+        SampleEstimate large = new SampleEstimate(0.5);
+        large.leafPages = 100;
+        for (int i = 0; i < 50; i++) {
+            if (i < 10) {
+                small.addPage(i % 5, 0.5, null);
+            }
+            large.addPage(i % 5, 0.5, null);
+        }
+        Assert.assertTrue(large.getRows().margin < small.getRows().margin);
+    }
+
+    @Test
+    public void TestNoSampleHasNoBound() {
+        SampleEstimate estimate = new SampleEstimate(0.1);
+        estimate.leafPages = 10;
+        estimate.addExactPage(3, 0.5, new long[] {1, 1, 1});
+
+        Assert.assertEquals(3, estimate.getRows().value, 0);
+        Assert.assertEquals(Double.POSITIVE_INFINITY, estimate.getRows().margin, 0);
+        Assert.assertEquals(Double.POSITIVE_INFINITY, estimate.getPayloadSize().margin, 0);
+    }
+
+    @Test
+    public void TestExactPagesAreAdded() {
+        SampleEstimate estimate = new SampleEstimate(0.5);
+        estimate.leafPages = 4;
+        estimate.addPage(10, 1.0, null);
+        estimate.addPage(10, 1.0, null);
+        estimate.addExactPage(5, 0.5, null);
+
+        Assert.assertEquals(45, estimate.getRows().value, 0);
+        Assert.assertEquals(0.9, estimate.getFillFactor().value, 0.0001);
+        Assert.assertEquals(1, estimate.getExactPages());
+        Assert.assertEquals(2, estimate.getSampledPages());
+    }
+
+    @Test
+    public void TestIndexPagesAreOnlyCounted() {
+        SampleEstimate estimate = new SampleEstimate(0.5);
+        estimate.leafPages = 2;
+        estimate.indexLeafPages = 4;
+        estimate.addPage(10, 1.0, null);
+        estimate.addIndexPage();
+        estimate.addIndexPage();
+        estimate.addExactIndexPage();
+
+        Assert.assertEquals(20, estimate.getRows().value, 0);
+        Assert.assertEquals(1, estimate.getSampledPages());
+        Assert.assertEquals(2, estimate.getSampledIndexPages());
+        Assert.assertEquals(1, estimate.getExactIndexPages());
+    }
+
+    @Test
+    public void TestPayloadBuckets() {
+        Assert.assertEquals(0, SampleEstimate.getBucket(0));
+        Assert.assertEquals(1, SampleEstimate.getBucket(1));
+        Assert.assertEquals(2, SampleEstimate.getBucket(3));
+        Assert.assertEquals(3, SampleEstimate.getBucket(4));
+        Assert.assertEquals(SampleEstimate.PAYLOAD_BUCKETS - 1, SampleEstimate.getBucket(Long.MAX_VALUE));
+        Assert.assertEquals(4, SampleEstimate.getBucketStart(3));
+
+        SampleEstimate estimate = new SampleEstimate(1);
+        estimate.leafPages = 1;
+        estimate.addPage(3, 1.0, new long[] {4, 5, 100});
+        Assert.assertEquals(2, estimate.getPayloadBucket(3).value, 0);
+        Assert.assertEquals(1, estimate.getPayloadBucket(SampleEstimate.getBucket(100)).value, 0);
+    }
+}
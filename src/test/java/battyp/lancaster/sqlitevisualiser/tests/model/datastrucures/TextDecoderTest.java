@@ -0,0 +1,88 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Paul Batty
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package battyp.lancaster.sqlitevisualiser.tests.model.datastrucures;
+
+import battyp.lancaster.sqlitevisualiser.model.datastructures.TextDecoder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JUnit tests for TextDecoder
+ *
+ * @see battyp.lancaster.sqlitevisualiser.model.datastructures.TextDecoder
+ *
+ * @author Paul Batty
+ */
+public class TextDecoderTest {
+
+    private ByteBuffer wrap(String text, Charset charset) {
+        byte[] bytes = text.getBytes(charset);
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 4);
+        buffer.position(2);
+        buffer.put(bytes);
+        buffer.position(0);
+        return buffer;
+    }
+
+    @Test
+    public void TestForEncoding() {
+        Assert.assertEquals(TextDecoder.UTF_8, TextDecoder.forEncoding(1));
+        Assert.assertEquals(TextDecoder.UTF_16LE, TextDecoder.forEncoding(2));
+        Assert.assertEquals(TextDecoder.UTF_16BE, TextDecoder.forEncoding(3));
+        Assert.assertEquals(TextDecoder.UTF_8, TextDecoder.forEncoding(0));
+    }
+
+    @Test
+    public void TestDecodeUtf8() {
+        ByteBuffer buffer = wrap("na\u00efve", StandardCharsets.UTF_8);
+        Assert.assertEquals("na\u00efve", TextDecoder.UTF_8.decode(buffer, 2, 6));
+        Assert.assertEquals(0, buffer.position());
+    }
+
+    @Test
+    public void TestDecodeUtf16() {
+        Assert.assertEquals("\u65e5\u672c", TextDecoder.UTF_16LE.decode(wrap("\u65e5\u672c", StandardCharsets.UTF_16LE), 2, 4));
+        Assert.assertEquals("\u65e5\u672c", TextDecoder.UTF_16BE.decode(wrap("\u65e5\u672c", StandardCharsets.UTF_16BE), 2, 4));
+    }
+
+    @Test
+    public void TestDecodeMalformed() {
+        ByteBuffer buffer = ByteBuffer.wrap(new byte[] {'a', (byte) 0xFF, 'b'});
+        Assert.assertEquals("a\ufffdb", TextDecoder.UTF_8.decode(buffer, 0, 3));
+    }
+
+    @Test
+    public void TestMatches() {
+        Assert.assertEquals(true, TextDecoder.UTF_8.matches(wrap("table", StandardCharsets.UTF_8), 2, 5, "table"));
+        Assert.assertEquals(true, TextDecoder.UTF_16LE.matches(wrap("table", StandardCharsets.UTF_16LE), 2, 10, "table"));
+        Assert.assertEquals(true, TextDecoder.UTF_16BE.matches(wrap("index", StandardCharsets.UTF_16BE), 2, 10, "index"));
+        Assert.assertEquals(false, TextDecoder.UTF_16BE.matches(wrap("table", StandardCharsets.UTF_16LE), 2, 10, "table"));
+        Assert.assertEquals(false, TextDecoder.UTF_16LE.matches(wrap("table", StandardCharsets.UTF_16LE), 2, 5, "table"));
+    }
+}
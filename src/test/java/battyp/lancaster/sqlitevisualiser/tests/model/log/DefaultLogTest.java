@@ -410,4 +410,101 @@ public class DefaultLogTest {
         Assert.assertEquals("REMOVED PAGE '2'", log.getLog().get(0).items.get(0));
         Assert.assertEquals("'testData1' TO 'testData2'\n", log.getLog().get(0).items.get(1));
     }
+
+    @Test
+    public void TestDetectChangesOnlyInChangedSubtree() {
+        BTreeCell cell = new BTreeCell(5, 1, 1);
+        cell.data[0] = "testData1";
+        BTreeCell unchangedCell = new BTreeCell(5, 1, 2);
+        unchangedCell.data[0] = "testData2";
+        BTreeCell oldCell = new BTreeCell(5, 1, 3);
+        oldCell.data[0] = "testData3";
+
+        BTree tree = new BTree();
+        BTreeNode root = new BTreeNode(cell);
+        root.addChild(new BTreeNode(unchangedCell));
+        root.addChild(new BTreeNode(oldCell));
+        tree.setRoot(root);
+        Database database = new Database(tree, new Metadata());
+
+        BTreeCell newCell = new BTreeCell(5, 1, 3);
+        newCell.data[0] = "newTestData3";
+
+        BTree newTree = new BTree();
+        BTreeNode newRoot = new BTreeNode(cell);
+        newRoot.addChild(new BTreeNode(unchangedCell));
+        newRoot.addChild(new BTreeNode(newCell));
+        newTree.setRoot(newRoot);
+        Database newDatabase = new Database(newTree, new Metadata());
+
+        DefaultLog log = new DefaultLog();
+        log.detectChanges(newDatabase, database);
+        Assert.assertEquals(1, log.getLog().size());
+        Assert.assertEquals(1, log.getLog().get(0).items.size());
+        Assert.assertEquals("'testData3' TO 'newTestData3'\n", log.getLog().get(0).items.get(0));
+        Assert.assertEquals(true, newCell.changed);
+        Assert.assertEquals(false, unchangedCell.changed);
+    }
+
+    @Test
+    public void TestDetectChangesSeesChangesToTheLastTree() {
+        BTreeCell cell = new BTreeCell(5, 1, 1);
+        cell.data[0] = "testData1";
+        BTreeCell childCell = new BTreeCell(5, 1, 2);
+        childCell.data[0] = "testData2";
+
+        BTree tree = new BTree();
+        tree.setRoot(new BTreeNode(cell));
+        Database database = new Database(tree, new Metadata());
+
+        BTree newTree = new BTree();
+        BTreeNode newRoot = new BTreeNode(cell);
+        newRoot.addChild(new BTreeNode(childCell));
+        newTree.setRoot(newRoot);
+        Database newDatabase = new Database(newTree, new Metadata());
+
+        DefaultLog log = new DefaultLog();
+        log.detectChanges(newDatabase, database);
+        Assert.assertEquals("ADDED PAGE '2'\n", log.getLog().get(0).items.get(0));
+
+        newRoot.removeChildAt(0);
+        BTree lastTree = new BTree();
+        BTreeNode lastRoot = new BTreeNode(cell);
+        lastRoot.addChild(new BTreeNode(childCell));
+        lastTree.setRoot(lastRoot);
+        log.detectChanges(new Database(lastTree, new Metadata()), newDatabase);
+        Assert.assertEquals(2, log.getLog().size());
+        Assert.assertEquals("ADDED PAGE '2'\n", log.getLog().get(1).items.get(0));
+    }
+
+    @Test
+    public void TestDetectChangesDoesNotLoadOrRemoveLazyPages() {
+        BTreeCell cell = new BTreeCell(5, 1, 1);
+        cell.data[0] = "testData1";
+        BTreeCell childCell = new BTreeCell(5, 1, 2);
+        childCell.data[0] = "testData2";
+
+        BTree tree = new BTree();
+        BTreeNode root = new BTreeNode(cell);
+        root.addChild(new BTreeNode(childCell));
+        tree.setRoot(root);
+        Database database = new Database(tree, new Metadata());
+
+        BTree newTree = new BTree();
+        BTreeNode newRoot = new BTreeNode(cell);
+        newRoot.setPlaceholders(new int[] {3}, pageNumbers -> {
+            throw new AssertionError("Loaded " + pageNumbers.length + " pages");
+        });
+        newTree.setRoot(newRoot);
+        Database newDatabase = new Database(newTree, new Metadata());
+
+        DefaultLog log = new DefaultLog();
+        log.detectChanges(newDatabase, database);
+        Assert.assertEquals(0, log.getLog().size());
+        Assert.assertEquals(false, newRoot.isMaterialised());
+
+        log.detectChanges(database, newDatabase);
+        Assert.assertEquals(0, log.getLog().size());
+        Assert.assertEquals(false, newRoot.isMaterialised());
+    }
 }
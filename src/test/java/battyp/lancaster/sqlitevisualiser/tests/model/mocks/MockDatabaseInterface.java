@@ -51,6 +51,11 @@ public class MockDatabaseInterface implements DatabaseInterface {
         return new MockDatabase();
     }
 
+    @Override
+    public Database getLatest() {
+        return new MockDatabase();
+    }
+
     @Override
     public void nextStep() {
 
@@ -26,6 +26,7 @@ package battyp.lancaster.sqlitevisualiser.tests.model.mocks;
 
 import battyp.lancaster.sqlitevisualiser.model.database.Database;
 import battyp.lancaster.sqlitevisualiser.model.databaseparser.DatabaseParser;
+import battyp.lancaster.sqlitevisualiser.model.databaseparser.ParseMonitor;
 import battyp.lancaster.sqlitevisualiser.model.exceptions.InvalidFileException;
 
 import java.io.FileNotFoundException;
@@ -43,4 +44,105 @@ public class MockDatabaseParser implements DatabaseParser {
     public Database parseDatabase(String pathToDatabase, Database database) throws FileNotFoundException, InvalidFileException {
         return null;
     }
+
+    @Override
+    public Database parseDatabase(String pathToDatabase, Database database, Database previous) throws FileNotFoundException, InvalidFileException {
+        return null;
+    }
+
+    @Override
+    public Database parseDatabase(String pathToDatabase, Database database, Database previous, ParseMonitor monitor) throws FileNotFoundException, InvalidFileException {
+        return null;
+    }
+
+    @Override
+    public Database parseDatabase(String pathToDatabase, Database database, Database previous, ParseMonitor monitor, boolean lazy, double sampleRate) throws FileNotFoundException, InvalidFileException {
+        return null;
+    }
+
+    @Override
+    public Database parseJournal(String pathToDatabase, Database database, Database current) throws FileNotFoundException, InvalidFileException {
+        return null;
+    }
+
+    @Override
+    public void setMemoryMapped(boolean memoryMapped) {
+    }
+
+    @Override
+    public boolean isMemoryMapped() {
+        return false;
+    }
+
+    @Override
+    public void setParallelism(int parallelism) {
+    }
+
+    @Override
+    public int getParallelism() {
+        return 1;
+    }
+
+    @Override
+    public void setLazy(boolean lazy) {
+    }
+
+    @Override
+    public boolean isLazy() {
+        return false;
+    }
+
+    @Override
+    public void setSequentialScan(boolean sequentialScan) {
+    }
+
+    @Override
+    public boolean isSequentialScan() {
+        return false;
+    }
+
+    @Override
+    public void setPrefetch(boolean prefetch) {
+    }
+
+    @Override
+    public boolean isPrefetch() {
+        return false;
+    }
+
+    @Override
+    public void setClassifyPages(boolean classifyPages) {
+    }
+
+    @Override
+    public boolean isClassifyPages() {
+        return false;
+    }
+
+    @Override
+    public void setMaxRetries(int maxRetries) {
+    }
+
+    @Override
+    public int getMaxRetries() {
+        return 0;
+    }
+
+    @Override
+    public void setSharedLock(boolean sharedLock) {
+    }
+
+    @Override
+    public boolean isSharedLock() {
+        return false;
+    }
+
+    @Override
+    public void setSampleRate(double sampleRate) {
+    }
+
+    @Override
+    public double getSampleRate() {
+        return 1;
+    }
 }